@@ -0,0 +1,213 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.binding.http.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class HttpBindingTest {
+	
+	private TestServer server;
+	
+	private HttpBinding binding;
+	
+	private HttpGenericBindingProvider provider;
+	
+	private Map<String, State> updates;
+	
+	@Before
+	public void init() throws IOException {
+		updates = new ConcurrentHashMap<String, State>();
+		binding = new HttpBinding();
+		binding.setEventPublisher(new EventPublisher() {
+			public void sendCommand(String itemName, Command command) {}
+			public void postCommand(String itemName, Command command) {}
+			public void postUpdate(String itemName, State newState) {
+				updates.put(itemName, newState);
+			}
+		});
+		provider = new HttpGenericBindingProvider();
+	}
+	
+	@After
+	public void shutdown() throws IOException {
+		binding.removeBindingProvider(provider);
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testExecuteFetchesDistinctUrlsConcurrently() throws Exception {
+		// the distinct requests /a, /b and /c have to arrive at the same time
+		server = new TestServer(3);
+		Hashtable<String, String> config = new Hashtable<String, String>();
+		config.put("cache1.url", server.getUrl() + "/c");
+		config.put("cache1.updateInterval", "60000");
+		// configure the binding before the provider is added, so that it is not started
+		binding.updated(config);
+		
+		addItem("ItemA1", server.getUrl() + "/a");
+		addItem("ItemA2", server.getUrl() + "/a");
+		addItem("ItemB", server.getUrl() + "/b");
+		addItem("ItemC1", "cache1");
+		addItem("ItemC2", "cache1");
+		binding.addBindingProvider(provider);
+		
+		binding.execute();
+		
+		Assert.assertEquals("a", updates.get("ItemA1").toString());
+		Assert.assertEquals("a", updates.get("ItemA2").toString());
+		Assert.assertEquals("b", updates.get("ItemB").toString());
+		Assert.assertEquals("c", updates.get("ItemC1").toString());
+		Assert.assertEquals("c", updates.get("ItemC2").toString());
+		
+		// identical requests and the cache update are executed only once
+		Assert.assertEquals(1, server.getRequestCount("/a"));
+		Assert.assertEquals(1, server.getRequestCount("/b"));
+		Assert.assertEquals(1, server.getRequestCount("/c"));
+	}
+
+	@Test
+	public void testExecuteSkipsItemsWhichAreNotDue() throws Exception {
+		server = new TestServer(1);
+		addItem("ItemA", server.getUrl() + "/a");
+		binding.addBindingProvider(provider);
+		
+		binding.execute();
+		binding.execute();
+		
+		Assert.assertEquals("a", updates.get("ItemA").toString());
+		Assert.assertEquals(1, server.getRequestCount("/a"));
+	}
+	
+	private void addItem(String itemName, String url) throws Exception {
+		provider.processBindingConfiguration("test", new StringItem(itemName), "<[" + url + ":60000:REGEX((.*))]");
+	}
+	
+	/**
+	 * A minimal HTTP server which answers every request with its path. Each
+	 * request waits until the given number of requests has arrived and is 
+	 * answered with "sequential" instead, if they do not arrive in time.
+	 */
+	static class TestServer implements Runnable {
+		
+		private final ServerSocket serverSocket;
+		
+		private final CountDownLatch arrived;
+		
+		private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+		
+		TestServer(int concurrentRequests) throws IOException {
+			serverSocket = new ServerSocket(0);
+			arrived = new CountDownLatch(concurrentRequests);
+			Thread thread = new Thread(this, "HttpBindingTest server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		String getUrl() {
+			return "http://localhost:" + serverSocket.getLocalPort();
+		}
+		
+		int getRequestCount(String path) {
+			AtomicInteger count = requestCounts.get(path);
+			return count != null ? count.get() : 0;
+		}
+		
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					final Socket socket = serverSocket.accept();
+					new Thread(new Runnable() {
+						public void run() {
+							answer(socket);
+						}
+					}).start();
+				} catch (IOException e) {
+					// the server has been closed
+				}
+			}
+		}
+		
+		private void answer(Socket socket) {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+				String path = reader.readLine().split(" ")[1];
+				while (reader.readLine().length() > 0) {
+					// skip the headers
+				}
+				synchronized (requestCounts) {
+					if (!requestCounts.containsKey(path)) {
+						requestCounts.put(path, new AtomicInteger());
+					}
+				}
+				requestCounts.get(path).incrementAndGet();
+				arrived.countDown();
+				String body = arrived.await(5, TimeUnit.SECONDS) ? path.substring(1) : "sequential";
+				OutputStream out = socket.getOutputStream();
+				out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length() 
+						+ "\r\nConnection: close\r\n\r\n" + body).getBytes("US-ASCII"));
+				out.flush();
+				socket.close();
+			} catch (Exception e) {
+				// the client has gone
+			}
+		}
+		
+		void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
+}
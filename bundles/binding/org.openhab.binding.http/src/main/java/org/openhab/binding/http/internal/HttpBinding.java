@@ -31,12 +31,16 @@ package org.openhab.binding.http.internal;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.openhab.binding.http.internal.HttpGenericBindingProvider.CHANGED_COMMAND_KEY;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -132,10 +136,19 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider> impl
 	
 	/**
 	 * @{inheritDoc}
+	 * <p>
+	 * All URLs which are due are requested concurrently; identical requests and
+	 * cache updates are only executed once per run. The responses are then
+	 * transformed and posted in the order of the items.
+	 * </p>
 	 */
 	@Override
 	public void execute() {
 		
+		Map<String, Future<String>> requests = new HashMap<String, Future<String>>();
+		Map<CacheConfig, Future<String>> cacheRequests = new HashMap<CacheConfig, Future<String>>();
+		List<PendingUpdate> pendingUpdates = new ArrayList<PendingUpdate>();
+		
 		for (HttpBindingProvider provider : providers) {
 			for (String itemName : provider.getInBindingItemNames()) {
 				
@@ -144,7 +157,6 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider> impl
 
 				Properties headers = provider.getHttpHeaders(itemName);
 				int refreshInterval = provider.getRefreshInterval(itemName);
-				String transformation = provider.getTransformation(itemName);
 				
 				Long lastUpdateTimeStamp = lastUpdateMap.get(itemName);
 				if (lastUpdateTimeStamp == null) {
@@ -156,7 +168,7 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider> impl
 				
 				if (needsUpdate) {
 					
-					String response = null;
+					PendingUpdate pendingUpdate = new PendingUpdate(provider, itemName, url);
 					
 					// Check if special URL is used and data should get from
 					// cache rather than directly from server
@@ -167,68 +179,122 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider> impl
 						long cacheAge = System.currentTimeMillis() - cacheItem.lastUpdate;
 						boolean cacheNeedsUpdate = cacheAge >= cacheItem.updateInterval;
 
-						if (cacheNeedsUpdate) {
+						if (cacheNeedsUpdate && !cacheRequests.containsKey(cacheItem)) {
 
 							// update and store data on cache
 							logger.debug("updating cache for '{}' ('{}')", url, cacheItem.url);
-							cacheItem.data = HttpUtil.executeUrl("GET", cacheItem.url, null, null, null, timeout);
-
-							if (cacheItem.data != null)
-								cacheItem.lastUpdate = System.currentTimeMillis();
+							cacheRequests.put(cacheItem, HttpUtil.executeUrlAsync("GET", cacheItem.url, null, null, null, timeout));
 						}
 
-						logger.debug("item '{}' is fetched from cache", itemName);
-						response = cacheItem.data;
+						pendingUpdate.cacheItem = cacheItem;
 						
 					} else {
 						
 						logger.debug("item '{}' is about to be refreshed now", itemName);
 						
-						response = HttpUtil.executeUrl("GET", url, headers, null, null, timeout);
-					}
-					
-					if(response==null) {
-						logger.error("No response received from '{}'", url);
-					} else {
-						String transformedResponse;
-						
-						try {
-							String[] parts = splitTransformationConfig(transformation);
-							String transformationType = parts[0];
-							String transformationFunction = parts[1];
-							
-							TransformationService transformationService = 
-								TransformationHelper.getTransformationService(HttpActivator.getContext(), transformationType);
-							if (transformationService != null) {
-								transformedResponse = transformationService.transform(transformationFunction, response);
-							} else {
-								transformedResponse = response;
-								logger.warn("couldn't transform response because transformationService of type '{}' is unavailable", transformationType);
-							}
-						}
-						catch (TransformationException te) {
-							logger.error("transformation throws exception [transformation="
-									+ transformation + ", response=" + response + "]", te);
-							
-							// in case of an error we return the response without any
-							// transformation
-							transformedResponse = response;
-						}
-						
-						logger.debug("transformed response is '{}'", transformedResponse);
-						
-						Class<? extends Item> itemType = provider.getItemType(itemName);
-						State state = createState(itemType, transformedResponse);
-						
-						if (state != null) {
-							eventPublisher.postUpdate(itemName, state);
+						String requestKey = headers == null ? url : url + headers;
+						Future<String> request = requests.get(requestKey);
+						if (request == null) {
+							request = HttpUtil.executeUrlAsync("GET", url, headers, null, null, timeout);
+							requests.put(requestKey, request);
 						}
+						pendingUpdate.response = request;
 					}
 					
-					lastUpdateMap.put(itemName, System.currentTimeMillis());
+					pendingUpdates.add(pendingUpdate);
 				}					
 			}
 		}
+		
+		for (Map.Entry<CacheConfig, Future<String>> cacheRequest : cacheRequests.entrySet()) {
+			CacheConfig cacheItem = cacheRequest.getKey();
+			String data = getResponse(cacheRequest.getValue(), cacheItem.url);
+			if (data != null) {
+				cacheItem.data = data;
+				cacheItem.lastUpdate = System.currentTimeMillis();
+			}
+		}
+		
+		for (PendingUpdate pendingUpdate : pendingUpdates) {
+			String response;
+			if (pendingUpdate.cacheItem != null) {
+				logger.debug("item '{}' is fetched from cache", pendingUpdate.itemName);
+				response = pendingUpdate.cacheItem.data;
+			} else {
+				response = getResponse(pendingUpdate.response, pendingUpdate.url);
+			}
+			
+			if(response==null) {
+				logger.error("No response received from '{}'", pendingUpdate.url);
+			} else {
+				postUpdate(pendingUpdate.provider, pendingUpdate.itemName, response);
+			}
+			
+			lastUpdateMap.put(pendingUpdate.itemName, System.currentTimeMillis());
+		}
+	}
+	
+	/**
+	 * Waits for the given request to complete.
+	 * 
+	 * @param request the asynchronously executed request
+	 * @param url the requested url (used for logging only)
+	 * @return the response body or <code>null</code> if the request went wrong
+	 */
+	private String getResponse(Future<String> request, String url) {
+		try {
+			return request.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("request to '" + url + "' throws exception", e.getCause());
+		}
+		return null;
+	}
+	
+	/**
+	 * Transforms the given response according to the item's binding configuration 
+	 * and posts the resulting state on the event bus.
+	 * 
+	 * @param provider the binding provider of the item
+	 * @param itemName the name of the item to update
+	 * @param response the response body which has been received for the item 
+	 */
+	private void postUpdate(HttpBindingProvider provider, String itemName, String response) {
+		String transformation = provider.getTransformation(itemName);
+		String transformedResponse;
+		
+		try {
+			String[] parts = splitTransformationConfig(transformation);
+			String transformationType = parts[0];
+			String transformationFunction = parts[1];
+			
+			TransformationService transformationService = 
+				TransformationHelper.getTransformationService(HttpActivator.getContext(), transformationType);
+			if (transformationService != null) {
+				transformedResponse = transformationService.transform(transformationFunction, response);
+			} else {
+				transformedResponse = response;
+				logger.warn("couldn't transform response because transformationService of type '{}' is unavailable", transformationType);
+			}
+		}
+		catch (TransformationException te) {
+			logger.error("transformation throws exception [transformation="
+					+ transformation + ", response=" + response + "]", te);
+			
+			// in case of an error we return the response without any
+			// transformation
+			transformedResponse = response;
+		}
+		
+		logger.debug("transformed response is '{}'", transformedResponse);
+		
+		Class<? extends Item> itemType = provider.getItemType(itemName);
+		State state = createState(itemType, transformedResponse);
+		
+		if (state != null) {
+			eventPublisher.postUpdate(itemName, state);
+		}
 	}
 	
 	/**
@@ -407,6 +473,31 @@ public class HttpBinding extends AbstractActiveBinding<HttpBindingProvider> impl
 
 	}
 	
+	/**
+	 * Internal data structure for an item update which waits for its response
+	 */
+	static class PendingUpdate {
+		
+		final HttpBindingProvider provider;
+		
+		final String itemName;
+		
+		final String url;
+		
+		/** the cache which provides the response or <code>null</code> */
+		CacheConfig cacheItem;
+		
+		/** the request which provides the response if no cache is used */
+		Future<String> response;
+		
+		PendingUpdate(HttpBindingProvider provider, String itemName, String url) {
+			this.provider = provider;
+			this.itemName = itemName;
+			this.url = url;
+		}
+		
+	}
+	
 	/**
 	 * Internal data structure for data cache purposes
 	 * 
@@ -30,6 +30,7 @@ package org.openhab.core.library.types;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.Assert;
 
@@ -37,6 +38,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.items.DimmerItem;
 import org.openhab.core.library.items.SwitchItem;
@@ -225,6 +227,47 @@ public class ArithmeticGroupFunctionTest {
 		Assert.assertEquals(new DecimalType("234.95"), state);
 	}
 	
+	@Test
+	public void testIncrementalFunctionsMatchFullCalculation() {
+		State[] states = new State[] { 
+			OpenClosedType.OPEN, OpenClosedType.CLOSED, UnDefType.UNDEF, 
+			new DecimalType("1"), new DecimalType("1.50"), new DecimalType("-3.7"), new DecimalType("42") };
+		GroupFunction[] functions = new GroupFunction[] {
+			new ArithmeticGroupFunction.And(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.Or(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.NAnd(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.NOr(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.Avg(),
+			new ArithmeticGroupFunction.Sum(),
+			new ArithmeticGroupFunction.Min(),
+			new ArithmeticGroupFunction.Max() };
+		Random random = new Random(4711);
+		
+		for(GroupFunction function : functions) {
+			GroupItem group = new GroupItem("TestGroup", null, function);
+			List<TestItem> members = new ArrayList<TestItem>();
+			for(int i=0; i<20; i++) {
+				TestItem member = new TestItem("TestItem" + i, states[random.nextInt(states.length)]);
+				members.add(member);
+				group.addMember(member);
+			}
+			for(int i=0; i<500; i++) {
+				TestItem member = members.get(random.nextInt(members.size()));
+				member.setState(states[random.nextInt(states.length)]);
+				Assert.assertEquals(function.getClass().getSimpleName(), 
+						function.calculate(group.getMembers()), group.getState());
+			}
+			// removing members must be reflected on the next update as well
+			TestItem lastMember = members.get(members.size() - 1);
+			for(int i=0; i<members.size() - 1; i++) {
+				group.removeMember(members.get(i));
+				lastMember.setState(states[random.nextInt(states.length)]);
+				Assert.assertEquals(function.getClass().getSimpleName(), 
+						function.calculate(group.getMembers()), group.getState());
+			}
+		}
+	}
+	
 	class TestItem extends GenericItem {
 
 		public TestItem(String name, State state) {
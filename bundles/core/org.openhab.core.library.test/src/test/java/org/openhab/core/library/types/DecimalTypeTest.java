@@ -51,4 +51,12 @@ public class DecimalTypeTest {
 		assertEquals(false, dt1.equals(pt));
 	}
 	
+	@Test
+	public void testHashCodeIsConsistentWithEquals() {
+		assertEquals(new DecimalType("1").hashCode(), new DecimalType("1.00").hashCode());
+		assertEquals(new DecimalType("0").hashCode(), new DecimalType("0.0").hashCode());
+		assertEquals(new DecimalType("100").hashCode(), new DecimalType("1E+2").hashCode());
+		assertEquals(new DecimalType("99.7").hashCode(), new PercentType("99.70").hashCode());
+	}
+	
 }
@@ -31,8 +31,10 @@ package org.openhab.core.library.types;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.TreeMap;
 
 import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.IncrementalGroupFunction;
 import org.openhab.core.items.Item;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
@@ -58,7 +60,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class And implements GroupFunction {
+	static class And implements IncrementalGroupFunction {
 		
 		protected final State activeState;
 		protected final State passiveState;
@@ -88,6 +90,24 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new CountingAggregator(activeState) {
+				public State getState() {
+					return total>0 && matching==total ? activeState : passiveState;
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getState();
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -133,7 +153,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Or implements GroupFunction {
+	static class Or implements IncrementalGroupFunction {
 
 		protected final State activeState;
 		protected final State passiveState;
@@ -160,6 +180,24 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return passiveState;
 		}
 		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new CountingAggregator(activeState) {
+				public State getState() {
+					return matching>0 ? activeState : passiveState;
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getState();
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -210,6 +248,21 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				result.equals(activeState) ? passiveState : activeState;
 			return notResult;
 		}
+
+		public Aggregator createAggregator() {
+			final Aggregator aggregator = super.createAggregator();
+			return new Aggregator() {
+				public void add(State state) {
+					aggregator.add(state);
+				}
+				public void remove(State state) {
+					aggregator.remove(state);
+				}
+				public State getState() {
+					return aggregator.getState().equals(activeState) ? passiveState : activeState;
+				}
+			};
+		}
 		
 	}
 
@@ -234,6 +287,21 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				result.equals(activeState) ? passiveState : activeState;
 			return notResult;
 		}
+
+		public Aggregator createAggregator() {
+			final Aggregator aggregator = super.createAggregator();
+			return new Aggregator() {
+				public void add(State state) {
+					aggregator.add(state);
+				}
+				public void remove(State state) {
+					aggregator.remove(state);
+				}
+				public State getState() {
+					return aggregator.getState().equals(activeState) ? passiveState : activeState;
+				}
+			};
+		}
 		
 	}
 	
@@ -244,7 +312,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Avg implements GroupFunction {
+	static class Avg implements IncrementalGroupFunction {
 		
 		public Avg() {}
 
@@ -270,6 +338,28 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 		}
 		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new DecimalAggregator(false) {
+				public State getState() {
+					if(count>0) {
+						return new DecimalType(getSum().divide(new BigDecimal(count), RoundingMode.HALF_UP));
+					} else {
+						return UnDefType.UNDEF;
+					}
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getStateAs(DecimalType.class);
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -290,7 +380,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 1.1.0
 	 *
 	 */
-	static class Sum implements GroupFunction {
+	static class Sum implements IncrementalGroupFunction {
 		
 		public Sum() {}
 
@@ -310,6 +400,24 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return new DecimalType(sum);
 		}
 		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new DecimalAggregator(false) {
+				public State getState() {
+					return new DecimalType(getSum());
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getStateAs(DecimalType.class);
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -330,7 +438,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Min implements GroupFunction {
+	static class Min implements IncrementalGroupFunction {
 		
 		public Min() {}
 
@@ -355,6 +463,24 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return UnDefType.UNDEF;
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new DecimalAggregator(true) {
+				public State getState() {
+					return count>0 ? new DecimalType(values.firstKey()) : UnDefType.UNDEF;
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getStateAs(DecimalType.class);
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -375,7 +501,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Max implements GroupFunction {
+	static class Max implements IncrementalGroupFunction {
 		
 		public Max() {}
 
@@ -400,6 +526,24 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return UnDefType.UNDEF;
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator createAggregator() {
+			return new DecimalAggregator(true) {
+				public State getState() {
+					return count>0 ? new DecimalType(values.lastKey()) : UnDefType.UNDEF;
+				}
+			};
+		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public State getRelevantState(Item item) {
+			return item.getStateAs(DecimalType.class);
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -413,5 +557,118 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 		}
 	}
 	
+	/**
+	 * An aggregator which counts how many of the added states are equal to a 
+	 * given state. It is the basis for the incremental logical functions.
+	 * 
+	 * @author Kai Kreuzer
+	 * @since 1.4.0
+	 *
+	 */
+	static abstract class CountingAggregator implements IncrementalGroupFunction.Aggregator {
+		
+		protected final State countedState;
+		
+		/** the number of all added states */
+		protected int total = 0;
+		
+		/** the number of added states which are equal to the counted state */
+		protected int matching = 0;
+		
+		public CountingAggregator(State countedState) {
+			this.countedState = countedState;
+		}
+		
+		public void add(State state) {
+			total++;
+			if(countedState.equals(state)) {
+				matching++;
+			}
+		}
+
+		public void remove(State state) {
+			total--;
+			if(countedState.equals(state)) {
+				matching--;
+			}
+		}
+	}
+	
+	/**
+	 * An aggregator which keeps a running sum of all added decimal states. 
+	 * Optionally, all added values are kept sorted, so that the minimum and 
+	 * maximum can be determined in O(log n).
+	 * 
+	 * @author Kai Kreuzer
+	 * @since 1.4.0
+	 *
+	 */
+	static abstract class DecimalAggregator implements IncrementalGroupFunction.Aggregator {
+		
+		protected BigDecimal sum = BigDecimal.ZERO;
+		
+		/** the number of added decimal states */
+		protected int count = 0;
+		
+		/** the added values with their number of occurrences, <code>null</code> if not tracked */
+		protected final TreeMap<BigDecimal, Integer> values;
+		
+		/** the scales of the added values with their number of occurrences */
+		protected final TreeMap<Integer, Integer> scales = new TreeMap<Integer, Integer>();
+		
+		public DecimalAggregator(boolean trackValues) {
+			values = trackValues ? new TreeMap<BigDecimal, Integer>() : null;
+		}
+		
+		public void add(State state) {
+			if(state instanceof DecimalType) {
+				BigDecimal value = ((DecimalType) state).toBigDecimal();
+				sum = sum.add(value);
+				count++;
+				increment(scales, value.scale());
+				if(values!=null) {
+					increment(values, value);
+				}
+			}
+		}
+
+		public void remove(State state) {
+			if(state instanceof DecimalType) {
+				BigDecimal value = ((DecimalType) state).toBigDecimal();
+				sum = sum.subtract(value);
+				count--;
+				decrement(scales, value.scale());
+				if(values!=null) {
+					decrement(values, value);
+				}
+			}
+		}
+		
+		/**
+		 * Returns the sum of all added values. The scale of the result is the 
+		 * same as if the sum had been calculated over the current values only.
+		 * 
+		 * @return the sum of all added values
+		 */
+		protected BigDecimal getSum() {
+			return scales.isEmpty() ? BigDecimal.ZERO : sum.setScale(scales.lastKey());
+		}
+		
+		private static <T> void increment(TreeMap<T, Integer> map, T key) {
+			Integer occurrences = map.get(key);
+			map.put(key, occurrences==null ? 1 : occurrences + 1);
+		}
+		
+		private static <T> void decrement(TreeMap<T, Integer> map, T key) {
+			Integer occurrences = map.get(key);
+			if(occurrences!=null) {
+				if(occurrences > 1) {
+					map.put(key, occurrences - 1);
+				} else {
+					map.remove(key);
+				}
+			}
+		}
+	}
 	
 }
@@ -93,7 +93,10 @@ public class DecimalType extends Number implements PrimitiveType, State, Command
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((value == null) ? 0 : value.hashCode());
+		// equals() ignores the scale, so the hash code must not depend on it either
+		// (note that stripTrailingZeros() does not normalize zero before Java 8)
+		result = prime * result + ((value == null) ? 0 : 
+			(value.signum() == 0 ? 0 : value.stripTrailingZeros().hashCode()));
 		return result;
 	}
 
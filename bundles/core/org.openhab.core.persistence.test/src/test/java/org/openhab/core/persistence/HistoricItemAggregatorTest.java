@@ -0,0 +1,156 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.AggregatingPersistenceService.Aggregation;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class HistoricItemAggregatorTest {
+
+	private List<HistoricItem> historicItems;
+
+	@Before
+	public void setUp() {
+		historicItems = new ArrayList<HistoricItem>();
+		// 0:00 -> 3, 0:01 -> 1, 0:02 -> 4, 0:03 -> 1, 0:04 -> 5
+		int[] values = { 3, 1, 4, 1, 5 };
+		for (int i = 0; i < values.length; i++) {
+			historicItems.add(createItem(new DecimalType(values[i]), i * 60000L));
+		}
+	}
+
+	@Test
+	public void testAggregate() {
+		Date end = new Date(300000L);
+		assertEquals(new DecimalType(2.8), aggregate(Aggregation.AVG, null).getState());
+		assertEquals(new DecimalType(14), aggregate(Aggregation.SUM, null).getState());
+		assertEquals(new DecimalType(5), aggregate(Aggregation.COUNT, null).getState());
+		assertEquals(end, aggregate(Aggregation.COUNT, null).getTimestamp());
+
+		// the first of several equal minimums is returned with its own timestamp
+		HistoricItem minimum = aggregate(Aggregation.MIN, null);
+		assertEquals(new DecimalType(1), minimum.getState());
+		assertEquals(new Date(60000L), minimum.getTimestamp());
+
+		HistoricItem maximum = aggregate(Aggregation.MAX, null);
+		assertEquals(new DecimalType(5), maximum.getState());
+		assertEquals(new Date(240000L), maximum.getTimestamp());
+
+		assertEquals(new DecimalType(3), aggregate(Aggregation.FIRST, null).getState());
+		assertEquals(new DecimalType(5), aggregate(Aggregation.LAST, null).getState());
+	}
+
+	@Test
+	public void testAggregateEmpty() {
+		List<HistoricItem> empty = Collections.emptyList();
+		Date end = new Date();
+		assertNull(HistoricItemAggregator.aggregate("Test", Aggregation.AVG, empty, null, end));
+		assertNull(HistoricItemAggregator.aggregate("Test", Aggregation.MAX, empty, null, end));
+		assertNull(HistoricItemAggregator.aggregate("Test", Aggregation.LAST, empty, null, end));
+		assertEquals(new DecimalType(0), HistoricItemAggregator.aggregate("Test", Aggregation.COUNT, empty, null, end).getState());
+		assertEquals(OnOffType.OFF, HistoricItemAggregator.aggregate("Test", Aggregation.CHANGED, empty, null, end).getState());
+	}
+
+	@Test
+	public void testChanged() {
+		assertEquals(OnOffType.ON, aggregate(Aggregation.CHANGED, null).getState());
+
+		List<HistoricItem> constant = new ArrayList<HistoricItem>();
+		constant.add(createItem(OnOffType.ON, 0L));
+		constant.add(createItem(OnOffType.ON, 1000L));
+		Date end = new Date(2000L);
+		assertEquals(OnOffType.OFF, HistoricItemAggregator.aggregate("Test", Aggregation.CHANGED, constant, null, end).getState());
+		assertEquals(OnOffType.OFF, HistoricItemAggregator.aggregate("Test", Aggregation.CHANGED, constant, OnOffType.ON, end).getState());
+		assertEquals(OnOffType.ON, HistoricItemAggregator.aggregate("Test", Aggregation.CHANGED, constant, OnOffType.OFF, end).getState());
+	}
+
+	@Test
+	public void testAggregateBuckets() {
+		// buckets of two minutes: [3, 1], [4, 1], [5]
+		List<HistoricItem> results = HistoricItemAggregator.aggregate("Test", Aggregation.SUM, historicItems, new Date(0L), 120000L);
+		assertEquals(3, results.size());
+		assertEquals(new DecimalType(4), results.get(0).getState());
+		assertEquals(new DecimalType(5), results.get(1).getState());
+		assertEquals(new DecimalType(5), results.get(2).getState());
+		assertEquals(new Date(0L), results.get(0).getTimestamp());
+		assertEquals(new Date(120000L), results.get(1).getTimestamp());
+		assertEquals(new Date(240000L), results.get(2).getTimestamp());
+
+		// results of single items are timestamped with the bucket as well
+		results = HistoricItemAggregator.aggregate("Test", Aggregation.MAX, historicItems, new Date(0L), 120000L);
+		assertEquals(new DecimalType(3), results.get(0).getState());
+		assertEquals(new Date(0L), results.get(0).getTimestamp());
+
+		// the last state of a bucket is the previous state of the next one
+		results = HistoricItemAggregator.aggregate("Test", Aggregation.CHANGED, historicItems, new Date(0L), 120000L);
+		assertEquals(OnOffType.ON, results.get(2).getState());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBucketSize() {
+		HistoricItemAggregator.aggregate("Test", Aggregation.SUM, historicItems, new Date(0L), 0L);
+	}
+
+	private HistoricItem aggregate(Aggregation aggregation, State previousState) {
+		return HistoricItemAggregator.aggregate("Test", aggregation, historicItems, previousState, new Date(300000L));
+	}
+
+	private static HistoricItem createItem(final State state, final long timestamp) {
+		return new HistoricItem() {
+			public Date getTimestamp() {
+				return new Date(timestamp);
+			}
+
+			public State getState() {
+				return state;
+			}
+
+			public String getName() {
+				return "Test";
+			}
+		};
+	}
+
+}
@@ -31,6 +31,8 @@ package org.openhab.core.persistence.extensions;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.joda.time.DateMidnight;
@@ -38,8 +40,12 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.HistoricItemAggregator;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.test.TestPersistenceService;
 import org.openhab.core.types.Command;
@@ -123,4 +129,70 @@ public class PersistenceExtensionsTest {
 		DecimalType average = PersistenceExtensions.averageSince(item, new DateMidnight(2003, 1, 1), "test");
 		assertEquals("2100", average.toString());
 	}
+
+	@Test
+	public void testAverageSinceIgnoresNonDecimalStates() {
+		PersistenceService mixedStatesService = new MixedStatesPersistenceService();
+		ext.addPersistenceService(mixedStatesService);
+		try {
+			// the states 10, UNDEF and 20 have been persisted, so the UNDEF state must not be counted
+			item.setState(new DecimalType(30));
+			DecimalType average = PersistenceExtensions.averageSince(item, new DateMidnight(2003, 1, 1), "mixed");
+			assertEquals("20", average.toString());
+		} finally {
+			ext.removePersistenceService(mixedStatesService);
+		}
+	}
+
+	/**
+	 * An aggregating persistence service whose history contains a state that is not decimal.
+	 */
+	private static class MixedStatesPersistenceService implements AggregatingPersistenceService {
+
+		private final List<HistoricItem> historicItems = new ArrayList<HistoricItem>();
+
+		MixedStatesPersistenceService() {
+			historicItems.add(createItem(new DecimalType(10), new DateMidnight(2004, 1, 1).toDate()));
+			historicItems.add(createItem(UnDefType.UNDEF, new DateMidnight(2005, 1, 1).toDate()));
+			historicItems.add(createItem(new DecimalType(20), new DateMidnight(2006, 1, 1).toDate()));
+		}
+
+		public String getName() {
+			return "mixed";
+		}
+
+		public void store(Item item) {
+		}
+
+		public void store(Item item, String alias) {
+		}
+
+		public Iterable<HistoricItem> query(FilterCriteria filter) {
+			return historicItems;
+		}
+
+		public HistoricItem aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate) {
+			return HistoricItemAggregator.aggregate(itemName, aggregation, historicItems, null, new Date());
+		}
+
+		public Iterable<HistoricItem> aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate, long bucketSize) {
+			return HistoricItemAggregator.aggregate(itemName, aggregation, historicItems, beginDate, bucketSize);
+		}
+
+		private static HistoricItem createItem(final State state, final Date timestamp) {
+			return new HistoricItem() {
+				public Date getTimestamp() {
+					return timestamp;
+				}
+
+				public State getState() {
+					return state;
+				}
+
+				public String getName() {
+					return "Test";
+				}
+			};
+		}
+	}
 }
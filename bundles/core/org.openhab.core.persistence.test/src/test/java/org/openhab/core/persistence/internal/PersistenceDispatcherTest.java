@@ -0,0 +1,373 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PersistenceDispatcherTest {
+
+	private static final File SPILL_FILE = new File("./target/persistence/test.spill");
+
+	private GenericItem item;
+	private PersistenceDispatcher dispatcher;
+
+	@Before
+	public void setUp() {
+		SPILL_FILE.delete();
+		item = new GenericItem("Test") {
+			public List<Class<? extends State>> getAcceptedDataTypes() {
+				List<Class<? extends State>> types = new ArrayList<Class<? extends State>>();
+				types.add(DecimalType.class);
+				return types;
+			}
+
+			public List<Class<? extends Command>> getAcceptedCommandTypes() {
+				return null;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		if(dispatcher!=null) {
+			dispatcher.stop(1000);
+		}
+		SPILL_FILE.delete();
+	}
+
+	@Test
+	public void testBatchServiceReceivesStatesOfEachUpdate() throws InterruptedException {
+		TestBatchService service = new TestBatchService(0, 100);
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 0, 0, SPILL_FILE);
+		dispatcher.start();
+		for(int i = 0; i < 100; i++) {
+			item.setState(new DecimalType(i));
+			dispatcher.dispatch(item, "Alias");
+		}
+		assertTrue(service.stored.await(5, TimeUnit.SECONDS));
+
+		assertEquals(100, service.entries.size());
+		for(int i = 0; i < 100; i++) {
+			assertEquals(new DecimalType(i), service.entries.get(i).getState());
+			assertEquals("Alias", service.entries.get(i).getName());
+		}
+		// the entries are handed over in batches of at most 10 states
+		assertTrue(service.calls.get() >= 10);
+		assertEquals(100, dispatcher.getStoredCount());
+	}
+
+	@Test
+	public void testSlowServiceDoesNotBlockDispatch() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger stores = new AtomicInteger();
+		PersistenceService service = new TestService() {
+			public void store(Item item, String alias) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				stores.incrementAndGet();
+			}
+		};
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 0, 0, SPILL_FILE);
+		dispatcher.start();
+		long start = System.currentTimeMillis();
+		for(int i = 0; i < 100; i++) {
+			dispatcher.dispatch(item, null);
+		}
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(0, stores.get());
+
+		release.countDown();
+		dispatcher.stop(5000);
+		assertEquals(100, stores.get());
+	}
+
+	@Test
+	public void testServiceReceivesSnapshotOfEachUpdate() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Item> storedItems = Collections.synchronizedList(new ArrayList<Item>());
+		PersistenceService service = new TestService() {
+			public void store(Item item, String alias) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				storedItems.add(item);
+			}
+		};
+		TestItem testItem = new TestItem("Number");
+		testItem.getGroupNames().add("Group");
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 0, 0, SPILL_FILE);
+		dispatcher.start();
+		for(int i = 0; i < 3; i++) {
+			testItem.setState(new DecimalType(i));
+			dispatcher.dispatch(testItem, null);
+			item.setState(new DecimalType(i));
+			dispatcher.dispatch(item, null);
+		}
+		release.countDown();
+		dispatcher.stop(5000);
+
+		assertEquals(6, storedItems.size());
+		for(int i = 0; i < 3; i++) {
+			// items that can be instantiated by their name are copied, so the type is kept
+			Item snapshot = storedItems.get(2 * i);
+			assertTrue(snapshot instanceof TestItem);
+			assertEquals(new DecimalType(i), snapshot.getState());
+			assertEquals(new StringType(Integer.toString(i)), snapshot.getStateAs(StringType.class));
+			assertEquals(Collections.singletonList("Group"), snapshot.getGroupNames());
+
+			// all other items are wrapped
+			snapshot = storedItems.get(2 * i + 1);
+			assertEquals("Test", snapshot.getName());
+			assertEquals(new DecimalType(i), snapshot.getState());
+		}
+		assertEquals(new DecimalType(2), testItem.getState());
+	}
+
+	@Test
+	public void testFailedStoreIsRetried() throws InterruptedException {
+		TestBatchService service = new TestBatchService(2, 1);
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 3, 10, SPILL_FILE);
+		dispatcher.start();
+		dispatcher.dispatch(item, null);
+		assertTrue(service.stored.await(5, TimeUnit.SECONDS));
+
+		assertEquals(1, service.entries.size());
+		assertEquals(2, dispatcher.getRetryCount());
+		assertEquals(0, dispatcher.getSpilledCount());
+	}
+
+	@Test
+	public void testOverflowIsSpilledAndReplayed() throws InterruptedException {
+		TestBatchService service = new TestBatchService(0, 5);
+		// the dispatcher is not started, so the states are spilled when it is stopped
+		dispatcher = new PersistenceDispatcher(service, 5, 10, 0, 0, SPILL_FILE);
+		for(int i = 0; i < 5; i++) {
+			item.setState(new DecimalType(i));
+			dispatcher.dispatch(item, null);
+		}
+		dispatcher.stop(0);
+		assertEquals(5, dispatcher.getSpilledCount());
+		assertTrue(SPILL_FILE.exists());
+
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 0, 0, SPILL_FILE);
+		dispatcher.setItemRegistry(new TestItemRegistry(item));
+		dispatcher.replaySpilledEntries();
+		assertFalse(SPILL_FILE.exists());
+		assertEquals(5, dispatcher.getReplayedCount());
+		dispatcher.start();
+		assertTrue(service.stored.await(5, TimeUnit.SECONDS));
+		for(int i = 0; i < 5; i++) {
+			assertEquals(new DecimalType(i), service.entries.get(i).getState());
+		}
+	}
+
+	@Test
+	public void testOverflowIsNotSpilledByCaller() {
+		TestBatchService service = new TestBatchService(0, 1);
+		dispatcher = new PersistenceDispatcher(service, 2, 10, 0, 0, SPILL_FILE);
+		for(int i = 0; i < 5; i++) {
+			item.setState(new DecimalType(i));
+			dispatcher.dispatch(item, null);
+		}
+		assertFalse(SPILL_FILE.exists());
+		assertEquals(0, dispatcher.getSpilledCount());
+		assertEquals(3, dispatcher.getDroppedCount());
+
+		dispatcher.stop(0);
+		assertEquals(2, dispatcher.getSpilledCount());
+		assertTrue(SPILL_FILE.exists());
+	}
+
+	@Test
+	public void testOverflowIsSpilledByWorker() throws InterruptedException {
+		TestBatchService service = new TestBatchService(0, 1);
+		dispatcher = new PersistenceDispatcher(service, 2, 10, 0, 0, SPILL_FILE);
+		dispatcher.dispatch(item, null);
+		dispatcher.dispatch(item, null);
+		dispatcher.start();
+		long timeout = System.currentTimeMillis() + 5000;
+		while(dispatcher.getSpilledCount()==0 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, dispatcher.getSpilledCount());
+		assertEquals(0, dispatcher.getDroppedCount());
+		assertTrue(SPILL_FILE.exists());
+	}
+
+	@Test
+	public void testFailingServiceSpillsAfterRetries() throws InterruptedException {
+		TestBatchService service = new TestBatchService(Integer.MAX_VALUE, 1);
+		dispatcher = new PersistenceDispatcher(service, 1000, 10, 1, 0, SPILL_FILE);
+		dispatcher.start();
+		dispatcher.dispatch(item, null);
+		long timeout = System.currentTimeMillis() + 5000;
+		while(dispatcher.getSpilledCount()==0 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, dispatcher.getSpilledCount());
+		assertEquals(1, dispatcher.getRetryCount());
+	}
+
+	public static class TestItem extends GenericItem {
+
+		public TestItem(String name) {
+			super(name);
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			List<Class<? extends State>> types = new ArrayList<Class<? extends State>>();
+			types.add(DecimalType.class);
+			return types;
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+
+		@Override
+		public State getStateAs(Class<? extends State> typeClass) {
+			if(typeClass==StringType.class) {
+				return new StringType(state.toString());
+			}
+			return super.getStateAs(typeClass);
+		}
+	}
+
+	private static class TestBatchService extends TestService implements BatchPersistenceService {
+
+		final List<PersistenceEntry> entries = Collections.synchronizedList(new ArrayList<PersistenceEntry>());
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch stored;
+		private int failures;
+
+		TestBatchService(int failures, int expectedEntries) {
+			this.failures = failures;
+			this.stored = new CountDownLatch(expectedEntries);
+		}
+
+		public void storeAll(Collection<PersistenceEntry> batch) {
+			calls.incrementAndGet();
+			if(failures > 0) {
+				failures--;
+				throw new IllegalStateException("database is down");
+			}
+			for(PersistenceEntry entry : batch) {
+				entries.add(entry);
+				stored.countDown();
+			}
+		}
+	}
+
+	private static class TestService implements PersistenceService {
+
+		public String getName() {
+			return "test";
+		}
+
+		public void store(Item item) {
+			store(item, null);
+		}
+
+		public void store(Item item, String alias) {
+		}
+	}
+
+	private static class TestItemRegistry implements ItemRegistry {
+
+		private final Item item;
+
+		TestItemRegistry(Item item) {
+			this.item = item;
+		}
+
+		public Item getItem(String name) throws ItemNotFoundException {
+			if(item.getName().equals(name)) {
+				return item;
+			}
+			throw new ItemNotFoundException(name);
+		}
+
+		public Item getItemByPattern(String name) throws ItemNotFoundException {
+			return getItem(name);
+		}
+
+		public Collection<Item> getItems() {
+			return Collections.singletonList(item);
+		}
+
+		public Collection<Item> getItems(String pattern) {
+			return getItems();
+		}
+
+		public boolean isValidItemName(String itemName) {
+			return true;
+		}
+
+		public void addItemRegistryChangeListener(ItemRegistryChangeListener listener) {
+		}
+
+		public void removeItemRegistryChangeListener(ItemRegistryChangeListener listener) {
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.internal.PersistenceRoutingTable.Target;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PersistenceRoutingTableTest {
+
+	private static final int ITEMS = 2000;
+
+	private static final int GROUPS = 20;
+
+	private List<Item> items;
+	private Map<String, Item> registry;
+	private List<String> groupConfigs;
+
+	@Before
+	public void setUp() {
+		items = new ArrayList<Item>();
+		registry = new HashMap<String, Item>();
+		groupConfigs = new ArrayList<String>();
+		for(int i = 0; i < GROUPS; i++) {
+			GroupItem group = new GroupItem("Group" + i);
+			registry.put(group.getName(), group);
+			groupConfigs.add(group.getName());
+		}
+		for(int i = 0; i < ITEMS; i++) {
+			Item item = createItem("Item" + i);
+			((GroupItem) registry.get("Group" + (i % GROUPS))).addMember(item);
+			items.add(item);
+			registry.put(item.getName(), item);
+		}
+	}
+
+	@Test
+	public void testTargets() {
+		Target changes = new Target("rrd4j", null);
+		Target updates = new Target("sql", "Alias");
+		PersistenceRoutingTable table = new PersistenceRoutingTable.Builder()
+			.add("Item0", changes, true, false, true)
+			.add("Item0", updates, false, true, false)
+			.add("Item1", updates, false, true, false)
+			.build();
+
+		assertEquals(1, table.getStoreTargets("Item0", true).size());
+		assertEquals("rrd4j", table.getStoreTargets("Item0", true).get(0).getServiceName());
+		assertNull(table.getStoreTargets("Item0", true).get(0).getAlias());
+		assertEquals("Alias", table.getStoreTargets("Item0", false).get(0).getAlias());
+		assertEquals(1, table.getRestoreTargets("Item0").size());
+		assertTrue(table.getStoreTargets("Item1", true).isEmpty());
+		assertTrue(table.getRestoreTargets("Item1").isEmpty());
+		assertTrue(table.getStoreTargets("Unknown", false).isEmpty());
+		assertEquals(2, table.getItemCount());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTargetsAreImmutable() {
+		PersistenceRoutingTable table = new PersistenceRoutingTable.Builder()
+			.add("Item0", new Target("rrd4j", null), true, false, false)
+			.build();
+		table.getStoreTargets("Item0", true).clear();
+	}
+
+	@Test
+	public void testBuilderDoesNotChangeBuiltTable() {
+		PersistenceRoutingTable.Builder builder = new PersistenceRoutingTable.Builder();
+		builder.add("Item0", new Target("rrd4j", null), true, false, false);
+		PersistenceRoutingTable table = builder.build();
+		builder.add("Item0", new Target("sql", null), true, false, false);
+		assertEquals(1, table.getStoreTargets("Item0", true).size());
+	}
+
+	@Test
+	public void testTargetsOfSingleItemsAreReplaced() {
+		PersistenceRoutingTable table = new PersistenceRoutingTable.Builder()
+			.add("Item0", new Target("rrd4j", null), true, false, true)
+			.add("Item1", new Target("rrd4j", null), true, false, false)
+			.build();
+		table.replaceTargets("Item0", new PersistenceRoutingTable.Builder()
+			.add("Item0", new Target("sql", null), false, true, false)
+			.add("Item2", new Target("sql", null), false, true, false)
+			.build());
+
+		assertTrue(table.getStoreTargets("Item0", true).isEmpty());
+		assertEquals("sql", table.getStoreTargets("Item0", false).get(0).getServiceName());
+		assertTrue(table.getRestoreTargets("Item0").isEmpty());
+		// only the targets of the given item are taken over
+		assertTrue(table.getStoreTargets("Item2", false).isEmpty());
+		assertEquals(1, table.getStoreTargets("Item1", true).size());
+
+		table.removeTargets("Item1");
+		assertTrue(table.getStoreTargets("Item1", true).isEmpty());
+		assertEquals(1, table.getItemCount());
+	}
+
+	/**
+	 * Routes the state events of 2,000 items, which are members of 20 configured groups, 
+	 * once by resolving the group configurations on every event (as before the routing 
+	 * table existed) and once by looking up the routing table, and checks that both
+	 * find the same targets.
+	 */
+	@Test
+	public void testRoutingMatchesGroupResolution() {
+		PersistenceRoutingTable.Builder builder = new PersistenceRoutingTable.Builder();
+		Target target = new Target("rrd4j", null);
+		for(String groupName : groupConfigs) {
+			for(Item member : ((GroupItem) registry.get(groupName)).getAllMembers()) {
+				builder.add(member.getName(), target, true, true, false);
+			}
+		}
+		PersistenceRoutingTable table = builder.build();
+
+		for(Item item : items) {
+			int resolved = 0;
+			for(String groupName : groupConfigs) {
+				Item group = registry.get(groupName);
+				if(((GroupItem) group).getAllMembers().contains(item)) {
+					resolved++;
+				}
+			}
+			int routed = table.getStoreTargets(item.getName(), true).size();
+			assertEquals(item.getName(), resolved, routed);
+			assertEquals(1, routed);
+		}
+	}
+
+	private static Item createItem(String name) {
+		return new GenericItem(name) {
+			public List<Class<? extends State>> getAcceptedDataTypes() {
+				return null;
+			}
+
+			public List<Class<? extends Command>> getAcceptedCommandTypes() {
+				return null;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence;
+
+import java.util.Date;
+
+/**
+ * A queryable persistence service that is able to aggregate the persisted
+ * states of an item itself, e.g. by the aggregate functions of a database.
+ * Aggregating within the service avoids transferring and instantiating every
+ * single {@link HistoricItem} of the requested range.
+ * 
+ * <p>Persistence services that do not implement this interface are aggregated
+ * by a {@link HistoricItemAggregator} from the results of their queries.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public interface AggregatingPersistenceService extends QueryablePersistenceService {
+
+	/** Enumeration with all supported aggregate functions */
+	public enum Aggregation {
+		/** the average of all decimal states */
+		AVG,
+		/** the historic item with the smallest decimal state */
+		MIN,
+		/** the historic item with the largest decimal state */
+		MAX,
+		/** the sum of all decimal states */
+		SUM,
+		/** the number of persisted states */
+		COUNT,
+		/** the number of decimal states, i.e. of the states AVG and SUM are computed of */
+		DECIMAL_COUNT,
+		/** the oldest historic item */
+		FIRST,
+		/** the most recent historic item */
+		LAST,
+		/** ON, if any state differs from its predecessor (including the last state before the range), OFF otherwise */
+		CHANGED
+	}
+
+	/**
+	 * Aggregates the states of an item within the given range. The results of
+	 * MIN, MAX, FIRST and LAST keep the timestamp of the persisted state, all
+	 * other results are timestamped with the end of the range.
+	 * 
+	 * @param itemName the name of the item
+	 * @param aggregation the aggregate function to apply
+	 * @param beginDate only states that are newer than this date are aggregated
+	 * @param endDate only states that are older than this date are aggregated, 
+	 * 	<code>null</code> for all states up to now
+	 * @return the aggregated result or <code>null</code>, if there is no state 
+	 * 	to aggregate (COUNT, DECIMAL_COUNT and CHANGED always return a result)
+	 */
+	HistoricItem aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate);
+
+	/**
+	 * Aggregates the states of an item within consecutive buckets of the given
+	 * range. Every result is timestamped with the beginning of its bucket.
+	 * 
+	 * @param itemName the name of the item
+	 * @param aggregation the aggregate function to apply
+	 * @param beginDate the beginning of the first bucket
+	 * @param endDate the end of the range, <code>null</code> for now
+	 * @param bucketSize the duration of a bucket in milliseconds
+	 * @return one result per bucket that contains at least one state, in
+	 * 	ascending order
+	 */
+	Iterable<HistoricItem> aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate, long bucketSize);
+
+}
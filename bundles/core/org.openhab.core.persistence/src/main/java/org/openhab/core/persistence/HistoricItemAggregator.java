@@ -0,0 +1,220 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.AggregatingPersistenceService.Aggregation;
+import org.openhab.core.types.State;
+
+/**
+ * Aggregates a stream of {@link HistoricItem}s in a single pass, without keeping
+ * the items in memory. This is used for all persistence services that do not
+ * implement {@link AggregatingPersistenceService} and can be used by those that
+ * do for the aggregations they do not support natively.
+ * 
+ * <p>The historic items must be added in ascending order of their timestamps.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class HistoricItemAggregator {
+
+	private final String itemName;
+
+	private long count = 0;
+	private long decimalCount = 0;
+	private BigDecimal sum = BigDecimal.ZERO;
+	private HistoricItem minimum = null;
+	private HistoricItem maximum = null;
+	private HistoricItem first = null;
+	private HistoricItem last = null;
+	private State lastState;
+	private boolean changed = false;
+
+	/**
+	 * @param itemName the name of the item whose states are aggregated
+	 * @param previousState the last state before the aggregated range or 
+	 * 	<code>null</code>, if unknown
+	 */
+	public HistoricItemAggregator(String itemName, State previousState) {
+		this.itemName = itemName;
+		this.lastState = previousState;
+	}
+
+	/**
+	 * Adds the next historic item to the aggregation.
+	 */
+	public void add(HistoricItem historicItem) {
+		State state = historicItem.getState();
+		count++;
+		if (first==null) {
+			first = historicItem;
+		}
+		last = historicItem;
+		if (lastState!=null && !state.equals(lastState)) {
+			changed = true;
+		}
+		lastState = state;
+		if (state instanceof DecimalType) {
+			DecimalType value = (DecimalType) state;
+			decimalCount++;
+			sum = sum.add(value.toBigDecimal());
+			if (minimum==null || value.compareTo((DecimalType) minimum.getState()) < 0) {
+				minimum = historicItem;
+			}
+			if (maximum==null || value.compareTo((DecimalType) maximum.getState()) > 0) {
+				maximum = historicItem;
+			}
+		}
+	}
+
+	/**
+	 * Returns the result of an aggregate function for all historic items that have
+	 * been added so far.
+	 * 
+	 * @param aggregation the aggregate function
+	 * @param timestamp the timestamp of results that do not refer to a single historic item
+	 * @return the result as defined by {@link AggregatingPersistenceService#aggregate(String, Aggregation, Date, Date)}
+	 */
+	public HistoricItem getResult(Aggregation aggregation, Date timestamp) {
+		switch (aggregation) {
+			case AVG :
+				return decimalCount==0 ? null : createItem(
+						new DecimalType(sum.doubleValue() / decimalCount), timestamp);
+			case SUM :
+				return decimalCount==0 ? null : createItem(new DecimalType(sum), timestamp);
+			case COUNT :
+				return createItem(new DecimalType(count), timestamp);
+			case DECIMAL_COUNT :
+				return createItem(new DecimalType(decimalCount), timestamp);
+			case MIN :
+				return minimum;
+			case MAX :
+				return maximum;
+			case FIRST :
+				return first;
+			case LAST :
+				return last;
+			case CHANGED :
+				return createItem(changed ? OnOffType.ON : OnOffType.OFF, timestamp);
+			default :
+				throw new IllegalArgumentException("Unsupported aggregation " + aggregation);
+		}
+	}
+
+	/**
+	 * Aggregates all given historic items.
+	 * 
+	 * @param itemName the name of the item whose states are aggregated
+	 * @param aggregation the aggregate function
+	 * @param historicItems the historic items in ascending order
+	 * @param previousState the last state before the historic items, which is only
+	 * 	relevant for {@link Aggregation#CHANGED}
+	 * @param timestamp the timestamp of results that do not refer to a single historic item
+	 * @return the aggregated result
+	 */
+	public static HistoricItem aggregate(String itemName, Aggregation aggregation, 
+			Iterable<HistoricItem> historicItems, State previousState, Date timestamp) {
+		HistoricItemAggregator aggregator = new HistoricItemAggregator(itemName, previousState);
+		for (HistoricItem historicItem : historicItems) {
+			aggregator.add(historicItem);
+		}
+		return aggregator.getResult(aggregation, timestamp);
+	}
+
+	/**
+	 * Aggregates the given historic items within consecutive buckets.
+	 * 
+	 * @param itemName the name of the item whose states are aggregated
+	 * @param aggregation the aggregate function
+	 * @param historicItems the historic items in ascending order
+	 * @param beginDate the beginning of the first bucket
+	 * @param bucketSize the duration of a bucket in milliseconds
+	 * @return one result per bucket that contains at least one historic item,
+	 * 	timestamped with the beginning of the bucket
+	 */
+	public static List<HistoricItem> aggregate(String itemName, Aggregation aggregation, 
+			Iterable<HistoricItem> historicItems, Date beginDate, long bucketSize) {
+		if (bucketSize <= 0) {
+			throw new IllegalArgumentException("The bucket size must be positive");
+		}
+		List<HistoricItem> results = new ArrayList<HistoricItem>();
+		HistoricItemAggregator aggregator = null;
+		long bucket = 0;
+		for (HistoricItem historicItem : historicItems) {
+			long itemBucket = (historicItem.getTimestamp().getTime() - beginDate.getTime()) / bucketSize;
+			if (aggregator==null || itemBucket!=bucket) {
+				State previousState = null;
+				if (aggregator!=null) {
+					addResult(results, aggregator, aggregation, beginDate, bucket, bucketSize);
+					previousState = aggregator.lastState;
+				}
+				aggregator = new HistoricItemAggregator(itemName, previousState);
+				bucket = itemBucket;
+			}
+			aggregator.add(historicItem);
+		}
+		if (aggregator!=null) {
+			addResult(results, aggregator, aggregation, beginDate, bucket, bucketSize);
+		}
+		return results;
+	}
+
+	private static void addResult(List<HistoricItem> results, HistoricItemAggregator aggregator, 
+			Aggregation aggregation, Date beginDate, long bucket, long bucketSize) {
+		Date bucketStart = new Date(beginDate.getTime() + bucket * bucketSize);
+		HistoricItem result = aggregator.getResult(aggregation, bucketStart);
+		if (result!=null) {
+			results.add(aggregator.createItem(result.getState(), bucketStart));
+		}
+	}
+
+	private HistoricItem createItem(final State state, final Date timestamp) {
+		return new HistoricItem() {
+			public Date getTimestamp() {
+				return timestamp;
+			}
+
+			public State getState() {
+				return state;
+			}
+
+			public String getName() {
+				return itemName;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,106 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence;
+
+import java.util.Date;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+
+/**
+ * The state of an item at the time it was handed over for persistence. As the 
+ * state of the item itself may have changed until the entry is actually stored,
+ * services should store {@link #getState()} and {@link #getTimestamp()} instead
+ * of the current state of the item.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PersistenceEntry {
+
+	private final Item item;
+	private final String alias;
+	private final State state;
+	private final Date timestamp;
+
+	/**
+	 * @param item the item whose state is persisted
+	 * @param alias the alias to store the item under or <code>null</code>
+	 * @param state the state to store
+	 * @param timestamp the time of the state
+	 */
+	public PersistenceEntry(Item item, String alias, State state, Date timestamp) {
+		this.item = item;
+		this.alias = alias;
+		this.state = state;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return the item whose state is persisted
+	 */
+	public Item getItem() {
+		return item;
+	}
+
+	/**
+	 * @return the alias to store the item under or <code>null</code>, if it is 
+	 * 	stored under its own name
+	 */
+	public String getAlias() {
+		return alias;
+	}
+
+	/**
+	 * @return the alias, if there is one, the name of the item otherwise
+	 */
+	public String getName() {
+		return alias!=null ? alias : item.getName();
+	}
+
+	/**
+	 * @return the state to store
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the time of the state
+	 */
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " -> " + state + " (" + timestamp + ")";
+	}
+
+}
@@ -51,11 +51,10 @@ public interface PersistenceService {
 
 	/**
 	 * Stores the current value of the given item.
-	 * <p>Implementors should keep in mind that all registered 
-	 * {@link PersistenceService}s are called synchronously. Hence long running
-	 * operations should be processed asynchronously. E.g. <code>store</code>
-	 * adds things to a queue which is processed by some asynchronous workers
-	 * (Quartz Job, Thread, etc.).</p>  
+	 * <p>State events are handed over to each registered {@link PersistenceService}
+	 * by a dispatcher thread of its own, so a slow service does not block the thread
+	 * that updated the item. The item passed in is then a snapshot, which holds the state
+	 * of the update rather than the current state of the item.</p>  
 	 * 
 	 * @param item the item which state should be persisted.
 	 */
@@ -63,11 +62,10 @@ public interface PersistenceService {
 
 	/**
 	 * <p>Stores the current value of the given item under a specified alias.</p>
-	 * <p>Implementors should keep in mind that all registered 
-	 * {@link PersistenceService}s are called synchronously. Hence long running
-	 * operations should be processed asynchronously. E.g. <code>store</code>
-	 * adds things to a queue which is processed by some asynchronous workers
-	 * (Quartz Job, Thread, etc.).</p>  
+	 * <p>State events are handed over to each registered {@link PersistenceService}
+	 * by a dispatcher thread of its own, so a slow service does not block the thread
+	 * that updated the item. The item passed in is then a snapshot, which holds the state
+	 * of the update rather than the current state of the item.</p>  
 	 * 
 	 * @param item the item which state should be persisted.
 	 * @param alias the alias under which the item should be persisted.
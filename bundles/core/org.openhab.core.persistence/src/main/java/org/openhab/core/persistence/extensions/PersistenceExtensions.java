@@ -39,8 +39,12 @@ import java.util.Map;
 import org.joda.time.base.AbstractInstant;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.AggregatingPersistenceService.Aggregation;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.HistoricItemAggregator;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
@@ -55,6 +59,11 @@ import org.slf4j.LoggerFactory;
  * This class provides static methods that can be used in automation rules
  * for using persistence services
  * 
+ * <p>Aggregations (like the average or maximum since a point in time) are
+ * delegated to persistence services that implement {@link AggregatingPersistenceService}.
+ * For all other services, the historic items are aggregated while they are
+ * streamed from the query result.</p>
+ * 
  * @author Thomas.Eichstaedt-Engelen
  * @author Kai Kreuzer
  * @since 1.0.0
@@ -140,9 +149,9 @@ public class PersistenceExtensions implements ManagedService {
 			filter.setItemName(item.getName());
 			filter.setPageSize(1);
 			filter.setOrdering(Ordering.DESCENDING);
-			Iterable<HistoricItem> result = qService.query(filter);
-			if(result.iterator().hasNext()) {
-				return result.iterator().next().getState();
+			Iterator<HistoricItem> result = qService.query(filter).iterator();
+			if(result.hasNext()) {
+				return result.next().getState();
 			} else {
 				return UnDefType.NULL;
 			}
@@ -178,9 +187,15 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return true, if item state had changed
 	 */
 	static public Boolean changedSince(Item item, AbstractInstant timestamp, String serviceName) {
+		PersistenceService service = services.get(serviceName);
+		if (service instanceof AggregatingPersistenceService) {
+			HistoricItem changed = ((AggregatingPersistenceService) service)
+					.aggregate(item.getName(), Aggregation.CHANGED, timestamp.toDate(), null);
+			return changed!=null && OnOffType.ON.equals(changed.getState());
+		}
 		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
 		Iterator<HistoricItem> it = result.iterator();
-		State state = historicState(item, timestamp);
+		State state = getPreviousState(item, timestamp, serviceName);
 		while(it.hasNext()) {
 			HistoricItem hItem = it.next();
 			if(state!=null && !hItem.getState().equals(state)) {
@@ -217,6 +232,12 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return true, if item state was updated
 	 */
 	static public Boolean updatedSince(Item item, AbstractInstant timestamp, String serviceName) {
+		PersistenceService service = services.get(serviceName);
+		if (service instanceof AggregatingPersistenceService) {
+			HistoricItem count = ((AggregatingPersistenceService) service)
+					.aggregate(item.getName(), Aggregation.COUNT, timestamp.toDate(), null);
+			return count!=null && ((DecimalType) count.getState()).longValue() > 0;
+		}
 		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
 		if(result.iterator().hasNext()) {
 			return true;
@@ -253,38 +274,12 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return a historic item with the maximum state value since the given point in time
 	 */
 	static public HistoricItem maximumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem maximumHistoricItem = null;
+		HistoricItem maximumHistoricItem = aggregate(item, timestamp, serviceName, Aggregation.MAX)[0];
 		DecimalType maximum = (DecimalType) item.getStateAs(DecimalType.class);
-		while(it.hasNext()) {
-			HistoricItem historicItem = it.next();
-			State state = historicItem.getState();
-			if (state instanceof DecimalType) {
-				DecimalType value = (DecimalType) state;
-				if(maximum==null || value.compareTo(maximum)>0) {
-					maximum = value;
-					maximumHistoricItem = historicItem;
-				}
-			}
-		}
-		if(maximumHistoricItem==null && maximum!=null) {
+		if(maximum!=null && (!hasDecimalState(maximumHistoricItem) 
+				|| ((DecimalType) maximumHistoricItem.getState()).compareTo(maximum) <= 0)) {
 			// the maximum state is the current one, so construct a historic item on the fly
-			final DecimalType state = maximum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentItem(item, maximum);
 		} else {
 			return maximumHistoricItem;
 		}
@@ -318,38 +313,12 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the historic item with the minimum state value since the given point in time
 	 */
 	static public HistoricItem minimumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem minimumHistoricItem = null;
+		HistoricItem minimumHistoricItem = aggregate(item, timestamp, serviceName, Aggregation.MIN)[0];
 		DecimalType minimum = (DecimalType) item.getStateAs(DecimalType.class);
-		while(it.hasNext()) {
-			HistoricItem historicItem = it.next();
-			State state = historicItem.getState();
-			if (state instanceof DecimalType) {
-				DecimalType value = (DecimalType) state;
-				if(minimum==null || value.compareTo(minimum)<0) {
-					minimum = value;
-					minimumHistoricItem = historicItem;
-				}
-			}
-		}
-		if(minimumHistoricItem==null && minimum!=null) {
+		if(minimum!=null && (!hasDecimalState(minimumHistoricItem) 
+				|| ((DecimalType) minimumHistoricItem.getState()).compareTo(minimum) >= 0)) {
 			// the minimal state is the current one, so construct a historic item on the fly
-			final DecimalType state = minimum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentItem(item, minimum);
 		} else {
 			return minimumHistoricItem;
 		}
@@ -381,8 +350,8 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the average state value since the given point in time
 	 */
 	static public DecimalType averageSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
+		// only the decimal states are summed up, so only these must be counted
+		HistoricItem[] results = aggregate(item, timestamp, serviceName, Aggregation.SUM, Aggregation.DECIMAL_COUNT);
 		
 		DecimalType value = (DecimalType) item.getStateAs(DecimalType.class);
 		if (value == null) {
@@ -390,20 +359,74 @@ public class PersistenceExtensions implements ManagedService {
 		}
 		
 		double average = value.doubleValue();
-		int quantity = 1;
-		while(it.hasNext()) {
-			State state = it.next().getState();
-			if (state instanceof DecimalType) {
-				value = (DecimalType) state;
-				average += value.doubleValue();
-				quantity++;
-			}
+		long quantity = 1;
+		if (results[0]!=null && results[1]!=null) {
+			average += ((DecimalType) results[0].getState()).doubleValue();
+			quantity += ((DecimalType) results[1].getState()).longValue();
 		}
 		average /= quantity;
 		
 		return new DecimalType(average);
 	} 
 	
+	/**
+	 * Aggregates the states of an item since a certain point in time, either within 
+	 * the persistence service or while streaming the historic items of a query.
+	 * 
+	 * @return the results in the order of the given aggregations, elements are 
+	 * 	<code>null</code> if there is no state to aggregate
+	 */
+	static private HistoricItem[] aggregate(Item item, AbstractInstant timestamp, String serviceName, Aggregation... aggregations) {
+		HistoricItem[] results = new HistoricItem[aggregations.length];
+		PersistenceService service = services.get(serviceName);
+		if (service instanceof AggregatingPersistenceService) {
+			AggregatingPersistenceService aService = (AggregatingPersistenceService) service;
+			for (int i = 0; i < aggregations.length; i++) {
+				results[i] = aService.aggregate(item.getName(), aggregations[i], timestamp.toDate(), null);
+			}
+		} else {
+			HistoricItemAggregator aggregator = new HistoricItemAggregator(item.getName(), null);
+			for (HistoricItem historicItem : getAllStatesSince(item, timestamp, serviceName)) {
+				aggregator.add(historicItem);
+			}
+			Date now = Calendar.getInstance().getTime();
+			for (int i = 0; i < aggregations.length; i++) {
+				results[i] = aggregator.getResult(aggregations[i], now);
+			}
+		}
+		return results;
+	}
+
+	static private boolean hasDecimalState(HistoricItem historicItem) {
+		return historicItem!=null && historicItem.getState() instanceof DecimalType;
+	}
+
+	static private HistoricItem createCurrentItem(final Item item, final DecimalType state) {
+		return new HistoricItem() {
+			
+			public Date getTimestamp() {
+				return Calendar.getInstance().getTime();
+			}
+			
+			public State getState() {
+				return state;
+			}
+			
+			public String getName() {
+				return item.getName();
+			}
+		};
+	}
+
+	/**
+	 * Returns the last persisted state before the given point in time or <code>null</code>, 
+	 * if there is none.
+	 */
+	static private State getPreviousState(Item item, AbstractInstant timestamp, String serviceName) {
+		State state = historicState(item, timestamp, serviceName);
+		return state instanceof UnDefType ? null : state;
+	}
+
 	static private Iterable<HistoricItem> getAllStatesSince(Item item, AbstractInstant timestamp, String serviceName) {
 		PersistenceService service = services.get(serviceName);
 		if (service instanceof QueryablePersistenceService) {
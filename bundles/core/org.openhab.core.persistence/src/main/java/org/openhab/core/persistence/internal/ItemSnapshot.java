@@ -0,0 +1,125 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence.internal;
+
+import java.util.List;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * Creates items that hold the state an item had when it was handed over for 
+ * persistence. Services that are called once per state read the state from the
+ * item they are given, so they must not get the live item, whose state may have
+ * changed until the dispatcher gets to them.
+ * 
+ * <p>Wherever possible, the snapshot is a detached instance of the same item class,
+ * so that services can still tell the item type and convert the state through
+ * {@link Item#getStateAs(Class)}. Groups, whose state conversion depends on their 
+ * members, and items that cannot be instantiated by their name are wrapped in a
+ * read-only item instead.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+final class ItemSnapshot {
+
+	private ItemSnapshot() {
+	}
+
+	/**
+	 * @param item the item to take the snapshot of
+	 * @param state the state the snapshot should have
+	 * @return an item with the name, type and groups of the given item and the given state
+	 */
+	static Item create(Item item, State state) {
+		if(item instanceof GenericItem && !(item instanceof GroupItem)) {
+			try {
+				GenericItem snapshot = (GenericItem) item.getClass().getConstructor(String.class).newInstance(item.getName());
+				snapshot.getGroupNames().addAll(item.getGroupNames());
+				snapshot.setState(state);
+				return snapshot;
+			} catch (Exception e) {
+				// the item cannot be instantiated by its name, so we wrap it below
+			}
+		}
+		return new ReadOnlyItem(item, state);
+	}
+
+	/**
+	 * An item that delegates to the original item, but has a fixed state.
+	 */
+	private static class ReadOnlyItem implements Item {
+
+		private final Item item;
+		private final State state;
+
+		ReadOnlyItem(Item item, State state) {
+			this.item = item;
+			this.state = state;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public State getStateAs(Class<? extends State> typeClass) {
+			if(typeClass!=null && typeClass.isInstance(state)) {
+				return state;
+			}
+			// the conversion of the original item can only be used as long as it still has this state
+			return state.equals(item.getState()) ? item.getStateAs(typeClass) : null;
+		}
+
+		public String getName() {
+			return item.getName();
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return item.getAcceptedDataTypes();
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return item.getAcceptedCommandTypes();
+		}
+
+		public List<String> getGroupNames() {
+			return item.getGroupNames();
+		}
+
+		@Override
+		public String toString() {
+			return item.getName() + " (State=" + state + ")";
+		}
+	}
+
+}
@@ -0,0 +1,490 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the states that have to be persisted over to a single persistence service
+ * asynchronously. The states are queued in a bounded queue, from which a worker thread
+ * takes them in batches. {@link BatchPersistenceService}s receive a whole batch at once,
+ * all other services are called once per state with a snapshot of the item, which
+ * holds the queued state instead of the current one.
+ * 
+ * <p>Failed store operations are retried with an increasing delay. Entries that cannot
+ * be stored after all retries are spilled to a file and replayed as soon as the queue 
+ * is idle again. Entries that do not fit into the queue are moved to a second bounded
+ * queue, which the worker thread spills in batches, so that the caller never waits for
+ * the file. If that queue is full as well, the entries are dropped. As services that
+ * are called once per state store it with the current time, only the latest spilled 
+ * entry of each item is replayed for them.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PersistenceDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistenceDispatcher.class);
+
+	/** the minimum time in milliseconds between two attempts to replay spilled entries */
+	protected static final long REPLAY_INTERVAL = 60000L;
+
+	private static final String ENCODING = "UTF-8";
+
+	/** guards the spill files, which are shared with the dispatcher that replaces this one */
+	private static final Object SPILL_LOCK = new Object();
+
+	private final PersistenceService service;
+	private final BlockingQueue<PersistenceEntry> queue;
+	private final BlockingQueue<PersistenceEntry> overflow;
+	private final int batchSize;
+	private final int maxRetries;
+	private final long retryDelay;
+	private final File spillFile;
+
+	private volatile ItemRegistry itemRegistry;
+	private volatile boolean running = false;
+	private volatile boolean stopped = false;
+	private Thread worker;
+	private long lastReplay = 0L;
+
+	private final AtomicLong enqueuedCount = new AtomicLong();
+	private final AtomicLong storedCount = new AtomicLong();
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong spilledCount = new AtomicLong();
+	private final AtomicLong replayedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * @param service the service to hand the states over to
+	 * @param queueSize the maximum number of queued states, which is also the maximum
+	 * 	number of states that wait to be spilled
+	 * @param batchSize the maximum number of states that are handed over at once
+	 * @param maxRetries the number of retries of a failed store operation
+	 * @param retryDelay the delay in milliseconds before the first retry, which 
+	 * 	increases with every further retry
+	 * @param spillFile the file that takes the entries which cannot be queued or stored
+	 */
+	public PersistenceDispatcher(PersistenceService service, int queueSize, int batchSize, int maxRetries, long retryDelay, File spillFile) {
+		this.service = service;
+		this.queue = new ArrayBlockingQueue<PersistenceEntry>(queueSize);
+		this.overflow = new ArrayBlockingQueue<PersistenceEntry>(queueSize);
+		this.batchSize = batchSize;
+		this.maxRetries = maxRetries;
+		this.retryDelay = retryDelay;
+		this.spillFile = spillFile;
+	}
+
+	/**
+	 * Sets the item registry, which is needed to replay spilled entries.
+	 */
+	public void setItemRegistry(ItemRegistry itemRegistry) {
+		this.itemRegistry = itemRegistry;
+	}
+
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		worker = new Thread("openHAB persistence dispatcher (" + service.getName() + ")") {
+			@Override
+			public void run() {
+				dispatchQueuedEntries();
+			}
+		};
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops the worker thread after the queued entries have been stored. Entries 
+	 * that are still queued after the given timeout, as well as the overflowing 
+	 * entries, are spilled.
+	 * 
+	 * @param timeout the maximum time in milliseconds to wait for the queued entries
+	 */
+	public void stop(long timeout) {
+		Thread stoppedWorker;
+		synchronized (this) {
+			running = false;
+			stopped = true;
+			stoppedWorker = worker;
+			worker = null;
+		}
+		if(stoppedWorker!=null) {
+			try {
+				stoppedWorker.join(timeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(stoppedWorker.isAlive()) {
+				stoppedWorker.interrupt();
+			}
+		}
+		List<PersistenceEntry> remaining = new ArrayList<PersistenceEntry>();
+		queue.drainTo(remaining);
+		overflow.drainTo(remaining);
+		if(!remaining.isEmpty()) {
+			spill(remaining);
+		}
+	}
+
+	/**
+	 * Queues the current state of an item. If the queue is full, the entry is left to 
+	 * the worker thread to be spilled, or dropped if too many entries wait for that 
+	 * already. This method never blocks.
+	 * 
+	 * @param item the item to persist
+	 * @param alias the alias to store the item under or <code>null</code>
+	 */
+	public void dispatch(Item item, String alias) {
+		PersistenceEntry entry = new PersistenceEntry(item, alias, item.getState(), new Date());
+		enqueuedCount.incrementAndGet();
+		if(running && queue.offer(entry)) {
+			return;
+		}
+		if(!overflow.offer(entry)) {
+			droppedCount.incrementAndGet();
+			logger.debug("Dropping state of item '{}' for persistence service '{}'", item.getName(), service.getName());
+		} else if(stopped) {
+			// there is no worker anymore, which could spill the entry
+			spillOverflow();
+		}
+	}
+
+	private void dispatchQueuedEntries() {
+		List<PersistenceEntry> batch = new ArrayList<PersistenceEntry>(batchSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				spillOverflow();
+				PersistenceEntry first = queue.poll(1, TimeUnit.SECONDS);
+				if(first==null) {
+					replaySpilledEntries();
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				if(service instanceof BatchPersistenceService) {
+					store(batch);
+				} else {
+					for(PersistenceEntry entry : batch) {
+						store(Collections.singletonList(entry));
+					}
+				}
+				batch.clear();
+			} catch (InterruptedException e) {
+				if(!batch.isEmpty()) {
+					spill(batch);
+					batch.clear();
+				}
+				break;
+			} catch (RuntimeException e) {
+				logger.error("Error while dispatching states to persistence service '" + service.getName() + "'", e);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Hands the entries over to the service and retries, if that fails.
+	 */
+	private void store(List<PersistenceEntry> entries) throws InterruptedException {
+		for(int attempt = 0;; attempt++) {
+			try {
+				if(service instanceof BatchPersistenceService) {
+					((BatchPersistenceService) service).storeAll(entries);
+				} else {
+					PersistenceEntry entry = entries.get(0);
+					service.store(ItemSnapshot.create(entry.getItem(), entry.getState()), entry.getAlias());
+				}
+				stored(entries);
+				return;
+			} catch (RuntimeException e) {
+				if(attempt>=maxRetries || !running) {
+					logger.warn("Persistence service '{}' failed to store {} states, spilling them: {}", 
+							new Object[] { service.getName(), entries.size(), e.getMessage() });
+					spill(entries);
+					return;
+				}
+				retryCount.incrementAndGet();
+				logger.debug("Persistence service '{}' failed to store {} states, retrying: {}", 
+						new Object[] { service.getName(), entries.size(), e.getMessage() });
+				Thread.sleep(retryDelay * (attempt + 1));
+			}
+		}
+	}
+
+	private void stored(List<PersistenceEntry> entries) {
+		long now = System.currentTimeMillis();
+		for(PersistenceEntry entry : entries) {
+			long latency = now - entry.getTimestamp().getTime();
+			totalLatency.addAndGet(latency);
+			long max = maxLatency.get();
+			while(latency > max && !maxLatency.compareAndSet(max, latency)) {
+				max = maxLatency.get();
+			}
+		}
+		storedCount.addAndGet(entries.size());
+	}
+
+	/**
+	 * Spills the entries which did not fit into the queue at once.
+	 */
+	private void spillOverflow() {
+		List<PersistenceEntry> entries = new ArrayList<PersistenceEntry>();
+		overflow.drainTo(entries);
+		if(!entries.isEmpty()) {
+			spill(entries);
+		}
+	}
+
+	/**
+	 * Appends the entries to the spill file, one line with the URL encoded timestamp, 
+	 * item name, alias and state per entry.
+	 */
+	private void spill(List<PersistenceEntry> entries) {
+		synchronized (SPILL_LOCK) {
+			writeSpillFile(entries);
+		}
+	}
+
+	private void writeSpillFile(List<PersistenceEntry> entries) {
+		Writer writer = null;
+		try {
+			File folder = spillFile.getParentFile();
+			if(folder!=null && !folder.exists()) {
+				folder.mkdirs();
+			}
+			writer = new OutputStreamWriter(new FileOutputStream(spillFile, true), ENCODING);
+			for(PersistenceEntry entry : entries) {
+				writer.write(Long.toString(entry.getTimestamp().getTime()));
+				writer.write('\t');
+				writer.write(encode(entry.getItem().getName()));
+				writer.write('\t');
+				writer.write(encode(entry.getAlias()));
+				writer.write('\t');
+				writer.write(encode(entry.getState().toString()));
+				writer.write('\n');
+			}
+			spilledCount.addAndGet(entries.size());
+		} catch (IOException e) {
+			droppedCount.addAndGet(entries.size());
+			logger.error("Could not spill {} states of persistence service '{}' to '{}': {}", 
+					new Object[] { entries.size(), service.getName(), spillFile.getAbsolutePath(), e.getMessage() });
+		} finally {
+			if(writer!=null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					logger.debug("Could not close spill file '{}'", spillFile.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues the spilled entries again, as far as there is space in the queue. This
+	 * is called by the worker thread, if the queue has been idle.
+	 */
+	protected void replaySpilledEntries() {
+		ItemRegistry registry = itemRegistry;
+		long now = System.currentTimeMillis();
+		if(registry==null || !spillFile.exists() || now - lastReplay < REPLAY_INTERVAL) {
+			return;
+		}
+		lastReplay = now;
+
+		List<PersistenceEntry> entries = new ArrayList<PersistenceEntry>();
+		synchronized (SPILL_LOCK) {
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), ENCODING));
+				String line;
+				while((line = reader.readLine())!=null) {
+					PersistenceEntry entry = parse(registry, line);
+					if(entry!=null) {
+						entries.add(entry);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Could not read spill file '{}': {}", spillFile.getAbsolutePath(), e.getMessage());
+				return;
+			} finally {
+				if(reader!=null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						logger.debug("Could not close spill file '{}'", spillFile.getAbsolutePath());
+					}
+				}
+			}
+			if(!spillFile.delete()) {
+				logger.error("Could not delete spill file '{}'", spillFile.getAbsolutePath());
+				return;
+			}
+		}
+
+		if(!(service instanceof BatchPersistenceService)) {
+			// such a service stores each state with the current time, so a single entry per item is enough
+			Map<String, PersistenceEntry> latestEntries = new LinkedHashMap<String, PersistenceEntry>();
+			for(PersistenceEntry entry : entries) {
+				latestEntries.remove(entry.getName());
+				latestEntries.put(entry.getName(), entry);
+			}
+			entries = new ArrayList<PersistenceEntry>(latestEntries.values());
+		}
+
+		int replayed = 0;
+		for(PersistenceEntry entry : entries) {
+			if(!queue.offer(entry)) {
+				break;
+			}
+			replayed++;
+		}
+		replayedCount.addAndGet(replayed);
+		if(replayed < entries.size()) {
+			spill(entries.subList(replayed, entries.size()));
+		}
+		logger.debug("Replayed {} spilled states of persistence service '{}'", replayed, service.getName());
+	}
+
+	private PersistenceEntry parse(ItemRegistry registry, String line) throws UnsupportedEncodingException {
+		String[] fields = line.split("\t", -1);
+		if(fields.length!=4) {
+			logger.debug("Ignoring invalid line '{}' in spill file", line);
+			return null;
+		}
+		String itemName = decode(fields[1]);
+		try {
+			Item item = registry.getItem(itemName);
+			State state = TypeParser.parseState(item.getAcceptedDataTypes(), decode(fields[3]));
+			if(state==null) {
+				logger.debug("Ignoring spilled state '{}' of item '{}'", fields[3], itemName);
+				return null;
+			}
+			String alias = fields[2].length()==0 ? null : decode(fields[2]);
+			return new PersistenceEntry(item, alias, state, new Date(Long.parseLong(fields[0])));
+		} catch (ItemNotFoundException e) {
+			logger.debug("Ignoring spilled state of unknown item '{}'", itemName);
+		} catch (NumberFormatException e) {
+			logger.debug("Ignoring invalid line '{}' in spill file", line);
+		}
+		return null;
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return value==null ? "" : URLEncoder.encode(value, ENCODING);
+	}
+
+	private static String decode(String value) throws UnsupportedEncodingException {
+		return URLDecoder.decode(value, ENCODING);
+	}
+
+	public PersistenceService getService() {
+		return service;
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getEnqueuedCount() {
+		return enqueuedCount.get();
+	}
+
+	public long getStoredCount() {
+		return storedCount.get();
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	public long getSpilledCount() {
+		return spilledCount.get();
+	}
+
+	public long getReplayedCount() {
+		return replayedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the average time in milliseconds between queueing and storing a state
+	 */
+	public long getAverageLatency() {
+		long stored = storedCount.get();
+		return stored==0 ? 0 : totalLatency.get() / stored;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds between queueing and storing a state
+	 */
+	public long getMaxLatency() {
+		return maxLatency.get();
+	}
+
+}
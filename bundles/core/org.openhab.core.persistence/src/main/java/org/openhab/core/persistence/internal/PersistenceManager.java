@@ -31,18 +31,31 @@ package org.openhab.core.persistence.internal;
 import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
+import java.io.File;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.ecore.EObject;
 import org.openhab.core.events.AbstractEventSubscriber;
 import org.openhab.core.items.GenericItem;
@@ -52,10 +65,13 @@ import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.items.ItemRegistryChangeListener;
 import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.persistence.internal.PersistenceRoutingTable.Target;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.openhab.model.core.EventType;
@@ -69,6 +85,8 @@ import org.openhab.model.persistence.persistence.PersistenceConfiguration;
 import org.openhab.model.persistence.persistence.PersistenceModel;
 import org.openhab.model.persistence.persistence.Strategy;
 import org.openhab.model.persistence.scoping.GlobalStrategies;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.Job;
 import org.quartz.JobDetail;
@@ -89,10 +107,26 @@ import org.slf4j.LoggerFactory;
  * @since 1.0.0
  *
  */
-public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener {
+public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener, ManagedService, StatisticsProvider {
 	
 	private static final Logger logger = LoggerFactory.getLogger(PersistenceManager.class);
 
+	protected static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	protected static final int DEFAULT_BATCH_SIZE = 100;
+
+	protected static final int DEFAULT_RETRIES = 3;
+
+	protected static final int DEFAULT_RETRY_DELAY = 1000;
+
+	protected static final String DEFAULT_SPILL_FOLDER = "etc/persistence";
+
+	/** the maximum number of services whose states are restored in parallel */
+	private static final int MAX_RESTORE_THREADS = 5;
+
+	/** the time in milliseconds to wait for the queued states of a service that is removed */
+	private static final long STOP_TIMEOUT = 5000L;
+
 	private static PersistenceManager instance;
 	
 	// the scheduler used for timer events
@@ -102,7 +136,7 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 
 	private ItemRegistry itemRegistry;
 
-	/*default */ Map<String, PersistenceService> persistenceServices = new HashMap<String, PersistenceService>();
+	/*default */ Map<String, PersistenceService> persistenceServices = new ConcurrentHashMap<String, PersistenceService>();
 	
 	/** keeps a list of configurations for each persistence service */
 	protected Map<String, List<PersistenceConfiguration>> persistenceConfigurations = new ConcurrentHashMap<String, List<PersistenceConfiguration>>();
@@ -110,6 +144,21 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	/** keeps a list of default strategies for each persistence service */
 	protected Map<String, List<Strategy>> defaultStrategies = 
 			Collections.synchronizedMap(new HashMap<String, List<Strategy>>());
+
+	/** the targets of all items, which is replaced whenever the models or the items change */
+	private volatile PersistenceRoutingTable routingTable = new PersistenceRoutingTable.Builder().build();
+
+	/** hands the states over to each persistence service asynchronously */
+	private Map<String, PersistenceDispatcher> dispatchers = new ConcurrentHashMap<String, PersistenceDispatcher>();
+
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int retries = DEFAULT_RETRIES;
+	private int retryDelay = DEFAULT_RETRY_DELAY;
+	private String spillFolder = DEFAULT_SPILL_FOLDER;
+
+	/** the duration in milliseconds of the last restore query of each service */
+	private Map<String, Long> restoreDurations = new ConcurrentHashMap<String, Long>();
 	
 	
 	public PersistenceManager() {
@@ -130,6 +179,9 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 	
 	public void deactivate() {
+		for(String serviceName : dispatchers.keySet()) {
+			stopDispatcher(serviceName);
+		}
 	}
 	
 	
@@ -154,25 +206,61 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	public void setItemRegistry(ItemRegistry itemRegistry) {
 		this.itemRegistry = itemRegistry;
 		itemRegistry.addItemRegistryChangeListener(this);
+		for(PersistenceDispatcher dispatcher : dispatchers.values()) {
+			dispatcher.setItemRegistry(itemRegistry);
+		}
 		allItemsChanged(null);
 	}
 
 	public void unsetItemRegistry(ItemRegistry itemRegistry) {
 		itemRegistry.removeItemRegistryChangeListener(this);
 		this.itemRegistry = null;
+		for(PersistenceDispatcher dispatcher : dispatchers.values()) {
+			dispatcher.setItemRegistry(null);
+		}
+		rebuildRoutingTable();
 	}
 
 	public void addPersistenceService(PersistenceService persistenceService) {
 		logger.debug("Initializing {} persistence service.", persistenceService.getName());
 		persistenceServices.put(persistenceService.getName(), persistenceService);
+		startDispatcher(persistenceService);
 		stopEventHandling(persistenceService.getName());
 		startEventHandling(persistenceService.getName());
 	}
 
 	public void removePersistenceService(PersistenceService persistenceService) {
 		stopEventHandling(persistenceService.getName());
+		stopDispatcher(persistenceService.getName());
 		persistenceServices.remove(persistenceService.getName());
 	}
+
+	/**
+	 * Creates and starts the dispatcher of a persistence service with the current configuration.
+	 * A previous dispatcher of the service is only stopped once the new one receives the states,
+	 * so that no state gets lost in between.
+	 */
+	private synchronized void startDispatcher(PersistenceService persistenceService) {
+		String serviceName = persistenceService.getName();
+		PersistenceDispatcher dispatcher = new PersistenceDispatcher(persistenceService, queueSize, batchSize, 
+				retries, retryDelay, new File(spillFolder, serviceName + ".spill"));
+		dispatcher.setItemRegistry(itemRegistry);
+		dispatcher.start();
+		PersistenceDispatcher previousDispatcher = dispatchers.put(serviceName, dispatcher);
+		if(previousDispatcher!=null) {
+			previousDispatcher.stop(STOP_TIMEOUT);
+		}
+	}
+
+	/**
+	 * Stops the dispatcher of a persistence service after its queued states have been stored.
+	 */
+	private synchronized void stopDispatcher(String serviceName) {
+		PersistenceDispatcher dispatcher = dispatchers.remove(serviceName);
+		if(dispatcher!=null) {
+			dispatcher.stop(STOP_TIMEOUT);
+		}
+	}
 	
 	
 	public void modelChanged(String modelName, EventType type) {
@@ -200,12 +288,17 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 		if(model!=null) {
 			persistenceConfigurations.put(modelName, model.getConfigs());
 			defaultStrategies.put(modelName, model.getDefaults());
-			for(PersistenceConfiguration config : model.getConfigs()) {
-				if(hasStrategy(modelName, config, GlobalStrategies.RESTORE)) {
-					for(Item item : getAllItems(config)) {
-						initialize(item);
+			rebuildRoutingTable();
+			if(itemRegistry!=null) {
+				Set<Item> items = new HashSet<Item>();
+				for(PersistenceConfiguration config : model.getConfigs()) {
+					if(hasStrategy(modelName, config, GlobalStrategies.RESTORE)) {
+						for(Item item : getAllItems(config)) {
+							items.add(item);
+						}
 					}
 				}
+				restoreStates(items);
 			}
 			createTimers(modelName);
 		}
@@ -219,6 +312,7 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	private void stopEventHandling(String modelName) {
 		persistenceConfigurations.remove(modelName);
 		defaultStrategies.remove(modelName);
+		rebuildRoutingTable();
 		removeTimers(modelName);
 	}
 
@@ -231,26 +325,85 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 
 	/**
-	 * Calls all persistence services which use change or update policy for the given item
+	 * Hands the item over to all persistence services which use change or update policy for it.
+	 * The services are called asynchronously by their {@link PersistenceDispatcher}s.
 	 * 
 	 * @param item the item to persist
 	 * @param onlyChanges true, if it has the change strategy, false otherwise
 	 */
 	private void handleStateEvent(Item item, boolean onlyChanges) {
-		synchronized (persistenceConfigurations) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				if(persistenceServices.containsKey(serviceName)) {				
-					for(PersistenceConfiguration config : entry.getValue()) {
-						if(hasStrategy(serviceName, config, onlyChanges ? GlobalStrategies.CHANGE : GlobalStrategies.UPDATE)) {
-							if(appliesToItem(config, item)) {
-								persistenceServices.get(serviceName).store(item, config.getAlias());
-							}
+		for(Target target : routingTable.getStoreTargets(item.getName(), onlyChanges)) {
+			PersistenceDispatcher dispatcher = dispatchers.get(target.getServiceName());
+			if(dispatcher!=null) {
+				dispatcher.dispatch(item, target.getAlias());
+			}
+		}
+	}
+
+	/**
+	 * Computes the targets of all items from the current persistence configurations and 
+	 * the item registry. Group configurations are resolved once here instead of on every
+	 * state event.
+	 */
+	protected synchronized void rebuildRoutingTable() {
+		if(itemRegistry==null) {
+			routingTable = new PersistenceRoutingTable.Builder().build();
+			return;
+		}
+		routingTable = buildRoutingTable(null);
+		logger.debug("Rebuilt persistence routing table for {} items.", routingTable.getItemCount());
+	}
+
+	/**
+	 * Updates the targets of a single item that has been added to the item registry. 
+	 * A group can change the targets of all its members, so the whole table is
+	 * rebuilt for a group.
+	 * 
+	 * @param item the added item
+	 */
+	protected synchronized void updateRoutingTable(Item item) {
+		if(itemRegistry==null) {
+			return;
+		}
+		if(item instanceof GroupItem) {
+			rebuildRoutingTable();
+		} else {
+			routingTable.replaceTargets(item.getName(), buildRoutingTable(item));
+		}
+	}
+
+	/**
+	 * Computes the targets of all items or of a single item.
+	 * 
+	 * @param item the item to compute the targets for or <code>null</code> for all items
+	 * @return the routing table
+	 */
+	private PersistenceRoutingTable buildRoutingTable(Item item) {
+		Set<String> groupNames = item!=null ? getAllGroupNames(item) : null;
+		PersistenceRoutingTable.Builder builder = new PersistenceRoutingTable.Builder();
+		for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
+			String serviceName = entry.getKey();
+			if(!defaultStrategies.containsKey(serviceName)) {
+				// the model is just being registered or unregistered
+				continue;
+			}
+			for(PersistenceConfiguration config : entry.getValue()) {
+				boolean onChange = hasStrategy(serviceName, config, GlobalStrategies.CHANGE);
+				boolean onUpdate = hasStrategy(serviceName, config, GlobalStrategies.UPDATE);
+				boolean onRestore = hasStrategy(serviceName, config, GlobalStrategies.RESTORE);
+				if(onChange || onUpdate || onRestore) {
+					Target target = new Target(serviceName, config.getAlias());
+					if(item==null) {
+						for(Item configuredItem : getAllItems(config)) {
+							builder.add(configuredItem.getName(), target, onChange, onUpdate, onRestore);
 						}
+					} else if(isConfigured(config, item.getName(), groupNames)) {
+						builder.add(item.getName(), target, onChange, onUpdate, onRestore);
 					}
 				}
 			}
 		}
+		return builder.build();
 	}
 	
 	/**
@@ -275,40 +428,48 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 
 	/**
-	 * Checks if a given persistence configuration entry is relevant for an item
+	 * Checks if a persistence configuration entry applies to a single (non-group) item,
+	 * i.e. if {@link #getAllItems(PersistenceConfiguration)} would contain it.
 	 * 
 	 * @param config the persistence configuration entry
-	 * @param item to check if the configuration applies to
+	 * @param itemName the name of the item
+	 * @param groupNames the names of all direct and indirect groups of the item
 	 * @return true, if the configuration applies to the item
 	 */
-	protected boolean appliesToItem(PersistenceConfiguration config, Item item) {
+	private boolean isConfigured(PersistenceConfiguration config, String itemName, Set<String> groupNames) {
 		for(EObject itemCfg : config.getItems()) {
 			if (itemCfg instanceof AllConfig) {
 				return true;
 			}
-			if (itemCfg instanceof ItemConfig) {
-				ItemConfig singleItemConfig = (ItemConfig) itemCfg;
-				if(item.getName().equals(singleItemConfig.getItem())) {
-					return true;
-				}
+			if (itemCfg instanceof ItemConfig && itemName.equals(((ItemConfig) itemCfg).getItem())) {
+				return true;
 			}
-			if (itemCfg instanceof GroupConfig) {
-				GroupConfig groupItemCfg = (GroupConfig) itemCfg;
-				String groupName = groupItemCfg.getGroup();
-				try {
-					Item gItem = itemRegistry.getItem(groupName);
-					if (gItem instanceof GroupItem) {
-						GroupItem groupItem = (GroupItem) gItem;
-						if(groupItem.getAllMembers().contains(item)) {
-							return true;
-						}
-					}
-				} catch (Exception e) {}
+			if (itemCfg instanceof GroupConfig && groupNames.contains(((GroupConfig) itemCfg).getGroup())) {
+				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * @return the names of all groups the item is a direct or indirect member of
+	 */
+	private Set<String> getAllGroupNames(Item item) {
+		Set<String> groupNames = new HashSet<String>();
+		List<String> pending = new ArrayList<String>(item.getGroupNames());
+		while(!pending.isEmpty()) {
+			String groupName = pending.remove(pending.size() - 1);
+			if(groupNames.add(groupName)) {
+				try {
+					pending.addAll(itemRegistry.getItem(groupName).getGroupNames());
+				} catch (ItemNotFoundException e) {
+					// the group is not known (yet)
+				}
+			}
+		}
+		return groupNames;
+	}
+
 	/**
 	 * Retrieves all items for which the persistence configuration applies to.
 	 * 
@@ -353,13 +514,22 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 
 	public void allItemsChanged(Collection<String> oldItemNames) {
-		for(Item item : itemRegistry.getItems()) {
-			itemAdded(item);
+		rebuildRoutingTable();
+		Collection<Item> items = itemRegistry.getItems();
+		restoreStates(items);
+		for(Item item : items) {
+			addStateChangeListener(item);
 		}
 	}
 
 	public void itemAdded(Item item) {
+		// the new item can also be a member of configured groups
+		updateRoutingTable(item);
 		initialize(item);
+		addStateChangeListener(item);
+	}
+
+	private void addStateChangeListener(Item item) {
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.addStateChangeListener(this);
@@ -375,38 +545,149 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @param item the item to restore the state for
 	 */
 	protected void initialize(Item item) {
-		// get the last persisted state from the persistence service if no state is yet set
-		if(item.getState().equals(UnDefType.NULL) && item instanceof GenericItem) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				for(PersistenceConfiguration config : entry.getValue()) {
-					if(hasStrategy(serviceName, config, GlobalStrategies.RESTORE)) {
-						if(appliesToItem(config, item)) {
-							PersistenceService service = persistenceServices.get(serviceName);
-							if(service instanceof QueryablePersistenceService) {
-								QueryablePersistenceService queryService = (QueryablePersistenceService) service;
-								FilterCriteria filter = new FilterCriteria().setItemName(item.getName()).setPageSize(1);
-								Iterable<HistoricItem> result = queryService.query(filter);
-								Iterator<HistoricItem> it = result.iterator();
-								if(it.hasNext()) {
-									HistoricItem historicItem = it.next();
-									GenericItem genericItem = (GenericItem) item;
-									genericItem.removeStateChangeListener(this);
-									genericItem.setState(historicItem.getState());
-									genericItem.addStateChangeListener(this);
-									logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
-											new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
-											item.getName(), historicItem.getState().toString() } );
-									return;
-								}
-							} else if(service!=null) {
-								logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", serviceName);
-							}
+		restoreStates(Collections.singletonList(item));
+	}
+
+	/**
+	 * Handles the "restoreOnStartup" strategy for several items at once. Each persistence service 
+	 * is asked for the latest states of all its items (with a single bulk query, if it supports it),
+	 * and the services are queried in parallel. An item gets the state of the first of its restore targets that has 
+	 * stored a state for it; if several services restore the same item, their order is not defined.
+	 * 
+	 * @param items the items to restore the states for; items whose state is already defined are skipped
+	 */
+	protected void restoreStates(Collection<? extends Item> items) {
+		// collect the items to query per service
+		PersistenceRoutingTable table = routingTable;
+		Map<String, Set<String>> itemNamesByService = new LinkedHashMap<String, Set<String>>();
+		List<Item> restoredItems = new ArrayList<Item>();
+		for(Item item : items) {
+			if(item.getState().equals(UnDefType.NULL) && item instanceof GenericItem) {
+				List<Target> targets = table.getRestoreTargets(item.getName());
+				if(!targets.isEmpty()) {
+					restoredItems.add(item);
+				}
+				for(Target target : targets) {
+					Set<String> itemNames = itemNamesByService.get(target.getServiceName());
+					if(itemNames==null) {
+						itemNames = new HashSet<String>();
+						itemNamesByService.put(target.getServiceName(), itemNames);
+					}
+					itemNames.add(item.getName());
+				}
+			}
+		}
+		if(restoredItems.isEmpty()) {
+			return;
+		}
+
+		Map<String, Map<String, HistoricItem>> latestStates = queryLatestStates(itemNamesByService);
+
+		for(Item item : restoredItems) {
+			for(Target target : table.getRestoreTargets(item.getName())) {
+				Map<String, HistoricItem> serviceStates = latestStates.get(target.getServiceName());
+				HistoricItem historicItem = serviceStates!=null ? serviceStates.get(item.getName()) : null;
+				if(historicItem!=null) {
+					GenericItem genericItem = (GenericItem) item;
+					genericItem.removeStateChangeListener(this);
+					genericItem.setState(historicItem.getState());
+					genericItem.addStateChangeListener(this);
+					logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
+							new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
+							item.getName(), historicItem.getState().toString() } );
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queries the latest states of the given items from each service, using a thread per
+	 * service if there is more than one.
+	 * 
+	 * @param itemNamesByService the names of the items to query by service name
+	 * @return the latest states by item name by service name
+	 */
+	private Map<String, Map<String, HistoricItem>> queryLatestStates(Map<String, Set<String>> itemNamesByService) {
+		Map<String, Map<String, HistoricItem>> latestStates = new HashMap<String, Map<String, HistoricItem>>();
+		Map<String, Future<Map<String, HistoricItem>>> futures = new LinkedHashMap<String, Future<Map<String, HistoricItem>>>();
+		ExecutorService executor = null;
+		if(itemNamesByService.size() > 1) {
+			executor = Executors.newFixedThreadPool(Math.min(itemNamesByService.size(), MAX_RESTORE_THREADS), 
+					new ThreadFactory() {
+						private final AtomicInteger threadNumber = new AtomicInteger(1);
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "openHAB persistence restore-" + threadNumber.getAndIncrement());
+							thread.setDaemon(true);
+							return thread;
 						}
+					});
+		}
+		try {
+			for(Entry<String, Set<String>> entry : itemNamesByService.entrySet()) {
+				final String serviceName = entry.getKey();
+				final Set<String> itemNames = entry.getValue();
+				PersistenceService service = persistenceServices.get(serviceName);
+				if(service instanceof QueryablePersistenceService) {
+					final QueryablePersistenceService queryService = (QueryablePersistenceService) service;
+					Callable<Map<String, HistoricItem>> query = new Callable<Map<String, HistoricItem>>() {
+						public Map<String, HistoricItem> call() {
+							return queryLatestStates(queryService, itemNames);
+						}
+					};
+					if(executor!=null) {
+						futures.put(serviceName, executor.submit(query));
+					} else {
+						latestStates.put(serviceName, queryLatestStates(queryService, itemNames));
 					}
+				} else if(service!=null) {
+					logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", serviceName);
+				}
+			}
+			for(Entry<String, Future<Map<String, HistoricItem>>> entry : futures.entrySet()) {
+				try {
+					latestStates.put(entry.getKey(), entry.getValue().get());
+				} catch (ExecutionException e) {
+					logger.error("Failed to restore item states from persistence service '" + entry.getKey() + "'", e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
 				}
-			}	
-		}		
+			}
+		} finally {
+			if(executor!=null) {
+				executor.shutdownNow();
+			}
+		}
+		return latestStates;
+	}
+
+	/**
+	 * Queries the latest states of the given items from a single service, at once if the service 
+	 * is a {@link BulkQueryablePersistenceService} and with one query per item otherwise.
+	 */
+	private Map<String, HistoricItem> queryLatestStates(QueryablePersistenceService service, Set<String> itemNames) {
+		long start = System.currentTimeMillis();
+		Map<String, HistoricItem> states;
+		if(service instanceof BulkQueryablePersistenceService) {
+			states = ((BulkQueryablePersistenceService) service).queryLatest(itemNames);
+		} else {
+			states = new HashMap<String, HistoricItem>();
+			for(String itemName : itemNames) {
+				FilterCriteria filter = new FilterCriteria().setItemName(itemName).setPageSize(1);
+				Iterator<HistoricItem> it = service.query(filter).iterator();
+				if(it.hasNext()) {
+					states.put(itemName, it.next());
+				}
+			}
+		}
+		long duration = System.currentTimeMillis() - start;
+		restoreDurations.put(service.getName(), duration);
+		if(itemNames.size() > 1) {
+			logger.info("Restored {} of {} item states from persistence service '{}' in {}ms", 
+					new Object[] { states.size(), itemNames.size(), service.getName(), duration });
+		}
+		return states;
 	}
 
 	public void itemRemoved(Item item) {
@@ -414,6 +695,103 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
 		}
+		removeFromRoutingTable(item);
+	}
+
+	/**
+	 * Removes the targets of an item that has been removed from the item registry.
+	 * 
+	 * @param item the removed item
+	 */
+	protected synchronized void removeFromRoutingTable(Item item) {
+		if(item instanceof GroupItem) {
+			rebuildRoutingTable();
+		} else {
+			routingTable.removeTargets(item.getName());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		int newQueueSize = DEFAULT_QUEUE_SIZE;
+		int newBatchSize = DEFAULT_BATCH_SIZE;
+		int newRetries = DEFAULT_RETRIES;
+		int newRetryDelay = DEFAULT_RETRY_DELAY;
+		String newSpillFolder = DEFAULT_SPILL_FOLDER;
+		if(config!=null) {
+			newQueueSize = parseInt(config, "queuesize", DEFAULT_QUEUE_SIZE, 1);
+			newBatchSize = parseInt(config, "batchsize", DEFAULT_BATCH_SIZE, 1);
+			newRetries = parseInt(config, "retries", DEFAULT_RETRIES, 0);
+			newRetryDelay = parseInt(config, "retrydelay", DEFAULT_RETRY_DELAY, 0);
+			String spillFolderString = (String) config.get("spillfolder");
+			if(StringUtils.isNotBlank(spillFolderString)) {
+				newSpillFolder = spillFolderString.trim();
+			}
+		}
+		synchronized (this) {
+			queueSize = newQueueSize;
+			batchSize = newBatchSize;
+			retries = newRetries;
+			retryDelay = newRetryDelay;
+			spillFolder = newSpillFolder;
+			// recreate the dispatchers with the new configuration
+			for(PersistenceService persistenceService : persistenceServices.values()) {
+				startDispatcher(persistenceService);
+			}
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private int parseInt(Dictionary config, String key, int defaultValue, int minimum) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if(StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if(result < minimum) {
+				throw new ConfigurationException("persistencemanager:" + key, "The value must not be less than " + minimum);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("persistencemanager:" + key, "The value must be a number");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getStatisticsName() {
+		return "persistence";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("routed items", routingTable.getItemCount());
+		for(Entry<String, PersistenceDispatcher> entry : new TreeMap<String, PersistenceDispatcher>(dispatchers).entrySet()) {
+			String prefix = entry.getKey() + " ";
+			PersistenceDispatcher dispatcher = entry.getValue();
+			statistics.put(prefix + "queue depth", dispatcher.getQueueDepth());
+			statistics.put(prefix + "enqueued states", dispatcher.getEnqueuedCount());
+			statistics.put(prefix + "stored states", dispatcher.getStoredCount());
+			statistics.put(prefix + "retries", dispatcher.getRetryCount());
+			statistics.put(prefix + "spilled states", dispatcher.getSpilledCount());
+			statistics.put(prefix + "replayed states", dispatcher.getReplayedCount());
+			statistics.put(prefix + "dropped states", dispatcher.getDroppedCount());
+			statistics.put(prefix + "avg store latency (ms)", dispatcher.getAverageLatency());
+			statistics.put(prefix + "max store latency (ms)", dispatcher.getMaxLatency());
+			Long restoreDuration = restoreDurations.get(entry.getKey());
+			if(restoreDuration!=null) {
+				statistics.put(prefix + "last restore (ms)", restoreDuration);
+			}
+		}
+		return statistics;
 	}
 	
 	/**
@@ -0,0 +1,219 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.persistence.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table that maps item names to the persistence services (and aliases) their states
+ * have to be passed to. It is computed from the persistence models and the item registry,
+ * so that handling a state event does not need to evaluate any persistence configuration
+ * or group membership. Afterwards, only the targets of single items are replaced, e.g. 
+ * when an item is added; the target lists themselves are immutable.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PersistenceRoutingTable {
+
+	private final Map<String, List<Target>> changeTargets;
+	private final Map<String, List<Target>> updateTargets;
+	private final Map<String, List<Target>> restoreTargets;
+
+	private PersistenceRoutingTable(Builder builder) {
+		this.changeTargets = freeze(builder.changeTargets);
+		this.updateTargets = freeze(builder.updateTargets);
+		this.restoreTargets = freeze(builder.restoreTargets);
+	}
+
+	/**
+	 * Returns the targets that have to store a state event of an item.
+	 * 
+	 * @param itemName the name of the item
+	 * @param onlyChanges true for a state change, false for a state update
+	 * @return the targets, never <code>null</code>
+	 */
+	public List<Target> getStoreTargets(String itemName, boolean onlyChanges) {
+		return get(onlyChanges ? changeTargets : updateTargets, itemName);
+	}
+
+	/**
+	 * Returns the targets from which the state of an item can be restored on startup.
+	 * 
+	 * @param itemName the name of the item
+	 * @return the targets, never <code>null</code>
+	 */
+	public List<Target> getRestoreTargets(String itemName) {
+		return get(restoreTargets, itemName);
+	}
+
+	/**
+	 * Replaces the targets of a single item with the ones of another table.
+	 * 
+	 * @param itemName the name of the item
+	 * @param itemTable the table that contains the new targets of the item
+	 */
+	public void replaceTargets(String itemName, PersistenceRoutingTable itemTable) {
+		replace(changeTargets, itemName, itemTable.changeTargets.get(itemName));
+		replace(updateTargets, itemName, itemTable.updateTargets.get(itemName));
+		replace(restoreTargets, itemName, itemTable.restoreTargets.get(itemName));
+	}
+
+	/**
+	 * Removes all targets of a single item.
+	 * 
+	 * @param itemName the name of the item
+	 */
+	public void removeTargets(String itemName) {
+		changeTargets.remove(itemName);
+		updateTargets.remove(itemName);
+		restoreTargets.remove(itemName);
+	}
+
+	/**
+	 * @return the number of items that have at least one target for state changes or updates
+	 */
+	public int getItemCount() {
+		int count = changeTargets.size();
+		for(String itemName : updateTargets.keySet()) {
+			if(!changeTargets.containsKey(itemName)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static List<Target> get(Map<String, List<Target>> targets, String itemName) {
+		List<Target> result = targets.get(itemName);
+		if(result==null) {
+			return Collections.emptyList();
+		}
+		return result;
+	}
+
+	private static void replace(Map<String, List<Target>> targets, String itemName, List<Target> itemTargets) {
+		if(itemTargets!=null) {
+			targets.put(itemName, itemTargets);
+		} else {
+			targets.remove(itemName);
+		}
+	}
+
+	private static Map<String, List<Target>> freeze(Map<String, List<Target>> targets) {
+		Map<String, List<Target>> frozen = new ConcurrentHashMap<String, List<Target>>(targets.size() * 4 / 3 + 1);
+		for(Entry<String, List<Target>> entry : targets.entrySet()) {
+			frozen.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Target>(entry.getValue())));
+		}
+		return frozen;
+	}
+
+	/**
+	 * A persistence service together with the alias an item is stored under.
+	 */
+	public static class Target {
+
+		private final String serviceName;
+		private final String alias;
+
+		public Target(String serviceName, String alias) {
+			this.serviceName = serviceName;
+			this.alias = alias;
+		}
+
+		public String getServiceName() {
+			return serviceName;
+		}
+
+		/**
+		 * @return the alias or <code>null</code>, if the item is stored under its own name
+		 */
+		public String getAlias() {
+			return alias;
+		}
+
+		@Override
+		public String toString() {
+			return alias==null ? serviceName : serviceName + " (" + alias + ")";
+		}
+	}
+
+	/**
+	 * Collects the targets of all items. A builder is not thread-safe, but the
+	 * table it builds is.
+	 */
+	public static class Builder {
+
+		private final Map<String, List<Target>> changeTargets = new HashMap<String, List<Target>>();
+		private final Map<String, List<Target>> updateTargets = new HashMap<String, List<Target>>();
+		private final Map<String, List<Target>> restoreTargets = new HashMap<String, List<Target>>();
+
+		/**
+		 * Adds a target for an item.
+		 * 
+		 * @param itemName the name of the item
+		 * @param target the target
+		 * @param onChange true, if the target stores state changes
+		 * @param onUpdate true, if the target stores state updates
+		 * @param onRestore true, if the target restores the state on startup
+		 * @return this builder
+		 */
+		public Builder add(String itemName, Target target, boolean onChange, boolean onUpdate, boolean onRestore) {
+			if(onChange) {
+				add(changeTargets, itemName, target);
+			}
+			if(onUpdate) {
+				add(updateTargets, itemName, target);
+			}
+			if(onRestore) {
+				add(restoreTargets, itemName, target);
+			}
+			return this;
+		}
+
+		private static void add(Map<String, List<Target>> targets, String itemName, Target target) {
+			List<Target> itemTargets = targets.get(itemName);
+			if(itemTargets==null) {
+				itemTargets = new ArrayList<Target>(2);
+				targets.put(itemName, itemTargets);
+			}
+			itemTargets.add(target);
+		}
+
+		public PersistenceRoutingTable build() {
+			return new PersistenceRoutingTable(this);
+		}
+	}
+
+}
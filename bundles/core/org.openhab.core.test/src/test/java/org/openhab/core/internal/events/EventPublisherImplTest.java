@@ -0,0 +1,221 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.events.ItemEventListener;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class EventPublisherImplTest {
+	
+	private EventPublisherImpl publisher;
+	
+	@Before
+	public void setup() {
+		publisher = new EventPublisherImpl();
+		publisher.activate();
+	}
+	
+	@After
+	public void tearDown() {
+		publisher.deactivate();
+	}
+	
+	@Test
+	public void testListenersAreSelectedByTypeAndItem() {
+		RecordingListener allCommands = new RecordingListener();
+		RecordingListener itemCommands = new RecordingListener();
+		RecordingListener otherItemCommands = new RecordingListener();
+		publisher.addItemEventListener(allCommands, EventType.COMMAND, null);
+		publisher.addItemEventListener(itemCommands, EventType.COMMAND, "item1");
+		publisher.addItemEventListener(otherItemCommands, EventType.COMMAND, "item2");
+		
+		publisher.sendCommand("item1", new TestCommand());
+		
+		assertEquals(1, allCommands.events.size());
+		assertEquals(1, itemCommands.events.size());
+		assertEquals(0, otherItemCommands.events.size());
+		assertEquals("item1", itemCommands.events.get(0).getItemName());
+		assertEquals(EventType.COMMAND, itemCommands.events.get(0).getType());
+	}
+	
+	@Test
+	public void testPostedUpdatesAreDeliveredAsynchronously() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(2);
+		publisher.addItemEventListener(new ItemEventListener() {
+			public void handleItemEvent(ItemEvent event) {
+				if(event.getState()==UnDefType.UNDEF) {
+					latch.countDown();
+				}
+			}
+		}, EventType.UPDATE, "item1");
+		
+		publisher.postUpdate("item1", UnDefType.UNDEF);
+		publisher.postUpdate("item2", UnDefType.UNDEF);
+		publisher.postUpdate("item1", UnDefType.UNDEF);
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testPostedEventsAreDeliveredThroughBoundedQueue() throws Exception {
+		Dictionary<String, Object> config = new Hashtable<String, Object>();
+		config.put("queuesize", "10");
+		config.put("overflow", "coalesce");
+		publisher.updated(config);
+		
+		final CountDownLatch latch = new CountDownLatch(2);
+		publisher.addItemEventListener(new ItemEventListener() {
+			public void handleItemEvent(ItemEvent event) {
+				latch.countDown();
+			}
+		}, EventType.UPDATE, null);
+		
+		publisher.postUpdate("item1", UnDefType.UNDEF);
+		publisher.postUpdate("item2", UnDefType.UNDEF);
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(2L, publisher.getStatistics().get("enqueued events"));
+	}
+	
+	@Test
+	public void testPostingFromListenerWhileQueueIsFull() throws Exception {
+		Dictionary<String, Object> config = new Hashtable<String, Object>();
+		config.put("queuesize", "2");
+		config.put("overflow", "block");
+		publisher.updated(config);
+		
+		final CountDownLatch handling = new CountDownLatch(1);
+		final CountDownLatch queueFull = new CountDownLatch(1);
+		final CountDownLatch reactions = new CountDownLatch(3);
+		publisher.addItemEventListener(new ItemEventListener() {
+			public void handleItemEvent(ItemEvent event) {
+				if(event.getItemName().equals("trigger")) {
+					handling.countDown();
+					try {
+						queueFull.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+					}
+					// like the autoupdate, react on the command with posted events
+					for(int i = 0; i < 3; i++) {
+						publisher.postUpdate("reaction", UnDefType.UNDEF);
+					}
+				} else if(event.getItemName().equals("reaction")) {
+					reactions.countDown();
+				}
+			}
+		}, EventType.COMMAND, null);
+		publisher.addItemEventListener(new ItemEventListener() {
+			public void handleItemEvent(ItemEvent event) {
+				if(event.getItemName().equals("reaction")) {
+					reactions.countDown();
+				}
+			}
+		}, EventType.UPDATE, null);
+		
+		publisher.postCommand("trigger", new TestCommand());
+		assertTrue(handling.await(5, TimeUnit.SECONDS));
+		// fill the queue while the dispatcher is busy with the listener
+		publisher.postUpdate("item1", UnDefType.UNDEF);
+		publisher.postUpdate("item2", UnDefType.UNDEF);
+		queueFull.countDown();
+
+		assertTrue(reactions.await(5, TimeUnit.SECONDS));
+		assertEquals(3L, publisher.getStatistics().get("events delivered inline"));
+	}
+	
+	@Test
+	public void testRemoveListener() {
+		RecordingListener listener = new RecordingListener();
+		publisher.addItemEventListener(listener, EventType.COMMAND, null);
+		publisher.addItemEventListener(listener, EventType.COMMAND, "item1");
+		publisher.removeItemEventListener(listener);
+		
+		publisher.sendCommand("item1", new TestCommand());
+		assertEquals(0, listener.events.size());
+	}
+	
+	@Test
+	public void testForeignEventAdminEventsAreBridged() {
+		RecordingListener listener = new RecordingListener();
+		publisher.addItemEventListener(listener, EventType.UPDATE, "item1");
+		
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("item", "item1");
+		properties.put("state", UnDefType.UNDEF);
+		publisher.handleEvent(new Event("openhab/update/item1", properties));
+		assertEquals(1, listener.events.size());
+		assertEquals(UnDefType.UNDEF, listener.events.get(0).getState());
+		
+		// events that have been sent by the publisher itself must not be delivered twice
+		properties.put("dispatched", Boolean.TRUE);
+		publisher.handleEvent(new Event("openhab/update/item1", properties));
+		assertEquals(1, listener.events.size());
+	}
+	
+	
+	class RecordingListener implements ItemEventListener {
+		
+		List<ItemEvent> events = new CopyOnWriteArrayList<ItemEvent>();
+
+		public void handleItemEvent(ItemEvent event) {
+			events.add(event);
+		}
+		
+	}
+	
+	class TestCommand implements Command {
+		
+		public String format(String pattern) {
+			return toString();
+		}
+		
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.internal.events.EventQueue.OverflowPolicy;
+import org.openhab.core.internal.events.EventQueue.QueuedEvent;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class EventQueueTest {
+	
+	@Test
+	public void testDrainInBatches() throws InterruptedException {
+		EventQueue queue = new EventQueue(10, OverflowPolicy.BLOCK);
+		for(int i = 0; i < 5; i++) {
+			queue.put(ItemEvent.createUpdateEvent("Item" + i, UnDefType.NULL));
+		}
+		assertEquals(5, queue.size());
+		
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		assertEquals(3, queue.drainTo(batch, 3, 0, TimeUnit.MILLISECONDS));
+		assertEquals("Item0", batch.get(0).getEvent().getItemName());
+		assertEquals("Item2", batch.get(2).getEvent().getItemName());
+		
+		batch.clear();
+		assertEquals(2, queue.drainTo(batch, 3, 0, TimeUnit.MILLISECONDS));
+		assertEquals("Item3", batch.get(0).getEvent().getItemName());
+		assertEquals(0, queue.size());
+		assertEquals(5, queue.getMaxDepth());
+		assertEquals(5, queue.getEnqueuedCount());
+	}
+
+	@Test
+	public void testDrainTimesOutOnEmptyQueue() throws InterruptedException {
+		EventQueue queue = new EventQueue(10, OverflowPolicy.BLOCK);
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		assertEquals(0, queue.drainTo(batch, 10, 10, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		EventQueue queue = new EventQueue(2, OverflowPolicy.DROP_OLDEST);
+		queue.put(ItemEvent.createUpdateEvent("Item1", UnDefType.NULL));
+		queue.put(ItemEvent.createUpdateEvent("Item2", UnDefType.NULL));
+		queue.put(ItemEvent.createUpdateEvent("Item3", UnDefType.NULL));
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.getDroppedCount());
+		
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		queue.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS);
+		assertEquals("Item2", batch.get(0).getEvent().getItemName());
+		assertEquals("Item3", batch.get(1).getEvent().getItemName());
+	}
+
+	@Test
+	public void testCoalesceReplacesPendingUpdate() throws InterruptedException {
+		EventQueue queue = new EventQueue(2, OverflowPolicy.COALESCE);
+		queue.put(ItemEvent.createUpdateEvent("Item1", UnDefType.NULL));
+		queue.put(ItemEvent.createUpdateEvent("Item2", UnDefType.NULL));
+		queue.put(ItemEvent.createUpdateEvent("Item1", UnDefType.UNDEF));
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.getCoalescedCount());
+		assertEquals(0, queue.getDroppedCount());
+		
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		queue.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS);
+		// the update keeps its position in the queue, but carries the latest state
+		assertEquals("Item1", batch.get(0).getEvent().getItemName());
+		assertSame(UnDefType.UNDEF, batch.get(0).getEvent().getState());
+		assertEquals("Item2", batch.get(1).getEvent().getItemName());
+	}
+
+	@Test
+	public void testBlockWaitsForSpace() throws InterruptedException {
+		final EventQueue queue = new EventQueue(1, OverflowPolicy.BLOCK);
+		queue.put(ItemEvent.createUpdateEvent("Item1", UnDefType.NULL));
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					queue.put(ItemEvent.createUpdateEvent("Item2", UnDefType.NULL));
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		producer.start();
+		
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		queue.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS);
+		queue.drainTo(batch, 10, 5, TimeUnit.SECONDS);
+		producer.join(5000);
+		assertEquals(2, batch.size());
+		assertEquals("Item2", batch.get(1).getEvent().getItemName());
+		assertEquals(0, queue.getDroppedCount());
+	}
+	
+	@Test
+	public void testConsumerIsNotBlocked() throws InterruptedException {
+		EventQueue queue = new EventQueue(1, OverflowPolicy.BLOCK);
+		List<QueuedEvent> batch = new ArrayList<QueuedEvent>();
+		queue.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS);
+		queue.put(ItemEvent.createUpdateEvent("Item1", UnDefType.NULL));
+		
+		// this thread is now the consumer of the queue, so it must not wait for space
+		assertFalse(queue.put(ItemEvent.createUpdateEvent("Item2", UnDefType.NULL)));
+		assertEquals(1, queue.size());
+		assertEquals(1, queue.getRejectedCount());
+	}
+	
+}
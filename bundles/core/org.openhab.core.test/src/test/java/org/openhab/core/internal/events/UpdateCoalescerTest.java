@@ -0,0 +1,279 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.internal.events.UpdateCoalescer.Rule;
+import org.openhab.core.internal.events.UpdateCoalescer.UpdatePublisher;
+import org.openhab.core.internal.items.ItemRegistryImpl;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemProvider;
+import org.openhab.core.items.ItemsChangeListener;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class UpdateCoalescerTest {
+	
+	private Map<String, Rule> rules;
+	
+	private RecordingPublisher publisher;
+	
+	private UpdateCoalescer coalescer;
+	
+	@Before
+	public void setup() {
+		rules = new HashMap<String, Rule>();
+		publisher = new RecordingPublisher();
+		coalescer = new UpdateCoalescer(rules, publisher);
+	}
+	
+	@After
+	public void tearDown() {
+		coalescer.shutdown();
+	}
+	
+	@Test
+	public void testParseRule() {
+		Rule rule = Rule.parse("1000");
+		assertEquals(1000, rule.getMinInterval());
+		assertFalse(rule.isWithinDeadband(new NumberState(10), new NumberState(10)));
+		
+		rule = Rule.parse("0, 0.5");
+		assertTrue(rule.isWithinDeadband(new NumberState(10), new NumberState(10.5)));
+		assertFalse(rule.isWithinDeadband(new NumberState(10), new NumberState(10.6)));
+		
+		rule = Rule.parse("0,10%");
+		assertTrue(rule.isWithinDeadband(new NumberState(200), new NumberState(180)));
+		assertFalse(rule.isWithinDeadband(new NumberState(200), new NumberState(179)));
+		assertFalse(rule.isWithinDeadband(new NumberState(200), UnDefType.UNDEF));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseInvalidRule() {
+		Rule.parse("fast");
+	}
+	
+	@Test
+	public void testItemsWithoutRuleArePublishedImmediately() {
+		coalescer.update("Item1", new NumberState(1));
+		coalescer.update("Item1", new NumberState(1));
+		assertEquals(2, publisher.states.size());
+		assertEquals(0, coalescer.getSuppressedCount());
+	}
+	
+	@Test
+	public void testBurstIsCollapsedToLatestValue() throws InterruptedException {
+		rules.put("Item1", new Rule(200, 0, false));
+		coalescer.update("Item1", new NumberState(1));
+		coalescer.update("Item1", new NumberState(2));
+		coalescer.update("Item1", new NumberState(3));
+		coalescer.update("Item1", new NumberState(4));
+		assertEquals(1, publisher.states.size());
+		
+		Thread.sleep(500);
+		assertEquals(2, publisher.states.size());
+		assertEquals(4.0, ((NumberState) publisher.states.get(1)).doubleValue(), 0.0);
+		assertEquals(2, coalescer.getSuppressedCount());
+		assertEquals(2, coalescer.getSuppressedCount("Item1"));
+	}
+	
+	@Test
+	public void testDeadbandSuppressesSmallChanges() {
+		rules.put("Item1", new Rule(0, 1, false));
+		coalescer.update("Item1", new NumberState(10));
+		coalescer.update("Item1", new NumberState(10.5));
+		coalescer.update("Item1", new NumberState(9.2));
+		coalescer.update("Item1", new NumberState(12));
+		coalescer.update("Item1", UnDefType.UNDEF);
+		assertEquals(3, publisher.states.size());
+		assertSame(UnDefType.UNDEF, publisher.states.get(2));
+		assertEquals(2, coalescer.getSuppressedCount("Item1"));
+	}
+	
+	@Test
+	public void testRuleOfGroupAppliesToMembers() {
+		ItemRegistryImpl registry = new ItemRegistryImpl();
+		TestItemProvider provider = new TestItemProvider();
+		provider.items.add(new TestItem("Sensors"));
+		provider.items.add(new TestItem("Power", "Sensors"));
+		provider.items.add(new TestItem("Meter", "Power"));
+		registry.addItemProvider(provider);
+		coalescer.setItemRegistry(registry);
+		
+		rules.put("Sensors", new Rule(60000, 0, false));
+		rules.put("Meter", new Rule(0, 0, false));
+		assertSame(rules.get("Sensors"), coalescer.getRule("Power"));
+		assertSame(rules.get("Meter"), coalescer.getRule("Meter"));
+		assertNull(coalescer.getRule("Unknown"));
+		
+		coalescer.update("Power", new NumberState(1));
+		coalescer.update("Power", new NumberState(2));
+		assertEquals(1, publisher.states.size());
+	}
+	
+	@Test
+	public void testResolvedRuleFollowsItemChanges() {
+		ItemRegistryImpl registry = new ItemRegistryImpl();
+		TestItemProvider provider = new TestItemProvider();
+		provider.items.add(new TestItem("Sensors"));
+		Item power = new TestItem("Power", "Sensors");
+		provider.items.add(power);
+		registry.addItemProvider(provider);
+		coalescer.setItemRegistry(registry);
+		
+		rules.put("Sensors", new Rule(60000, 0, false));
+		assertSame(rules.get("Sensors"), coalescer.getRule("Power"));
+		
+		// the item is not a member of the group anymore
+		provider.items.remove(power);
+		provider.listener.itemRemoved(provider, power);
+		Item newPower = new TestItem("Power");
+		provider.items.add(newPower);
+		provider.listener.itemAdded(provider, newPower);
+		assertNull(coalescer.getRule("Power"));
+	}
+	
+	@Test
+	public void testShutdownPublishesPendingUpdates() {
+		rules.put("Item1", new Rule(60000, 0, false));
+		coalescer.update("Item1", new NumberState(1));
+		coalescer.update("Item1", new NumberState(2));
+		assertEquals(1, publisher.states.size());
+		
+		coalescer.shutdown();
+		assertEquals(2, publisher.states.size());
+	}
+	
+	
+	class RecordingPublisher implements UpdatePublisher {
+		
+		List<State> states = new CopyOnWriteArrayList<State>();
+
+		public void publishUpdate(String itemName, State state) {
+			states.add(state);
+		}
+		
+	}
+	
+	@SuppressWarnings("serial")
+	class NumberState extends Number implements State {
+		
+		private final double value;
+		
+		public NumberState(double value) {
+			this.value = value;
+		}
+
+		public String format(String pattern) {
+			return String.format(pattern, value);
+		}
+
+		@Override
+		public int intValue() {
+			return (int) value;
+		}
+
+		@Override
+		public long longValue() {
+			return (long) value;
+		}
+
+		@Override
+		public float floatValue() {
+			return (float) value;
+		}
+
+		@Override
+		public double doubleValue() {
+			return value;
+		}
+		
+	}
+	
+	class TestItemProvider implements ItemProvider {
+		
+		List<Item> items = new ArrayList<Item>();
+		
+		ItemsChangeListener listener;
+
+		public Collection<Item> getItems() {
+			return items;
+		}
+
+		public void addItemChangeListener(ItemsChangeListener listener) {
+			this.listener = listener;
+		}
+
+		public void removeItemChangeListener(ItemsChangeListener listener) {
+			this.listener = null;
+		}
+		
+	}
+	
+	class TestItem extends GenericItem {
+
+		public TestItem(String name, String... groupNames) {
+			super(name);
+			for(String groupName : groupNames) {
+				this.groupNames.add(groupName);
+			}
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+		
+	}
+
+}
@@ -0,0 +1,286 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.items;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemProvider;
+import org.openhab.core.items.ItemsChangeListener;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ItemRegistryImplTest {
+	
+	private ItemRegistryImpl registry;
+	
+	private TestItemProvider provider;
+	
+	@Before
+	public void setup() {
+		registry = new ItemRegistryImpl();
+		provider = new TestItemProvider();
+		for(int i=0; i<100; i++) {
+			provider.items.add(new TestItem("Item" + i));
+		}
+		registry.addItemProvider(provider);
+	}
+	
+	@Test
+	public void testGetItemByName() throws ItemNotFoundException {
+		assertEquals("Item42", registry.getItem("Item42").getName());
+		assertSame(provider.items.get(99), registry.getItem("Item99"));
+	}
+
+	@Test(expected=ItemNotFoundException.class)
+	public void testGetUnknownItem() throws ItemNotFoundException {
+		registry.getItem("Unknown");
+	}
+
+	@Test
+	public void testGetItemByRegularExpression() throws ItemNotFoundException {
+		assertTrue(registry.getItem("Item1.").getName().startsWith("Item1"));
+		assertEquals("Item17", registry.getItem("Item1[7]").getName());
+	}
+
+	@Test
+	public void testGetItemsByPattern() {
+		assertEquals(11, registry.getItems("Item1*").size());
+		assertEquals(10, registry.getItems("Item?").size());
+		// the compiled pattern is reused on the second call
+		assertEquals(11, registry.getItems("Item1*").size());
+	}
+	
+	@Test
+	public void testItemAddedAndRemoved() throws ItemNotFoundException {
+		TestItem item = new TestItem("NewItem");
+		registry.itemAdded(provider, item);
+		assertSame(item, registry.getItem("NewItem"));
+		
+		registry.itemRemoved(provider, item);
+		try {
+			registry.getItem("NewItem");
+			fail("item should have been removed from the registry");
+		} catch(ItemNotFoundException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testAllItemsChanged() throws ItemNotFoundException {
+		provider.items.clear();
+		TestItem item = new TestItem("Item1");
+		provider.items.add(item);
+		registry.allItemsChanged(provider, null);
+		
+		assertSame(item, registry.getItem("Item1"));
+		assertEquals(1, registry.getItems().size());
+		try {
+			registry.getItem("Item2");
+			fail("item 'Item2' should have been removed from the registry");
+		} catch(ItemNotFoundException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testRemoveProviderKeepsItemsOfOtherProviders() throws ItemNotFoundException {
+		TestItemProvider otherProvider = new TestItemProvider();
+		TestItem otherItem = new TestItem("Item1");
+		otherProvider.items.add(otherItem);
+		registry.addItemProvider(otherProvider);
+		assertSame(otherItem, registry.getItem("Item1"));
+		
+		registry.removeItemProvider(provider);
+		assertSame(otherItem, registry.getItem("Item1"));
+		assertTrue(registry.getItems().size()==1);
+	}
+	
+	@Test
+	public void testRemovedItemUncoversItemOfOtherProvider() throws ItemNotFoundException {
+		TestItemProvider otherProvider = new TestItemProvider();
+		TestItem otherItem = new TestItem("Item1", "Group");
+		otherProvider.items.add(otherItem);
+		registry.addItemProvider(otherProvider);
+		assertSame(otherItem, registry.getItem("Item1"));
+		
+		registry.itemRemoved(otherProvider, otherItem);
+		assertSame(provider.items.get(1), registry.getItem("Item1"));
+		
+		Item item = provider.items.get(1);
+		registry.itemRemoved(provider, item);
+		try {
+			registry.getItem("Item1");
+			fail("item 'Item1' should have been removed from the registry");
+		} catch(ItemNotFoundException e) {
+			// expected
+		}
+		
+		GroupItem group = new GroupItem("Group");
+		registry.itemAdded(provider, group);
+		assertTrue(group.getMembers().isEmpty());
+	}
+	
+	@Test
+	public void testGroupMembersAreLinkedIndependentOfOrder() throws ItemNotFoundException {
+		TestItemProvider groupProvider = new TestItemProvider();
+		groupProvider.items.add(new TestItem("Member1", "Group1"));
+		groupProvider.items.add(new GroupItem("Group1"));
+		groupProvider.items.add(new TestItem("Member2", "Group1", "Group2"));
+		registry.addItemProvider(groupProvider);
+		
+		GroupItem group = (GroupItem) registry.getItem("Group1");
+		assertEquals(2, group.getMembers().size());
+		
+		// a group which is registered after its members picks them up as well
+		GroupItem lateGroup = new GroupItem("Group2");
+		registry.itemAdded(groupProvider, lateGroup);
+		assertEquals(1, lateGroup.getMembers().size());
+		assertSame(registry.getItem("Member2"), lateGroup.getMembers().get(0));
+	}
+	
+	@Test
+	public void testGroupMembersAreReplacedOnReload() throws ItemNotFoundException {
+		TestItemProvider groupProvider = new TestItemProvider();
+		groupProvider.items.add(new TestItem("Member1", "Group1"));
+		registry.addItemProvider(groupProvider);
+		
+		GroupItem group = new GroupItem("Group1");
+		provider.items.add(group);
+		registry.itemAdded(provider, group);
+		assertEquals(1, group.getMembers().size());
+		
+		groupProvider.items.clear();
+		groupProvider.items.add(new TestItem("Member1", "Group1"));
+		groupProvider.items.add(new TestItem("Member2", "Group1"));
+		registry.allItemsChanged(groupProvider, null);
+		assertEquals(2, group.getMembers().size());
+		assertTrue(group.getMembers().contains(registry.getItem("Member1")));
+		assertTrue(group.getMembers().contains(registry.getItem("Member2")));
+	}
+	
+	@Test
+	public void testGroupMembersAreUnlinkedByIdentity() throws ItemNotFoundException {
+		GroupItem group = new GroupItem("Group1");
+		provider.items.add(group);
+		registry.itemAdded(provider, group);
+		TestItemProvider groupProvider = new TestItemProvider();
+		Item member = new TestItem("Member1", "Group1");
+		groupProvider.items.add(member);
+		registry.addItemProvider(groupProvider);
+		
+		// an item that is equal to the member, but provided by another provider
+		TestItemProvider otherProvider = new TestItemProvider();
+		otherProvider.items.add(new TestItem("Member1", "Group1"));
+		registry.addItemProvider(otherProvider);
+		registry.removeItemProvider(otherProvider);
+		
+		assertEquals(1, group.getMembers().size());
+		assertSame(member, group.getMembers().get(0));
+	}
+	
+	@Test
+	public void testRemovedGroupReleasesItsMembers() throws ItemNotFoundException {
+		GroupItem parent = new GroupItem("Parent");
+		provider.items.add(parent);
+		registry.itemAdded(provider, parent);
+		TestItemProvider groupProvider = new TestItemProvider();
+		GroupItem oldChild = new GroupItem("Child");
+		oldChild.getGroupNames().add("Parent");
+		groupProvider.items.add(oldChild);
+		groupProvider.items.add(new TestItem("Member1", "Child"));
+		registry.addItemProvider(groupProvider);
+		assertEquals(1, parent.getAllMembers().size());
+		
+		groupProvider.items.clear();
+		GroupItem newChild = new GroupItem("Child");
+		newChild.getGroupNames().add("Parent");
+		groupProvider.items.add(newChild);
+		groupProvider.items.add(new TestItem("Member1", "Child"));
+		groupProvider.items.add(new TestItem("Member2", "Child"));
+		registry.allItemsChanged(groupProvider, null);
+		
+		assertTrue(oldChild.getMembers().isEmpty());
+		assertEquals(1, parent.getMembers().size());
+		assertSame(newChild, parent.getMembers().get(0));
+		assertEquals(2, parent.getAllMembers().size());
+	}
+	
+	class TestItemProvider implements ItemProvider {
+		
+		List<Item> items = new ArrayList<Item>();
+
+		public Collection<Item> getItems() {
+			return items;
+		}
+
+		public void addItemChangeListener(ItemsChangeListener listener) {
+		}
+
+		public void removeItemChangeListener(ItemsChangeListener listener) {
+		}
+		
+	}
+	
+	class TestItem extends GenericItem {
+
+		public TestItem(String name, String... groupNames) {
+			super(name);
+			for(String groupName : groupNames) {
+				this.groupNames.add(groupName);
+			}
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+		
+	}
+
+}
@@ -73,6 +73,23 @@ public class GroupItemTest {
 		}
 	}
 	
+	@Test
+	public void testGetAllMembersIsUpdatedOnNestedChanges() {
+		Assert.assertEquals(5, rootGroupItem.getAllMembers().size());
+		GroupItem subGroup = (GroupItem) rootGroupItem.getMembers().get(3);
+		GroupItem subSubGroup = new GroupItem("subSubGroup");
+		subGroup.addMember(subSubGroup);
+		Assert.assertEquals(5, rootGroupItem.getAllMembers().size());
+		
+		TestItem newMember = new TestItem("subSubGroup member 1");
+		subSubGroup.addMember(newMember);
+		Assert.assertEquals(6, rootGroupItem.getAllMembers().size());
+		Assert.assertTrue(rootGroupItem.getAllMembers().contains(newMember));
+		
+		subSubGroup.removeMember(newMember);
+		Assert.assertEquals(5, rootGroupItem.getAllMembers().size());
+	}
+	
 	
 	class TestItem extends GenericItem {
 
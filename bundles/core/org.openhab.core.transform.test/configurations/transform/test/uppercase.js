@@ -0,0 +1,2 @@
+// converts the input to upper case
+input.toUpperCase()
@@ -0,0 +1,167 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.transform.internal.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Test;
+import org.openhab.core.transform.TransformationException;
+import org.openhab.core.transform.internal.AbstractTransformationServiceTest;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class StreamingXPathEvaluatorTest extends AbstractTransformationServiceTest {
+
+	private static final String MIXED = "<?xml version=\"1.0\"?><root xmlns:x=\"urn:x\">" +
+		"<a id=\"1\"><b>first <i>nested</i> text</b></a>" +
+		"<a><b><c/>tail</b><b x:id=\"ns\" id=\"2\">second</b></a>" +
+		"<x:a><b id=\"3\">namespaced</b></x:a>" +
+		"<d><![CDATA[ <cdata> ]]></d></root>";
+
+	private static final String[] EXPRESSIONS = {
+		"/root/a/b", "/root/a/b/text()", "/root/a/@id", "//b/@id", "//a//b/@id", "/root/*/b/@id", 
+		"//i", "//d", "/root/a/b/c", "/root/b", "//missing/@id", "/root//b/text()", "//*/@id"
+	};
+
+	@Test
+	public void testCompile() {
+		assertNotNull(StreamingXPathEvaluator.compile("//current_conditions/temp_c/@data"));
+		assertNotNull(StreamingXPathEvaluator.compile("/root/*/text()"));
+
+		assertNull(StreamingXPathEvaluator.compile("count(//a)"));
+		assertNull(StreamingXPathEvaluator.compile("//a[@id='1']"));
+		assertNull(StreamingXPathEvaluator.compile("//x:a"));
+		assertNull(StreamingXPathEvaluator.compile("a/b"));
+		assertNull(StreamingXPathEvaluator.compile("/a/@id/b"));
+		assertNull(StreamingXPathEvaluator.compile("/a/.."));
+		assertNull(StreamingXPathEvaluator.compile("//@id"));
+	}
+
+	@Test
+	public void testSameResultAsDom() throws Exception {
+		for(String expression : EXPRESSIONS) {
+			assertEquals(expression, evaluateDom(expression, MIXED), 
+					StreamingXPathEvaluator.compile(expression).evaluate(MIXED));
+		}
+		String expression = "//current_conditions/temp_c/@data";
+		assertEquals("8", StreamingXPathEvaluator.compile(expression).evaluate(source));
+		assertEquals(evaluateDom("//forecast_conditions/condition/@data", source), 
+				StreamingXPathEvaluator.compile("//forecast_conditions/condition/@data").evaluate(source));
+	}
+
+	@Test
+	public void testTransformationService() throws TransformationException {
+		XPathTransformationService service = new XPathTransformationService();
+		// evaluated on a stream
+		assertEquals("second", service.transform("/root/a/b[@id]", MIXED));
+		assertEquals("2", service.transform("//b/@id", MIXED));
+		// evaluated on the DOM
+		assertEquals("2", service.transform("count(//b/@id)", MIXED));
+	}
+
+	/**
+	 * Compares evaluations per second of the previous implementation (new factories and a 
+	 * compiled expression for every call) with cached factories and expressions on the DOM and 
+	 * with the streaming evaluator, on a 10 KB and a 1 MB document. The selected node is the 
+	 * last one in the document, so that the streaming evaluator has to read it completely.
+	 * The results are printed, but not compared.
+	 */
+	@Test
+	public void testThroughput() throws Exception {
+		measure(10 * 1024, 500);
+		measure(1024 * 1024, 10);
+	}
+
+	private void measure(int size, int iterations) throws Exception {
+		String document = createDocument(size);
+		String expression = "/devices/status/temperature/@value";
+		StreamingXPathEvaluator streaming = StreamingXPathEvaluator.compile(expression);
+		Object dom = XPathFactory.newInstance().newXPath().compile(expression);
+		assertEquals("21", evaluateDom(expression, document));
+		assertEquals("21", streaming.evaluate(document));
+
+		// warm up all paths
+		for(int i = 0; i < iterations; i++) {
+			evaluateDom(expression, document);
+			((javax.xml.xpath.XPathExpression) dom).evaluate(XPathTransformationService.parse(document), XPathConstants.STRING);
+			streaming.evaluate(document);
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			evaluateDom(expression, document);
+		}
+		double uncached = iterations * 1000000000.0d / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			((javax.xml.xpath.XPathExpression) dom).evaluate(XPathTransformationService.parse(document), XPathConstants.STRING);
+		}
+		double cached = iterations * 1000000000.0d / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			streaming.evaluate(document);
+		}
+		double stream = iterations * 1000000000.0d / (System.nanoTime() - start);
+
+		System.out.println("XPath evaluations/sec on " + (document.length() / 1024) + " KB: " + (long) uncached 
+				+ " (uncached DOM), " + (long) cached + " (cached DOM), " + (long) stream + " (streaming)");
+	}
+
+	private static String createDocument(int size) {
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\"?><devices>");
+		for(int i = 0; document.length() < size; i++) {
+			document.append("<device id=\"").append(i).append("\"><name>Device ").append(i)
+				.append("</name><value unit=\"W\">").append(i % 100).append("</value></device>");
+		}
+		document.append("<status><temperature value=\"21\"/></status></devices>");
+		return document.toString();
+	}
+
+	private static String evaluateDom(String expression, String xml) throws Exception {
+		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+		domFactory.setNamespaceAware(true);
+		Document doc = domFactory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+		return (String) XPathFactory.newInstance().newXPath().compile(expression).evaluate(doc, XPathConstants.STRING);
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.transform.internal.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.transform.TransformationException;
+import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.AbstractTransformationServiceTest;
+import org.openhab.core.transform.internal.TransformationFileCache;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class TransformationFileCacheTest extends AbstractTransformationServiceTest {
+
+	private static final int ITERATIONS = 500;
+
+	private static final String TEMP_MAP = "test/temp.map";
+
+	private MapTransformationService mapService;
+	private XsltTransformationService xsltService;
+	private JavaScriptTransformationService javaScriptService;
+
+	@Before
+	public void init() {
+		mapService = new MapTransformationService();
+		xsltService = new XsltTransformationService();
+		javaScriptService = new JavaScriptTransformationService();
+		MapTransformationService.cache.clear();
+		XsltTransformationService.cache.clear();
+		JavaScriptTransformationService.cache.clear();
+	}
+
+	@After
+	public void cleanup() {
+		FileUtils.deleteQuietly(TransformationFileCache.getFile(TEMP_MAP));
+	}
+
+	@Test
+	public void testArtifactIsCached() throws TransformationException {
+		long loadCount = MapTransformationService.cache.getLoadCount();
+		assertEquals("an", mapService.transform("test/switch.map", "ON"));
+		Properties properties = MapTransformationService.cache.get("test/switch.map");
+		assertEquals("aus", mapService.transform("test/switch.map", "OFF"));
+
+		assertSame(properties, MapTransformationService.cache.get("test/switch.map"));
+		assertEquals(loadCount + 1, MapTransformationService.cache.getLoadCount());
+	}
+
+	@Test
+	public void testReloadOnChange() throws Exception {
+		long loadCount = MapTransformationService.cache.getLoadCount();
+		File file = TransformationFileCache.getFile(TEMP_MAP);
+		writeFile(file, "ON=an\n", 1000000000000L);
+		assertEquals("an", mapService.transform(TEMP_MAP, "ON"));
+
+		writeFile(file, "ON=eingeschaltet\n", 1000000001000L);
+		assertEquals("eingeschaltet", mapService.transform(TEMP_MAP, "ON"));
+		assertEquals(loadCount + 2, MapTransformationService.cache.getLoadCount());
+
+		FileUtils.forceDelete(file);
+		try {
+			mapService.transform(TEMP_MAP, "ON");
+			fail("a deleted file must not be served from the cache");
+		} catch (TransformationException e) {
+			assertEquals(0, MapTransformationService.cache.size());
+		}
+	}
+
+	@Test
+	public void testInvalidate() throws TransformationException {
+		long loadCount = XsltTransformationService.cache.getLoadCount();
+		xsltService.transform("http/google_weather.xsl", source);
+		XsltTransformationService.cache.invalidate("http/google_weather.xsl");
+		assertEquals("8", xsltService.transform("http/google_weather.xsl", source));
+		assertEquals(loadCount + 2, XsltTransformationService.cache.getLoadCount());
+	}
+
+	@Test
+	public void testJavaScript() throws TransformationException {
+		long loadCount = JavaScriptTransformationService.cache.getLoadCount();
+		assertEquals("ABC", javaScriptService.transform("test/uppercase.js", "abc"));
+		assertEquals("DEF", javaScriptService.transform("test/uppercase.js", "def"));
+		assertEquals(loadCount + 1, JavaScriptTransformationService.cache.getLoadCount());
+	}
+
+	/**
+	 * Compares the transformations per second with a cache that is cleared before
+	 * every call (i.e. the previous behaviour of reading the file each time) to the
+	 * cached artifacts.
+	 */
+	@Test
+	public void testThroughput() throws TransformationException {
+		assertTrue(measure(mapService, MapTransformationService.cache, "test/switch.map", "ON"));
+		assertTrue(measure(xsltService, XsltTransformationService.cache, "http/google_weather.xsl", source));
+		assertTrue(measure(javaScriptService, JavaScriptTransformationService.cache, "test/uppercase.js", "abc"));
+	}
+
+	private boolean measure(TransformationService service, TransformationFileCache<?> cache,
+			String filename, String input) throws TransformationException {
+		// warm up both paths
+		for(int i = 0; i < 20; i++) {
+			cache.clear();
+			service.transform(filename, input);
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			cache.clear();
+			service.transform(filename, input);
+		}
+		double uncached = ITERATIONS * 1000000000.0d / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			service.transform(filename, input);
+		}
+		double cached = ITERATIONS * 1000000000.0d / (System.nanoTime() - start);
+
+		System.out.println(service.getClass().getSimpleName() + " transformations/sec for '" + filename + "': "
+				+ (long) uncached + " (uncached), " + (long) cached + " (cached)");
+		return cached > uncached;
+	}
+
+	private static void writeFile(File file, String content, long lastModified) throws IOException {
+		FileUtils.writeStringToFile(file, content);
+		file.setLastModified(lastModified);
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.transform.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map with a fixed capacity which evicts the least recently accessed entry
+ * when a new entry would exceed the capacity. It is used to keep compiled
+ * expressions of the transformation services, which are usually few and
+ * reused all the time.
+ * <p>
+ * <b>Note:</b> this class is not thread safe; wrap it with 
+ * {@link java.util.Collections#synchronizedMap(Map)} or keep one instance per thread.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = 2712376475846913463L;
+
+	private final int capacity;
+
+	public LRUCache(int capacity) {
+		super(16, 0.75f, true);
+		this.capacity = capacity;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > capacity;
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.transform.internal;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openhab.config.core.ConfigDispatcher;
+import org.openhab.core.transform.TransformationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache for artifacts (parsed maps, compiled stylesheets or scripts) that are
+ * created from files in the 'configurations/transform' folder. Each entry remembers
+ * the last modification time and size of its file; an entry is reloaded as soon as
+ * the file on disk differs from the one it has been created from, so that changes
+ * to transformation files take effect without a restart.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ * @param <T> the type of the cached artifact
+ */
+public class TransformationFileCache<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransformationFileCache.class);
+
+	/**
+	 * Creates the artifact for a given transformation file.
+	 * 
+	 * @param <T> the type of the created artifact
+	 */
+	public interface Loader<T> {
+		
+		/**
+		 * Reads and compiles the given file.
+		 * 
+		 * @param file the transformation file to load
+		 * @return the artifact, never <code>null</code>
+		 * @throws Exception if the file cannot be read or compiled
+		 */
+		T load(File file) throws Exception;
+	}
+
+	private final Loader<T> loader;
+
+	private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<String, Entry<T>>();
+
+	private volatile long loadCount = 0;
+
+	public TransformationFileCache(Loader<T> loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Returns the artifact for the given file name, loading it if it hasn't been
+	 * loaded before or if the file has changed since.
+	 * 
+	 * @param filename the name of the file relative to the transform folder; it
+	 * may contain subfolders
+	 * @return the cached or freshly loaded artifact
+	 * @throws TransformationException if the file cannot be loaded
+	 */
+	public T get(String filename) throws TransformationException {
+		File file = getFile(filename);
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		Entry<T> entry = entries.get(filename);
+		if(entry != null && entry.lastModified == lastModified && entry.length == length) {
+			return entry.artifact;
+		}
+
+		synchronized(this) {
+			// another thread might have reloaded the file meanwhile
+			entry = entries.get(filename);
+			if(entry != null && entry.lastModified == lastModified && entry.length == length) {
+				return entry.artifact;
+			}
+			if(lastModified == 0L) {
+				entries.remove(filename);
+				throw new TransformationException("transformation file '" + filename + "' does not exist");
+			}
+			try {
+				T artifact = loader.load(file);
+				entries.put(filename, new Entry<T>(artifact, lastModified, length));
+				loadCount++;
+				logger.debug("{} transformation file '{}'", entry == null ? "Loaded" : "Reloaded", filename);
+				return artifact;
+			} catch (TransformationException e) {
+				entries.remove(filename);
+				throw e;
+			} catch (Exception e) {
+				entries.remove(filename);
+				throw new TransformationException("loading transformation file '" + filename + "' throws exception", e);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry for the given file name, so that it is loaded again on next access.
+	 * 
+	 * @param filename the name of the file relative to the transform folder
+	 */
+	public void invalidate(String filename) {
+		entries.remove(filename);
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of files currently held in the cache
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of times a file has been (re)loaded since this cache was created
+	 */
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * Returns the {@link File} for the given file name within the transform folder
+	 * 
+	 * @param filename the name of the file relative to the transform folder
+	 * @return the corresponding {@link File}
+	 */
+	public static File getFile(String filename) {
+		return new File(ConfigDispatcher.getConfigFolder() + File.separator
+				+ TransformationActivator.TRANSFORM_FOLDER_NAME + File.separator + filename);
+	}
+
+	private static class Entry<T> {
+
+		final T artifact;
+		final long lastModified;
+		final long length;
+
+		Entry(T artifact, long lastModified, long length) {
+			this.artifact = artifact;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+}
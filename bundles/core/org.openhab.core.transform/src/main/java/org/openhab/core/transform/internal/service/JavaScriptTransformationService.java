@@ -29,20 +29,18 @@
 package org.openhab.core.transform.internal.service;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
-import org.apache.commons.io.IOUtils;
-import org.openhab.config.core.ConfigDispatcher;
+import org.apache.commons.io.FileUtils;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
-import org.openhab.core.transform.internal.TransformationActivator;
+import org.openhab.core.transform.internal.TransformationFileCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +56,18 @@ public class JavaScriptTransformationService implements TransformationService {
 	static final Logger logger = 
 		LoggerFactory.getLogger(JavaScriptTransformationService.class);
 	
+	/** the compiled scripts, the engine is only looked up when a script is (re)loaded */
+	static final TransformationFileCache<JavaScript> cache = new TransformationFileCache<JavaScript>(
+		new TransformationFileCache.Loader<JavaScript>() {
+			public JavaScript load(File file) throws Exception {
+				ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+				if (engine == null) {
+					throw new TransformationException("No Java Script engine available.");
+				}
+				return new JavaScript(engine, FileUtils.readFileToString(file));
+			}
+		});
+	
 	/**
 	 * Transforms the input <code>source</code> by Java Script. It expects the
 	 * transformation rule to be read from a file which is stored under the
@@ -80,32 +90,22 @@ public class JavaScriptTransformationService implements TransformationService {
 
 		logger.debug("about to transform '{}' by the Java Script '{}'", source, filename);
 
-		Reader reader;
+		JavaScript script;
 
 		try {
-			String path = ConfigDispatcher.getConfigFolder() 
-				+ File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME
-				+ File.separator + filename;
-			reader = new InputStreamReader(new FileInputStream(path));
-		} catch (FileNotFoundException e) {
+			script = cache.get(filename);
+		} catch (TransformationException e) {
 			throw new TransformationException("An error occured while loading script.", e);
 		}
 
-		ScriptEngineManager manager = new ScriptEngineManager();
-		
-		ScriptEngine engine = manager.getEngineByName("javascript");
-		engine.put("input", source);
-
 		Object result = null;
 
 		long startTime = System.currentTimeMillis();
 
 		try {
-			result = engine.eval(reader);
+			result = script.eval(source);
 		} catch (ScriptException e) {
 			throw new TransformationException("An error occured while executing script.", e);
-		} finally {
-			IOUtils.closeQuietly(reader);
 		}
 
 		logger.trace("JavaScript execution elapsed {} ms", System.currentTimeMillis() - startTime);
@@ -113,4 +113,44 @@ public class JavaScriptTransformationService implements TransformationService {
 		return String.valueOf(result);
 	}
 
+	/**
+	 * A loaded transformation script, compiled if the engine supports it. Every
+	 * evaluation gets its own bindings, so that the 'input' variable of concurrent
+	 * transformations doesn't interfere. 
+	 */
+	static class JavaScript {
+
+		private final ScriptEngine engine;
+		private final String source;
+		private final CompiledScript compiledScript;
+		private final boolean threadSafe;
+
+		JavaScript(ScriptEngine engine, String source) throws ScriptException {
+			this.engine = engine;
+			this.source = source;
+			this.compiledScript = engine instanceof Compilable ? ((Compilable) engine).compile(source) : null;
+			// engines declaring no threading support must not be used concurrently
+			this.threadSafe = engine.getFactory().getParameter("THREADING") != null;
+		}
+
+		Object eval(String input) throws ScriptException {
+			Bindings bindings = engine.createBindings();
+			bindings.put("input", input);
+			if (threadSafe) {
+				return evalWithBindings(bindings);
+			}
+			synchronized (this) {
+				return evalWithBindings(bindings);
+			}
+		}
+
+		private Object evalWithBindings(Bindings bindings) throws ScriptException {
+			if (compiledScript != null) {
+				return compiledScript.eval(bindings);
+			} else {
+				return engine.eval(source, bindings);
+			}
+		}
+	}
+
 }
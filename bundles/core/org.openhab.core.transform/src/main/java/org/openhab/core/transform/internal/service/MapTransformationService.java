@@ -30,15 +30,13 @@ package org.openhab.core.transform.internal.service;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.IOException;
 import java.io.Reader;
 import java.util.Properties;
 
 import org.apache.commons.io.IOUtils;
-import org.openhab.config.core.ConfigDispatcher;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
-import org.openhab.core.transform.internal.TransformationActivator;
+import org.openhab.core.transform.internal.TransformationFileCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +52,22 @@ public class MapTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(MapTransformationService.class);
 
+	/** the parsed mapping files; {@link Properties} can safely be read by several threads */
+	static final TransformationFileCache<Properties> cache = new TransformationFileCache<Properties>(
+		new TransformationFileCache.Loader<Properties>() {
+			public Properties load(File file) throws Exception {
+				Reader reader = null;
+				try {
+					Properties properties = new Properties();
+					reader = new FileReader(file);
+					properties.load(reader);
+					return properties;
+				} finally {
+					IOUtils.closeQuietly(reader);
+				}
+			}
+		});
+
 	/**
 	 * <p>
 	 * Transforms the input <code>source</code> by mapping it to another string. It expects the mappings to be read from a file which
@@ -76,26 +90,22 @@ public class MapTransformationService implements TransformationService {
 			throw new TransformationException("the given parameters 'filename' and 'source' must not be null");
 		}
 
-		Reader reader = null;
+		Properties properties;
 		try {
-			String path = ConfigDispatcher.getConfigFolder() + File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME + File.separator + filename;
-			Properties properties = new Properties();
-			reader = new FileReader(path);
-			properties.load(reader);
-			String target = properties.getProperty(source);
-			if(target!=null) {
-				logger.debug("transformation resulted in '{}'", target);
-				return target;
-			} else {
-				logger.warn("Could not find a mapping for '{}' in the file '{}'.", source, filename);
-				return "";
-			}
-		} catch (IOException e) {
+			properties = cache.get(filename);
+		} catch (TransformationException e) {
 			String message = "opening file '" + filename + "' throws exception";
 			logger.error(message, e);
 			throw new TransformationException(message, e);
-		} finally {
-			IOUtils.closeQuietly(reader);
+		}
+
+		String target = properties.getProperty(source);
+		if(target!=null) {
+			logger.debug("transformation resulted in '{}'", target);
+			return target;
+		} else {
+			logger.warn("Could not find a mapping for '{}' in the file '{}'.", source, filename);
+			return "";
 		}
 	}
 
@@ -28,11 +28,14 @@
  */
 package org.openhab.core.transform.internal.service;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.LRUCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +53,13 @@ public class RegExTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(RegExTransformationService.class);
 
+	/** the maximum number of compiled patterns which are kept */
+	static final int PATTERN_CACHE_SIZE = 64;
+
+	/** the compiled patterns by their expression; {@link Pattern}s are thread safe */
+	private static final Map<String, Pattern> patternCache = 
+		Collections.synchronizedMap(new LRUCache<String, Pattern>(PATTERN_CACHE_SIZE));
+
 	/**
 	 * @{inheritDoc
 	 */
@@ -61,7 +71,7 @@ public class RegExTransformationService implements TransformationService {
 
 		logger.debug("about to transform '{}' by the function '{}'", source, regExpression);
 
-		Matcher matcher = Pattern.compile("^" + regExpression + "$", Pattern.DOTALL).matcher(source.trim());
+		Matcher matcher = compile(regExpression).matcher(source.trim());
 		if (!matcher.matches()) {
 			logger.debug("the given regex '^{}$' doesn't match the given content '{}' -> couldn't compute transformation", regExpression, source);
 			return null;
@@ -86,4 +96,13 @@ public class RegExTransformationService implements TransformationService {
 		return result;
 	}
 
+	private static Pattern compile(String regExpression) {
+		Pattern pattern = patternCache.get(regExpression);
+		if (pattern == null) {
+			pattern = Pattern.compile("^" + regExpression + "$", Pattern.DOTALL);
+			patternCache.put(regExpression, pattern);
+		}
+		return pattern;
+	}
+
 }
@@ -0,0 +1,261 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.transform.internal.service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>
+ * Evaluates simple XPath location paths on a stream of StAX events, without 
+ * building a DOM. Evaluation stops as soon as the first matching node has been
+ * read, which makes this considerably cheaper than a DOM based evaluation on 
+ * large documents.
+ * </p>
+ * <p>
+ * Supported are absolute paths consisting of child (<code>/</code>) and descendant 
+ * (<code>//</code>) steps with element names or <code>*</code>, optionally followed by
+ * a final <code>/@attribute</code> or <code>/text()</code> step, e.g. 
+ * <code>//current_conditions/temp_c/@data</code>. Like the XPath 'string()' function,
+ * the result is the string value of the first selected node in document order or 
+ * an empty string, if no node is selected. Use {@link #compile(String)} to check
+ * whether an expression can be evaluated this way.
+ * </p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+class StreamingXPathEvaluator {
+
+	private static final Pattern NAME_PATTERN = Pattern.compile("\\*|[A-Za-z_][\\w.\\-]*");
+
+	private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			return factory;
+		}
+	};
+
+	/** the element names of the location path, '*' stands for any element */
+	private final String[] names;
+
+	/** for every element step, whether it is preceded by '//' */
+	private final boolean[] descendant;
+
+	/** the name of the selected attribute or <code>null</code> if an element (or its text) is selected */
+	private final String attribute;
+
+	/** whether only the first text node of the element is selected */
+	private final boolean text;
+
+	private StreamingXPathEvaluator(String[] names, boolean[] descendant, String attribute, boolean text) {
+		this.names = names;
+		this.descendant = descendant;
+		this.attribute = attribute;
+		this.text = text;
+	}
+
+	/**
+	 * Compiles the given expression, if it is simple enough to be evaluated on a stream.
+	 * 
+	 * @param expression the XPath expression to compile
+	 * @return the evaluator or <code>null</code>, if the expression is not supported
+	 */
+	static StreamingXPathEvaluator compile(String expression) {
+		String path = expression.trim();
+		if(!path.startsWith("/") || path.endsWith("/")) {
+			return null;
+		}
+
+		List<String> names = new ArrayList<String>();
+		List<Boolean> descendant = new ArrayList<Boolean>();
+		String attribute = null;
+		boolean text = false;
+
+		int pos = 0;
+		while(pos < path.length()) {
+			if(attribute != null || text) {
+				// nothing may follow an attribute or text() step
+				return null;
+			}
+			boolean isDescendant = path.startsWith("//", pos);
+			pos += isDescendant ? 2 : 1;
+			int end = path.indexOf('/', pos);
+			String step = path.substring(pos, end < 0 ? path.length() : end);
+			pos = end < 0 ? path.length() : end;
+
+			if(step.startsWith("@")) {
+				if(isDescendant || names.isEmpty() || !NAME_PATTERN.matcher(step.substring(1)).matches() 
+						|| step.equals("@*")) {
+					return null;
+				}
+				attribute = step.substring(1);
+			} else if(step.equals("text()")) {
+				if(isDescendant || names.isEmpty()) {
+					return null;
+				}
+				text = true;
+			} else if(NAME_PATTERN.matcher(step).matches()) {
+				names.add(step);
+				descendant.add(isDescendant);
+			} else {
+				// predicates, functions, other axes or namespace prefixes
+				return null;
+			}
+		}
+
+		boolean[] descendantArray = new boolean[descendant.size()];
+		for(int i = 0; i < descendantArray.length; i++) {
+			descendantArray[i] = descendant.get(i);
+		}
+		return new StreamingXPathEvaluator(names.toArray(new String[names.size()]), descendantArray, attribute, text);
+	}
+
+	/**
+	 * Evaluates the location path on the given document.
+	 * 
+	 * @param source the XML document
+	 * @return the string value of the first selected node or an empty string
+	 * @throws XMLStreamException if the document is not well-formed
+	 */
+	String evaluate(String source) throws XMLStreamException {
+		XMLStreamReader reader = inputFactory.get().createXMLStreamReader(new StringReader(source));
+		try {
+			List<String> stack = new ArrayList<String>();
+			while(reader.hasNext()) {
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT) {
+					String namespace = reader.getNamespaceURI();
+					// names without prefix only select elements without namespace, so we qualify all others
+					stack.add(isEmpty(namespace) ? reader.getLocalName() : "{" + namespace + "}" + reader.getLocalName());
+					if(matches(stack)) {
+						String value = attribute != null ? getAttributeValue(reader) : readValue(reader);
+						if(value != null) {
+							return value;
+						}
+						if(attribute == null) {
+							// the element has been read completely, but contained no text node
+							stack.remove(stack.size() - 1);
+						}
+					}
+				} else if(event == XMLStreamConstants.END_ELEMENT) {
+					stack.remove(stack.size() - 1);
+				}
+			}
+			return "";
+		} finally {
+			reader.close();
+		}
+	}
+
+	private String getAttributeValue(XMLStreamReader reader) {
+		for(int i = 0; i < reader.getAttributeCount(); i++) {
+			if(attribute.equals(reader.getAttributeLocalName(i)) && isEmpty(reader.getAttributeNamespace(i))) {
+				return reader.getAttributeValue(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the string value of the current element, i.e. all its descendant text,
+	 * or only its first text node if <code>text()</code> has been selected.
+	 * 
+	 * @return the value or <code>null</code>, if <code>text()</code> has been selected 
+	 * and the element has no text node
+	 */
+	private String readValue(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder value = new StringBuilder();
+		int depth = 1;
+		while(depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			switch(event) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if(!text) {
+						value.append(reader.getText());
+					} else if(depth == 1) {
+						return reader.getText();
+					}
+					break;
+			}
+		}
+		return text ? null : value.toString();
+	}
+
+	private boolean matches(List<String> stack) {
+		String last = names[names.length - 1];
+		String current = stack.get(stack.size() - 1);
+		if(!last.equals("*") && !last.equals(current)) {
+			return false;
+		}
+		return matches(stack, 0, 0);
+	}
+
+	private boolean matches(List<String> stack, int step, int depth) {
+		if(step == names.length) {
+			return depth == stack.size();
+		}
+		if(descendant[step]) {
+			for(int i = depth; i < stack.size(); i++) {
+				if(nameMatches(step, stack.get(i)) && matches(stack, step + 1, i + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return depth < stack.size() && nameMatches(step, stack.get(depth)) && matches(stack, step + 1, depth + 1);
+	}
+
+	private boolean nameMatches(int step, String name) {
+		return names[step].equals("*") || names[step].equals(name);
+	}
+
+	private static boolean isEmpty(String namespace) {
+		return namespace == null || namespace.length() == 0;
+	}
+
+}
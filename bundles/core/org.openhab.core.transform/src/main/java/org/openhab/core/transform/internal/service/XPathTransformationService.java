@@ -29,9 +29,11 @@
 package org.openhab.core.transform.internal.service;
 
 import java.io.StringReader;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -39,6 +41,7 @@ import javax.xml.xpath.XPathFactory;
 
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.LRUCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -48,6 +51,12 @@ import org.xml.sax.InputSource;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by XPath Expressions.
  * </p>
+ * <p>
+ * Simple location paths are evaluated by a {@link StreamingXPathEvaluator} without building a DOM,
+ * all other expressions are compiled and evaluated on the parsed document. Neither the JAXP factories
+ * nor compiled {@link XPathExpression}s are thread safe, so every thread keeps its own parser, 
+ * {@link XPath} instance and cache of compiled expressions.
+ * </p>
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @since 0.7.0
@@ -56,6 +65,37 @@ public class XPathTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(XPathTransformationService.class);
 
+	/** the maximum number of compiled expressions which are kept per thread */
+	static final int EXPRESSION_CACHE_SIZE = 64;
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+			domFactory.setNamespaceAware(true);
+			domFactory.setValidating(false);
+			try {
+				return domFactory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new IllegalStateException("cannot create a namespace aware document builder", e);
+			}
+		}
+	};
+
+	private static final ThreadLocal<XPath> xpath = new ThreadLocal<XPath>() {
+		@Override
+		protected XPath initialValue() {
+			return XPathFactory.newInstance().newXPath();
+		}
+	};
+
+	private static final ThreadLocal<Map<String, Object>> expressionCache = new ThreadLocal<Map<String, Object>>() {
+		@Override
+		protected Map<String, Object> initialValue() {
+			return new LRUCache<String, Object>(EXPRESSION_CACHE_SIZE);
+		}
+	};
+
 	/**
 	 * @{inheritDoc
 	 */
@@ -67,36 +107,63 @@ public class XPathTransformationService implements TransformationService {
 
 		logger.debug("about to transform '{}' by the function '{}'", source, xpathExpression);
 
-		StringReader stringReader = null;
-
 		try {
-			DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-			domFactory.setNamespaceAware(true);
-			domFactory.setValidating(false);
-			DocumentBuilder builder = domFactory.newDocumentBuilder();
-
-			stringReader = new StringReader(source);
-			InputSource inputSource = new InputSource(stringReader);
-			inputSource.setEncoding("UTF-8");
-
-			Document doc = builder.parse(inputSource);
-
-			XPath xpath = XPathFactory.newInstance().newXPath();
-			XPathExpression expr = xpath.compile(xpathExpression);
+			Object expr = compile(xpathExpression);
 
-			String transformationResult = (String) expr.evaluate(doc, XPathConstants.STRING);
+			String transformationResult;
+			if (expr instanceof StreamingXPathEvaluator) {
+				transformationResult = ((StreamingXPathEvaluator) expr).evaluate(source);
+			} else {
+				transformationResult = (String) ((XPathExpression) expr).evaluate(parse(source), XPathConstants.STRING);
+			}
 
 			logger.debug("transformation resulted in '{}'", transformationResult);
 
 			return transformationResult;
 		} catch (Exception e) {
 			throw new TransformationException("transformation throws exceptions", e);
-		} finally {
-			if (stringReader != null) {
-				stringReader.close();
+		}
+
+	}
+
+	/**
+	 * Returns the compiled form of the given expression from the cache of the current thread.
+	 * 
+	 * @param xpathExpression the expression to compile
+	 * @return a {@link StreamingXPathEvaluator} for simple location paths, an {@link XPathExpression} otherwise
+	 * @throws Exception if the expression is invalid
+	 */
+	static Object compile(String xpathExpression) throws Exception {
+		Map<String, Object> cache = expressionCache.get();
+		Object expr = cache.get(xpathExpression);
+		if (expr == null) {
+			expr = StreamingXPathEvaluator.compile(xpathExpression);
+			if (expr == null) {
+				expr = xpath.get().compile(xpathExpression);
 			}
+			cache.put(xpathExpression, expr);
 		}
+		return expr;
+	}
 
+	/**
+	 * Parses the given XML document with the document builder of the current thread.
+	 * 
+	 * @param source the XML document
+	 * @return the parsed document
+	 * @throws Exception if the document cannot be parsed
+	 */
+	static Document parse(String source) throws Exception {
+		DocumentBuilder builder = documentBuilder.get();
+		StringReader stringReader = new StringReader(source);
+		try {
+			InputSource inputSource = new InputSource(stringReader);
+			inputSource.setEncoding("UTF-8");
+			return builder.parse(inputSource);
+		} finally {
+			builder.reset();
+			stringReader.close();
+		}
 	}
 
 }
@@ -32,16 +32,15 @@ import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
 
-import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.openhab.config.core.ConfigDispatcher;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
-import org.openhab.core.transform.internal.TransformationActivator;
+import org.openhab.core.transform.internal.TransformationFileCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +56,17 @@ public class XsltTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(XsltTransformationService.class);
 
+	/** 
+	 * the compiled stylesheets; {@link Templates} are thread safe and hand out a new
+	 * (cheap) {@link Transformer} for every transformation
+	 */
+	static final TransformationFileCache<Templates> cache = new TransformationFileCache<Templates>(
+		new TransformationFileCache.Loader<Templates>() {
+			public Templates load(File file) throws Exception {
+				return TransformerFactory.newInstance().newTemplates(new StreamSource(file));
+			}
+		});
+
 	/**
 	 * <p>
 	 * Transforms the input <code>source</code> by XSLT. It expects the transformation rule to be read from a file which
@@ -79,27 +89,24 @@ public class XsltTransformationService implements TransformationService {
 			throw new TransformationException("the given parameters 'filename' and 'source' must not be null");
 		}
 
-		Source xsl = null;
+		Templates xsl;
 
 		try {
-			String path = ConfigDispatcher.getConfigFolder() + File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME + File.separator + filename;
-			xsl = new StreamSource(new File(path));
-		} catch (Exception e) {
+			xsl = cache.get(filename);
+		} catch (TransformationException e) {
 			String message = "opening file '" + filename + "' throws exception";
 
 			logger.error(message, e);
 			throw new TransformationException(message, e);
 		}
 
-		logger.debug("about to transform '{}' by the function '{}'", source, xsl);
+		logger.debug("about to transform '{}' by the function '{}'", source, filename);
 
 		StringReader xml = new StringReader(source);
 		StringWriter out = new StringWriter();
 
-		Transformer transformer;
-
 		try {
-			transformer = TransformerFactory.newInstance().newTransformer(xsl);
+			Transformer transformer = xsl.newTransformer();
 			transformer.transform(new StreamSource(xml), new StreamResult(out));
 		} catch (Exception e) {
 			logger.error("transformation throws exception", e);
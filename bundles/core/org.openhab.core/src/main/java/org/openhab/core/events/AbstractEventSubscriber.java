@@ -28,38 +28,32 @@
  */
 package org.openhab.core.events;
 
-import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
-import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
-
 import org.openhab.core.types.Command;
-import org.openhab.core.types.State;
 import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
 
-abstract public class AbstractEventSubscriber implements EventSubscriber, EventHandler {
+abstract public class AbstractEventSubscriber implements EventSubscriber, EventHandler, ItemEventListener {
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void handleEvent(Event event) {  
-		String itemName = (String) event.getProperty("item");
-		
-		String topic = event.getTopic();
-		String[] topicParts = topic.split(TOPIC_SEPERATOR);
-		
-		if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
-			return; // we have received an event with an invalid topic
+		ItemEvent itemEvent = ItemEvent.fromEvent(event);
+		if(itemEvent!=null) {
+			handleItemEvent(itemEvent);
 		}
-		String operation = topicParts[1];
-		
-		if(operation.equals(EventType.UPDATE.toString())) {
-			State newState = (State) event.getProperty("state");
-			if(newState!=null) receiveUpdate(itemName, newState);
-		}
-		if(operation.equals(EventType.COMMAND.toString())) {
-			Command command = (Command) event.getProperty("command");
-			if(command!=null) receiveCommand(itemName, command);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void handleItemEvent(ItemEvent event) {
+		if(event.getType()==EventType.UPDATE) {
+			receiveUpdate(event.getItemName(), event.getState());
+		} else if(event.getType()==EventType.COMMAND) {
+			receiveCommand(event.getItemName(), event.getCommand());
 		}
 	}
 	
@@ -0,0 +1,139 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.events;
+
+import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
+import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
+
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.Type;
+import org.osgi.service.event.Event;
+
+/**
+ * An ItemEvent is the typed representation of a message on the openHAB event bus.
+ * It carries the {@link EventType}, the name of the item and the payload, which
+ * is a {@link State} for updates and a {@link Command} for commands. 
+ * 
+ * In contrast to OSGi {@link Event}s, no topic needs to be built or parsed to 
+ * deliver an ItemEvent to an {@link ItemEventListener}.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+public final class ItemEvent {
+
+	private final EventType type;
+	
+	private final String itemName;
+	
+	private final Type payload;
+
+	private ItemEvent(EventType type, String itemName, Type payload) {
+		this.type = type;
+		this.itemName = itemName;
+		this.payload = payload;
+	}
+	
+	public static ItemEvent createUpdateEvent(String itemName, State newState) {
+		return new ItemEvent(EventType.UPDATE, itemName, newState);
+	}
+
+	public static ItemEvent createCommandEvent(String itemName, Command command) {
+		return new ItemEvent(EventType.COMMAND, itemName, command);
+	}
+	
+	/**
+	 * Converts an OSGi event of the openHAB event bus into an ItemEvent.
+	 * 
+	 * @param event the OSGi event to convert
+	 * @return the corresponding ItemEvent or <code>null</code>, if the event 
+	 * has an invalid topic or does not carry a valid payload
+	 */
+	public static ItemEvent fromEvent(Event event) {
+		String topic = event.getTopic();
+		String prefix = TOPIC_PREFIX + TOPIC_SEPERATOR;
+		if(!topic.startsWith(prefix)) {
+			return null; // we have received an event with an invalid topic
+		}
+		int operationEnd = topic.indexOf(TOPIC_SEPERATOR, prefix.length());
+		if(operationEnd < 0 || operationEnd == topic.length() - 1) {
+			return null;
+		}
+		String operation = topic.substring(prefix.length(), operationEnd);
+		String itemName = (String) event.getProperty("item");
+		
+		if(operation.equals(EventType.UPDATE.toString())) {
+			Object state = event.getProperty("state");
+			if(state instanceof State) {
+				return createUpdateEvent(itemName, (State) state);
+			}
+		} else if(operation.equals(EventType.COMMAND.toString())) {
+			Object command = event.getProperty("command");
+			if(command instanceof Command) {
+				return createCommandEvent(itemName, (Command) command);
+			}
+		}
+		return null;
+	}
+
+	public EventType getType() {
+		return type;
+	}
+
+	public String getItemName() {
+		return itemName;
+	}
+
+	public Type getPayload() {
+		return payload;
+	}
+	
+	/**
+	 * @return the new state of an update event or <code>null</code>, if this is no update event
+	 */
+	public State getState() {
+		return type==EventType.UPDATE ? (State) payload : null;
+	}
+
+	/**
+	 * @return the command of a command event or <code>null</code>, if this is no command event
+	 */
+	public Command getCommand() {
+		return type==EventType.COMMAND ? (Command) payload : null;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + itemName + ": " + payload;
+	}
+	
+}
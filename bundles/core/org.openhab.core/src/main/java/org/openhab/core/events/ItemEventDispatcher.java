@@ -0,0 +1,61 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.events;
+
+import org.openhab.core.types.EventType;
+
+/**
+ * The ItemEventDispatcher delivers {@link ItemEvent}s directly to registered
+ * {@link ItemEventListener}s, without going through the OSGi EventAdmin. 
+ * Listeners are indexed by event type and item name, so that an event is only
+ * passed to the listeners that are actually interested in it.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+public interface ItemEventDispatcher {
+
+	/**
+	 * Registers a listener for events of the given type.
+	 * 
+	 * @param listener the listener to register
+	 * @param type the type of events to receive
+	 * @param itemName the name of the item to receive events for or <code>null</code> for all items
+	 */
+	public void addItemEventListener(ItemEventListener listener, EventType type, String itemName);
+	
+	/**
+	 * Removes all registrations of the given listener.
+	 * 
+	 * @param listener the listener to remove
+	 */
+	public void removeItemEventListener(ItemEventListener listener);
+	
+}
@@ -31,15 +31,45 @@ package org.openhab.core.internal.events;
 import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
 import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Dictionary;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.openhab.core.events.EventPublisher;
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.events.ItemEventDispatcher;
+import org.openhab.core.events.ItemEventListener;
+import org.openhab.core.internal.events.EventQueue.OverflowPolicy;
+import org.openhab.core.internal.events.EventQueue.QueuedEvent;
+import org.openhab.core.internal.events.UpdateCoalescer.Rule;
+import org.openhab.core.internal.events.UpdateCoalescer.UpdatePublisher;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,16 +78,175 @@ import org.slf4j.LoggerFactory;
  * Through it, openHAB events can be sent to the OSGi EventAdmin service
  * in order to broadcast them.
  * 
+ * Additionally, events are directly dispatched as typed {@link ItemEvent}s 
+ * to all {@link ItemEventListener}s that are registered for the event type
+ * and item. For compatibility, events which are sent to the EventAdmin by
+ * other parties are bridged to these listeners as well.
+ * 
+ * Optionally, posted events can be passed through a bounded {@link EventQueue}
+ * instead of the unbounded queues of the EventAdmin and the typed dispatcher.
+ * A single thread then takes the events out of this queue in batches and 
+ * delivers them synchronously to all subscribers. This mode is activated by
+ * configuring a queue size in openhab.cfg.
+ * 
+ * Status updates of items can furthermore be reduced by an {@link UpdateCoalescer},
+ * if coalescing rules are configured for these items or their groups.
+ * 
  * @author Kai Kreuzer
  *
  */
-public class EventPublisherImpl implements EventPublisher {
+public class EventPublisherImpl implements EventPublisher, ItemEventDispatcher, EventHandler, ManagedService, StatisticsProvider {
 
 	private static final Logger logger = 
 		LoggerFactory.getLogger(EventPublisherImpl.class);
+	
+	/** the event property which marks events that have already been dispatched to the typed listeners */
+	private static final String DISPATCHED_PROPERTY = "dispatched";
+	
+	private static final int DEFAULT_BATCH_SIZE = 100;
 		
 	private EventAdmin eventAdmin;
 	
+	/** listeners per event type, which are registered for all items */
+	private final Map<EventType, Collection<ItemEventListener>> typeListeners = 
+		new EnumMap<EventType, Collection<ItemEventListener>>(EventType.class);
+	
+	/** listeners per event type and item name */
+	private final Map<EventType, ConcurrentMap<String, Collection<ItemEventListener>>> itemListeners = 
+		new EnumMap<EventType, ConcurrentMap<String, Collection<ItemEventListener>>>(EventType.class);
+	
+	/** the executor for the asynchronous delivery of posted events to the typed listeners */
+	private ExecutorService dispatchExecutor;
+	
+	/** the bounded queue for posted events or <code>null</code>, if the unbounded default mode is used */
+	private volatile EventQueue eventQueue;
+	
+	/** the thread which delivers the events of the {@link #eventQueue} */
+	private QueueDispatcher queueDispatcher;
+	
+	private final AtomicLong dispatchedCount = new AtomicLong();
+	
+	private final AtomicLong totalLatency = new AtomicLong();
+	
+	private final AtomicLong maxLatency = new AtomicLong();
+	
+	/** the coalescer for status updates or <code>null</code>, if no coalescing rules are configured */
+	private volatile UpdateCoalescer updateCoalescer;
+	
+	private ItemRegistry itemRegistry;
+	
+	
+	public EventPublisherImpl() {
+		for(EventType type : EventType.values()) {
+			typeListeners.put(type, new CopyOnWriteArrayList<ItemEventListener>());
+			itemListeners.put(type, new ConcurrentHashMap<String, Collection<ItemEventListener>>());
+		}
+	}
+	
+	public void activate() {
+		dispatchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "openHAB event dispatcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public void deactivate() {
+		dispatchExecutor.shutdown();
+		dispatchExecutor = null;
+		stopQueueDispatcher();
+		stopUpdateCoalescer();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		int queueSize = 0;
+		OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+		int batchSize = DEFAULT_BATCH_SIZE;
+		Map<String, Rule> coalescingRules = new HashMap<String, Rule>();
+		if(config!=null) {
+			String queueSizeString = (String) config.get("queuesize");
+			String overflowString = (String) config.get("overflow");
+			String batchSizeString = (String) config.get("batchsize");
+			try {
+				if(StringUtils.isNotBlank(queueSizeString)) {
+					queueSize = Integer.parseInt(queueSizeString.trim());
+				}
+				if(StringUtils.isNotBlank(batchSizeString)) {
+					batchSize = Integer.parseInt(batchSizeString.trim());
+				}
+			} catch(NumberFormatException e) {
+				throw new ConfigurationException("eventbus", "queuesize and batchsize must be numbers", e);
+			}
+			if(StringUtils.isNotBlank(overflowString)) {
+				try {
+					overflowPolicy = OverflowPolicy.fromString(overflowString.trim());
+				} catch(IllegalArgumentException e) {
+					throw new ConfigurationException("eventbus:overflow", "overflow must be one of 'block', 'dropoldest' or 'coalesce'");
+				}
+			}
+			Enumeration keys = config.keys();
+			while(keys.hasMoreElements()) {
+				String key = (String) keys.nextElement();
+				if(key.startsWith(UpdateCoalescer.CONFIG_PREFIX)) {
+					String name = key.substring(UpdateCoalescer.CONFIG_PREFIX.length());
+					String ruleString = (String) config.get(key);
+					if(StringUtils.isNotBlank(name) && StringUtils.isNotBlank(ruleString)) {
+						try {
+							coalescingRules.put(name, Rule.parse(ruleString));
+						} catch(IllegalArgumentException e) {
+							throw new ConfigurationException("eventbus:" + key, 
+								"coalescing rules must have the form '<interval>[,<deadband>[%]]'", e);
+						}
+					}
+				}
+			}
+		}
+		
+		stopQueueDispatcher();
+		if(queueSize > 0) {
+			EventQueue queue = new EventQueue(queueSize, overflowPolicy);
+			queueDispatcher = new QueueDispatcher(queue, Math.max(1, batchSize));
+			queueDispatcher.start();
+			eventQueue = queue;
+			logger.info("Posted events are delivered through a bounded queue (size={}, overflow={}, batch size={})", 
+					new Object[] { queueSize, overflowPolicy, batchSize });
+		}
+		
+		stopUpdateCoalescer();
+		if(!coalescingRules.isEmpty()) {
+			UpdateCoalescer coalescer = new UpdateCoalescer(coalescingRules, new UpdatePublisher() {
+				public void publishUpdate(String itemName, State state) {
+					EventPublisherImpl.this.publishUpdate(itemName, state);
+				}
+			});
+			coalescer.setItemRegistry(itemRegistry);
+			updateCoalescer = coalescer;
+			logger.info("Status updates are coalesced for {}", coalescingRules.keySet());
+		}
+	}
+	
+	private void stopUpdateCoalescer() {
+		UpdateCoalescer coalescer = updateCoalescer;
+		updateCoalescer = null;
+		if(coalescer!=null) {
+			coalescer.shutdown();
+		}
+	}
+	
+	private void stopQueueDispatcher() {
+		eventQueue = null;
+		if(queueDispatcher!=null) {
+			// the dispatcher delivers all remaining events before it terminates
+			queueDispatcher.running = false;
+			queueDispatcher = null;
+		}
+	}
 	
 	public void setEventAdmin(EventAdmin eventAdmin) {
 		this.eventAdmin = eventAdmin;
@@ -67,12 +256,25 @@ public class EventPublisherImpl implements EventPublisher {
 		this.eventAdmin = null;
 	}
 	
+	public void setItemRegistry(ItemRegistry itemRegistry) {
+		this.itemRegistry = itemRegistry;
+		UpdateCoalescer coalescer = updateCoalescer;
+		if(coalescer!=null) {
+			coalescer.setItemRegistry(itemRegistry);
+		}
+	}
+	
+	public void unsetItemRegistry(ItemRegistry itemRegistry) {
+		setItemRegistry(null);
+	}
+	
 
 	/* (non-Javadoc)
 	 * @see org.openhab.core.internal.events.EventPublisher#sendCommand(org.openhab.core.items.GenericItem, org.openhab.core.datatypes.DataType)
 	 */
 	public void sendCommand(String itemName, Command command) {
 		if (command != null) {
+			dispatch(ItemEvent.createCommandEvent(itemName, command));
 			if(eventAdmin!=null) eventAdmin.sendEvent(createCommandEvent(itemName, command));
 		} else {
 			logger.warn("given command is NULL, couldn't send command to '{}'", itemName);
@@ -84,7 +286,11 @@ public class EventPublisherImpl implements EventPublisher {
 	 */
 	public void postCommand(String itemName, Command command) {
 		if (command != null) {
-			if(eventAdmin!=null) eventAdmin.postEvent(createCommandEvent(itemName, command));
+			ItemEvent event = ItemEvent.createCommandEvent(itemName, command);
+			if(!enqueue(event)) {
+				post(event);
+				if(eventAdmin!=null) eventAdmin.postEvent(createCommandEvent(itemName, command));
+			}
 		} else {
 			logger.warn("given command is NULL, couldn't post command to '{}'", itemName);
 		}
@@ -95,16 +301,209 @@ public class EventPublisherImpl implements EventPublisher {
 	 */
 	public void postUpdate(String itemName, State newState) {
 		if (newState != null) {
-			if(eventAdmin!=null) eventAdmin.postEvent(createUpdateEvent(itemName, newState));
+			UpdateCoalescer coalescer = updateCoalescer;
+			if(coalescer!=null) {
+				coalescer.update(itemName, newState);
+			} else {
+				publishUpdate(itemName, newState);
+			}
 		} else {
 			logger.warn("given new state is NULL, couldn't post update for '{}'", itemName);
 		}
 	}
 	
+	/**
+	 * Posts a status update, which has passed the {@link UpdateCoalescer}.
+	 * 
+	 * @param itemName the name of the item
+	 * @param newState the new state of the item
+	 */
+	private void publishUpdate(String itemName, State newState) {
+		ItemEvent event = ItemEvent.createUpdateEvent(itemName, newState);
+		if(!enqueue(event)) {
+			post(event);
+			if(eventAdmin!=null) eventAdmin.postEvent(createUpdateEvent(itemName, newState));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addItemEventListener(ItemEventListener listener, EventType type, String itemName) {
+		if(itemName==null) {
+			typeListeners.get(type).add(listener);
+		} else {
+			ConcurrentMap<String, Collection<ItemEventListener>> listenersByItem = itemListeners.get(type);
+			Collection<ItemEventListener> listeners = listenersByItem.get(itemName);
+			if(listeners==null) {
+				Collection<ItemEventListener> newListeners = new CopyOnWriteArrayList<ItemEventListener>();
+				listeners = listenersByItem.putIfAbsent(itemName, newListeners);
+				if(listeners==null) {
+					listeners = newListeners;
+				}
+			}
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void removeItemEventListener(ItemEventListener listener) {
+		for(EventType type : EventType.values()) {
+			typeListeners.get(type).remove(listener);
+			for(Collection<ItemEventListener> listeners : itemListeners.get(type).values()) {
+				listeners.remove(listener);
+			}
+		}
+	}
+	
+	/**
+	 * Bridges events that have been sent to the EventAdmin by other parties
+	 * than this publisher to the typed listeners.
+	 * 
+	 * {@inheritDoc}
+	 */
+	public void handleEvent(Event event) {
+		if(event.getProperty(DISPATCHED_PROPERTY)==null) {
+			ItemEvent itemEvent = ItemEvent.fromEvent(event);
+			if(itemEvent!=null) {
+				dispatch(itemEvent);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the given event to the bounded event queue, if this mode is active.
+	 * 
+	 * @param event the event to add
+	 * @return true, if the event has been handled by the queue, false if it 
+	 * needs to be posted in the default way
+	 */
+	private boolean enqueue(ItemEvent event) {
+		EventQueue queue = eventQueue;
+		if(queue!=null) {
+			try {
+				if(!queue.put(event)) {
+					// we are called by the dispatcher itself (through a subscriber) while the queue
+					// is full; as waiting would dead-lock the event bus, the event is delivered right away
+					deliver(event);
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while waiting to post event '{}'", event);
+				Thread.currentThread().interrupt();
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Delivers the given event synchronously to all typed listeners and
+	 * through the EventAdmin to all other subscribers.
+	 * 
+	 * @param event the event to deliver
+	 */
+	private void deliver(ItemEvent event) {
+		dispatch(event);
+		EventAdmin eventAdmin = this.eventAdmin;
+		if(eventAdmin!=null) {
+			if(event.getType()==EventType.UPDATE) {
+				eventAdmin.sendEvent(createUpdateEvent(event.getItemName(), event.getState()));
+			} else {
+				eventAdmin.sendEvent(createCommandEvent(event.getItemName(), event.getCommand()));
+			}
+		}
+	}
+
+	/**
+	 * Delivers the given event asynchronously to all typed listeners.
+	 * 
+	 * @param event the event to deliver
+	 */
+	private void post(final ItemEvent event) {
+		ExecutorService executor = dispatchExecutor;
+		if(executor!=null) {
+			executor.execute(new Runnable() {
+				public void run() {
+					dispatch(event);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Delivers the given event synchronously to all typed listeners that are
+	 * registered for its type and item.
+	 * 
+	 * @param event the event to deliver
+	 */
+	protected void dispatch(ItemEvent event) {
+		for(ItemEventListener listener : typeListeners.get(event.getType())) {
+			notifyListener(listener, event);
+		}
+		Collection<ItemEventListener> listeners = itemListeners.get(event.getType()).get(event.getItemName());
+		if(listeners!=null) {
+			for(ItemEventListener listener : listeners) {
+				notifyListener(listener, event);
+			}
+		}
+	}
+	
+	private void notifyListener(ItemEventListener listener, ItemEvent event) {
+		try {
+			listener.handleItemEvent(event);
+		} catch(RuntimeException e) {
+			logger.error("Error while dispatching event '{}' to listener '{}'", new Object[] { event, listener, e });
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getStatisticsName() {
+		return "event bus";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		EventQueue queue = eventQueue;
+		if(queue!=null) {
+			long dispatched = dispatchedCount.get();
+			statistics.put("mode", "bounded queue");
+			statistics.put("queue capacity", queue.getCapacity());
+			statistics.put("overflow policy", queue.getOverflowPolicy());
+			statistics.put("queue depth", queue.size());
+			statistics.put("max queue depth", queue.getMaxDepth());
+			statistics.put("enqueued events", queue.getEnqueuedCount());
+			statistics.put("dropped events", queue.getDroppedCount());
+			statistics.put("coalesced updates", queue.getCoalescedCount());
+			statistics.put("events delivered inline", queue.getRejectedCount());
+			statistics.put("dispatched events", dispatched);
+			statistics.put("avg dispatch latency (ms)", 
+					dispatched > 0 ? TimeUnit.NANOSECONDS.toMillis(totalLatency.get() / dispatched) : 0);
+			statistics.put("max dispatch latency (ms)", TimeUnit.NANOSECONDS.toMillis(maxLatency.get()));
+		} else {
+			statistics.put("mode", "unbounded (EventAdmin)");
+		}
+		UpdateCoalescer coalescer = updateCoalescer;
+		if(coalescer!=null) {
+			statistics.put("suppressed updates", coalescer.getSuppressedCount());
+			for(String itemName : coalescer.getCoalescedItemNames()) {
+				statistics.put("suppressed updates of " + itemName, coalescer.getSuppressedCount(itemName));
+			}
+		}
+		return statistics;
+	}
+	
 	private Event createUpdateEvent(String itemName, State newState) {
 		Dictionary<String, Object> properties = new Hashtable<String, Object>();
 		properties.put("item", itemName);
 		properties.put("state", newState);
+		properties.put(DISPATCHED_PROPERTY, Boolean.TRUE);
 		return new Event(createTopic(EventType.UPDATE, itemName), properties);
 	}
 
@@ -112,6 +511,7 @@ public class EventPublisherImpl implements EventPublisher {
 		Dictionary<String, Object> properties = new Hashtable<String, Object>();
 		properties.put("item", itemName);
 		properties.put("command", command);
+		properties.put(DISPATCHED_PROPERTY, Boolean.TRUE);
 		return new Event(createTopic(EventType.COMMAND, itemName) , properties);
 	}
 
@@ -120,4 +520,48 @@ public class EventPublisherImpl implements EventPublisher {
 	}
 	
 	
+	/**
+	 * The thread which takes the events out of the bounded queue in batches
+	 * and delivers them to all subscribers.
+	 */
+	private class QueueDispatcher extends Thread {
+		
+		private final EventQueue queue;
+		
+		private final int batchSize;
+		
+		private volatile boolean running = true;
+		
+		public QueueDispatcher(EventQueue queue, int batchSize) {
+			super("openHAB event queue dispatcher");
+			setDaemon(true);
+			this.queue = queue;
+			this.batchSize = batchSize;
+		}
+		
+		@Override
+		public void run() {
+			List<QueuedEvent> batch = new ArrayList<QueuedEvent>(batchSize);
+			while(running || queue.size() > 0) {
+				try {
+					batch.clear();
+					queue.drainTo(batch, batchSize, 1, TimeUnit.SECONDS);
+					for(QueuedEvent queuedEvent : batch) {
+						long latency = System.nanoTime() - queuedEvent.getEnqueueTime();
+						totalLatency.addAndGet(latency);
+						dispatchedCount.incrementAndGet();
+						if(latency > maxLatency.get()) {
+							maxLatency.set(latency);
+						}
+						deliver(queuedEvent.getEvent());
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (RuntimeException e) {
+					logger.error("Error while dispatching events", e);
+				}
+			}
+		}
+	}
+	
 }
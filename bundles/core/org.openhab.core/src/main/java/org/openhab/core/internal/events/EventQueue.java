@@ -0,0 +1,339 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.events;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.types.EventType;
+
+/**
+ * A bounded ring buffer for events which are posted to the event bus. If the 
+ * buffer is full, the configured {@link OverflowPolicy} decides whether the
+ * caller is blocked, the oldest event is dropped or the new state is merged
+ * into an update for the same item that is still waiting to be dispatched.
+ * 
+ * Events are taken out of the queue in batches, so that the dispatcher only 
+ * needs to acquire the lock once per batch.
+ * 
+ * The thread which takes the events out of the queue is never blocked when it
+ * adds an event itself (e.g. because a subscriber posts an event while handling
+ * another one), as nobody else would make space in the queue then. Instead, 
+ * {@link #put(ItemEvent)} returns <code>false</code> and the caller has to deliver
+ * the event itself.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+public class EventQueue {
+	
+	/** defines what happens if an event is added to a full queue */
+	public enum OverflowPolicy {
+		/** the caller is blocked until there is space in the queue */
+		BLOCK,
+		/** the oldest event in the queue is dropped */
+		DROP_OLDEST,
+		/** 
+		 * if the latest pending event for the same item is an update, its state
+		 * is replaced by the new one; in all other cases, the caller is blocked
+		 */
+		COALESCE;
+		
+		public static OverflowPolicy fromString(String policy) {
+			for(OverflowPolicy value : values()) {
+				if(value.name().replace("_", "").equalsIgnoreCase(policy.replace("_", ""))) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Unknown overflow policy '" + policy + "'");
+		}
+	}
+	
+	/** an event together with the time it has been added to the queue */
+	public static class QueuedEvent {
+		
+		private ItemEvent event;
+		
+		private final long enqueueTime;
+		
+		QueuedEvent(ItemEvent event) {
+			this.event = event;
+			this.enqueueTime = System.nanoTime();
+		}
+		
+		public ItemEvent getEvent() {
+			return event;
+		}
+		
+		/**
+		 * @return the value of {@link System#nanoTime()} when the event was added to the queue
+		 */
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+	}
+	
+	private final QueuedEvent[] buffer;
+	
+	private final OverflowPolicy overflowPolicy;
+	
+	/** the index of the oldest event in the buffer */
+	private int head = 0;
+	
+	/** the number of events in the buffer */
+	private int count = 0;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition notEmpty = lock.newCondition();
+	
+	private final Condition notFull = lock.newCondition();
+	
+	/** the latest queued event per item, only maintained for {@link OverflowPolicy#COALESCE} */
+	private final Map<String, QueuedEvent> latestEvents = new HashMap<String, QueuedEvent>();
+	
+	private long enqueuedCount = 0;
+
+	private long droppedCount = 0;
+
+	private long coalescedCount = 0;
+
+	private int maxDepth = 0;
+	
+	private long rejectedCount = 0;
+	
+	/** the thread which takes the events out of the queue */
+	private volatile Thread consumer;
+	
+	public EventQueue(int capacity, OverflowPolicy overflowPolicy) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("The capacity of the event queue must be positive");
+		}
+		this.buffer = new QueuedEvent[capacity];
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	/**
+	 * Adds an event to the queue. Dependent on the {@link OverflowPolicy}, this 
+	 * method blocks if the queue is full - unless it is called by the thread that
+	 * takes the events out of the queue.
+	 * 
+	 * @param event the event to add
+	 * @return <code>true</code>, if the event has been added (or merged into a pending
+	 * update), <code>false</code>, if the queue is full and the caller is the consumer
+	 * of the queue, which must not wait for space
+	 * @throws InterruptedException if the thread is interrupted while waiting for space in the queue
+	 */
+	public boolean put(ItemEvent event) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			enqueuedCount++;
+			while(count == buffer.length) {
+				if(overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+					removeFirst();
+					droppedCount++;
+				} else if(overflowPolicy == OverflowPolicy.COALESCE && event.getType() == EventType.UPDATE) {
+					QueuedEvent latestEvent = latestEvents.get(event.getItemName());
+					if(latestEvent!=null && latestEvent.event.getType() == EventType.UPDATE) {
+						latestEvent.event = event;
+						coalescedCount++;
+						return true;
+					}
+					if(!awaitNotFull()) {
+						return false;
+					}
+				} else if(!awaitNotFull()) {
+					return false;
+				}
+			}
+			QueuedEvent queuedEvent = new QueuedEvent(event);
+			buffer[(head + count) % buffer.length] = queuedEvent;
+			count++;
+			if(count > maxDepth) {
+				maxDepth = count;
+			}
+			if(overflowPolicy == OverflowPolicy.COALESCE) {
+				latestEvents.put(event.getItemName(), queuedEvent);
+			}
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Waits for space in the queue, if the current thread is not the consumer.
+	 * Must be called while holding the lock.
+	 * 
+	 * @return false, if the current thread is the consumer and must not wait
+	 */
+	private boolean awaitNotFull() throws InterruptedException {
+		if(Thread.currentThread() == consumer) {
+			rejectedCount++;
+			return false;
+		}
+		notFull.await();
+		return true;
+	}
+	
+	/**
+	 * Removes up to <code>maxEvents</code> events from the queue and adds them 
+	 * to the given batch. If the queue is empty, this method waits up to the
+	 * given timeout for new events.
+	 * 
+	 * @param batch the list to add the events to
+	 * @param maxEvents the maximum number of events to remove
+	 * @param timeout the maximum time to wait for events
+	 * @param unit the unit of the timeout
+	 * @return the number of events that have been added to the batch
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public int drainTo(List<QueuedEvent> batch, int maxEvents, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		consumer = Thread.currentThread();
+		lock.lockInterruptibly();
+		try {
+			while(count == 0) {
+				if(nanos <= 0) {
+					return 0;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			int drained = 0;
+			while(count > 0 && drained < maxEvents) {
+				batch.add(removeFirst());
+				drained++;
+			}
+			notFull.signalAll();
+			return drained;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private QueuedEvent removeFirst() {
+		QueuedEvent queuedEvent = buffer[head];
+		buffer[head] = null;
+		head = (head + 1) % buffer.length;
+		count--;
+		if(overflowPolicy == OverflowPolicy.COALESCE) {
+			String itemName = queuedEvent.event.getItemName();
+			if(latestEvents.get(itemName) == queuedEvent) {
+				latestEvents.remove(itemName);
+			}
+		}
+		return queuedEvent;
+	}
+	
+	public int getCapacity() {
+		return buffer.length;
+	}
+	
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+	
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the maximum number of events that have been waiting in the queue at the same time
+	 */
+	public int getMaxDepth() {
+		lock.lock();
+		try {
+			return maxDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of events that have been passed to {@link #put(ItemEvent)}
+	 */
+	public long getEnqueuedCount() {
+		lock.lock();
+		try {
+			return enqueuedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of events that have been dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		lock.lock();
+		try {
+			return droppedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of events that have not been added, because the queue was full
+	 * when the consumer itself tried to add them
+	 */
+	public long getRejectedCount() {
+		lock.lock();
+		try {
+			return rejectedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of updates that have been merged into a pending update for the same item
+	 */
+	public long getCoalescedCount() {
+		lock.lock();
+		try {
+			return coalescedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+}
@@ -0,0 +1,455 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.internal.events;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.types.ComplexType;
+import org.openhab.core.types.State;
+
+/**
+ * The update coalescer reduces the number of status updates of items that are
+ * updated with a high frequency, e.g. power meters or analog sensors.
+ * 
+ * For every item (or every member of a group) a {@link Rule} can be configured,
+ * which defines a minimum interval between two published updates and an 
+ * optional deadband for numeric states. Updates which arrive within the minimum 
+ * interval are collapsed, so that only the latest value is published at the 
+ * end of the interval. Updates which differ less than the deadband from the 
+ * last published state are suppressed completely.
+ * 
+ * The rule of an item is resolved only once and then cached until the items of
+ * the item registry change.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class UpdateCoalescer implements ItemRegistryChangeListener {
+	
+	/** the prefix of the configuration keys which define coalescing rules */
+	public static final String CONFIG_PREFIX = "coalesce.";
+	
+	/** the callback which publishes the updates that have passed the coalescer */
+	public interface UpdatePublisher {
+		
+		/**
+		 * Publishes a status update of an item
+		 * 
+		 * @param itemName the name of the item
+		 * @param state the new state of the item
+		 */
+		void publishUpdate(String itemName, State state);
+	}
+	
+	/** marks items without a rule in the cache of the resolved rules */
+	private static final Rule NO_RULE = new Rule(0, 0, false);
+	
+	private final Map<String, Rule> rules;
+	
+	/** the rules by item name, as resolved from the group hierarchy */
+	private final ConcurrentMap<String, Rule> resolvedRules = new ConcurrentHashMap<String, Rule>();
+	
+	/** is increased whenever the cached rules become invalid */
+	private volatile long registryVersion = 0;
+	
+	private final UpdatePublisher publisher;
+	
+	private final ConcurrentMap<String, ItemUpdates> itemUpdates = new ConcurrentHashMap<String, ItemUpdates>();
+	
+	private final AtomicLong suppressedCount = new AtomicLong();
+	
+	private final ScheduledExecutorService scheduler;
+	
+	private volatile ItemRegistry itemRegistry;
+	
+	/**
+	 * Creates a new coalescer
+	 * 
+	 * @param rules the coalescing rules by the name of the item or group they apply to
+	 * @param publisher the callback which publishes the updates
+	 */
+	public UpdateCoalescer(Map<String, Rule> rules, UpdatePublisher publisher) {
+		this.rules = rules;
+		this.publisher = publisher;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "openHAB update coalescer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public synchronized void setItemRegistry(ItemRegistry itemRegistry) {
+		if(this.itemRegistry!=null) {
+			this.itemRegistry.removeItemRegistryChangeListener(this);
+		}
+		this.itemRegistry = itemRegistry;
+		if(itemRegistry!=null) {
+			itemRegistry.addItemRegistryChangeListener(this);
+		}
+		invalidateRules();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void allItemsChanged(Collection<String> oldItemNames) {
+		invalidateRules();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void itemAdded(Item item) {
+		invalidateRules();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void itemRemoved(Item item) {
+		invalidateRules();
+	}
+
+	private void invalidateRules() {
+		// a group change can affect the rules of all its members, so all rules are resolved again
+		registryVersion++;
+		resolvedRules.clear();
+	}
+	
+	/**
+	 * Passes a status update through the coalescer. The update is either published
+	 * immediately, deferred to the end of the minimum interval or suppressed.
+	 * 
+	 * @param itemName the name of the item
+	 * @param state the new state of the item
+	 */
+	public void update(String itemName, State state) {
+		Rule rule = getRule(itemName);
+		if(rule==null) {
+			publisher.publishUpdate(itemName, state);
+			return;
+		}
+		
+		ItemUpdates updates = itemUpdates.get(itemName);
+		if(updates==null) {
+			ItemUpdates newUpdates = new ItemUpdates(itemName);
+			updates = itemUpdates.putIfAbsent(itemName, newUpdates);
+			if(updates==null) {
+				updates = newUpdates;
+			}
+		}
+		
+		boolean publishNow = false;
+		synchronized(updates) {
+			long now = System.currentTimeMillis();
+			if(updates.lastState!=null && rule.isWithinDeadband(updates.lastState, state)) {
+				// the latest value does not differ enough, so a pending update is obsolete as well
+				suppress(updates, updates.pendingState!=null ? 2 : 1);
+				updates.pendingState = null;
+			} else if(now - updates.lastPublished >= rule.getMinInterval()) {
+				if(updates.pendingState!=null) {
+					suppress(updates, 1);
+					updates.pendingState = null;
+				}
+				updates.lastState = state;
+				updates.lastPublished = now;
+				publishNow = true;
+			} else {
+				if(updates.pendingState!=null) {
+					suppress(updates, 1);
+				}
+				updates.pendingState = state;
+				if(!updates.scheduled) {
+					updates.scheduled = true;
+					scheduler.schedule(updates, updates.lastPublished + rule.getMinInterval() - now, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		if(publishNow) {
+			publisher.publishUpdate(itemName, state);
+		}
+	}
+	
+	/**
+	 * Stops the coalescer. All pending updates are published immediately.
+	 */
+	public void shutdown() {
+		setItemRegistry(null);
+		scheduler.shutdownNow();
+		for(ItemUpdates updates : itemUpdates.values()) {
+			updates.publishPending();
+		}
+	}
+
+	/**
+	 * @return the total number of updates that have not been published
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.get();
+	}
+	
+	/**
+	 * Returns the number of updates that have not been published for a single item
+	 * 
+	 * @param itemName the name of the item
+	 * @return the number of suppressed updates
+	 */
+	public long getSuppressedCount(String itemName) {
+		ItemUpdates updates = itemUpdates.get(itemName);
+		if(updates!=null) {
+			synchronized(updates) {
+				return updates.suppressed;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return the names of all items which have been subject to coalescing so far
+	 */
+	public Set<String> getCoalescedItemNames() {
+		return itemUpdates.keySet();
+	}
+	
+	/**
+	 * Determines the rule for an item. A rule which is configured for the item
+	 * itself takes precedence over the rules of its (direct or indirect) groups.
+	 * 
+	 * @param itemName the name of the item
+	 * @return the rule or <code>null</code>, if updates of the item are not coalesced
+	 */
+	protected Rule getRule(String itemName) {
+		Rule rule = resolvedRules.get(itemName);
+		if(rule==null) {
+			long version = registryVersion;
+			rule = resolveRule(itemName);
+			if(rule==null) {
+				return null;
+			}
+			resolvedRules.put(itemName, rule);
+			if(version!=registryVersion) {
+				// the items have changed in the meantime, so the rule might be outdated
+				resolvedRules.remove(itemName);
+			}
+		}
+		return rule!=NO_RULE ? rule : null;
+	}
+	
+	/**
+	 * @return the rule of the item, {@link #NO_RULE} if it has none or <code>null</code>
+	 * if this cannot be determined, as the item is not known (yet)
+	 */
+	private Rule resolveRule(String itemName) {
+		Rule rule = rules.get(itemName);
+		if(rule!=null) {
+			return rule;
+		}
+		ItemRegistry itemRegistry = this.itemRegistry;
+		if(itemRegistry==null) {
+			return null;
+		}
+		try {
+			itemRegistry.getItem(itemName);
+		} catch (ItemNotFoundException e) {
+			return null;
+		}
+		
+		// search the group hierarchy breadth-first, so that the nearest group wins
+		Set<String> visited = new HashSet<String>();
+		Queue<String> names = new LinkedList<String>();
+		names.add(itemName);
+		visited.add(itemName);
+		while(!names.isEmpty()) {
+			try {
+				Item item = itemRegistry.getItem(names.poll());
+				for(String groupName : item.getGroupNames()) {
+					if(visited.add(groupName)) {
+						rule = rules.get(groupName);
+						if(rule!=null) {
+							return rule;
+						}
+						names.add(groupName);
+					}
+				}
+			} catch (ItemNotFoundException e) {
+				// ignore items or groups that are not known (yet)
+			}
+		}
+		return NO_RULE;
+	}
+	
+	private void suppress(ItemUpdates updates, int count) {
+		updates.suppressed += count;
+		suppressedCount.addAndGet(count);
+	}
+	
+	
+	/**
+	 * The configuration of the coalescing for an item or group.
+	 */
+	public static class Rule {
+		
+		private final long minInterval;
+		
+		private final double deadband;
+		
+		private final boolean percent;
+		
+		/**
+		 * Creates a new rule
+		 * 
+		 * @param minInterval the minimum interval between two published updates in milliseconds
+		 * @param deadband the maximum difference of numeric states which are regarded as 
+		 * unchanged or 0, if no deadband should be used
+		 * @param percent true, if the deadband is relative to the last published state in percent
+		 */
+		public Rule(long minInterval, double deadband, boolean percent) {
+			this.minInterval = minInterval;
+			this.deadband = deadband;
+			this.percent = percent;
+		}
+		
+		/**
+		 * Parses a rule of the form <code>&lt;minInterval&gt;[,&lt;deadband&gt;[%]]</code>,
+		 * e.g. "1000", "1000,0.5" or "0,5%".
+		 * 
+		 * @param rule the string to parse
+		 * @return the parsed rule
+		 * @throws IllegalArgumentException if the string is not a valid rule
+		 */
+		public static Rule parse(String rule) {
+			String[] parts = rule.split(",");
+			if(parts.length > 2) {
+				throw new IllegalArgumentException("Invalid coalescing rule '" + rule + "'");
+			}
+			long minInterval = Long.parseLong(parts[0].trim());
+			double deadband = 0;
+			boolean percent = false;
+			if(parts.length==2) {
+				String deadbandString = parts[1].trim();
+				if(deadbandString.endsWith("%")) {
+					percent = true;
+					deadbandString = deadbandString.substring(0, deadbandString.length() - 1).trim();
+				}
+				deadband = Double.parseDouble(deadbandString);
+			}
+			if(minInterval < 0 || deadband < 0) {
+				throw new IllegalArgumentException("Invalid coalescing rule '" + rule + "'");
+			}
+			return new Rule(minInterval, deadband, percent);
+		}
+		
+		public long getMinInterval() {
+			return minInterval;
+		}
+		
+		/**
+		 * Checks whether a new state differs less than the deadband from the last 
+		 * published state. Only numeric states of the same type are compared, all 
+		 * other states are never within the deadband.
+		 * 
+		 * @param lastState the last published state
+		 * @param newState the new state
+		 * @return true, if the new state can be suppressed
+		 */
+		public boolean isWithinDeadband(State lastState, State newState) {
+			if(deadband <= 0 || lastState.getClass()!=newState.getClass()
+					|| !(lastState instanceof Number) || newState instanceof ComplexType) {
+				return false;
+			}
+			double lastValue = ((Number) lastState).doubleValue();
+			double difference = Math.abs(((Number) newState).doubleValue() - lastValue);
+			double threshold = percent ? Math.abs(lastValue) * deadband / 100 : deadband;
+			return difference <= threshold;
+		}
+	}
+	
+	
+	/**
+	 * The coalescing state of a single item. When it is run, the pending update is published.
+	 */
+	private class ItemUpdates implements Runnable {
+		
+		private final String itemName;
+		
+		private State lastState;
+		
+		private long lastPublished;
+		
+		private State pendingState;
+		
+		private boolean scheduled;
+		
+		private long suppressed;
+		
+		public ItemUpdates(String itemName) {
+			this.itemName = itemName;
+		}
+		
+		public void run() {
+			synchronized(this) {
+				scheduled = false;
+			}
+			publishPending();
+		}
+		
+		private void publishPending() {
+			State state;
+			synchronized(this) {
+				state = pendingState;
+				if(state==null) {
+					return;
+				}
+				pendingState = null;
+				lastState = state;
+				lastPublished = System.currentTimeMillis();
+			}
+			publisher.publishUpdate(itemName, state);
+		}
+	}
+
+}
@@ -30,11 +30,17 @@ package org.openhab.core.internal.items;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
 
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.GenericItem;
@@ -70,6 +76,30 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	/** this is our local map in which we store all our items */
 	protected Map<ItemProvider, Collection<Item>> itemMap = new ConcurrentHashMap<ItemProvider, Collection<Item>>();
 	
+	/** index of all registered items by their name for constant time lookups */
+	protected ConcurrentMap<String, Item> itemsByName = new ConcurrentHashMap<String, Item>();
+	
+	/** 
+	 * all items of all providers by their name, so that an item which is shadowed by
+	 * an item of the same name can be found again when that one is removed
+	 */
+	protected Map<String, List<Item>> itemCandidates = new HashMap<String, List<Item>>();
+	
+	/** 
+	 * index of all items by the names of the groups they declare to be a member of.
+	 * Entries are kept for groups which are not (yet) registered, so that the group
+	 * can be filled with its members as soon as it becomes available.
+	 */
+	protected Map<String, Map<String, Item>> groupMembers = new HashMap<String, Map<String, Item>>();
+	
+	/** cache of compiled search patterns, so that regular expressions are not compiled on every query */
+	protected ConcurrentMap<String, Pattern> patternCache = new ConcurrentHashMap<String, Pattern>();
+	
+	/** the maximum number of compiled patterns that are kept in the {@link #patternCache} */
+	private static final int MAX_CACHED_PATTERNS = 500;
+	
+	private static final Pattern VALID_ITEM_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]*");
+	
 	/** to keep track of all item change listeners */
 	protected Collection<ItemRegistryChangeListener> listeners = new CopyOnWriteArraySet<ItemRegistryChangeListener>();
 
@@ -83,6 +113,14 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 		}
 		// then release all items
 		itemMap.clear();
+		itemsByName.clear();
+		synchronized(itemCandidates) {
+			itemCandidates.clear();
+		}
+		synchronized(groupMembers) {
+			groupMembers.clear();
+		}
+		patternCache.clear();
     }
 
 	/* (non-Javadoc)
@@ -90,10 +128,17 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	 */
     @Override
 	public Item getItem(String name) throws ItemNotFoundException {
-		for(Collection<Item> items : itemMap.values()) {
-			for(Item item : items) {
-				if(item.getName().matches(name)) {
-					return item;
+		Item item = itemsByName.get(name);
+		if(item!=null) {
+			return item;
+		}
+		// a valid item name cannot match anything else than itself, so we
+		// only need to fall back to a full scan if a regular expression is passed
+		if(!isValidItemName(name)) {
+			Pattern pattern = getPattern(name);
+			for(Item candidate : itemsByName.values()) {
+				if(pattern.matcher(candidate.getName()).matches()) {
+					return candidate;
 				}
 			}
 		}
@@ -137,10 +182,11 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
     @Override
 	public Collection<Item> getItems(String pattern) {
 		String regex = pattern.replace("?", ".?").replace("*", ".*?");
+		Pattern compiledPattern = getPattern(regex);
 		Collection<Item> matchedItems = new ArrayList<Item>();
 		for(Collection<Item> items : itemMap.values()) {
 			for(Item item : items) {
-				if(item.getName().matches(regex)) {
+				if(compiledPattern.matcher(item.getName()).matches()) {
 					matchedItems.add(item);
 				}
 			}
@@ -161,7 +207,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 
     @Override
 	public boolean isValidItemName(String name) {
-		return name.matches("[a-zA-Z0-9_]*");
+		return VALID_ITEM_NAME_PATTERN.matcher(name).matches();
 	}
 
 	public void removeItemProvider(ItemProvider itemProvider) {
@@ -173,7 +219,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 					((GenericItem) item).dispose();
 				}
 			}
-			itemMap.remove(itemProvider);
+			unindexItems(itemMap.remove(itemProvider));
 
 			itemProvider.removeItemChangeListener(this);
 			logger.debug("Item provider '{}' has been removed.", itemProvider.getClass().getSimpleName());
@@ -198,10 +244,9 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	public void allItemsChanged(ItemProvider provider, Collection<String> oldItemNames) {
 		// if the provider did not provide any old item names, we check if we
 		// know them and pass them further on to our listeners
+        Collection<Item> oldItems = itemMap.get(provider);
 		if(oldItemNames==null || oldItemNames.isEmpty()) {
 			oldItemNames = new HashSet<String>();
-            Collection<Item> oldItems;
-            oldItems = itemMap.get(provider);
 			if(oldItems!=null && oldItems.size() > 0) {
 				for(Item oldItem : oldItems) {
 					oldItemNames.add(oldItem.getName());
@@ -209,13 +254,26 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			}
 		}
 
+		long startTime = System.currentTimeMillis();
+		int numberOfGroups = 0;
 		Collection<Item> items = new CopyOnWriteArrayList<Item>();
     	itemMap.put(provider, items);
+    	unindexItems(oldItems);
 		for(Item item : provider.getItems()) {
 			if(initializeItem(item)) {
 				items.add(item);
+				itemsByName.put(item.getName(), item);
+				addCandidate(item);
+				if(item instanceof GroupItem) {
+					numberOfGroups++;
+				}
 			}
 		}
+		if(logger.isDebugEnabled()) {
+			long duration = Math.max(1, System.currentTimeMillis() - startTime);
+			logger.debug("Linked {} items ({} groups) of provider '{}' in {}ms ({} items/s).", new Object[] {
+				items.size(), numberOfGroups, provider.getClass().getSimpleName(), duration, items.size() * 1000L / duration });
+		}
 
 		for(ItemRegistryChangeListener listener : listeners) {
 			listener.allItemsChanged(oldItemNames);
@@ -229,6 +287,8 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 		if(items!=null) {
 			if(initializeItem(item)) {
 				items.add(item);
+				itemsByName.put(item.getName(), item);
+				addCandidate(item);
 			} else {
 				return;
 			}
@@ -244,6 +304,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
         items = itemMap.get(provider);
 		if(items!=null) {
 			items.remove(item);
+			unindexItems(Collections.singleton(item));
 		}
 		for(ItemRegistryChangeListener listener : listeners) {
 			listener.itemRemoved(item);
@@ -278,22 +339,19 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			
 			if(item instanceof GroupItem) {
 				// fill group with its members 
-				for(Item i : getItems()) {
-					if(i.getGroupNames().contains(item.getName())) {
-						((GroupItem)item).addMember(i);
-					}
+				for(Item member : getGroupMembers(item.getName())) {
+					((GroupItem)item).addMember(member);
 				}
 			}
 			// add the item to all relevant groups
 			for(String groupName : item.getGroupNames()) {
-				try {
-					Item groupItem = getItem(groupName);
-					if(groupItem instanceof GroupItem) {
-						((GroupItem)groupItem).addMember(item);
-					}
-				} catch (ItemNotFoundException e) {
-					// the group might not yet be registered, let's ignore this
+				addGroupMember(groupName, item);
+				Item groupItem = itemsByName.get(groupName);
+				if(groupItem instanceof GroupItem) {
+					((GroupItem)groupItem).addMember(item);
 				}
+				// the group might not yet be registered, it will then pick up
+				// this item from the group member index once it is added
 			}
 			return true;
 		} else {
@@ -302,4 +360,150 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			return false;
 		}
 	}
+
+	/**
+	 * Removes the given items from the name index. Only entries which still
+	 * point to the very same item instance are removed, so that an item of
+	 * the same name provided by another provider becomes visible again.
+	 * 
+	 * @param items the items to remove from the index, may be <code>null</code>
+	 */
+	private void unindexItems(Collection<Item> items) {
+		if(items!=null) {
+			Collection<String> removedNames = new ArrayList<String>();
+			for(Item item : items) {
+				removeCandidate(item);
+				// items implement equals() by value, so we explicitly check for identity here
+				if(itemsByName.get(item.getName())==item) {
+					itemsByName.remove(item.getName());
+					removedNames.add(item.getName());
+				}
+				for(String groupName : item.getGroupNames()) {
+					removeGroupMember(groupName, item);
+					Item groupItem = itemsByName.get(groupName);
+					if(groupItem instanceof GroupItem) {
+						((GroupItem)groupItem).removeMember(item);
+					}
+				}
+				if(item instanceof GroupItem) {
+					// detach the members, so that they do not reference the removed group anymore
+					GroupItem group = (GroupItem) item;
+					for(Item member : group.getMembers()) {
+						group.removeMember(member);
+					}
+				}
+			}
+			// re-add items of the same name that are known by other providers
+			for(String name : removedNames) {
+				Item item = getCandidate(name);
+				if(item!=null && itemsByName.putIfAbsent(name, item)==null) {
+					for(String groupName : item.getGroupNames()) {
+						addGroupMember(groupName, item);
+					}
+				}
+			}
+		}
+	}
+
+	private void addCandidate(Item item) {
+		synchronized(itemCandidates) {
+			List<Item> candidates = itemCandidates.get(item.getName());
+			if(candidates==null) {
+				candidates = new ArrayList<Item>(1);
+				itemCandidates.put(item.getName(), candidates);
+			}
+			candidates.add(item);
+		}
+	}
+
+	private void removeCandidate(Item item) {
+		synchronized(itemCandidates) {
+			List<Item> candidates = itemCandidates.get(item.getName());
+			if(candidates!=null) {
+				for(int i = 0; i < candidates.size(); i++) {
+					if(candidates.get(i)==item) {
+						candidates.remove(i);
+						break;
+					}
+				}
+				if(candidates.isEmpty()) {
+					itemCandidates.remove(item.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first registered item of the given name that is still provided.
+	 * 
+	 * @param name the name of the item
+	 * @return the item or <code>null</code>, if no provider knows an item of that name
+	 */
+	private Item getCandidate(String name) {
+		synchronized(itemCandidates) {
+			List<Item> candidates = itemCandidates.get(name);
+			return candidates==null ? null : candidates.get(0);
+		}
+	}
+
+	/**
+	 * Returns all items that declare to be a member of the given group,
+	 * regardless whether the group itself is already registered.
+	 * 
+	 * @param groupName the name of the group
+	 * @return a snapshot of all known members of the group
+	 */
+	private Collection<Item> getGroupMembers(String groupName) {
+		synchronized(groupMembers) {
+			Map<String, Item> members = groupMembers.get(groupName);
+			if(members==null) {
+				return Collections.emptyList();
+			} else {
+				return new ArrayList<Item>(members.values());
+			}
+		}
+	}
+
+	private void addGroupMember(String groupName, Item item) {
+		synchronized(groupMembers) {
+			Map<String, Item> members = groupMembers.get(groupName);
+			if(members==null) {
+				members = new LinkedHashMap<String, Item>();
+				groupMembers.put(groupName, members);
+			}
+			members.put(item.getName(), item);
+		}
+	}
+
+	private void removeGroupMember(String groupName, Item item) {
+		synchronized(groupMembers) {
+			Map<String, Item> members = groupMembers.get(groupName);
+			if(members!=null && members.get(item.getName())==item) {
+				members.remove(item.getName());
+				if(members.isEmpty()) {
+					groupMembers.remove(groupName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a compiled {@link Pattern} for the given regular expression. 
+	 * Compiled patterns are cached, so that repeated queries do not need to
+	 * compile the expression again.
+	 * 
+	 * @param regex the regular expression to compile
+	 * @return the compiled pattern
+	 */
+	private Pattern getPattern(String regex) {
+		Pattern pattern = patternCache.get(regex);
+		if(pattern==null) {
+			if(patternCache.size() >= MAX_CACHED_PATTERNS) {
+				patternCache.clear();
+			}
+			pattern = Pattern.compile(regex);
+			patternCache.put(regex, pattern);
+		}
+		return pattern;
+	}
 }
@@ -29,19 +29,22 @@
 package org.openhab.core.internal.items;
 
 import org.openhab.core.events.AbstractEventSubscriber;
+import org.openhab.core.events.ItemEventDispatcher;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The ItemUpdater listens on the event bus and passes any received status update
- * to the item registry.
+ * to the item registry. It receives the events as typed {@link org.openhab.core.events.ItemEvent}s
+ * through the {@link ItemEventDispatcher}.
  * 
  * @author Kai Kreuzer
  * @since 0.1.0
@@ -60,6 +63,15 @@ public class ItemUpdater extends AbstractEventSubscriber {
 	public void unsetItemRegistry(ItemRegistry itemRegistry) {
 		this.itemRegistry = null;
 	}
+	
+	public void setItemEventDispatcher(ItemEventDispatcher itemEventDispatcher) {
+		itemEventDispatcher.addItemEventListener(this, EventType.UPDATE, null);
+		itemEventDispatcher.addItemEventListener(this, EventType.COMMAND, null);
+	}
+
+	public void unsetItemEventDispatcher(ItemEventDispatcher itemEventDispatcher) {
+		itemEventDispatcher.removeItemEventListener(this);
+	}
 
 	/**
 	 * {@inheritDoc}
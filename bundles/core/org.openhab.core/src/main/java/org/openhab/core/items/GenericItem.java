@@ -28,12 +28,13 @@
  */
 package org.openhab.core.items;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.types.Command;
@@ -53,7 +54,7 @@ abstract public class GenericItem implements Item {
 	
 	protected EventPublisher eventPublisher;
 
-	protected Set<StateChangeListener> listeners = new CopyOnWriteArraySet<StateChangeListener>(Collections.newSetFromMap(new WeakHashMap<StateChangeListener, Boolean>()));
+	protected Set<StateChangeListener> listeners = new ListenerSet();
 	
 	protected List<String> groupNames = new ArrayList<String>();
 	
@@ -122,13 +123,13 @@ abstract public class GenericItem implements Item {
 
 	private void notifyListeners(State oldState, State newState) {
 		// if nothing has changed, we send update notifications
-		Set<StateChangeListener> clonedListeners = null;
-		clonedListeners = new CopyOnWriteArraySet<StateChangeListener>(listeners);
-		for(StateChangeListener listener : clonedListeners) {
+		StateChangeListener[] currentListeners = listeners instanceof ListenerSet ? 
+				((ListenerSet) listeners).elements : listeners.toArray(new StateChangeListener[0]);
+		for(StateChangeListener listener : currentListeners) {
 			listener.stateUpdated(this, newState);
 		}
 		if(!oldState.equals(newState)) {
-			for(StateChangeListener listener : clonedListeners) {
+			for(StateChangeListener listener : currentListeners) {
 				listener.stateChanged(this, oldState, newState);
 			}
 		}
@@ -156,6 +157,95 @@ abstract public class GenericItem implements Item {
 		}
 	}
 	
+	/**
+	 * A set of listeners that is backed by an array, which is never modified, but replaced 
+	 * by a new copy on every registration change. The current array can therefore be 
+	 * iterated without locking or copying on every state update.
+	 */
+	private static class ListenerSet extends AbstractSet<StateChangeListener> {
+		
+		private static final StateChangeListener[] NO_LISTENERS = new StateChangeListener[0];
+
+		volatile StateChangeListener[] elements = NO_LISTENERS;
+		
+		@Override
+		public synchronized boolean add(StateChangeListener listener) {
+			if(indexOf(listener) >= 0) {
+				return false;
+			}
+			StateChangeListener[] newElements = Arrays.copyOf(elements, elements.length + 1);
+			newElements[elements.length] = listener;
+			elements = newElements;
+			return true;
+		}
+
+		@Override
+		public synchronized boolean remove(Object listener) {
+			int index = indexOf(listener);
+			if(index < 0) {
+				return false;
+			}
+			if(elements.length == 1) {
+				elements = NO_LISTENERS;
+			} else {
+				StateChangeListener[] newElements = new StateChangeListener[elements.length - 1];
+				System.arraycopy(elements, 0, newElements, 0, index);
+				System.arraycopy(elements, index + 1, newElements, index, newElements.length - index);
+				elements = newElements;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean contains(Object listener) {
+			return indexOf(listener) >= 0;
+		}
+
+		@Override
+		public synchronized void clear() {
+			elements = NO_LISTENERS;
+		}
+
+		@Override
+		public Iterator<StateChangeListener> iterator() {
+			// iterates the current array; removals are applied to the set, not to the array
+			final StateChangeListener[] currentElements = elements;
+			return new Iterator<StateChangeListener>() {
+				private int next = 0;
+				public boolean hasNext() {
+					return next < currentElements.length;
+				}
+				public StateChangeListener next() {
+					if(!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return currentElements[next++];
+				}
+				public void remove() {
+					if(next == 0) {
+						throw new IllegalStateException();
+					}
+					ListenerSet.this.remove(currentElements[next - 1]);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return elements.length;
+		}
+
+		private int indexOf(Object listener) {
+			StateChangeListener[] currentElements = elements;
+			for(int i=0; i<currentElements.length; i++) {
+				if(currentElements[i].equals(listener)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+	
 
 	@Override
 	public int hashCode() {
@@ -29,10 +29,14 @@
 package org.openhab.core.items;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.commons.collections.ListUtils;
 import org.openhab.core.types.Command;
@@ -49,6 +53,18 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	protected final List<Item> members;
 	
 	protected GroupFunction function;
+	
+	/** the aggregator of the group function, if it supports incremental calculation */
+	protected final IncrementalGroupFunction.Aggregator aggregator;
+	
+	/** the relevant states of all members that have been passed to the {@link #aggregator} */
+	private final Map<Item, State> aggregatedStates;
+	
+	/** the groups this group is a direct member of, compared by identity */
+	private final List<GroupItem> parentGroups = new CopyOnWriteArrayList<GroupItem>();
+	
+	/** the cached result of {@link #getAllMembers()}, <code>null</code> if it needs to be recalculated */
+	private volatile List<Item> allMembers;
 
 	public GroupItem(String name) {
 		this(name, null);
@@ -63,6 +79,13 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 		members = new CopyOnWriteArrayList<Item>();
 		this.function = function;
 		this.baseItem = baseItem;
+		if(function instanceof IncrementalGroupFunction) {
+			aggregator = ((IncrementalGroupFunction) function).createAggregator();
+			aggregatedStates = new IdentityHashMap<Item, State>();
+		} else {
+			aggregator = null;
+			aggregatedStates = null;
+		}
 	}
 	
 	/**
@@ -90,40 +113,103 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 * Returns the direct members of this {@link GroupItem} and recursively all
 	 * members of the potentially contained {@link GroupItem}s as well. The 
 	 * {@link GroupItem}s itself aren't contained. The returned items are unique.
+	 * The result is cached until the members of this group or of one of its
+	 * sub groups change, so the returned list cannot be modified.
 	 * 
 	 * @return all members of this and all contained {@link GroupItem}s
 	 */
 	public List<Item> getAllMembers() {
-		Set<Item> allMembers = new HashSet<Item>();
-		collectMembers(allMembers, members);
-		return new ArrayList<Item>(allMembers);
+		List<Item> result = allMembers;
+		if(result==null) {
+			Set<Item> allMembers = new LinkedHashSet<Item>();
+			for (Item member : members) {
+				if (member instanceof GroupItem) {
+					allMembers.addAll(((GroupItem) member).getAllMembers());
+				}
+				else {
+					allMembers.add(member);
+				}
+			}
+			result = Collections.unmodifiableList(new ArrayList<Item>(allMembers));
+			this.allMembers = result;
+		}
+		return result;
 	}
 	
-	private void collectMembers(Set<Item> allMembers, List<Item> members) {
-		for (Item member : members) {
-			if (member instanceof GroupItem) {
-				collectMembers(allMembers, ((GroupItem) member).members);
-			}
-			else {
-				allMembers.add(member);
-			}
+	/**
+	 * Drops the cached result of {@link #getAllMembers()} of this group and 
+	 * all groups that contain it.
+	 */
+	private void invalidateAllMembers() {
+		allMembers = null;
+		for(GroupItem parentGroup : parentGroups) {
+			parentGroup.invalidateAllMembers();
 		}
 	}
 
 	public void addMember(Item item) {
-		members.add(item);
+		synchronized (members) {
+			members.add(item);
+		}
+		if (item instanceof GroupItem) {
+			addIdentical(((GroupItem) item).parentGroups, this);
+		}
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.addStateChangeListener(this);
 		}
+		if (aggregator!=null) {
+			synchronized (aggregator) {
+				if(!aggregatedStates.containsKey(item)) {
+					State state = ((IncrementalGroupFunction) function).getRelevantState(item);
+					aggregatedStates.put(item, state);
+					aggregator.add(state);
+				}
+			}
+		}
+		invalidateAllMembers();
 	}
 	
 	public void removeMember(Item item) {
-		members.remove(item);
+		// items implement equals() by value, so the very same instance has to be removed
+		removeIdentical(members, item);
+		if (item instanceof GroupItem) {
+			removeIdentical(((GroupItem) item).parentGroups, this);
+		}
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
 		}
+		if (aggregator!=null) {
+			synchronized (aggregator) {
+				if(aggregatedStates.containsKey(item)) {
+					aggregator.remove(aggregatedStates.remove(item));
+				}
+			}
+		}
+		invalidateAllMembers();
+	}
+	
+	private static <T> void addIdentical(List<T> list, T element) {
+		synchronized (list) {
+			for (T existing : list) {
+				if (existing==element) {
+					return;
+				}
+			}
+			list.add(element);
+		}
+	}
+
+	private static void removeIdentical(List<?> list, Object element) {
+		synchronized (list) {
+			for (int i = 0; i < list.size(); i++) {
+				if (list.get(i)==element) {
+					list.remove(i);
+					return;
+				}
+			}
+		}
 	}
 	
 	/** 
@@ -230,13 +316,40 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 * @{inheritDoc
 	 */
 	public void stateChanged(Item item, State oldState, State newState) {
-		setState(function.calculate(members));
+		setState(calculateState(item));
 	}
 
 	/**
 	 * @{inheritDoc
 	 */
 	public void stateUpdated(Item item, State state) {
-		setState(function.calculate(members));
+		setState(calculateState(item));
+	}
+	
+	/**
+	 * Calculates the state of this group after the state of the given member 
+	 * has been updated. If the group function supports it, only the state of
+	 * this member is taken into account, otherwise all members are evaluated.
+	 * 
+	 * @param member the member whose state has been updated
+	 * @return the new state of this group
+	 */
+	private State calculateState(Item member) {
+		if (aggregator!=null) {
+			synchronized (aggregator) {
+				if(aggregatedStates.containsKey(member)) {
+					State oldState = aggregatedStates.get(member);
+					State newState = ((IncrementalGroupFunction) function).getRelevantState(member);
+					if(oldState!=newState) {
+						aggregator.remove(oldState);
+						aggregatedStates.put(member, newState);
+						aggregator.add(newState);
+					}
+				}
+				return aggregator.getState();
+			}
+		} else {
+			return function.calculate(members);
+		}
 	}
 }
@@ -0,0 +1,93 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.core.items;
+
+import org.openhab.core.types.State;
+
+/**
+ * An incremental group function is able to update the state of a group when a 
+ * single member changes, without having to recalculate it over all members.
+ * {@link GroupItem}s create one {@link Aggregator} per group and feed it with 
+ * the relevant states of their members as they are added, changed or removed.
+ * 
+ * Implementations must return the same result from the {@link Aggregator} as 
+ * {@link #calculate(java.util.List)} would return for the same set of members.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+public interface IncrementalGroupFunction extends GroupFunction {
+
+	/**
+	 * Creates a new and empty aggregator for a single group.
+	 * 
+	 * @return a new aggregator instance
+	 */
+	public Aggregator createAggregator();
+
+	/**
+	 * Determines the state of a member item which is relevant for this function.
+	 * This is the value that is passed to {@link Aggregator#add(State)} and later 
+	 * again to {@link Aggregator#remove(State)}.
+	 * 
+	 * @param item the member item
+	 * @return the relevant state of the item, might be <code>null</code>
+	 */
+	public State getRelevantState(Item item);
+
+	/**
+	 * An aggregator keeps the intermediate results of an {@link IncrementalGroupFunction}
+	 * for a single group. Aggregators need not to be thread-safe, the {@link GroupItem}
+	 * takes care of synchronizing the access.
+	 */
+	public interface Aggregator {
+		
+		/**
+		 * Adds the relevant state of a member to the aggregate.
+		 * 
+		 * @param state the relevant state as returned by {@link IncrementalGroupFunction#getRelevantState(Item)}, might be <code>null</code>
+		 */
+		public void add(State state);
+		
+		/**
+		 * Removes a previously added relevant state of a member from the aggregate.
+		 * 
+		 * @param state the relevant state as it has been passed to {@link #add(State)} before
+		 */
+		public void remove(State state);
+		
+		/**
+		 * Returns the current group state.
+		 * 
+		 * @return the group state calculated from all added member states
+		 */
+		public State getState();
+	}
+}
@@ -29,6 +29,8 @@
 package org.openhab.io.console;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.openhab.core.events.EventPublisher;
@@ -40,6 +42,7 @@ import org.openhab.core.scriptengine.Script;
 import org.openhab.core.scriptengine.ScriptEngine;
 import org.openhab.core.scriptengine.ScriptExecutionException;
 import org.openhab.core.scriptengine.ScriptParsingException;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.openhab.core.types.TypeParser;
@@ -79,6 +82,8 @@ public class ConsoleInterpreter {
 			ConsoleInterpreter.handleStatus(args, console);
 		} else if(arg.equals("say")) {
 			ConsoleInterpreter.handleSay(args, console);
+		} else if(arg.equals("stats")) {
+			ConsoleInterpreter.handleStats(args, console);
 		} else if(arg.equals(">")) {
 			ConsoleInterpreter.handleScript(args, console);
 		} else {
@@ -284,6 +289,31 @@ public class ConsoleInterpreter {
 		}
 	}
 
+	/**
+	 * This method handles a stats command. 
+	 * 
+	 * @param args array which contains the arguments for the stats command
+	 * @param console the console for printing messages for the user
+	 */
+	public static void handleStats(String[] args, Console console) {
+		Object[] providers = ConsoleActivator.statisticsProviderTracker.getServices();
+		if(providers!=null && providers.length>0) {
+			String filter = (args.length == 0) ? null : args[0].toLowerCase();
+			for(Object service : providers) {
+				StatisticsProvider provider = (StatisticsProvider) service;
+				if(filter==null || provider.getStatisticsName().toLowerCase().contains(filter)) {
+					console.println(provider.getStatisticsName() + ":");
+					Map<String, Object> statistics = provider.getStatistics();
+					for(Entry<String, Object> entry : statistics.entrySet()) {
+						console.println("  " + entry.getKey() + " = " + entry.getValue());
+					}
+				}
+			}
+		} else {
+			console.println("No statistics are available.");
+		}
+	}
+
 	public static void handleScript(String[] args, Console console) {
 		ScriptEngine scriptEngine = ConsoleActivator.scriptEngineTracker.getService();
 		if(scriptEngine!=null) {
@@ -325,6 +355,7 @@ public class ConsoleInterpreter {
 				getStatusUsage(),
 				getItemsUsage(),
 				getSayUsage(),
+				getStatsUsage(),
 				getScriptUsage()
 		};
 	}
@@ -349,6 +380,10 @@ public class ConsoleInterpreter {
 		return "say <sentence to say> - Says a message through TTS on the host machine";
 	}
 
+	public static String getStatsUsage() {
+		return "stats [<service>] - shows runtime statistics of all services or the matching service";
+	}
+
 	public static String getScriptUsage() {
 		return "> <script to execute> - Executes a script";
 	}
@@ -106,6 +106,7 @@ public class ConsoleCommandProvider implements CommandProvider {
 		buffer.append("openhab " + ConsoleInterpreter.getStatusUsage() + "\n\t");
 		buffer.append("openhab " + ConsoleInterpreter.getItemsUsage() + "\n\t");
 		buffer.append("openhab " + ConsoleInterpreter.getSayUsage() + "\n\t");
+		buffer.append("openhab " + ConsoleInterpreter.getStatsUsage() + "\n\t");
 		buffer.append("openhab " + ConsoleInterpreter.getScriptUsage() + "\n");
 		return buffer.toString();
 	}
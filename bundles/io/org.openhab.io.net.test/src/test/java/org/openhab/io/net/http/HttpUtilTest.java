@@ -28,6 +28,18 @@
  */
 package org.openhab.io.net.http;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.Assert;
 
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
@@ -68,4 +80,92 @@ public class HttpUtilTest {
 		Assert.assertEquals(DeleteMethod.class, HttpUtil.createHttpMethod("DELETE", "").getClass());
 	}
 
+	@Test
+	public void testExecuteUrlAsync() throws Exception {
+		TestServer server = new TestServer(3);
+		try {
+			List<Future<String>> responses = new ArrayList<Future<String>>();
+			for (int i = 0; i < 3; i++) {
+				responses.add(HttpUtil.executeUrlAsync("GET", server.getUrl() + "/item" + i, 5000));
+			}
+			// every server thread waits for the others, so all requests must run at the same time
+			for (int i = 0; i < 3; i++) {
+				Assert.assertEquals("item" + i, responses.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testExecuteUrlAsyncWithoutServer() throws Exception {
+		TestServer server = new TestServer(1);
+		String url = server.getUrl();
+		server.close();
+		
+		Assert.assertNull(HttpUtil.executeUrlAsync("GET", url + "/item", 1000).get(10, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * A minimal HTTP server which answers every request with its path. Each
+	 * request waits until the given number of requests has arrived and is 
+	 * answered with "sequential" instead, if they do not arrive in time.
+	 */
+	static class TestServer implements Runnable {
+		
+		private final ServerSocket serverSocket;
+		
+		private final CountDownLatch arrived;
+		
+		TestServer(int concurrentRequests) throws IOException {
+			serverSocket = new ServerSocket(0);
+			arrived = new CountDownLatch(concurrentRequests);
+			Thread thread = new Thread(this, "HttpUtilTest server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		String getUrl() {
+			return "http://localhost:" + serverSocket.getLocalPort();
+		}
+		
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					final Socket socket = serverSocket.accept();
+					new Thread(new Runnable() {
+						public void run() {
+							answer(socket);
+						}
+					}).start();
+				} catch (IOException e) {
+					// the server has been closed
+				}
+			}
+		}
+		
+		private void answer(Socket socket) {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+				String path = reader.readLine().split(" ")[1];
+				while (reader.readLine().length() > 0) {
+					// skip the headers
+				}
+				arrived.countDown();
+				String body = arrived.await(5, TimeUnit.SECONDS) ? path.substring(1) : "sequential";
+				OutputStream out = socket.getOutputStream();
+				out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length() 
+						+ "\r\nConnection: close\r\n\r\n" + body).getBytes("US-ASCII"));
+				out.flush();
+				socket.close();
+			} catch (Exception e) {
+				// the client has gone
+			}
+		}
+		
+		void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+
 }
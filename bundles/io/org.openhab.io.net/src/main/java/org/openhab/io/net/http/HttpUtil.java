@@ -33,6 +33,8 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,12 +57,15 @@ import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.openhab.io.net.internal.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * Some common methods to be used in both HTTP-In-Binding and HTTP-Out-Binding
+ * Some common methods to be used in both HTTP-In-Binding and HTTP-Out-Binding.
+ * All requests share one pool of connections, so that connections to the same 
+ * host are kept alive and reused (see {@link HttpClientPool}).
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @author Kai Kreuzer
@@ -151,6 +156,49 @@ public class HttpUtil {
 
 	}
 	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * asynchronously on a bounded pool of worker threads. If all workers are busy
+	 * and too many requests are waiting already, the request is executed by the
+	 * calling thread.
+	 * 
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param timeout the socket timeout to wait for data (in milliseconds)
+	 * 
+	 * @return a {@link Future} which provides the response body or <code>NULL</code> 
+	 * when the request went wrong
+	 */
+	public static Future<String> executeUrlAsync(String httpMethod, String url, int timeout) {
+		return executeUrlAsync(httpMethod, url, null, null, null, timeout);
+	}
+
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * asynchronously on a bounded pool of worker threads. If all workers are busy
+	 * and too many requests are waiting already, the request is executed by the
+	 * calling thread.
+	 * 
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param httpHeaders optional http request headers which has to be sent within request 
+	 * @param content the content to be send to the given <code>url</code> or 
+	 * <code>null</code> if no content should be send.
+	 * @param contentType the content type of the given <code>content</code>
+	 * @param timeout the socket timeout to wait for data (in milliseconds)
+	 * 
+	 * @return a {@link Future} which provides the response body or <code>NULL</code> 
+	 * when the request went wrong
+	 */
+	public static Future<String> executeUrlAsync(final String httpMethod, final String url, final Properties httpHeaders, 
+			final InputStream content, final String contentType, final int timeout) {
+		return HttpClientPool.getAsyncExecutor().submit(new Callable<String>() {
+			public String call() throws Exception {
+				return executeUrl(httpMethod, url, httpHeaders, content, contentType, timeout);
+			}
+		});
+	}
+	
 	/**
 	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
 	 * 
@@ -170,7 +218,10 @@ public class HttpUtil {
 	 */
 	public static String executeUrl(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout, String proxyHost, Integer proxyPort, String proxyUser, String proxyPassword, String nonProxyHosts) {
 		
-		HttpClient client = new HttpClient();
+		// the client itself is cheap, the connections are pooled by the shared connection manager
+		HttpClient client = new HttpClient(HttpClientPool.getConnectionManager());
+		// do not wait forever for a connection, if all pooled connections to the host are busy
+		client.getParams().setConnectionManagerTimeout(HttpClientPool.getConnectionManagerTimeout());
 		
 		// only configure a proxy if a host is provided
 		if (StringUtils.isNotBlank(proxyHost) && proxyPort != null && shouldUseProxy(url, nonProxyHosts)) {
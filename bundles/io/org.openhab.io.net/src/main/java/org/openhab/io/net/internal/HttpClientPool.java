@@ -0,0 +1,217 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.net.internal;
+
+import java.util.Dictionary;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.lang.StringUtils;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the connection pool which is shared by all requests of the 
+ * {@link org.openhab.io.net.http.HttpUtil}, so that connections to the same
+ * host are kept alive and reused, as well as the bounded pool of worker threads 
+ * which execute asynchronous requests. 
+ * <p>
+ * The pool works with its defaults as soon as it is used; when the component is
+ * activated, it is configured through the <code>httpclient:</code> keys of the
+ * openHAB configuration and idle connections are closed in the background.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class HttpClientPool implements ManagedService {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientPool.class);
+
+	/** the default maximum number of connections per host */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+	/** the default maximum number of connections over all hosts */
+	public static final int DEFAULT_MAX_CONNECTIONS = 40;
+
+	/** the default timeout in milliseconds for establishing a connection */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+	/** the default time in milliseconds to wait for a free connection of the pool */
+	public static final int DEFAULT_CONNECTION_MANAGER_TIMEOUT = 10000;
+
+	/** the default time in milliseconds after which an idle connection is closed */
+	public static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+	/** the default number of threads executing asynchronous requests */
+	public static final int DEFAULT_ASYNC_THREADS = 8;
+
+	/** the default number of asynchronous requests which may wait for a thread */
+	public static final int DEFAULT_ASYNC_QUEUE_SIZE = 200;
+
+	private static final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+
+	private static final ThreadPoolExecutor asyncExecutor = new ThreadPoolExecutor(
+		DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60L, TimeUnit.SECONDS, 
+		new LinkedBlockingQueue<Runnable>(DEFAULT_ASYNC_QUEUE_SIZE), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "HttpUtil-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, 
+		// if all threads are busy and the queue is full, the caller executes the request itself
+		new ThreadPoolExecutor.CallerRunsPolicy());
+
+	private static int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	private static volatile long connectionManagerTimeout = DEFAULT_CONNECTION_MANAGER_TIMEOUT;
+
+	static {
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		params.setMaxTotalConnections(DEFAULT_MAX_CONNECTIONS);
+		params.setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT);
+		params.setStaleCheckingEnabled(true);
+		asyncExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	private IdleConnectionTimeoutThread idleConnectionThread;
+
+	/**
+	 * @return the connection manager which pools the connections of all requests
+	 */
+	public static HttpConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	/**
+	 * @return the time in milliseconds a request waits for a free connection of the pool, 
+	 * 	before it fails instead of blocking its thread forever
+	 */
+	public static long getConnectionManagerTimeout() {
+		return connectionManagerTimeout;
+	}
+
+	/**
+	 * @return the executor for asynchronous requests
+	 */
+	public static ExecutorService getAsyncExecutor() {
+		return asyncExecutor;
+	}
+
+	public void activate() {
+		startIdleConnectionThread();
+	}
+
+	public void deactivate() {
+		stopIdleConnectionThread();
+		connectionManager.closeIdleConnections(0);
+	}
+
+	private synchronized void startIdleConnectionThread() {
+		stopIdleConnectionThread();
+		idleConnectionThread = new IdleConnectionTimeoutThread();
+		idleConnectionThread.setName("HttpUtil idle connection closer");
+		idleConnectionThread.setConnectionTimeout(idleTimeout);
+		idleConnectionThread.setTimeoutInterval(Math.max(idleTimeout / 2, 1000));
+		idleConnectionThread.addConnectionManager(connectionManager);
+		idleConnectionThread.start();
+	}
+
+	private synchronized void stopIdleConnectionThread() {
+		if (idleConnectionThread != null) {
+			idleConnectionThread.shutdown();
+			idleConnectionThread = null;
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		if (config != null) {
+			HttpConnectionManagerParams params = connectionManager.getParams();
+			params.setDefaultMaxConnectionsPerHost(
+				parseInt(config, "maxConnectionsPerHost", DEFAULT_MAX_CONNECTIONS_PER_HOST));
+			params.setMaxTotalConnections(parseInt(config, "maxConnections", DEFAULT_MAX_CONNECTIONS));
+			params.setConnectionTimeout(parseInt(config, "connectTimeout", DEFAULT_CONNECT_TIMEOUT));
+			connectionManagerTimeout = parseInt(config, "connectionManagerTimeout", DEFAULT_CONNECTION_MANAGER_TIMEOUT);
+
+			int asyncThreads = parseInt(config, "asyncThreads", DEFAULT_ASYNC_THREADS);
+			if (asyncThreads > asyncExecutor.getMaximumPoolSize()) {
+				asyncExecutor.setMaximumPoolSize(asyncThreads);
+				asyncExecutor.setCorePoolSize(asyncThreads);
+			} else {
+				asyncExecutor.setCorePoolSize(asyncThreads);
+				asyncExecutor.setMaximumPoolSize(asyncThreads);
+			}
+
+			int newIdleTimeout = parseInt(config, "idleTimeout", DEFAULT_IDLE_TIMEOUT);
+			if (newIdleTimeout != idleTimeout) {
+				idleTimeout = newIdleTimeout;
+				if (idleConnectionThread != null) {
+					startIdleConnectionThread();
+				}
+			}
+
+			logger.debug("HTTP client pool configured with {} connections per host, {} in total and {} async threads", 
+				new Object[] { params.getDefaultMaxConnectionsPerHost(), params.getMaxTotalConnections(), asyncThreads });
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static int parseInt(Dictionary config, String key, int defaultValue) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				int intValue = Integer.parseInt(value.trim());
+				if (intValue > 0) {
+					return intValue;
+				}
+			} catch (NumberFormatException e) {
+				// handled below
+			}
+			throw new ConfigurationException("httpclient:" + key, "'" + value + "' is not a positive integer");
+		}
+		return defaultValue;
+	}
+
+}
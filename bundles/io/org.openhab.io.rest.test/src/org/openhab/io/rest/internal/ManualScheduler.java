@@ -0,0 +1,110 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler whose tasks are run by the test itself, regardless of their delay.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+	private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+	private boolean shutdown = false;
+
+	/**
+	 * Runs all tasks which have been scheduled so far.
+	 * 
+	 * @return the number of tasks which have been run
+	 */
+	public synchronized int runPending() {
+		List<Runnable> pending = new ArrayList<Runnable>(tasks);
+		tasks.clear();
+		for(Runnable task : pending) {
+			task.run();
+		}
+		return pending.size();
+	}
+
+	public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		tasks.add(command);
+		// the future is not used by the broadcast scheduler
+		return null;
+	}
+
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void execute(Runnable command) {
+		schedule(command, 0, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void shutdown() {
+		shutdown = true;
+	}
+
+	public synchronized List<Runnable> shutdownNow() {
+		shutdown = true;
+		List<Runnable> pending = new ArrayList<Runnable>(tasks);
+		tasks.clear();
+		return pending;
+	}
+
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	public synchronized boolean isTerminated() {
+		return shutdown;
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) {
+		return true;
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.io.rest.internal.ManualScheduler;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class DelayedBroadcastSchedulerTest {
+
+	private static final int CLIENTS = 30;
+
+	private static final int BROADCASTERS = 3;
+
+	private static final int UPDATES = 5000;
+
+	private static final int UPDATES_PER_DELAY = 100;
+
+	private static final long DELAY = 50;
+
+	private final Map<String, Object> lastDelivered = new ConcurrentHashMap<String, Object>();
+
+	private final AtomicInteger deliveries = new AtomicInteger();
+
+	private final DelayedBroadcastScheduler.Delivery delivery = new DelayedBroadcastScheduler.Delivery() {
+		public void deliver(String broadcasterName, AtmosphereResource resource, Object message) {
+			lastDelivered.put(broadcasterName + resource.hashCode(), message);
+			deliveries.incrementAndGet();
+		}
+	};
+
+	private ManualScheduler executor;
+
+	private DelayedBroadcastScheduler scheduler;
+
+	@Before
+	public void init() {
+		executor = new ManualScheduler();
+		scheduler = new DelayedBroadcastScheduler(delivery, executor);
+	}
+
+	@After
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testCoalescing() {
+		AtmosphereResource resource = createResource();
+		for(int i = 0; i < 10; i++) {
+			scheduler.schedule("/rest/sitemaps/demo/0000", resource, i, DELAY);
+		}
+		assertEquals(1, scheduler.getPendingCount());
+		assertEquals(0, deliveries.get());
+
+		assertEquals(1, executor.runPending());
+		assertEquals(1, deliveries.get());
+		assertEquals(9, lastDelivered.get("/rest/sitemaps/demo/0000" + resource.hashCode()));
+		assertEquals(0, scheduler.getPendingCount());
+
+		// a new update after the delivery is delivered again
+		scheduler.schedule("/rest/sitemaps/demo/0000", resource, 10, DELAY);
+		assertEquals(1, executor.runPending());
+		assertEquals(2, deliveries.get());
+		assertEquals(10, lastDelivered.get("/rest/sitemaps/demo/0000" + resource.hashCode()));
+	}
+
+	/**
+	 * Schedules many updates for some clients on several pages, running the expired 
+	 * deliveries after every batch of updates, and checks that the updates are coalesced 
+	 * and that every client finally received its latest update.
+	 */
+	@Test
+	public void testCoalescingUnderLoad() {
+		AtmosphereResource[] resources = createResources();
+		int update = 0;
+		while(update < UPDATES) {
+			for(int i = 0; i < UPDATES_PER_DELAY; i++, update++) {
+				scheduler.schedule("/rest/sitemaps/demo/" + (update % BROADCASTERS), 
+						resources[update % CLIENTS], update, DELAY);
+			}
+			// every client observes a single page, so there is one delivery per client
+			assertEquals(CLIENTS, executor.runPending());
+		}
+
+		assertEquals(UPDATES, scheduler.getScheduledCount());
+		assertEquals(UPDATES / UPDATES_PER_DELAY * CLIENTS, scheduler.getDeliveredCount());
+		assertEquals(0, scheduler.getPendingCount());
+		assertLatestUpdatesDelivered(resources, update);
+	}
+
+	/**
+	 * Checks that all deliveries are run by a single thread, however many are pending.
+	 */
+	@Test
+	public void testSingleThread() throws InterruptedException {
+		final AtomicInteger threads = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(CLIENTS);
+		DelayedBroadcastScheduler threadedScheduler = new DelayedBroadcastScheduler(new DelayedBroadcastScheduler.Delivery() {
+			public void deliver(String broadcasterName, AtmosphereResource resource, Object message) {
+				delivery.deliver(broadcasterName, resource, message);
+				if("done".equals(message)) {
+					done.countDown();
+				}
+			}
+		}, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				threads.incrementAndGet();
+				Thread thread = new Thread(runnable, "DelayedBroadcastSchedulerTest");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			AtmosphereResource[] resources = createResources();
+			for(int update = 0; update < UPDATES; update++) {
+				threadedScheduler.schedule("/rest/sitemaps/demo/" + (update % BROADCASTERS), 
+						resources[update % CLIENTS], update, 1);
+			}
+			// the last message of every client is either coalesced or scheduled on its own
+			for(int i = 0; i < CLIENTS; i++) {
+				threadedScheduler.schedule("/rest/sitemaps/demo/" + (i % BROADCASTERS), resources[i], "done", 1);
+			}
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(1, threads.get());
+		} finally {
+			threadedScheduler.shutdown();
+		}
+	}
+
+	private void assertLatestUpdatesDelivered(AtmosphereResource[] resources, int updates) {
+		for(int last = updates - CLIENTS; last < updates; last++) {
+			assertEquals(last, lastDelivered.get("/rest/sitemaps/demo/" + (last % BROADCASTERS) 
+					+ resources[last % CLIENTS].hashCode()));
+		}
+	}
+
+	private static AtmosphereResource[] createResources() {
+		AtmosphereResource[] resources = new AtmosphereResource[CLIENTS];
+		for(int i = 0; i < CLIENTS; i++) {
+			resources[i] = createResource();
+		}
+		return resources;
+	}
+
+	private static AtmosphereResource createResource() {
+		return (AtmosphereResource) Proxy.newProxyInstance(DelayedBroadcastSchedulerTest.class.getClassLoader(), 
+			new Class<?>[] { AtmosphereResource.class }, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if(method.getName().equals("hashCode")) {
+						return System.identityHashCode(proxy);
+					} else if(method.getName().equals("equals")) {
+						return proxy == args[0];
+					}
+					return null;
+				}
+			});
+	}
+
+}
@@ -0,0 +1,296 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.io.rest.internal.ManualScheduler;
+import org.openhab.io.rest.internal.resources.beans.ItemStateBean;
+import org.openhab.io.rest.internal.resources.beans.ItemStateListBean;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ItemStateStreamTest {
+
+	private static final int ITEMS = 50;
+
+	private static final int CLIENTS = 500;
+	
+	private static final int ITEMS_PER_CLIENT = 10;
+	
+	private static final int SLOW_CLIENTS = 25;
+
+	private static final int UPDATES_PER_SECOND = 2000;
+	
+	private static final int SECONDS = 3;
+
+	private Map<String, Item> items;
+	
+	private ManualScheduler scheduler;
+	
+	private ItemSubscriptionHub hub;
+	
+	@Before
+	public void setUp() {
+		scheduler = new ManualScheduler();
+		items = new HashMap<String, Item>();
+		for(int i = 0; i < ITEMS; i++) {
+			items.put("Item" + i, new NumberItem("Item" + i));
+		}
+		hub = new ItemSubscriptionHub() {
+			@Override
+			protected Item getItem(String itemName) {
+				return items.get(itemName);
+			}
+		};
+	}
+
+	@Test
+	public void testBatching() {
+		RecordingOutput output = new RecordingOutput(null);
+		ItemStateStream stream = new ItemStateStream(hub, output, 100, 1000, scheduler);
+		stream.open(Arrays.asList(items.get("Item0"), items.get("Item1")));
+		stream.start();
+		for(int i = 1; i <= 10; i++) {
+			setState("Item0", i);
+		}
+		assertEquals(0, output.batches.get());
+		
+		// the initial states and all changes are coalesced into one batch
+		assertEquals(1, scheduler.runPending());
+		assertEquals(1, output.batches.get());
+		assertEquals("10", output.states.get("Item0"));
+		assertEquals("Uninitialized", output.states.get("Item1"));
+
+		setState("Item1", 5);
+		assertEquals(1, scheduler.runPending());
+		assertEquals(2, output.batches.get());
+		assertEquals("5", output.states.get("Item1"));
+		
+		// nothing is scheduled without changes
+		assertEquals(0, scheduler.runPending());
+		
+		stream.close();
+		assertTrue(output.closed);
+		assertEquals(0, hub.getItemCount());
+	}
+
+	@Test
+	public void testNothingIsSentBeforeStart() {
+		RecordingOutput output = new RecordingOutput(null);
+		ItemStateStream stream = new ItemStateStream(hub, output, 0, 1000, scheduler);
+		stream.open(Collections.singletonList(items.get("Item0")));
+		setState("Item0", 1);
+		assertEquals(0, scheduler.runPending());
+		assertEquals(0, output.batches.get());
+
+		stream.start();
+		assertEquals(1, scheduler.runPending());
+		assertEquals(1, output.batches.get());
+		assertEquals("1", output.states.get("Item0"));
+		stream.close();
+	}
+
+	@Test
+	public void testBatchesAreDeferredForBusyConsumers() {
+		// an output that never finishes writing
+		SlowOutput output = new SlowOutput();
+		ItemStateStream stream = new ItemStateStream(hub, output, 20, 60000, scheduler);
+		stream.open(Collections.singletonList(items.get("Item0")));
+		stream.start();
+		scheduler.runPending();
+		assertEquals(1, output.sent.get());
+
+		// the changes are kept back, as the first batch has not been written yet
+		for(int i = 1; i <= 10; i++) {
+			setState("Item0", i);
+			assertEquals(1, scheduler.runPending());
+		}
+		assertEquals(1, output.sent.get());
+		assertFalse(stream.isClosed());
+		stream.close();
+	}
+
+	@Test
+	public void testSlowConsumer() {
+		// an output that never finishes writing and a client that is not allowed to stall at all
+		SlowOutput output = new SlowOutput();
+		ItemStateStream stream = new ItemStateStream(hub, output, 20, -1, scheduler);
+		stream.open(Collections.singletonList(items.get("Item0")));
+		stream.start();
+		scheduler.runPending();
+		assertEquals(1, output.sent.get());
+
+		setState("Item0", 1);
+		scheduler.runPending();
+		assertTrue(stream.isClosed());
+		assertTrue(output.closed);
+		assertEquals(1, output.sent.get());
+		assertEquals(0, hub.getFanOut("Item0"));
+	}
+
+	/**
+	 * Streams the changes of 50 items to 500 clients for some seconds. This takes too
+	 * long for the unit tests, so it is meant to be run manually.
+	 */
+	@Test @Ignore
+	public void testLoad() throws InterruptedException {
+		ExecutorService writers = Executors.newFixedThreadPool(4);
+		List<String> itemNames = new ArrayList<String>(items.keySet());
+		
+		List<ItemStateStream> streams = new ArrayList<ItemStateStream>();
+		List<RecordingOutput> outputs = new ArrayList<RecordingOutput>();
+		List<List<Item>> subscriptions = new ArrayList<List<Item>>();
+		for(int i = 0; i < CLIENTS; i++) {
+			ItemStateStream.Output output = i < SLOW_CLIENTS ? new SlowOutput() : new RecordingOutput(writers);
+			ItemStateStream stream = new ItemStateStream(hub, output, 100, 500);
+			List<Item> subscribed = new ArrayList<Item>();
+			for(int j = 0; j < ITEMS_PER_CLIENT; j++) {
+				subscribed.add(items.get(itemNames.get((i + j * 7) % ITEMS)));
+			}
+			stream.open(subscribed);
+			stream.start();
+			streams.add(stream);
+			subscriptions.add(subscribed);
+			if(output instanceof RecordingOutput) {
+				outputs.add((RecordingOutput) output);
+			}
+		}
+		assertEquals(CLIENTS * ITEMS_PER_CLIENT, hub.getSubscriptionCount());
+
+		long start = System.currentTimeMillis();
+		int updates = 0;
+		while(System.currentTimeMillis() - start < SECONDS * 1000) {
+			for(int i = 0; i < UPDATES_PER_SECOND / 100; i++) {
+				setState(itemNames.get(updates % ITEMS), updates);
+				updates++;
+			}
+			Thread.sleep(10);
+		}
+		Thread.sleep(1000);
+
+		// all fast clients have received the latest state of each of their items
+		for(int i = SLOW_CLIENTS; i < CLIENTS; i++) {
+			RecordingOutput output = outputs.get(i - SLOW_CLIENTS);
+			assertFalse(streams.get(i).isClosed());
+			for(Item item : subscriptions.get(i)) {
+				assertEquals(item.getState().toString(), output.states.get(item.getName()));
+			}
+		}
+		// all slow clients have been dropped
+		for(int i = 0; i < SLOW_CLIENTS; i++) {
+			assertTrue(streams.get(i).isClosed());
+		}
+		assertEquals((CLIENTS - SLOW_CLIENTS) * ITEMS_PER_CLIENT, hub.getSubscriptionCount());
+
+		for(ItemStateStream stream : streams) {
+			stream.close();
+		}
+		writers.shutdown();
+		assertEquals(0, hub.getItemCount());
+	}
+
+	private void setState(String itemName, int value) {
+		((NumberItem) items.get(itemName)).setState(new DecimalType(value));
+	}
+
+	private static class RecordingOutput implements ItemStateStream.Output {
+		final ExecutorService writer;
+		final Map<String, String> states = new ConcurrentHashMap<String, String>();
+		final AtomicInteger batches = new AtomicInteger();
+		volatile boolean closed = false;
+		
+		RecordingOutput(ExecutorService writer) {
+			this.writer = writer;
+		}
+		
+		public Future<?> send(final ItemStateListBean batch) {
+			Runnable write = new Runnable() {
+				public void run() {
+					for(ItemStateBean bean : batch.entries) {
+						states.put(bean.name, bean.state);
+					}
+					batches.incrementAndGet();
+				}
+			};
+			if(writer!=null) {
+				return writer.submit(write);
+			} else {
+				FutureTask<Object> task = new FutureTask<Object>(write, null);
+				task.run();
+				return task;
+			}
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static class SlowOutput implements ItemStateStream.Output {
+		final AtomicInteger sent = new AtomicInteger();
+		volatile boolean closed = false;
+		
+		public Future<?> send(ItemStateListBean batch) {
+			sent.incrementAndGet();
+			// a write that never completes
+			return new FutureTask<Object>(new Runnable() {
+				public void run() {}
+			}, null);
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+	
+}
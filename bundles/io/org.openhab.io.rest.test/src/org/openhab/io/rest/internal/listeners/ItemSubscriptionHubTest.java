@@ -0,0 +1,186 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ItemSubscriptionHubTest {
+
+	private Map<String, Item> items;
+	
+	private ItemSubscriptionHub hub;
+	
+	@Before
+	public void setUp() {
+		items = new HashMap<String, Item>();
+		items.put("A", new NumberItem("A"));
+		items.put("B", new NumberItem("B"));
+		hub = new ItemSubscriptionHub() {
+			@Override
+			protected Item getItem(String itemName) {
+				return items.get(itemName);
+			}
+		};
+	}
+	
+	@Test
+	public void testReferenceCounting() {
+		CountingListener l1 = new CountingListener();
+		CountingListener l2 = new CountingListener();
+		List<String> itemNames = Arrays.asList("A", "B");
+		
+		hub.subscribe(itemNames, l1);
+		hub.subscribe(itemNames, l2);
+		hub.subscribe("A", l2);
+		assertFalse(hub.subscribe("Unknown", l1));
+		assertEquals(2, hub.getItemCount());
+		assertEquals(5, hub.getSubscriptionCount());
+		assertEquals(2, hub.getFanOut("A"));
+		assertEquals(2, hub.getMaxFanOut());
+		assertEquals(0, hub.getFanOut("Unknown"));
+		
+		((NumberItem) items.get("A")).setState(new DecimalType(1));
+		assertEquals(1, l1.changes);
+		assertEquals(1, l2.changes);
+		assertEquals(4, hub.getNotificationCount());
+		
+		hub.unsubscribe(itemNames, l1);
+		assertEquals(2, hub.getItemCount());
+		assertEquals(1, hub.getFanOut("B"));
+		
+		((NumberItem) items.get("B")).setState(new DecimalType(1));
+		assertEquals(1, l1.changes);
+		assertEquals(2, l2.changes);
+
+		// l2 has subscribed to A twice, so it is still subscribed once
+		hub.unsubscribe(itemNames, l2);
+		assertEquals(1, hub.getItemCount());
+		assertEquals(1, hub.getSubscriptionCount());
+		((NumberItem) items.get("A")).setState(new DecimalType(2));
+		assertEquals(3, l2.changes);
+
+		hub.unsubscribe("A", l2);
+		assertEquals(0, hub.getItemCount());
+		assertEquals(0, hub.getSubscriptionCount());
+		assertTrue(hub.getStatistics().containsKey("subscriptions"));
+		
+		// the hub does not listen to the item anymore
+		((NumberItem) items.get("A")).setState(new DecimalType(3));
+		assertEquals(3, l2.changes);
+	}
+	
+	@Test
+	public void testSubscriptionsMoveToReplacedItems() {
+		CountingListener l1 = new CountingListener();
+		NumberItem oldItem = (NumberItem) items.get("A");
+		hub.subscribe("A", l1);
+		
+		// the items file is reloaded
+		NumberItem newItem = new NumberItem("A");
+		items.put("A", newItem);
+		hub.allItemsChanged(Arrays.asList("A", "B"));
+		oldItem.setState(new DecimalType(1));
+		assertEquals(0, l1.changes);
+		newItem.setState(new DecimalType(1));
+		assertEquals(1, l1.changes);
+		
+		// a single item is removed and added again
+		hub.itemRemoved(newItem);
+		items.remove("A");
+		newItem.setState(new DecimalType(2));
+		assertEquals(1, l1.changes);
+		assertEquals(1, hub.getSubscriptionCount());
+		
+		NumberItem addedItem = new NumberItem("A");
+		items.put("A", addedItem);
+		hub.itemAdded(addedItem);
+		addedItem.setState(new DecimalType(3));
+		assertEquals(2, l1.changes);
+		
+		hub.unsubscribe("A", l1);
+		assertEquals(0, hub.getItemCount());
+		addedItem.setState(new DecimalType(4));
+		assertEquals(2, l1.changes);
+	}
+	
+	@Test
+	public void testFanOutThroughput() {
+		final int subscribers = 100;
+		final int updates = 100000;
+		NumberItem item = (NumberItem) items.get("A");
+		CountingListener[] listeners = new CountingListener[subscribers];
+		for(int i = 0; i < subscribers; i++) {
+			listeners[i] = new CountingListener();
+			hub.subscribe("A", listeners[i]);
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < updates; i++) {
+			item.setState(new DecimalType(i + 1));
+		}
+		long hubNanos = System.nanoTime() - start;
+		assertEquals(updates, listeners[0].changes);
+		assertEquals(1, hub.getItemCount());
+		assertEquals((long) updates * subscribers * 2, hub.getNotificationCount());
+
+		System.out.println(String.format("updates/sec with %d subscribers through the hub: %d", 
+				subscribers, updates * 1000000000L / hubNanos));
+	}
+	
+	private static class CountingListener implements StateChangeListener {
+		int changes = 0;
+		
+		public void stateChanged(Item item, State oldState, State newState) {
+			changes++;
+		}
+
+		public void stateUpdated(Item item, State state) {
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class PageDeltaTrackerTest {
+
+	@Test
+	public void testChangedItems() {
+		PageDeltaTracker tracker = new PageDeltaTracker(10);
+		assertEquals(0, tracker.getSequence());
+		tracker.startTracking();
+		assertEquals(1, tracker.getSequence());
+		assertEquals(2, tracker.itemChanged("A"));
+		assertEquals(3, tracker.itemChanged("B"));
+		assertEquals(4, tracker.itemChanged("A"));
+		
+		Set<String> changedItems = tracker.getChangedItems(1, 4);
+		assertEquals(2, changedItems.size());
+		assertTrue(changedItems.contains("A"));
+		assertTrue(changedItems.contains("B"));
+		
+		changedItems = tracker.getChangedItems(3, 4);
+		assertEquals(1, changedItems.size());
+		assertTrue(changedItems.contains("A"));
+		
+		assertTrue(tracker.getChangedItems(4, 4).isEmpty());
+	}
+
+	@Test
+	public void testResyncOnGap() {
+		PageDeltaTracker tracker = new PageDeltaTracker(10);
+		tracker.startTracking();
+		for(int i = 0; i < 25; i++) {
+			tracker.itemChanged("Item" + i);
+		}
+		// the last 10 changes are known
+		Set<String> changedItems = tracker.getChangedItems(16, 26);
+		assertEquals(10, changedItems.size());
+		assertTrue(changedItems.contains("Item15"));
+		assertTrue(changedItems.contains("Item24"));
+		
+		// older changes are not known anymore
+		assertNull(tracker.getChangedItems(15, 26));
+		
+		// invalid sequence numbers
+		assertNull(tracker.getChangedItems(-1, 26));
+		assertNull(tracker.getChangedItems(27, 26));
+		assertNull(tracker.getChangedItems(20, 27));
+	}
+
+	@Test
+	public void testResyncAfterTrackingGap() {
+		PageDeltaTracker tracker = new PageDeltaTracker(10);
+		// a full page has been requested before the page is tracked
+		long requested = tracker.getSequence();
+		tracker.startTracking();
+		tracker.itemChanged("A");
+		assertNull(tracker.getChangedItems(requested, tracker.getSequence()));
+
+		long seen = tracker.getSequence();
+		tracker.stopTracking();
+		assertNull(tracker.getChangedItems(seen, seen));
+
+		// changes might have been missed while the page was not tracked
+		tracker.startTracking();
+		tracker.itemChanged("B");
+		assertNull(tracker.getChangedItems(seen, tracker.getSequence()));
+		assertEquals(1, tracker.getChangedItems(tracker.getSequence() - 1, tracker.getSequence()).size());
+	}
+
+}
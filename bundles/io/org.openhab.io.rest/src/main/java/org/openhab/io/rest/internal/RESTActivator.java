@@ -28,6 +28,8 @@
  */
 package org.openhab.io.rest.internal;
 
+import org.openhab.core.service.StatisticsProvider;
+import org.openhab.io.rest.internal.listeners.ItemSubscriptionHub;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -50,6 +52,7 @@ public class RESTActivator implements BundleActivator {
 	 */
 	public void start(BundleContext bc) throws Exception {
 		context = bc;
+		bc.registerService(StatisticsProvider.class.getName(), ItemSubscriptionHub.getInstance(), null);
 		logger.debug("REST API has been started.");
 	}
 
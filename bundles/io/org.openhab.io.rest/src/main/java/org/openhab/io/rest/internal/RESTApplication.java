@@ -40,9 +40,11 @@ import org.atmosphere.cpr.AtmosphereServlet;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.io.net.http.SecureHttpContext;
+import org.openhab.io.rest.internal.listeners.ItemSubscriptionHub;
 import org.openhab.io.rest.internal.resources.ItemResource;
 import org.openhab.io.rest.internal.resources.RootResource;
 import org.openhab.io.rest.internal.resources.SitemapResource;
+import org.openhab.io.rest.internal.resources.StreamResource;
 import org.openhab.io.servicediscovery.DiscoveryService;
 import org.openhab.io.servicediscovery.ServiceDescription;
 import org.openhab.model.core.ModelRepository;
@@ -107,9 +109,11 @@ public class RESTApplication extends Application {
 
 	public void setItemUIRegistry(ItemUIRegistry itemUIRegistry) {
 		RESTApplication.itemUIRegistry = itemUIRegistry;
+		itemUIRegistry.addItemRegistryChangeListener(ItemSubscriptionHub.getInstance());
 	}
 	
 	public void unsetItemUIRegistry(ItemRegistry itemUIRegistry) {
+		itemUIRegistry.removeItemRegistryChangeListener(ItemSubscriptionHub.getInstance());
 		RESTApplication.itemUIRegistry = null;
 	}
 
@@ -196,6 +200,7 @@ public class RESTApplication extends Application {
         result.add(RootResource.class);
         result.add(ItemResource.class);
         result.add(SitemapResource.class);
+        result.add(StreamResource.class);
         return result;
     }
 
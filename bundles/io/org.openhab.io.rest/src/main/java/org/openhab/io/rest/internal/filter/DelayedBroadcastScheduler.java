@@ -0,0 +1,253 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.filter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.openhab.io.rest.internal.broadcaster.GeneralBroadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers broadcast messages to single {@link AtmosphereResource}s after a delay,
+ * which is needed to let group items complete their state calculation before a page
+ * is sent. All delayed messages share one scheduler thread.
+ * <p>
+ * Messages for the same broadcaster and resource are coalesced: while a delivery
+ * is pending, newer messages replace the pending one instead of being scheduled 
+ * themselves. As every message is a complete response object (e.g. a whole
+ * {@link org.openhab.io.rest.internal.resources.beans.PageBean}), the client 
+ * receives a single response reflecting all updates of the delay window.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class DelayedBroadcastScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(DelayedBroadcastScheduler.class);
+
+	/** the default delay in milliseconds */
+	public static final long DEFAULT_DELAY = 300;
+
+	/**
+	 * Delivers a delayed message to a resource.
+	 */
+	public interface Delivery {
+
+		/**
+		 * @param broadcasterName the name of the broadcaster to use
+		 * @param resource the resource the message is addressed to
+		 * @param message the latest message scheduled for the resource
+		 */
+		void deliver(String broadcasterName, AtmosphereResource resource, Object message);
+	}
+
+	private static final DelayedBroadcastScheduler instance = new DelayedBroadcastScheduler(new Delivery() {
+		public void deliver(String broadcasterName, AtmosphereResource resource, Object message) {
+			GeneralBroadcaster broadcaster = (GeneralBroadcaster) BroadcasterFactory.getDefault().lookup(GeneralBroadcaster.class, broadcasterName);
+			if(broadcaster != null) {
+				broadcaster.broadcast(message, resource);
+			} else {
+				logger.debug("broadcaster '{}' doesn't exist anymore, dropping delayed message", broadcasterName);
+			}
+		}
+	});
+
+	private final Delivery delivery;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final ConcurrentMap<PendingKey, PendingBroadcast> pendingBroadcasts = new ConcurrentHashMap<PendingKey, PendingBroadcast>();
+
+	private final AtomicLong scheduledCount = new AtomicLong();
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+
+	public DelayedBroadcastScheduler(Delivery delivery) {
+		this(delivery, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "REST delayed broadcast");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param delivery delivers the messages once their delay has expired
+	 * @param threadFactory creates the single scheduler thread
+	 */
+	public DelayedBroadcastScheduler(Delivery delivery, ThreadFactory threadFactory) {
+		this(delivery, Executors.newSingleThreadScheduledExecutor(threadFactory));
+	}
+
+	/**
+	 * @param delivery delivers the messages once their delay has expired
+	 * @param scheduler runs the deliveries; it is shut down by {@link #shutdown()}
+	 */
+	public DelayedBroadcastScheduler(Delivery delivery, ScheduledExecutorService scheduler) {
+		this.delivery = delivery;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return the scheduler which is shared by all broadcast filters
+	 */
+	public static DelayedBroadcastScheduler getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Schedules the delivery of a message to a resource, or replaces the message
+	 * of a delivery to the same resource which is still pending.
+	 * 
+	 * @param broadcasterName the name of the broadcaster to use for the delivery
+	 * @param resource the resource to deliver the message to
+	 * @param message the message to deliver
+	 * @param delay the delay in milliseconds
+	 */
+	public void schedule(String broadcasterName, AtmosphereResource resource, Object message, long delay) {
+		scheduledCount.incrementAndGet();
+		PendingKey key = new PendingKey(broadcasterName, resource);
+		while(true) {
+			PendingBroadcast pending = new PendingBroadcast(key, message);
+			PendingBroadcast existing = pendingBroadcasts.putIfAbsent(key, pending);
+			if(existing == null) {
+				scheduler.schedule(pending, delay, TimeUnit.MILLISECONDS);
+				return;
+			}
+			if(existing.replaceMessage(message)) {
+				return;
+			}
+			// the existing delivery has just started, so we schedule a new one
+			pendingBroadcasts.remove(key, existing);
+		}
+	}
+
+	/**
+	 * @return the number of deliveries which are currently waiting for their delay to expire
+	 */
+	public int getPendingCount() {
+		return pendingBroadcasts.size();
+	}
+
+	/**
+	 * @return the number of messages which have been scheduled
+	 */
+	public long getScheduledCount() {
+		return scheduledCount.get();
+	}
+
+	/**
+	 * @return the number of messages which have actually been delivered
+	 */
+	public long getDeliveredCount() {
+		return deliveredCount.get();
+	}
+
+	/**
+	 * Stops the scheduler thread; pending deliveries are dropped.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+		pendingBroadcasts.clear();
+	}
+
+	private class PendingBroadcast implements Runnable {
+
+		private final PendingKey key;
+
+		private Object message;
+
+		private boolean started = false;
+
+		PendingBroadcast(PendingKey key, Object message) {
+			this.key = key;
+			this.message = message;
+		}
+
+		synchronized boolean replaceMessage(Object message) {
+			if(started) {
+				return false;
+			}
+			this.message = message;
+			return true;
+		}
+
+		public void run() {
+			Object latestMessage;
+			synchronized(this) {
+				started = true;
+				latestMessage = message;
+			}
+			pendingBroadcasts.remove(key, this);
+			try {
+				delivery.deliver(key.broadcasterName, key.resource, latestMessage);
+				deliveredCount.incrementAndGet();
+			} catch (Exception e) {
+				logger.error("delayed broadcast to '{}' failed: {}", key.broadcasterName, e.getMessage());
+			}
+		}
+	}
+
+	private static class PendingKey {
+
+		final String broadcasterName;
+
+		final AtmosphereResource resource;
+
+		PendingKey(String broadcasterName, AtmosphereResource resource) {
+			this.broadcasterName = broadcasterName;
+			this.resource = resource;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * broadcasterName.hashCode() + System.identityHashCode(resource);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof PendingKey)) {
+				return false;
+			}
+			PendingKey other = (PendingKey) obj;
+			return resource == other.resource && broadcasterName.equals(other.broadcasterName);
+		}
+	}
+
+}
@@ -28,24 +28,23 @@
  */
 package org.openhab.io.rest.internal.filter;
 
-import java.util.concurrent.Executors;
-
 import javax.servlet.http.HttpServletRequest;
 
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
-import org.atmosphere.cpr.BroadcasterFactory;
 import org.atmosphere.cpr.PerRequestBroadcastFilter;
 import org.openhab.core.items.Item;
-import org.openhab.io.rest.internal.broadcaster.GeneralBroadcaster;
 import org.openhab.io.rest.internal.resources.ResponseTypeHelper;
 import org.openhab.io.rest.internal.resources.beans.PageBean;
+import org.openhab.io.rest.internal.resources.beans.PageDeltaBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This Filter delays the broadcast to polling connections. 
  * The delay is necessary for the completion of group events.
+ * All updates of a page within the delay are coalesced into a single
+ * response by the {@link DelayedBroadcastScheduler}.
  *   
  *  
  * @author Oliver Mazur
@@ -67,20 +66,11 @@ public class PollingDelayFilter implements PerRequestBroadcastFilter {
 		final  HttpServletRequest request = resource.getRequest();
 		try {	
 			// delay first broadcast for long-polling and other polling transports
-			if(!ResponseTypeHelper.isStreamingTransport(request) && message instanceof PageBean && originalMessage instanceof Item) {
+			if(!ResponseTypeHelper.isStreamingTransport(request) && (message instanceof PageBean || message instanceof PageDeltaBean) 
+					&& originalMessage instanceof Item) {
 				final String delayedBroadcasterName = resource.getRequest().getPathInfo();
-				Executors.newSingleThreadExecutor().submit(new Runnable() {
-		            public void run() {
-		                try {
-		                    Thread.sleep(300);
-							GeneralBroadcaster delayedBroadcaster = (GeneralBroadcaster) BroadcasterFactory.getDefault().lookup(GeneralBroadcaster.class, delayedBroadcasterName);
-							delayedBroadcaster.broadcast(message, resource);
-							
-						} catch (Exception e) {
-							logger.error(e.getMessage());
-						} 
-		            }
-		        });
+				DelayedBroadcastScheduler.getInstance().schedule(delayedBroadcasterName, resource, message, 
+						DelayedBroadcastScheduler.DEFAULT_DELAY);
 			} else {
 				//pass message to next filter
 				return new BroadcastAction(ACTION.CONTINUE,  message);
@@ -0,0 +1,311 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.types.State;
+import org.openhab.io.rest.internal.resources.beans.ItemStateBean;
+import org.openhab.io.rest.internal.resources.beans.ItemStateListBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stream of the state changes of a set of items to a single client.
+ * <p>
+ * The stream does not send anything before it has been started, i.e. before the
+ * connection to the client is ready; until then, the changes are only collected.
+ * State changes are collected for a batching window and then sent together as one
+ * {@link ItemStateListBean}. Within a batch, only the latest state of an item is kept,
+ * so that the memory needed for a stream is bounded by the number of its items. 
+ * If the previous batch has not been written yet when the window ends, the changes 
+ * are kept back and coalesced further; a client that does not accept a batch within
+ * the maximum stall time is considered a slow consumer and its stream is closed.
+ * <p>
+ * All streams share a single scheduler thread; the actual writing is done by the {@link Output}.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ItemStateStream implements StateChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemStateStream.class);
+
+	/** the default batching window in milliseconds */
+	public static final long DEFAULT_WINDOW = 100;
+
+	/** the minimum batching window in milliseconds */
+	public static final long MIN_WINDOW = 10;
+
+	/** the maximum batching window in milliseconds */
+	public static final long MAX_WINDOW = 10000;
+
+	/** the default time in milliseconds a client may take to accept a batch */
+	public static final long DEFAULT_MAX_STALL = 30000;
+
+	/**
+	 * Writes the batches of a stream to the client.
+	 */
+	public interface Output {
+
+		/**
+		 * Sends a batch to the client asynchronously.
+		 * 
+		 * @param batch the batch of item states to send
+		 * @return a future that is done as soon as the batch has been written
+		 */
+		Future<?> send(ItemStateListBean batch);
+		
+		/**
+		 * Closes the connection to the client.
+		 */
+		void close();
+	}
+
+	private static final ScheduledExecutorService sharedScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "REST item state streams");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final AtomicInteger openStreams = new AtomicInteger();
+	private static final AtomicLong sentBatches = new AtomicLong();
+	private static final AtomicLong deferredBatches = new AtomicLong();
+	private static final AtomicLong slowConsumers = new AtomicLong();
+
+	private final ItemSubscriptionHub hub;
+	private final ScheduledExecutorService scheduler;
+	private final Output output;
+	private final long window;
+	private final long maxStall;
+
+	private final List<String> itemNames = new ArrayList<String>();
+
+	/** the latest states by item name that have not been sent yet */
+	private final Map<String, String> pendingStates = new LinkedHashMap<String, String>();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	private boolean started = false;
+	private boolean flushScheduled = false;
+	private Future<?> inFlight;
+	private long inFlightSince;
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	public ItemStateStream(Output output, long window) {
+		this(ItemSubscriptionHub.getInstance(), output, window, DEFAULT_MAX_STALL);
+	}
+
+	public ItemStateStream(ItemSubscriptionHub hub, Output output, long window, long maxStall) {
+		this(hub, output, window, maxStall, sharedScheduler);
+	}
+
+	/**
+	 * @param scheduler runs the flushes of the stream instead of the shared scheduler thread
+	 */
+	ItemStateStream(ItemSubscriptionHub hub, Output output, long window, long maxStall, ScheduledExecutorService scheduler) {
+		this.hub = hub;
+		this.scheduler = scheduler;
+		this.output = output;
+		this.window = Math.max(MIN_WINDOW, Math.min(window, MAX_WINDOW));
+		this.maxStall = maxStall;
+	}
+
+	/**
+	 * Subscribes the stream to the given items. Their current states are sent
+	 * with the first batch, once the stream has been started.
+	 * 
+	 * @param items the items to stream
+	 */
+	public void open(Collection<Item> items) {
+		openStreams.incrementAndGet();
+		for(Item item : items) {
+			if(hub.subscribe(item.getName(), this)) {
+				itemNames.add(item.getName());
+				enqueue(item.getName(), item.getState());
+			}
+		}
+	}
+
+	/**
+	 * Starts sending the collected states to the client.
+	 */
+	public synchronized void start() {
+		if(!started) {
+			started = true;
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Unsubscribes the stream from its items and closes the output.
+	 */
+	public void close() {
+		if(closed.compareAndSet(false, true)) {
+			hub.unsubscribe(itemNames, this);
+			openStreams.decrementAndGet();
+			synchronized(this) {
+				pendingStates.clear();
+			}
+			output.close();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stateUpdated(Item item, State state) {
+		// as for pages, the state of a group with a base item is sent on every update 
+		// as it might have been recalculated
+		if(item instanceof GroupItem && ((GroupItem) item).getBaseItem()!=null) {
+			enqueue(item.getName(), state);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void stateChanged(Item item, State oldState, State newState) {
+		enqueue(item.getName(), newState);
+	}
+
+	private synchronized void enqueue(String itemName, State state) {
+		if(closed.get()) {
+			return;
+		}
+		pendingStates.put(itemName, state.toString());
+		if(started) {
+			scheduleFlush();
+		}
+	}
+
+	private void scheduleFlush() {
+		if(!flushScheduled && !pendingStates.isEmpty()) {
+			flushScheduled = true;
+			scheduler.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flush() {
+		boolean slowConsumer = false;
+		synchronized(this) {
+			flushScheduled = false;
+			if(closed.get() || pendingStates.isEmpty()) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			if(inFlight!=null && !inFlight.isDone()) {
+				if(now - inFlightSince > maxStall) {
+					slowConsumer = true;
+				} else {
+					// the client has not accepted the last batch yet, so we keep coalescing
+					deferredBatches.incrementAndGet();
+					flushScheduled = true;
+					scheduler.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+					return;
+				}
+			} else {
+				ItemStateListBean batch = new ItemStateListBean();
+				for(Map.Entry<String, String> entry : pendingStates.entrySet()) {
+					batch.entries.add(new ItemStateBean(entry.getKey(), entry.getValue()));
+				}
+				pendingStates.clear();
+				inFlightSince = now;
+				sentBatches.incrementAndGet();
+				try {
+					inFlight = output.send(batch);
+				} catch (Exception e) {
+					logger.debug("Could not send item states: {}", e.getMessage());
+					slowConsumer = true;
+				}
+			}
+		}
+		if(slowConsumer) {
+			slowConsumers.incrementAndGet();
+			logger.debug("Closing item state stream, as the client did not accept data for {}ms.", maxStall);
+			close();
+		}
+	}
+
+	/**
+	 * @return the number of streams that are currently open
+	 */
+	public static int getOpenStreamCount() {
+		return openStreams.get();
+	}
+
+	/**
+	 * @return the total number of batches that have been sent
+	 */
+	public static long getSentBatchCount() {
+		return sentBatches.get();
+	}
+
+	/**
+	 * @return the number of times a batch has been held back, because the client did 
+	 * not accept the previous batch yet
+	 */
+	public static long getDeferredBatchCount() {
+		return deferredBatches.get();
+	}
+
+	/**
+	 * @return the number of streams that have been closed because of a slow client
+	 */
+	public static long getSlowConsumerCount() {
+		return slowConsumers.get();
+	}
+
+}
@@ -0,0 +1,352 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.service.StatisticsProvider;
+import org.openhab.core.types.State;
+import org.openhab.io.rest.internal.resources.ItemResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This hub is the single place where the REST broadcasters subscribe to item state changes.
+ * For every item that has at least one subscriber, exactly one {@link StateChangeListener} is 
+ * registered on the item; its events are routed to all subscribers of this item. The listener
+ * is removed from the item again, when its last subscriber unsubscribes. Subscriptions are
+ * reference counted, so a subscriber that subscribed to an item several times stays subscribed
+ * until it has unsubscribed as often.
+ * <p>
+ * As the hub is notified about changes of the item registry, the listener is moved to the new
+ * item instance, when an item is replaced, e.g. because its items file has been reloaded.
+ * <p>
+ * The number of subscriptions and a summary of the fan-out (i.e. the number of subscribers that 
+ * are notified for a state change of an item) are available as statistics.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class ItemSubscriptionHub implements ItemRegistryChangeListener, StatisticsProvider {
+
+	private static final Logger logger = LoggerFactory.getLogger(ItemSubscriptionHub.class);
+
+	private static final ItemSubscriptionHub instance = new ItemSubscriptionHub();
+	
+	private static final StateChangeListener[] NO_SUBSCRIBERS = new StateChangeListener[0];
+
+	/** the subscriptions by item name */
+	private final ConcurrentMap<String, ItemSubscription> subscriptions = new ConcurrentHashMap<String, ItemSubscription>();
+	
+	private final AtomicLong notificationCount = new AtomicLong();
+	
+	ItemSubscriptionHub() {}
+
+	public static ItemSubscriptionHub getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Subscribes a listener to the state events of an item. A listener that is already
+	 * subscribed to the item is not notified twice, but has to be unsubscribed as often
+	 * as it has been subscribed.
+	 * 
+	 * @param itemName the name of the item
+	 * @param subscriber the listener to notify
+	 * @return <code>true</code>, if the item exists and the listener has been subscribed
+	 */
+	public synchronized boolean subscribe(String itemName, StateChangeListener subscriber) {
+		ItemSubscription subscription = subscriptions.get(itemName);
+		if(subscription==null) {
+			GenericItem item = getGenericItem(itemName);
+			if(item==null) {
+				return false;
+			}
+			subscription = new ItemSubscription();
+			subscriptions.put(itemName, subscription);
+			subscription.attach(item);
+			logger.debug("Listening to state changes of item '{}'.", itemName);
+		} else if(subscription.item==null) {
+			subscription.attach(getGenericItem(itemName));
+		}
+		subscription.add(subscriber);
+		return true;
+	}
+
+	/**
+	 * Unsubscribes a listener from the state events of an item. If it was the
+	 * last subscription of the item, the hub stops listening to the item.
+	 * 
+	 * @param itemName the name of the item
+	 * @param subscriber the listener to remove
+	 */
+	public synchronized void unsubscribe(String itemName, StateChangeListener subscriber) {
+		ItemSubscription subscription = subscriptions.get(itemName);
+		if(subscription!=null) {
+			subscription.remove(subscriber);
+			if(subscription.referenceCount==0) {
+				subscriptions.remove(itemName);
+				subscription.attach(null);
+				logger.debug("Stopped listening to state changes of item '{}'.", itemName);
+			}
+		}
+	}
+
+	/**
+	 * Subscribes a listener to the state events of several items.
+	 * 
+	 * @param itemNames the names of the items
+	 * @param subscriber the listener to notify
+	 */
+	public void subscribe(Collection<String> itemNames, StateChangeListener subscriber) {
+		for(String itemName : itemNames) {
+			subscribe(itemName, subscriber);
+		}
+	}
+
+	/**
+	 * Unsubscribes a listener from the state events of several items.
+	 * 
+	 * @param itemNames the names of the items
+	 * @param subscriber the listener to remove
+	 */
+	public void unsubscribe(Collection<String> itemNames, StateChangeListener subscriber) {
+		for(String itemName : itemNames) {
+			unsubscribe(itemName, subscriber);
+		}
+	}
+
+	/**
+	 * @return the number of items the hub is listening to
+	 */
+	public int getItemCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * @return the total number of subscriptions over all items
+	 */
+	public synchronized int getSubscriptionCount() {
+		int count = 0;
+		for(ItemSubscription subscription : subscriptions.values()) {
+			count += subscription.referenceCount;
+		}
+		return count;
+	}
+
+	/**
+	 * @param itemName the name of the item
+	 * @return the number of subscribers that are notified for a state event of the item
+	 */
+	public int getFanOut(String itemName) {
+		ItemSubscription subscription = subscriptions.get(itemName);
+		return subscription!=null ? subscription.subscribers.length : 0;
+	}
+
+	/**
+	 * @return the highest number of subscribers of a single item
+	 */
+	public int getMaxFanOut() {
+		int maxFanOut = 0;
+		for(ItemSubscription subscription : subscriptions.values()) {
+			maxFanOut = Math.max(maxFanOut, subscription.subscribers.length);
+		}
+		return maxFanOut;
+	}
+
+	/**
+	 * @return the total number of notifications that have been routed to subscribers
+	 */
+	public long getNotificationCount() {
+		return notificationCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getStatisticsName() {
+		return "REST item subscriptions";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("items", getItemCount());
+		statistics.put("subscriptions", getSubscriptionCount());
+		statistics.put("notifications", getNotificationCount());
+		statistics.put("max fan-out", getMaxFanOut());
+		return statistics;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * All subscriptions are moved to the new item instances.
+	 */
+	public synchronized void allItemsChanged(Collection<String> oldItemNames) {
+		for(Map.Entry<String, ItemSubscription> entry : subscriptions.entrySet()) {
+			entry.getValue().attach(getGenericItem(entry.getKey()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * If the item replaces an item with subscriptions, these are moved to the new item.
+	 */
+	public synchronized void itemAdded(Item item) {
+		ItemSubscription subscription = subscriptions.get(item.getName());
+		if(subscription!=null) {
+			subscription.attach(item instanceof GenericItem ? (GenericItem) item : null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The subscriptions of the item are kept, so that they are moved to the item,
+	 * once it is added again.
+	 */
+	public synchronized void itemRemoved(Item item) {
+		ItemSubscription subscription = subscriptions.get(item.getName());
+		if(subscription!=null && subscription.item==item) {
+			subscription.attach(null);
+		}
+	}
+
+	private GenericItem getGenericItem(String itemName) {
+		Item item = getItem(itemName);
+		return item instanceof GenericItem ? (GenericItem) item : null;
+	}
+
+	protected Item getItem(String itemName) {
+		return ItemResource.getItem(itemName);
+	}
+
+	/**
+	 * The listener that is registered on a single item. Like in {@link GenericItem}, the 
+	 * array of subscribers is replaced on every change, so that events can be routed
+	 * without locking. All other fields are guarded by the hub.
+	 */
+	private class ItemSubscription implements StateChangeListener {
+		
+		/** the item this subscription listens to or <code>null</code>, if it is not in the registry */
+		GenericItem item;
+		
+		volatile StateChangeListener[] subscribers = NO_SUBSCRIBERS;
+		
+		/** the number of subscriptions by subscriber */
+		final Map<StateChangeListener, Integer> references = new HashMap<StateChangeListener, Integer>();
+		
+		int referenceCount = 0;
+		
+		/**
+		 * Moves the listener from the current item to the given one.
+		 */
+		void attach(GenericItem newItem) {
+			if(newItem==item) {
+				return;
+			}
+			if(item!=null) {
+				item.removeStateChangeListener(this);
+			}
+			item = newItem;
+			if(newItem!=null) {
+				newItem.addStateChangeListener(this);
+			}
+		}
+		
+		void add(StateChangeListener subscriber) {
+			referenceCount++;
+			Integer count = references.get(subscriber);
+			if(count!=null) {
+				references.put(subscriber, count + 1);
+				return;
+			}
+			references.put(subscriber, 1);
+			StateChangeListener[] current = subscribers;
+			StateChangeListener[] newSubscribers = new StateChangeListener[current.length + 1];
+			System.arraycopy(current, 0, newSubscribers, 0, current.length);
+			newSubscribers[current.length] = subscriber;
+			subscribers = newSubscribers;
+		}
+		
+		void remove(StateChangeListener subscriber) {
+			Integer count = references.get(subscriber);
+			if(count==null) {
+				return;
+			}
+			referenceCount--;
+			if(count > 1) {
+				references.put(subscriber, count - 1);
+				return;
+			}
+			references.remove(subscriber);
+			StateChangeListener[] current = subscribers;
+			for(int i = 0; i < current.length; i++) {
+				if(current[i].equals(subscriber)) {
+					StateChangeListener[] newSubscribers = new StateChangeListener[current.length - 1];
+					System.arraycopy(current, 0, newSubscribers, 0, i);
+					System.arraycopy(current, i + 1, newSubscribers, i, newSubscribers.length - i);
+					subscribers = newSubscribers;
+					return;
+				}
+			}
+		}
+
+		public void stateUpdated(Item item, State state) {
+			StateChangeListener[] current = subscribers;
+			for(StateChangeListener subscriber : current) {
+				subscriber.stateUpdated(item, state);
+			}
+			notificationCount.addAndGet(current.length);
+		}
+
+		public void stateChanged(Item item, State oldState, State newState) {
+			StateChangeListener[] current = subscribers;
+			for(StateChangeListener subscriber : current) {
+				subscriber.stateChanged(item, oldState, newState);
+			}
+			notificationCount.addAndGet(current.length);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.listeners;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class keeps track of the item changes on a sitemap page. Every change
+ * increases the sequence number of the page, and the names of the items of the
+ * most recent changes are kept, so that clients that subscribed in delta mode can
+ * be sent only the widgets that have changed since the last sequence number they 
+ * have seen.
+ * 
+ * Changes are only recorded while the page is tracked. When the tracking (re)starts,
+ * all sequence numbers that have been handed out before become invalid, so that
+ * clients which might have missed changes in between have to resynchronize.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+public class PageDeltaTracker {
+
+	/** the default number of changes that are remembered */
+	public static final int DEFAULT_HISTORY_SIZE = 100;
+
+	private final String[] itemNames;
+	
+	private long sequence = 0;
+
+	/** the sequence number at which the tracking has started, -1 if the page is not tracked */
+	private long trackedSince = -1;
+	
+	public PageDeltaTracker() {
+		this(DEFAULT_HISTORY_SIZE);
+	}
+
+	public PageDeltaTracker(int historySize) {
+		this.itemNames = new String[historySize];
+	}
+
+	/**
+	 * Records a change of an item on the page.
+	 * 
+	 * @param itemName the name of the changed item
+	 * @return the new sequence number of the page
+	 */
+	public synchronized long itemChanged(String itemName) {
+		sequence++;
+		itemNames[(int) (sequence % itemNames.length)] = itemName;
+		return sequence;
+	}
+
+	/**
+	 * Starts recording the changes of the page; sequence numbers that have been
+	 * handed out before are not valid anymore.
+	 */
+	public synchronized void startTracking() {
+		sequence++;
+		trackedSince = sequence;
+	}
+
+	/**
+	 * Stops recording the changes of the page; no sequence number is valid anymore.
+	 */
+	public synchronized void stopTracking() {
+		trackedSince = -1;
+	}
+
+	/**
+	 * @return the sequence number of the latest change on the page
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the names of all items that have changed after the sequence number <code>since</code>
+	 * up to (and including) the sequence number <code>upTo</code>.
+	 * 
+	 * @param since the sequence number that the client has seen last
+	 * @param upTo the sequence number that the client will be sent
+	 * @return the names of the changed items or <code>null</code>, if not all changes 
+	 * are known anymore (or <code>since</code> is not a valid sequence number at all), 
+	 * so that the client has to resynchronize
+	 */
+	public synchronized Set<String> getChangedItems(long since, long upTo) {
+		if(trackedSince < 0 || since < trackedSince || since > sequence || upTo > sequence || sequence - since > itemNames.length) {
+			return null;
+		}
+		Set<String> changedItems = new HashSet<String>();
+		for(long seq = since + 1; seq <= upTo; seq++) {
+			changedItems.add(itemNames[(int) (seq % itemNames.length)]);
+		}
+		return changedItems;
+	}
+
+}
@@ -39,7 +39,6 @@ import javax.servlet.http.HttpServletRequest;
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
 import org.atmosphere.cpr.PerRequestBroadcastFilter;
-import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.StateChangeListener;
@@ -50,10 +49,10 @@ import org.openhab.io.rest.internal.filter.MessageTypeFilter;
 import org.openhab.io.rest.internal.filter.PollingDelayFilter;
 import org.openhab.io.rest.internal.filter.ResponseObjectFilter;
 import org.openhab.io.rest.internal.filter.SendPageUpdateFilter;
-import org.openhab.io.rest.internal.resources.ItemResource;
 
 /**
  * This is an abstract super class which adds Broadcaster config, lifecycle and filters to its derived classes and registers listeners to subscribed resources.   
+ * The listeners are not registered on the items directly, but through the {@link ItemSubscriptionHub}.
  *  
  * @author Oliver Mazur
  * @since 0.9.0
@@ -97,7 +96,7 @@ abstract public class ResourceStateChangeListener {
 			@Override
 			public BroadcastAction filter(AtmosphereResource resource, Object originalMessage, Object message) {
 				 HttpServletRequest request = resource.getRequest();
-				 return new BroadcastAction(ACTION.CONTINUE,  getResponseObject(request));
+				 return new BroadcastAction(ACTION.CONTINUE,  getResponseObject(request, originalMessage));
 			}
 		});
 		
@@ -119,6 +118,7 @@ abstract public class ResourceStateChangeListener {
 				if(item instanceof GroupItem) {
 					GroupItem gItem = (GroupItem) item;
 					if(gItem.getBaseItem()!=null) {
+						onItemChange(item);
 						if(!broadcaster.getAtmosphereResources().isEmpty()) {
 							broadcaster.broadcast(item);
 						}
@@ -127,6 +127,7 @@ abstract public class ResourceStateChangeListener {
 			}
 			
 			public void stateChanged(final Item item, State oldState, State newState) {	
+				onItemChange(item);
 				if(!broadcaster.getAtmosphereResources().isEmpty()) {
 					broadcaster.broadcast(item);
 				}
@@ -142,36 +143,13 @@ abstract public class ResourceStateChangeListener {
 
 	protected void registerStateChangeListenerOnRelevantItems(String pathInfo, StateChangeListener stateChangeListener ) {
 		relevantItems = getRelevantItemNames(pathInfo);
-		for(String itemName : relevantItems) {
-			registerChangeListenerOnItem(stateChangeListener, itemName);
-		}
+		ItemSubscriptionHub.getInstance().subscribe(relevantItems, stateChangeListener);
 	}
 
 	protected void unregisterStateChangeListenerOnRelevantItems() {
 		
 		if(relevantItems!=null) {
-			for(String itemName : relevantItems) {
-				unregisterChangeListenerOnItem(stateChangeListener, itemName);
-			}
-		}
-	}
-
-	private void registerChangeListenerOnItem(
-			StateChangeListener stateChangeListener, String itemName) {
-		Item item = ItemResource.getItem(itemName);
-		if (item instanceof GenericItem) {
-			GenericItem genericItem = (GenericItem) item;
-			genericItem.addStateChangeListener(stateChangeListener);
-			
-		}
-	}
-
-	private void unregisterChangeListenerOnItem(
-			StateChangeListener stateChangeListener, String itemName) {
-		Item item = ItemResource.getItem(itemName);
-		if (item instanceof GenericItem) {
-			GenericItem genericItem = (GenericItem) item;
-			genericItem.removeStateChangeListener(stateChangeListener);
+			ItemSubscriptionHub.getInstance().unsubscribe(relevantItems, stateChangeListener);
 		}
 	}
 
@@ -195,6 +173,27 @@ abstract public class ResourceStateChangeListener {
 	 */
 	abstract protected Object getResponseObject(final HttpServletRequest request);
 	
+	/**
+	 * Determines the response content for an HTTP request that is sent because of
+	 * a broadcast. By default, this is the same content as for the initial request.
+	 * 
+	 * @param request the HttpServletRequest
+	 * @param originalMessage the broadcasted message, i.e. the changed item
+	 * @return the response content
+	 */
+	protected Object getResponseObject(final HttpServletRequest request, Object originalMessage) {
+		return getResponseObject(request);
+	}
+
+	/**
+	 * Is called whenever a relevant item has changed, before the change is broadcasted
+	 * to the subscribed clients. Subclasses can override it to keep track of the changes.
+	 * 
+	 * @param item the changed item
+	 */
+	protected void onItemChange(Item item) {
+	}
+	
 	/**
 	 * Determines the response content for a single item.
 	 * This method has to do all the HTTP header evaluation itself that is normally
@@ -32,7 +32,10 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.UriBuilder;
@@ -42,6 +45,7 @@ import org.openhab.io.rest.internal.RESTApplication;
 import org.openhab.io.rest.internal.resources.ResponseTypeHelper;
 import org.openhab.io.rest.internal.resources.SitemapResource;
 import org.openhab.io.rest.internal.resources.beans.PageBean;
+import org.openhab.io.rest.internal.resources.beans.PageDeltaBean;
 import org.openhab.io.rest.internal.resources.beans.WidgetBean;
 import org.openhab.io.rest.internal.resources.beans.WidgetListBean;
 import org.openhab.model.sitemap.Frame;
@@ -54,6 +58,10 @@ import org.slf4j.LoggerFactory;
 /**
  * This is the {@link ResourceStateChangeListener} implementation for sitemap REST requests.
  * Note: We only support suspended requests for page requests, not for complete sitemaps.
+ * Clients that subscribed with <code>delta=true</code> are only sent the widgets that have
+ * changed since the sequence number they have seen last. The {@link PageDeltaTracker}s
+ * are kept per page, so that the sequence number of a full page request can be passed
+ * when subscribing.
  * 
  * @author Kai Kreuzer
  * @author Oliver Mazur
@@ -64,6 +72,72 @@ public class SitemapStateChangeListener extends ResourceStateChangeListener {
 
 	private static final Logger logger = LoggerFactory.getLogger(ResourceStateChangeListener.class);
 	
+	/** the request attribute that holds the sequence number that has been sent to a streaming client */
+	private static final String SEQUENCE_ATTRIBUTE = SitemapStateChangeListener.class.getName() + ".sequence";
+
+	/** the delta trackers of all pages by the path of the page */
+	private static final ConcurrentMap<String, PageDeltaTracker> deltaTrackers = new ConcurrentHashMap<String, PageDeltaTracker>();
+
+	private PageDeltaTracker deltaTracker;
+
+	private Sitemap indexedSitemap;
+	private String indexedPageId;
+	private Map<String, Widget> pageWidgets;
+	
+	/**
+	 * Returns the sequence number of the latest change on a page, which a client
+	 * that has requested the full page passes when subscribing to its changes.
+	 * 
+	 * @param sitemapName the name of the sitemap
+	 * @param pageId the id of the page
+	 * @return the current sequence number of the page
+	 */
+	public static long getSequence(String sitemapName, String pageId) {
+		return getDeltaTracker("/" + SitemapResource.PATH_SITEMAPS + "/" + sitemapName + "/" + pageId).getSequence();
+	}
+
+	private static PageDeltaTracker getDeltaTracker(String path) {
+		PageDeltaTracker tracker = deltaTrackers.get(path);
+		if(tracker==null) {
+			PageDeltaTracker newTracker = new PageDeltaTracker();
+			tracker = deltaTrackers.putIfAbsent(path, newTracker);
+			if(tracker==null) {
+				tracker = newTracker;
+			}
+		}
+		return tracker;
+	}
+
+	@Override
+	public void registerItems() {
+		deltaTracker = getDeltaTracker(getBroadcaster().getID());
+		super.registerItems();
+		// the changes are only known from now on
+		deltaTracker.startTracking();
+	}
+
+	@Override
+	public void unregisterItems() {
+		super.unregisterItems();
+		if(deltaTracker!=null) {
+			deltaTracker.stopTracking();
+		}
+	}
+
+	@Override
+	protected void onItemChange(Item item) {
+		deltaTracker.itemChanged(item.getName());
+	}
+	
+	@Override
+	protected Object getResponseObject(HttpServletRequest request, Object originalMessage) {
+		if(Boolean.parseBoolean(new ResponseTypeHelper().getQueryParam(request, "delta"))) {
+			return getPageDeltaBean(request);
+		} else {
+			return getResponseObject(request);
+		}
+	}
+
 	@Override
 	protected Object getResponseObject(HttpServletRequest request) {
 		PageBean pageBean = getPageBean(request);
@@ -156,6 +230,81 @@ public class SitemapStateChangeListener extends ResourceStateChangeListener {
 		
 	}
 	
+	private PageDeltaBean getPageDeltaBean(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		
+		String responseType = (new ResponseTypeHelper()).getResponseType(request);
+		if(responseType!=null && pathInfo.startsWith("/" + SitemapResource.PATH_SITEMAPS)) {
+        	String[] pathSegments = pathInfo.substring(1).split("/");
+            if(pathSegments.length>=3) {
+            	String sitemapName = pathSegments[1];
+            	String pageId = pathSegments[2];
+            	Sitemap sitemap = SitemapResource.getSitemap(sitemapName);
+            	if(sitemap!=null) {
+            		Map<String, Widget> widgets = getPageWidgets(sitemap, pageId);
+            		if(widgets!=null) {
+	            		long sequence = deltaTracker.getSequence();
+	            		Set<String> changedItems = deltaTracker.getChangedItems(getLastSequence(request), sequence);
+	            		request.setAttribute(SEQUENCE_ATTRIBUTE, sequence);
+	
+	            		PageDeltaBean bean = new PageDeltaBean();
+	            		bean.id = pageId;
+	            		bean.sequence = sequence;
+	            		if(changedItems==null) {
+	            			bean.resync = true;
+	            		} else {
+	            			for(Map.Entry<String, Widget> entry : widgets.entrySet()) {
+	            				String itemName = entry.getValue().getItem();
+	            				if(itemName!=null && changedItems.contains(itemName)) {
+	            					bean.widgets.add(SitemapResource.createWidgetDeltaBean(entry.getValue(), entry.getKey()));
+	            				}
+	            			}
+	            		}
+	            		return bean;
+            		}
+            	}
+            }
+		}
+		return null;
+	}
+
+	/**
+	 * Determines the sequence number that a client has received last. Streaming clients
+	 * have been sent the sequence number stored in the request, long-polling clients pass
+	 * it as a query parameter. The latter is also used for delayed responses to long-polling
+	 * clients, which are coalesced and must hence contain all changes since the request.
+	 * If neither is available, -1 is returned, so that the client has to resynchronize.
+	 */
+	private long getLastSequence(HttpServletRequest request) {
+		Object sentSequence = request.getAttribute(SEQUENCE_ATTRIBUTE);
+		if(sentSequence instanceof Long && ResponseTypeHelper.isStreamingTransport(request)) {
+			return (Long) sentSequence;
+		}
+		String seq = new ResponseTypeHelper().getQueryParam(request, "seq");
+		if(seq!=null) {
+			try {
+				return Long.parseLong(seq);
+			} catch(NumberFormatException e) {
+				logger.debug("Received invalid sequence number '{}'.", seq);
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the widgets of the page by their ids. They are only determined again if 
+	 * the sitemap has been reloaded, so that a change does not require to render the page.
+	 */
+	private synchronized Map<String, Widget> getPageWidgets(Sitemap sitemap, String pageId) {
+		if(sitemap!=indexedSitemap || !pageId.equals(indexedPageId)) {
+			pageWidgets = SitemapResource.getPageWidgets(sitemap, pageId);
+			indexedSitemap = sitemap;
+			indexedPageId = pageId;
+		}
+		return pageWidgets;
+	}
+	
 	private List <WidgetBean> getItemsOnPage(List<WidgetBean> widgets, Item searchItem){
 		List <WidgetBean> foundWidgets = new ArrayList <WidgetBean>();
 		try{
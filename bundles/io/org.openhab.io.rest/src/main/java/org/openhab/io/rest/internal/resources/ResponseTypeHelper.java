@@ -84,7 +84,7 @@ public class ResponseTypeHelper {
 	public static boolean isStreamingTransport(HttpServletRequest request) {
         String transport = request.getHeader(HeaderConfig.X_ATMOSPHERE_TRANSPORT);
 		String upgrade = request.getHeader(HeaderConfig.WEBSOCKET_UPGRADE);
-		if(HeaderConfig.WEBSOCKET_TRANSPORT.equalsIgnoreCase(transport) || HeaderConfig.STREAMING_TRANSPORT.equalsIgnoreCase(transport) || HeaderConfig.WEBSOCKET_TRANSPORT.equalsIgnoreCase(upgrade)) {
+		if(HeaderConfig.WEBSOCKET_TRANSPORT.equalsIgnoreCase(transport) || HeaderConfig.STREAMING_TRANSPORT.equalsIgnoreCase(transport) || HeaderConfig.SSE_TRANSPORT.equalsIgnoreCase(transport) || HeaderConfig.WEBSOCKET_TRANSPORT.equalsIgnoreCase(upgrade)) {
 		        return true;
 		} else {
 		        return false;
@@ -30,7 +30,9 @@ package org.openhab.io.rest.internal.resources;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
@@ -65,6 +67,7 @@ import org.openhab.io.rest.internal.resources.beans.PageBean;
 import org.openhab.io.rest.internal.resources.beans.SitemapBean;
 import org.openhab.io.rest.internal.resources.beans.SitemapListBean;
 import org.openhab.io.rest.internal.resources.beans.WidgetBean;
+import org.openhab.io.rest.internal.resources.beans.WidgetDeltaBean;
 import org.openhab.model.core.ModelRepository;
 import org.openhab.model.sitemap.Chart;
 import org.openhab.model.sitemap.Frame;
@@ -93,6 +96,14 @@ import com.sun.jersey.api.json.JSONWithPadding;
  * 
  * <p>The typical content types are XML or JSON.</p>
  * 
+ * <p>Clients that subscribe to a page (long-polling, streaming or websockets) can add the
+ * query parameter <code>delta=true</code>; they are then only sent the widgets that have 
+ * changed (as a {@link org.openhab.io.rest.internal.resources.beans.PageDeltaBean}) instead 
+ * of the whole page. With the query parameter <code>seq</code>, clients pass the sequence
+ * number of the requested page or the last one they have received. If it is missing or the 
+ * changes since then are not known anymore, the response is marked with <code>resync</code> 
+ * and the client has to request the complete page again.</p>
+ * 
  * <p>This resource is registered with the Jersey servlet.</p>
  *
  * @author Kai Kreuzer
@@ -159,8 +170,14 @@ public class SitemapResource {
 		if(atmosphereTransport==null || atmosphereTransport.isEmpty()) {
 			String responseType = MediaTypeHelper.getResponseMediaType(headers.getAcceptableMediaTypes(), type);
 			if(responseType!=null) {
+				// the sequence number is determined first, so that no change of the page can be missed
+				long sequence = SitemapStateChangeListener.getSequence(sitemapname, pageId);
+				PageBean pageBean = getPageBean(sitemapname, pageId, uriInfo.getBaseUriBuilder().build());
+				if(pageBean!=null) {
+					pageBean.sequence = sequence;
+				}
 		    	Object responseObject = responseType.equals(MediaTypeHelper.APPLICATION_X_JAVASCRIPT) ?
-		    			new JSONWithPadding(getPageBean(sitemapname, pageId, uriInfo.getBaseUriBuilder().build()), callback) : getPageBean(sitemapname, pageId, uriInfo.getBaseUriBuilder().build());
+		    			new JSONWithPadding(pageBean, callback) : pageBean;
 		    	throw new WebApplicationException(Response.ok(responseObject, responseType).build());
 			} else {
 				throw new WebApplicationException(Response.notAcceptable(null).build());
@@ -219,6 +236,72 @@ public class SitemapResource {
 		}
 	}
 
+	/**
+	 * Returns all widgets of a page by their widget id. The ids are the same as the
+	 * ones of the {@link WidgetBean}s that are created for this page.
+	 * 
+	 * @param sitemap the sitemap
+	 * @param pageId the id of the page
+	 * @return the widgets of the page in the order of the page or <code>null</code>, if the page is unknown
+	 */
+	static public Map<String, Widget> getPageWidgets(Sitemap sitemap, String pageId) {
+		EList<Widget> children = null;
+		if(pageId.equals(sitemap.getName())) {
+			children = sitemap.getChildren();
+		} else {
+			ItemUIRegistry itemUIRegistry = RESTApplication.getItemUIRegistry();
+			Widget pageWidget = itemUIRegistry.getWidget(sitemap, pageId);
+			if(pageWidget instanceof LinkableWidget) {
+				children = itemUIRegistry.getChildren((LinkableWidget) pageWidget);
+			}
+		}
+		if(children==null) {
+			return null;
+		}
+		Map<String, Widget> widgets = new LinkedHashMap<String, Widget>();
+		int cntWidget = 0;
+		for(Widget widget : children) {
+			addPageWidget(widgets, widget, pageId + "_" + cntWidget);
+			cntWidget++;
+		}
+		return widgets;
+	}
+
+	static private void addPageWidget(Map<String, Widget> widgets, Widget widget, String widgetId) {
+		widgets.put(widgetId, widget);
+		if(widget instanceof Frame) {
+			// the ids have to be built exactly as in createWidgetBean()
+			int cntWidget = 0;
+			for(Widget child : RESTApplication.getItemUIRegistry().getChildren((Frame) widget)) {
+				widgetId += "_" + cntWidget;
+				addPageWidget(widgets, child, widgetId);
+				cntWidget++;
+			}
+		}
+	}
+
+	/**
+	 * Creates a bean with the attributes of a widget that change with the state of its item.
+	 * 
+	 * @param widget the widget
+	 * @param widgetId the id of the widget on its page
+	 * @return the widget delta bean
+	 */
+	static public WidgetDeltaBean createWidgetDeltaBean(Widget widget, String widgetId) {
+		ItemUIRegistry itemUIRegistry = RESTApplication.getItemUIRegistry();
+		WidgetDeltaBean bean = new WidgetDeltaBean();
+		bean.widgetId = widgetId;
+		bean.label = itemUIRegistry.getLabel(widget);
+		bean.icon = itemUIRegistry.getIcon(widget);
+		if(widget.getItem()!=null) {
+			Item item = ItemResource.getItem(widget.getItem());
+			if(item!=null) {
+				bean.state = item.getState().toString();
+			}
+		}
+		return bean;
+	}
+
 	public Collection<SitemapBean> getSitemapBeans(URI uri) {
 		Collection<SitemapBean> beans = new LinkedList<SitemapBean>();
 		logger.debug("Received HTTP GET request at '{}'.", UriBuilder.fromUri(uri).build().toASCIIString());
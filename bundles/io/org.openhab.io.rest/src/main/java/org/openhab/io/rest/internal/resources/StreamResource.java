@@ -0,0 +1,209 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.resources;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.commons.lang.StringUtils;
+import org.atmosphere.annotation.Suspend.SCOPE;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListenerAdapter;
+import org.atmosphere.cpr.BroadcasterFactory;
+import org.atmosphere.cpr.HeaderConfig;
+import org.atmosphere.jersey.SuspendResponse;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.io.rest.internal.broadcaster.GeneralBroadcaster;
+import org.openhab.io.rest.internal.filter.MessageTypeFilter;
+import org.openhab.io.rest.internal.listeners.ItemStateStream;
+import org.openhab.io.rest.internal.resources.beans.ItemStateBean;
+import org.openhab.io.rest.internal.resources.beans.ItemStateListBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jersey.api.json.JSONWithPadding;
+
+/**
+ * <p>This class acts as a REST resource for streaming the state changes of several items
+ * over a single connection.</p>
+ * 
+ * <p>A client subscribes to items with the query parameter <code>items</code> and to all members
+ * of groups with the query parameter <code>groups</code> (both take comma separated names).
+ * For websocket, streaming and server-sent events transports, the connection is kept open and 
+ * the state changes are sent in batches (as {@link ItemStateListBean}); the batching window 
+ * in milliseconds (10 to 10000) can be set with the query parameter <code>window</code>. The 
+ * first batch is sent once the request has been suspended and contains the current states 
+ * of all subscribed items. For all other requests, the current 
+ * states are returned once.</p>
+ * 
+ * <p>The typical content types are XML or JSON.</p>
+ * 
+ * <p>This resource is registered with the Jersey servlet.</p>
+ *
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+@Path(StreamResource.PATH_STREAM)
+public class StreamResource {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamResource.class); 
+
+	/** The URI path to this resource */
+	public static final String PATH_STREAM = "stream";
+    
+	@Context UriInfo uriInfo;
+
+	@GET
+	@Produces( { MediaType.WILDCARD })
+	public SuspendResponse<Response> getStream(
+			@Context HttpHeaders headers,
+			@QueryParam("items") String items,
+			@QueryParam("groups") String groups,
+			@QueryParam("window") @DefaultValue("100") long window,
+			@QueryParam("type") String type, 
+			@QueryParam("jsoncallback") @DefaultValue("callback") String callback,
+			@HeaderParam(HeaderConfig.X_ATMOSPHERE_TRANSPORT) String atmosphereTransport,
+			@Context final AtmosphereResource resource) {
+		logger.debug("Received HTTP GET request at '{}' for media type '{}'.", new String[] { uriInfo.getPath(), type });
+		String responseType = MediaTypeHelper.getResponseMediaType(headers.getAcceptableMediaTypes(), type);
+		if(responseType==null) {
+			throw new WebApplicationException(Response.notAcceptable(null).build());
+		}
+		Collection<Item> subscribedItems = getItems(items, groups).values();
+		if(subscribedItems.isEmpty()) {
+			logger.info("Received HTTP GET request at '{}' without any known items.", uriInfo.getPath());
+			throw new WebApplicationException(404);
+		}
+		if(!ResponseTypeHelper.isStreamingTransport(resource.getRequest())) {
+			ItemStateListBean bean = new ItemStateListBean();
+			for(Item item : subscribedItems) {
+				bean.entries.add(new ItemStateBean(item.getName(), item.getState().toString()));
+			}
+			Object responseObject = responseType.equals(MediaTypeHelper.APPLICATION_X_JAVASCRIPT) ?
+					new JSONWithPadding(bean, callback) : bean;
+			throw new WebApplicationException(Response.ok(responseObject, responseType).build());
+		}
+
+		// every client gets its own broadcaster, as the subscribed items differ
+		final GeneralBroadcaster streamBroadcaster = (GeneralBroadcaster) BroadcasterFactory.getDefault().lookup(
+				GeneralBroadcaster.class, "/" + PATH_STREAM + "/" + resource.uuid(), true);
+		streamBroadcaster.getBroadcasterConfig().addFilter(new MessageTypeFilter());
+		final ItemStateStream stream = new ItemStateStream(new ItemStateStream.Output() {
+			public Future<?> send(ItemStateListBean batch) {
+				return streamBroadcaster.broadcast(batch);
+			}
+			public void close() {
+				if(!resource.isResumed() && !resource.isCancelled()) {
+					resource.resume();
+				}
+				streamBroadcaster.destroy();
+			}
+		}, window);
+		
+		SuspendResponse<Response> response = new SuspendResponse.SuspendResponseBuilder<Response>()
+			.scope(SCOPE.REQUEST)
+			.resumeOnBroadcast(false)
+			.broadcaster(streamBroadcaster)
+			.addListener(new AtmosphereResourceEventListenerAdapter() {
+				@Override
+				public void onSuspend(AtmosphereResourceEvent event) {
+					// nothing can be written to the client before the request is suspended
+					stream.start();
+				}
+				@Override
+				public void onResume(AtmosphereResourceEvent event) {
+					stream.close();
+				}
+				@Override
+				public void onDisconnect(AtmosphereResourceEvent event) {
+					stream.close();
+				}
+				@Override
+				public void onThrowable(AtmosphereResourceEvent event) {
+					stream.close();
+				}
+			})
+			.outputComments(true).build();
+		stream.open(subscribedItems);
+		return response;
+	}
+
+	/**
+	 * Resolves the requested items and the members of the requested groups.
+	 * 
+	 * @param items comma separated item names
+	 * @param groups comma separated group names
+	 * @return the items by name in the order of the request
+	 */
+	private Map<String, Item> getItems(String items, String groups) {
+		Map<String, Item> result = new LinkedHashMap<String, Item>();
+		if(items!=null) {
+			for(String itemName : StringUtils.split(items, ',')) {
+				Item item = ItemResource.getItem(itemName.trim());
+				if(item!=null) {
+					result.put(item.getName(), item);
+				} else {
+					logger.debug("Ignoring unknown item '{}' of stream request.", itemName);
+				}
+			}
+		}
+		if(groups!=null) {
+			for(String groupName : StringUtils.split(groups, ',')) {
+				Item item = ItemResource.getItem(groupName.trim());
+				if(item instanceof GroupItem) {
+					result.put(item.getName(), item);
+					for(Item member : ((GroupItem) item).getAllMembers()) {
+						result.put(member.getName(), member);
+					}
+				} else {
+					logger.debug("Ignoring unknown group '{}' of stream request.", groupName);
+				}
+			}
+		}
+		return result;
+	}
+
+}
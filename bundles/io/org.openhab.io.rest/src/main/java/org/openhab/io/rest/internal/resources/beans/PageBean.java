@@ -52,6 +52,8 @@ public class PageBean {
 	public String link;
 	public PageBean parent;
 	public boolean leaf;
+	/** the sequence number to pass when subscribing to the changes of the page, only set for requested pages */
+	public Long sequence;
 	
 	@XmlElement(name="widget")
 	public List<WidgetBean> widgets = new ArrayList<WidgetBean>();
@@ -0,0 +1,62 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.io.rest.internal.resources.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * This is a java bean that is used with JAXB to serialize the changes of a page
+ * to XML or JSON. It is sent instead of a complete {@link PageBean} to clients 
+ * that subscribed to a page in delta mode.
+ * 
+ * The sequence number is increased with every item change on the page. If a client
+ * cannot be sent all changes since the sequence number it has seen last, 
+ * <code>resync</code> is set and the client has to request the complete page.
+ *  
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ *
+ */
+@XmlRootElement(name="pagedelta")
+public class PageDeltaBean {
+
+	public String id;
+	public long sequence;
+	public boolean resync;
+	
+	@XmlElement(name="widget")
+	public List<WidgetDeltaBean> widgets = new ArrayList<WidgetDeltaBean>();
+	
+	public PageDeltaBean() {}
+		
+}
@@ -0,0 +1,219 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.xtext.xbase.XExpression;
+import org.eclipse.xtext.xbase.interpreter.IEvaluationContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.scriptengine.Script;
+import org.openhab.core.scriptengine.ScriptEngine;
+import org.openhab.core.scriptengine.ScriptExecutionException;
+import org.openhab.core.scriptengine.ScriptParsingException;
+import org.openhab.model.rule.internal.engine.PreparedRuleCache.PreparedRule;
+import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.rules.RuleModel;
+import org.openhab.model.rule.rules.RulesFactory;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+@SuppressWarnings("restriction")
+public class PreparedRuleCacheTest {
+	
+	/** the minimum time in milliseconds the test script engine takes to create a script */
+	private static final long PREPARATION_TIME = 5;
+	
+	private TestScriptEngine scriptEngine;
+	
+	private PreparedRuleCache cache;
+	
+	private RuleTriggerManager triggerManager;
+	
+	private Rule ruleA;
+	
+	private Rule ruleB;
+	
+	private RuleModel modelA;
+	
+	private RuleModel modelB;
+	
+	@Before
+	public void setup() {
+		scriptEngine = new TestScriptEngine();
+		cache = new PreparedRuleCache() {
+			@Override
+			protected IEvaluationContext createContext(Rule rule) {
+				return null;
+			}
+		};
+		triggerManager = new RuleTriggerManager(cache);
+		ruleA = createRule("ruleA");
+		ruleB = createRule("ruleB");
+		modelA = createModel("a.rules", ruleA);
+		modelB = createModel("b.rules", ruleB);
+		triggerManager.addRuleModel(modelA);
+		triggerManager.addRuleModel(modelB);
+	}
+	
+	@After
+	public void tearDown() {
+		triggerManager.clearAll();
+	}
+	
+	@Test
+	public void testCacheHit() {
+		PreparedRule preparedRule = cache.getPreparedRule(ruleA, scriptEngine);
+		assertSame(preparedRule, cache.getPreparedRule(ruleA, scriptEngine));
+		assertSame(scriptEngine.script, preparedRule.getScript());
+		assertEquals(1, scriptEngine.scripts);
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void testModelReloadInvalidatesItsRules() {
+		PreparedRule preparedRuleA = cache.getPreparedRule(ruleA, scriptEngine);
+		PreparedRule preparedRuleB = cache.getPreparedRule(ruleB, scriptEngine);
+		
+		triggerManager.addRuleModel(modelA);
+		assertEquals(1, cache.size());
+		assertSame(preparedRuleB, cache.getPreparedRule(ruleB, scriptEngine));
+		assertNotSame(preparedRuleA, cache.getPreparedRule(ruleA, scriptEngine));
+		assertEquals(3, scriptEngine.scripts);
+	}
+	
+	@Test
+	public void testModelRemovalInvalidatesItsRules() {
+		cache.getPreparedRule(ruleA, scriptEngine);
+		PreparedRule preparedRuleB = cache.getPreparedRule(ruleB, scriptEngine);
+		
+		triggerManager.removeRuleModel(modelA);
+		assertEquals(1, cache.size());
+		assertSame(preparedRuleB, cache.getPreparedRule(ruleB, scriptEngine));
+	}
+	
+	@Test
+	public void testRulesOfUnloadedModelsAreInvalidated() {
+		cache.getPreparedRule(ruleA, scriptEngine);
+		cache.getPreparedRule(ruleB, scriptEngine);
+		
+		// the model has been unloaded from its resource without being removed
+		modelA.eResource().getContents().clear();
+		triggerManager.addRuleModel(modelB);
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testClearAll() {
+		cache.getPreparedRule(ruleA, scriptEngine);
+		cache.getPreparedRule(ruleB, scriptEngine);
+		
+		triggerManager.clearAll();
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testStatistics() {
+		cache.getPreparedRule(ruleA, scriptEngine);
+		cache.getPreparedRule(ruleA, scriptEngine);
+		cache.getPreparedRule(ruleA, scriptEngine);
+		cache.getPreparedRule(ruleB, scriptEngine);
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+		Map<String, Long> savedTimes = cache.getSavedPreparationTimes();
+		assertEquals(2, savedTimes.size());
+		// each hit saves at least the time the script engine took to create the script
+		assertTrue(savedTimes.get("ruleA") >= 2 * PREPARATION_TIME);
+		assertEquals(Long.valueOf(0), savedTimes.get("ruleB"));
+	}
+	
+	
+	private RuleModel createModel(String fileName, Rule... rules) {
+		RuleModel model = RulesFactory.eINSTANCE.createRuleModel();
+		for(Rule rule : rules) {
+			model.getRules().add(rule);
+		}
+		Resource resource = new ResourceImpl(URI.createURI(fileName));
+		resource.getContents().add(model);
+		return model;
+	}
+	
+	private Rule createRule(String name) {
+		Rule rule = RulesFactory.eINSTANCE.createRule();
+		rule.setName(name);
+		return rule;
+	}
+	
+	private static class TestScriptEngine implements ScriptEngine {
+		
+		final Script script = new Script() {
+			public Object execute() throws ScriptExecutionException {
+				return null;
+			}
+
+			public Object execute(IEvaluationContext evaluationContext) throws ScriptExecutionException {
+				return null;
+			}
+		};
+		
+		int scripts = 0;
+
+		public Script newScriptFromString(String scriptAsString) throws ScriptParsingException {
+			throw new UnsupportedOperationException();
+		}
+
+		public Object executeScript(String scriptAsString) throws ScriptParsingException, ScriptExecutionException {
+			throw new UnsupportedOperationException();
+		}
+
+		public Script newScriptFromXExpression(XExpression expression) {
+			scripts++;
+			try {
+				Thread.sleep(PREPARATION_TIME);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return script;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RuleExecutorTest {
+	
+	private static final int TRIGGERS = 10000;
+	
+	private RuleExecutor executor;
+	
+	@After
+	public void tearDown() {
+		if(executor!=null) {
+			executor.shutdown(5, TimeUnit.SECONDS);
+		}
+	}
+	
+	@Test
+	public void testStressWithBoundedPool() throws InterruptedException {
+		executor = new RuleExecutor(4, TRIGGERS, false);
+		final CountDownLatch latch = new CountDownLatch(TRIGGERS);
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+		
+		for(int i = 0; i < TRIGGERS; i++) {
+			assertTrue(executor.execute("rule" + (i % 50), new Runnable() {
+				public void run() {
+					int current = concurrent.incrementAndGet();
+					if(current > maxConcurrent.get()) {
+						maxConcurrent.set(current);
+					}
+					if(!threadNames.contains(Thread.currentThread().getName())) {
+						threadNames.add(Thread.currentThread().getName());
+					}
+					concurrent.decrementAndGet();
+					latch.countDown();
+				}
+			}));
+		}
+		
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertTrue(maxConcurrent.get() <= 4);
+		assertTrue(threadNames.size() <= 4);
+		assertEquals(TRIGGERS, executor.getSubmittedCount());
+		assertEquals(0, executor.getRejectedCount());
+	}
+	
+	@Test
+	public void testStressWithSerializedRules() throws InterruptedException {
+		executor = new RuleExecutor(8, TRIGGERS, true);
+		final int rules = 20;
+		final CountDownLatch latch = new CountDownLatch(TRIGGERS);
+		final AtomicInteger[] running = new AtomicInteger[rules];
+		final int[] lastSequence = new int[rules];
+		final AtomicInteger violations = new AtomicInteger();
+		for(int r = 0; r < rules; r++) {
+			running[r] = new AtomicInteger();
+			lastSequence[r] = -1;
+		}
+		
+		for(int i = 0; i < TRIGGERS; i++) {
+			final int rule = i % rules;
+			final int sequence = i / rules;
+			executor.execute("rule" + rule, new Runnable() {
+				public void run() {
+					if(running[rule].incrementAndGet() > 1) {
+						violations.incrementAndGet();
+					}
+					// executions of the same rule must keep the order of their triggers
+					if(lastSequence[rule] != sequence - 1) {
+						violations.incrementAndGet();
+					}
+					lastSequence[rule] = sequence;
+					running[rule].decrementAndGet();
+					latch.countDown();
+				}
+			});
+		}
+		
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertEquals(0, violations.get());
+	}
+
+	@Test
+	public void testExecutionsAreRejectedWhenQueueIsFull() throws InterruptedException {
+		executor = new RuleExecutor(1, 10, false);
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		executor.execute("blocking", new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					blocker.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		
+		int accepted = 0;
+		for(int i = 0; i < 100; i++) {
+			if(executor.execute("rule", new Runnable() { public void run() {} })) {
+				accepted++;
+			}
+		}
+		assertEquals(10, accepted);
+		assertEquals(90, executor.getRejectedCount());
+		assertEquals(10, executor.getQueueDepth());
+		assertEquals(10, executor.getMaxQueueDepth());
+		
+		blocker.countDown();
+		executor.shutdown(5, TimeUnit.SECONDS);
+		assertEquals(11, executor.getExecutedCount());
+		assertFalse(executor.execute("rule", new Runnable() { public void run() {} }));
+	}
+	
+}
@@ -0,0 +1,212 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.CHANGE;
+import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.COMMAND;
+import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.UPDATE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.model.rule.rules.ChangedEventTrigger;
+import org.openhab.model.rule.rules.CommandEventTrigger;
+import org.openhab.model.rule.rules.EventTrigger;
+import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.rules.RuleModel;
+import org.openhab.model.rule.rules.RulesFactory;
+import org.openhab.model.rule.rules.UpdateEventTrigger;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RuleTriggerManagerTest {
+	
+	private static final int RULES = 500;
+	
+	private RuleTriggerManager triggerManager;
+	
+	@Before
+	public void setup() {
+		triggerManager = new RuleTriggerManager();
+	}
+	
+	@After
+	public void tearDown() {
+		triggerManager.clearAll();
+	}
+	
+	@Test
+	public void testUpdateTriggers() {
+		Rule anyUpdate = createRule("anyUpdate", updateTrigger("Switch", null));
+		Rule onUpdate = createRule("onUpdate", updateTrigger("Switch", "ON"));
+		Rule both = createRule("both", updateTrigger("Switch", null), updateTrigger("Switch", "ON"));
+		triggerManager.addRuleModel(createModel(anyUpdate, onUpdate, both));
+		
+		SwitchItem item = new SwitchItem("Switch");
+		assertRules(triggerManager.getRules(UPDATE, item, OnOffType.ON), anyUpdate, onUpdate, both);
+		assertRules(triggerManager.getRules(UPDATE, item, OnOffType.OFF), anyUpdate, both);
+		assertRules(triggerManager.getRules(UPDATE, new SwitchItem("Other"), OnOffType.ON));
+	}
+
+	@Test
+	public void testChangeTriggers() {
+		Rule anyChange = createRule("anyChange", changedTrigger("Switch", null, null));
+		Rule toOn = createRule("toOn", changedTrigger("Switch", null, "ON"));
+		Rule offToOn = createRule("offToOn", changedTrigger("Switch", "OFF", "ON"));
+		Rule fromOn = createRule("fromOn", changedTrigger("Switch", "ON", null));
+		triggerManager.addRuleModel(createModel(anyChange, toOn, offToOn, fromOn));
+		
+		SwitchItem item = new SwitchItem("Switch");
+		assertRules(triggerManager.getRules(CHANGE, item, OnOffType.OFF, OnOffType.ON), anyChange, toOn, offToOn);
+		assertRules(triggerManager.getRules(CHANGE, item, OnOffType.ON, OnOffType.OFF), anyChange, fromOn);
+	}
+	
+	@Test
+	public void testCommandTriggersWithNumericStates() {
+		Rule anyCommand = createRule("anyCommand", commandTrigger("Number", null));
+		Rule five = createRule("five", commandTrigger("Number", "5"));
+		triggerManager.addRuleModel(createModel(anyCommand, five));
+		
+		NumberItem item = new NumberItem("Number");
+		assertRules(triggerManager.getRules(COMMAND, item, new DecimalType("5.0")), anyCommand, five);
+		assertRules(triggerManager.getRules(COMMAND, item, new DecimalType("6")), anyCommand);
+	}
+	
+	@Test
+	public void testIndexIsRebuiltAfterModelChanges() {
+		Rule onUpdate = createRule("onUpdate", updateTrigger("Switch", "ON"));
+		RuleModel model = createModel(onUpdate);
+		triggerManager.addRuleModel(model);
+		
+		SwitchItem item = new SwitchItem("Switch");
+		assertRules(triggerManager.getRules(UPDATE, item, OnOffType.ON), onUpdate);
+		
+		triggerManager.removeRuleModel(model);
+		assertRules(triggerManager.getRules(UPDATE, item, OnOffType.ON));
+		
+		Rule offUpdate = createRule("offUpdate", updateTrigger("Switch", "OFF"));
+		triggerManager.addRuleModel(createModel(offUpdate));
+		assertRules(triggerManager.getRules(UPDATE, item, OnOffType.OFF), offUpdate);
+	}
+	
+	@Test
+	public void testTriggerMatchingWith500Rules() {
+		List<Rule> rules = new ArrayList<Rule>();
+		List<SwitchItem> items = new ArrayList<SwitchItem>();
+		for(int i = 0; i < RULES / 2; i++) {
+			items.add(new SwitchItem("Switch" + i));
+			rules.add(createRule("update" + i, updateTrigger("Switch" + i, "ON")));
+			rules.add(createRule("change" + i, changedTrigger("Switch" + i, "OFF", "ON"), 
+					commandTrigger("Switch" + i, "OFF")));
+		}
+		triggerManager.addRuleModel(createModel(rules.toArray(new Rule[rules.size()])));
+		
+		int iterations = 200;
+		int matches = 0;
+		long start = System.nanoTime();
+		for(int n = 0; n < iterations; n++) {
+			for(SwitchItem item : items) {
+				for(Rule rule : triggerManager.getRules(UPDATE, item, OnOffType.ON)) { matches++; }
+				for(Rule rule : triggerManager.getRules(CHANGE, item, OnOffType.OFF, OnOffType.ON)) { matches++; }
+				for(Rule rule : triggerManager.getRules(COMMAND, item, OnOffType.ON)) { matches++; }
+			}
+		}
+		long duration = System.nanoTime() - start;
+		int lookups = iterations * items.size() * 3;
+		System.out.println("Trigger matching with " + RULES + " rules: " + lookups + " lookups in " 
+				+ (duration / 1000000) + "ms (" + (duration / lookups) + "ns per lookup)");
+		
+		assertEquals(iterations * items.size() * 2, matches);
+	}
+	
+	
+	private void assertRules(Iterable<Rule> actualRules, Rule... expectedRules) {
+		List<Rule> actual = new ArrayList<Rule>();
+		for(Rule rule : actualRules) {
+			actual.add(rule);
+		}
+		assertEquals(expectedRules.length, actual.size());
+		for(Rule rule : expectedRules) {
+			assertTrue("rule '" + rule.getName() + "' is missing", actual.contains(rule));
+		}
+	}
+	
+	private RuleModel createModel(Rule... rules) {
+		RuleModel model = RulesFactory.eINSTANCE.createRuleModel();
+		for(Rule rule : rules) {
+			model.getRules().add(rule);
+			assertSame(model, rule.eContainer());
+		}
+		return model;
+	}
+	
+	private Rule createRule(String name, EventTrigger... triggers) {
+		Rule rule = RulesFactory.eINSTANCE.createRule();
+		rule.setName(name);
+		for(EventTrigger trigger : triggers) {
+			rule.getEventtrigger().add(trigger);
+		}
+		return rule;
+	}
+	
+	private UpdateEventTrigger updateTrigger(String itemName, String state) {
+		UpdateEventTrigger trigger = RulesFactory.eINSTANCE.createUpdateEventTrigger();
+		trigger.setItem(itemName);
+		trigger.setState(state);
+		return trigger;
+	}
+	
+	private ChangedEventTrigger changedTrigger(String itemName, String oldState, String newState) {
+		ChangedEventTrigger trigger = RulesFactory.eINSTANCE.createChangedEventTrigger();
+		trigger.setItem(itemName);
+		trigger.setOldState(oldState);
+		trigger.setNewState(newState);
+		return trigger;
+	}
+	
+	private CommandEventTrigger commandTrigger(String itemName, String command) {
+		CommandEventTrigger trigger = RulesFactory.eINSTANCE.createCommandEventTrigger();
+		trigger.setItem(itemName);
+		trigger.setCommand(command);
+		return trigger;
+	}
+	
+}
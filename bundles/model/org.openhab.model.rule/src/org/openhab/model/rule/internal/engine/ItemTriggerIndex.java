@@ -0,0 +1,264 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+import org.openhab.model.rule.rules.ChangedEventTrigger;
+import org.openhab.model.rule.rules.CommandEventTrigger;
+import org.openhab.model.rule.rules.EventTrigger;
+import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.rules.UpdateEventTrigger;
+
+/**
+ * This index holds the update, change and command triggers of all rules for
+ * a single item. The states and commands of the triggers are parsed only once,
+ * when the index is built, and the rules are stored in hash maps by these 
+ * states and commands, so that the rules which match an event can be found 
+ * without evaluating each trigger.
+ * 
+ * As the trigger states depend on the data types that are accepted by the item,
+ * an index is only valid as long as these types do not change.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+class ItemTriggerIndex {
+	
+	private final List<Class<? extends State>> acceptedDataTypes;
+	
+	private final List<Class<? extends Command>> acceptedCommandTypes;
+	
+	/** rules that are triggered by any update */
+	private final List<Rule> anyUpdateRules = new ArrayList<Rule>();
+	
+	/** rules that are triggered by an update to a certain state */
+	private final Map<State, List<Rule>> updateRules = new HashMap<State, List<Rule>>();
+	
+	/** change triggers without a new state */
+	private final List<ChangeTrigger> anyChangeTriggers = new ArrayList<ChangeTrigger>();
+	
+	/** change triggers by their new state */
+	private final Map<State, List<ChangeTrigger>> changeTriggers = new HashMap<State, List<ChangeTrigger>>();
+	
+	/** rules that are triggered by any command */
+	private final List<Rule> anyCommandRules = new ArrayList<Rule>();
+	
+	/** rules that are triggered by a certain command */
+	private final Map<Command, List<Rule>> commandRules = new HashMap<Command, List<Rule>>();
+
+	/**
+	 * Builds the index for an item
+	 * 
+	 * @param item the item
+	 * @param updateRules all rules with an update trigger for the item or <code>null</code>
+	 * @param changeRules all rules with a change trigger for the item or <code>null</code>
+	 * @param commandRules all rules with a command trigger for the item or <code>null</code>
+	 */
+	public ItemTriggerIndex(Item item, Collection<Rule> updateRules, Collection<Rule> changeRules, Collection<Rule> commandRules) {
+		this.acceptedDataTypes = item.getAcceptedDataTypes();
+		this.acceptedCommandTypes = item.getAcceptedCommandTypes();
+		String itemName = item.getName();
+		
+		if(updateRules!=null) {
+			for(Rule rule : updateRules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if(t instanceof UpdateEventTrigger && itemName.equals(((UpdateEventTrigger) t).getItem())) {
+						String state = ((UpdateEventTrigger) t).getState();
+						if(state==null) {
+							add(anyUpdateRules, rule);
+						} else {
+							State triggerState = TypeParser.parseState(acceptedDataTypes, state);
+							if(triggerState!=null) {
+								add(this.updateRules, triggerState, rule);
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		if(changeRules!=null) {
+			for(Rule rule : changeRules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if(t instanceof ChangedEventTrigger && itemName.equals(((ChangedEventTrigger) t).getItem())) {
+						ChangedEventTrigger ct = (ChangedEventTrigger) t;
+						State oldState = null;
+						if(ct.getOldState()!=null) {
+							oldState = TypeParser.parseState(acceptedDataTypes, ct.getOldState());
+							if(oldState==null) {
+								// a trigger state which cannot be parsed never matches
+								continue;
+							}
+						}
+						ChangeTrigger changeTrigger = new ChangeTrigger(rule, oldState);
+						if(ct.getNewState()==null) {
+							anyChangeTriggers.add(changeTrigger);
+						} else {
+							State newState = TypeParser.parseState(acceptedDataTypes, ct.getNewState());
+							if(newState!=null) {
+								add(this.changeTriggers, newState, changeTrigger);
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		if(commandRules!=null) {
+			for(Rule rule : commandRules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if(t instanceof CommandEventTrigger && itemName.equals(((CommandEventTrigger) t).getItem())) {
+						Command triggerCommand = TypeParser.parseCommand(acceptedCommandTypes, ((CommandEventTrigger) t).getCommand());
+						if(triggerCommand==null) {
+							add(anyCommandRules, rule);
+						} else {
+							add(this.commandRules, triggerCommand, rule);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether this index has been built for the same accepted types as
+	 * the given item has.
+	 * 
+	 * @param item the item to check
+	 * @return true, if the index can be used for the item
+	 */
+	public boolean isValidFor(Item item) {
+		return equals(acceptedDataTypes, item.getAcceptedDataTypes()) 
+			&& equals(acceptedCommandTypes, item.getAcceptedCommandTypes());
+	}
+	
+	/**
+	 * @param state the new state of the item
+	 * @return all rules that are triggered by the update
+	 */
+	public Collection<Rule> getUpdateRules(State state) {
+		return merge(anyUpdateRules, updateRules.get(state));
+	}
+	
+	/**
+	 * @param oldState the previous state of the item
+	 * @param newState the new state of the item
+	 * @return all rules that are triggered by the change
+	 */
+	public Collection<Rule> getChangeRules(State oldState, State newState) {
+		List<ChangeTrigger> triggers = changeTriggers.get(newState);
+		if(anyChangeTriggers.isEmpty() && triggers==null) {
+			return Collections.emptyList();
+		}
+		Set<Rule> result = new LinkedHashSet<Rule>();
+		addMatchingRules(result, anyChangeTriggers, oldState);
+		if(triggers!=null) {
+			addMatchingRules(result, triggers, oldState);
+		}
+		return result;
+	}
+	
+	/**
+	 * @param command the received command
+	 * @return all rules that are triggered by the command
+	 */
+	public Collection<Rule> getCommandRules(Command command) {
+		return merge(anyCommandRules, commandRules.get(command));
+	}
+	
+	private static void addMatchingRules(Set<Rule> result, List<ChangeTrigger> triggers, State oldState) {
+		for(ChangeTrigger trigger : triggers) {
+			if(trigger.oldState==null || trigger.oldState.equals(oldState)) {
+				result.add(trigger.rule);
+			}
+		}
+	}
+	
+	private static Collection<Rule> merge(List<Rule> anyRules, List<Rule> specificRules) {
+		if(specificRules==null) {
+			return anyRules;
+		} else if(anyRules.isEmpty()) {
+			return specificRules;
+		} else {
+			// a rule may have several triggers which match the same event, but should only be executed once
+			Set<Rule> result = new LinkedHashSet<Rule>(anyRules);
+			result.addAll(specificRules);
+			return result;
+		}
+	}
+	
+	private static <K, V> void add(Map<K, List<V>> map, K key, V value) {
+		List<V> values = map.get(key);
+		if(values==null) {
+			values = new ArrayList<V>(1);
+			map.put(key, values);
+		}
+		add(values, value);
+	}
+	
+	private static <V> void add(List<V> values, V value) {
+		if(!values.contains(value)) {
+			values.add(value);
+		}
+	}
+	
+	private static boolean equals(List<?> list1, List<?> list2) {
+		return list1==list2 || (list1!=null && list1.equals(list2));
+	}
+	
+	
+	/**
+	 * A change trigger of a rule together with its parsed previous state
+	 */
+	private static class ChangeTrigger {
+		
+		private final Rule rule;
+		
+		/** the previous state or <code>null</code>, if the trigger applies to any previous state */
+		private final State oldState;
+		
+		public ChangeTrigger(Rule rule, State oldState) {
+			this.rule = rule;
+			this.oldState = oldState;
+		}
+	}
+	
+}
@@ -0,0 +1,205 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.xtext.xbase.interpreter.IEvaluationContext;
+import org.openhab.core.scriptengine.Script;
+import org.openhab.core.scriptengine.ScriptEngine;
+import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.rules.RuleModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This cache keeps the prepared {@link Script} and the global evaluation context
+ * of every rule, so that they do not need to be created again whenever the rule 
+ * is triggered. The entries of a rule model are invalidated, when the model is
+ * added to or removed from the {@link RuleTriggerManager}.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+@SuppressWarnings("restriction")
+public class PreparedRuleCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(PreparedRuleCache.class);
+	
+	/** the prepared rules; as EMF objects do not override equals(), rules are compared by identity */
+	private final ConcurrentMap<Rule, PreparedRule> preparedRules = new ConcurrentHashMap<Rule, PreparedRule>();
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Returns the prepared script and context of a rule. If the rule has not 
+	 * been prepared yet, this is done now.
+	 * 
+	 * @param rule the rule to prepare
+	 * @param scriptEngine the script engine which creates the script
+	 * @return the prepared rule
+	 */
+	public PreparedRule getPreparedRule(Rule rule, ScriptEngine scriptEngine) {
+		PreparedRule preparedRule = preparedRules.get(rule);
+		if(preparedRule!=null) {
+			hits.incrementAndGet();
+			preparedRule.hits.incrementAndGet();
+			return preparedRule;
+		}
+		
+		misses.incrementAndGet();
+		long start = System.nanoTime();
+		Script script = scriptEngine.newScriptFromXExpression(rule.getScript());
+		IEvaluationContext context = createContext(rule);
+		preparedRule = new PreparedRule(rule.getName(), script, context, System.nanoTime() - start);
+		logger.debug("Prepared rule '{}' in {}us", rule.getName(), 
+				TimeUnit.NANOSECONDS.toMicros(preparedRule.preparationTime));
+		
+		PreparedRule existingRule = preparedRules.putIfAbsent(rule, preparedRule);
+		return existingRule!=null ? existingRule : preparedRule;
+	}
+	
+	/**
+	 * Creates the global evaluation context of a rule, which is shared by all rules
+	 * of the same model.
+	 * 
+	 * @param rule the rule to create the context for
+	 * @return the evaluation context
+	 */
+	protected IEvaluationContext createContext(Rule rule) {
+		return RuleContextHelper.getContext(rule);
+	}
+	
+	/**
+	 * Removes all rules of the given model from the cache, as well as all rules
+	 * whose model has been unloaded in the meantime.
+	 * 
+	 * @param ruleModel the rule model or <code>null</code>, if only unloaded rules 
+	 * should be removed
+	 */
+	public void invalidate(RuleModel ruleModel) {
+		Resource resource = ruleModel!=null ? ruleModel.eResource() : null;
+		Iterator<Rule> rules = preparedRules.keySet().iterator();
+		while(rules.hasNext()) {
+			Rule rule = rules.next();
+			if(rule.eIsProxy() || rule.eResource()==null 
+					|| rule.eContainer()==ruleModel || (resource!=null && rule.eResource()==resource)) {
+				rules.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all rules from the cache
+	 */
+	public void clear() {
+		preparedRules.clear();
+	}
+	
+	/**
+	 * @return the number of rule executions which could use a cached script and context
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of rule executions which required the preparation of a script and context
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * @return the number of rules in the cache
+	 */
+	public int size() {
+		return preparedRules.size();
+	}
+	
+	/**
+	 * Returns the preparation time that has been saved for each cached rule, i.e. 
+	 * the time of the initial preparation multiplied by the number of cache hits.
+	 * 
+	 * @return the saved time in milliseconds by rule name
+	 */
+	public Map<String, Long> getSavedPreparationTimes() {
+		Map<String, Long> savedTimes = new LinkedHashMap<String, Long>();
+		for(Entry<Rule, PreparedRule> entry : preparedRules.entrySet()) {
+			PreparedRule preparedRule = entry.getValue();
+			long savedTime = preparedRule.preparationTime * preparedRule.hits.get();
+			savedTimes.put(preparedRule.ruleName, TimeUnit.NANOSECONDS.toMillis(savedTime));
+		}
+		return savedTimes;
+	}
+	
+	
+	/**
+	 * The prepared script and global context of a rule.
+	 */
+	public static class PreparedRule {
+		
+		private final String ruleName;
+		
+		private final Script script;
+		
+		private final IEvaluationContext context;
+		
+		/** the time which has been needed to prepare the rule in nanoseconds */
+		private final long preparationTime;
+		
+		private final AtomicLong hits = new AtomicLong();
+		
+		public PreparedRule(String ruleName, Script script, IEvaluationContext context, long preparationTime) {
+			this.ruleName = ruleName;
+			this.script = script;
+			this.context = context;
+			this.preparationTime = preparationTime;
+		}
+		
+		public Script getScript() {
+			return script;
+		}
+		
+		public IEvaluationContext getContext() {
+			return context;
+		}
+	}
+	
+}
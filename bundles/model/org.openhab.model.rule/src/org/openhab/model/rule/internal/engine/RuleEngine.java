@@ -28,8 +28,6 @@
  */
 package org.openhab.model.rule.internal.engine;
 
-import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
-import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.CHANGE;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.COMMAND;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.SHUTDOWN;
@@ -38,10 +36,20 @@ import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerT
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.xtext.naming.QualifiedName;
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.events.ItemEventDispatcher;
+import org.openhab.core.events.ItemEventListener;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -51,16 +59,17 @@ import org.openhab.core.items.StateChangeListener;
 import org.openhab.core.scriptengine.Script;
 import org.openhab.core.scriptengine.ScriptEngine;
 import org.openhab.core.scriptengine.ScriptExecutionException;
-import org.openhab.core.scriptengine.ScriptExecutionThread;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
 import org.openhab.model.core.ModelRepository;
 import org.openhab.model.core.ModelRepositoryChangeListener;
+import org.openhab.model.rule.internal.engine.PreparedRuleCache.PreparedRule;
 import org.openhab.model.rule.rules.Rule;
 import org.openhab.model.rule.rules.RuleModel;
-import org.osgi.service.event.Event;
-import org.osgi.service.event.EventHandler;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,12 +81,16 @@ import com.google.common.collect.Lists;
  * It listens to changes to the rules folder, evaluates the trigger conditions of the rules and
  * schedules them for execution dependent on their triggering conditions.
  * 
+ * Triggered rules are executed by a {@link RuleExecutor}, i.e. on a bounded pool
+ * of threads, which can be configured in openhab.cfg.
+ * 
  * @author Kai Kreuzer
  * @since 0.9.0
  *
  */
 @SuppressWarnings("restriction")
-public class RuleEngine implements EventHandler, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryChangeListener {
+public class RuleEngine implements ItemEventListener, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryChangeListener, 
+		ManagedService, StatisticsProvider {
 
 		static private final Logger logger = LoggerFactory.getLogger(RuleEngine.class);
 		
@@ -86,6 +99,9 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		private ScriptEngine scriptEngine;
 
 		private RuleTriggerManager triggerManager;
+		
+		private volatile RuleExecutor ruleExecutor = 
+			new RuleExecutor(RuleExecutor.DEFAULT_POOL_SIZE, RuleExecutor.DEFAULT_QUEUE_SIZE, false);
 						
 		public void activate() {
 			triggerManager = new RuleTriggerManager();
@@ -118,10 +134,86 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		public void deactivate() {
 			// execute all scripts that were registered for system shutdown
 			executeRules(triggerManager.getRules(SHUTDOWN));
+			ruleExecutor.shutdown(10, TimeUnit.SECONDS);
 			triggerManager.clearAll();
 			triggerManager = null;
 		}
 		
+		/**
+		 * {@inheritDoc}
+		 */
+		@SuppressWarnings("rawtypes")
+		public void updated(Dictionary config) throws ConfigurationException {
+			int poolSize = RuleExecutor.DEFAULT_POOL_SIZE;
+			int queueSize = RuleExecutor.DEFAULT_QUEUE_SIZE;
+			boolean serialized = false;
+			if(config!=null) {
+				String threadsString = (String) config.get("threads");
+				String queueSizeString = (String) config.get("queuesize");
+				String serializeString = (String) config.get("serialize");
+				try {
+					if(StringUtils.isNotBlank(threadsString)) {
+						poolSize = Integer.parseInt(threadsString.trim());
+					}
+					if(StringUtils.isNotBlank(queueSizeString)) {
+						queueSize = Integer.parseInt(queueSizeString.trim());
+					}
+				} catch(NumberFormatException e) {
+					throw new ConfigurationException("ruleengine", "threads and queuesize must be numbers", e);
+				}
+				if(poolSize < 1) {
+					throw new ConfigurationException("ruleengine:threads", "at least one thread is required to execute rules");
+				}
+				if(StringUtils.isNotBlank(serializeString)) {
+					serialized = Boolean.parseBoolean(serializeString.trim());
+				}
+			}
+			
+			RuleExecutor oldExecutor = ruleExecutor;
+			if(oldExecutor.getPoolSize()!=poolSize || oldExecutor.getQueueSize()!=queueSize 
+					|| oldExecutor.isSerialized()!=serialized) {
+				ruleExecutor = new RuleExecutor(poolSize, queueSize, serialized);
+				oldExecutor.shutdown(10, TimeUnit.SECONDS);
+				logger.debug("Rules are executed by {} threads (queue size={}, serialized={})", 
+						new Object[] { poolSize, queueSize, serialized });
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		public String getStatisticsName() {
+			return "rule engine";
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		public Map<String, Object> getStatistics() {
+			RuleExecutor executor = ruleExecutor;
+			Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+			statistics.put("threads", executor.getPoolSize());
+			statistics.put("queue size", executor.getQueueSize());
+			statistics.put("serialized", executor.isSerialized());
+			statistics.put("active rules", executor.getActiveCount());
+			statistics.put("queue depth", executor.getQueueDepth());
+			statistics.put("max queue depth", executor.getMaxQueueDepth());
+			statistics.put("submitted executions", executor.getSubmittedCount());
+			statistics.put("completed executions", executor.getExecutedCount());
+			statistics.put("rejected executions", executor.getRejectedCount());
+			RuleTriggerManager triggerManager = this.triggerManager;
+			if(triggerManager!=null) {
+				PreparedRuleCache cache = triggerManager.getPreparedRuleCache();
+				statistics.put("prepared rules", cache.size());
+				statistics.put("prepared rule cache hits", cache.getHits());
+				statistics.put("prepared rule cache misses", cache.getMisses());
+				for(Entry<String, Long> entry : cache.getSavedPreparationTimes().entrySet()) {
+					statistics.put("saved preparation time of '" + entry.getKey() + "' (ms)", entry.getValue());
+				}
+			}
+			return statistics;
+		}
+		
 		public void setItemRegistry(ItemRegistry itemRegistry) {
 			this.itemRegistry = itemRegistry;
 			itemRegistry.addItemRegistryChangeListener(this);
@@ -142,6 +234,14 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			this.modelRepository = null;
 		}
 		
+		public void setItemEventDispatcher(ItemEventDispatcher itemEventDispatcher) {
+			itemEventDispatcher.addItemEventListener(this, EventType.COMMAND, null);
+		}
+
+		public void unsetItemEventDispatcher(ItemEventDispatcher itemEventDispatcher) {
+			itemEventDispatcher.removeItemEventListener(this);
+		}
+		
 		public void setScriptEngine(ScriptEngine scriptEngine) {
 			this.scriptEngine = scriptEngine;
 		}
@@ -226,20 +326,9 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		/**
 		 * {@inheritDoc}
 		 */
-		public void handleEvent(Event event) {  
-			String itemName = (String) event.getProperty("item");
-			
-			String topic = event.getTopic();
-			String[] topicParts = topic.split(TOPIC_SEPERATOR);
-			
-			if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
-				return; // we have received an event with an invalid topic
-			}
-			String operation = topicParts[1];
-			
-			if(operation.equals(EventType.COMMAND.toString())) {
-				Command command = (Command) event.getProperty("command");
-				if(command!=null) receiveCommand(itemName, command);
+		public void handleItemEvent(ItemEvent event) {  
+			if(event.getType()==EventType.COMMAND) {
+				receiveCommand(event.getItemName(), event.getCommand());
 			}
 		}
 
@@ -295,28 +384,45 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			}
 		}
 
-		protected synchronized void executeRule(Rule rule) {
+		protected void executeRule(Rule rule) {
 			executeRule(rule, new RuleEvaluationContext());
 		}
 			
-		protected synchronized void executeRule(Rule rule, RuleEvaluationContext context) {
-			Script script = scriptEngine.newScriptFromXExpression(rule.getScript());
-			
-			logger.debug("Executing rule '{}'", rule.getName());
-			
-			context.setGlobalContext(RuleContextHelper.getContext(rule));
-			
-			ScriptExecutionThread thread = new ScriptExecutionThread(rule.getName(), script, context);
-			thread.start();
+		protected void executeRule(final Rule rule, final RuleEvaluationContext context) {
+			final ScriptEngine scriptEngine = this.scriptEngine;
+			final RuleTriggerManager triggerManager = this.triggerManager;
+			if(scriptEngine==null || triggerManager==null) {
+				return;
+			}
+			ruleExecutor.execute(rule.getName(), new Runnable() {
+				public void run() {
+					PreparedRule preparedRule = triggerManager.getPreparedRuleCache().getPreparedRule(rule, scriptEngine);
+					
+					logger.debug("Executing rule '{}'", rule.getName());
+					
+					context.setGlobalContext(preparedRule.getContext());
+					try {
+						preparedRule.getScript().execute(context);
+					} catch (ScriptExecutionException e) {
+						String msg = e.getCause().getMessage();
+						if (msg==null) {
+							logger.error("Error during the execution of rule '{}'", rule.getName(), e.getCause());
+						} else {
+							logger.error("Error during the execution of rule '{}': {}", new String[] { rule.getName(), msg });
+						}
+					}
+				}
+			});
 		}
 
-		protected synchronized void executeRules(Iterable<Rule> rules) {
+		protected void executeRules(Iterable<Rule> rules) {
 			executeRules(rules, new RuleEvaluationContext());
 		}
 		
-		protected synchronized void executeRules(Iterable<Rule> rules, RuleEvaluationContext context) {
+		protected void executeRules(Iterable<Rule> rules, RuleEvaluationContext context) {
 			for(Rule rule : rules) {
-				executeRule(rule, context);
+				// every rule gets its own context, as they are executed concurrently
+				executeRule(rule, new RuleEvaluationContext(context));
 			}
 		}
 				
@@ -41,6 +41,17 @@ public class RuleEvaluationContext extends DefaultEvaluationContext {
 		super(new DefaultEvaluationContext());
 	}
 	
+	/**
+	 * Creates a new context which looks up all values, that are not defined by
+	 * itself, in the given parent context. This is used to give every executed
+	 * rule its own context, while sharing the variables of the trigger.
+	 * 
+	 * @param parent the parent context
+	 */
+	public RuleEvaluationContext(IEvaluationContext parent) {
+		super(parent);
+	}
+	
 	public void setGlobalContext(IEvaluationContext context) {
 		this.globalContext = context;
 	}
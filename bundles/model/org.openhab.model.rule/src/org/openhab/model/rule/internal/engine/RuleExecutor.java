@@ -0,0 +1,310 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.model.rule.internal.engine;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The rule executor runs rule scripts on a fixed pool of threads instead of
+ * creating a new thread for every rule firing.
+ * 
+ * The number of rule executions which are waiting for a free thread is limited;
+ * further executions are rejected and counted. Optionally, the executions of
+ * the same rule are serialized, i.e. a rule is never executed concurrently
+ * with itself and all its executions take place in the order of the triggers.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RuleExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(RuleExecutor.class);
+	
+	public static final int DEFAULT_POOL_SIZE = 10;
+	
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	
+	private final ExecutorService executor;
+	
+	private final int poolSize;
+	
+	private final int queueSize;
+	
+	private final boolean serialized;
+	
+	/** the pending executions per rule, if executions are serialized */
+	private final ConcurrentMap<String, RuleQueue> ruleQueues = new ConcurrentHashMap<String, RuleQueue>();
+	
+	/** the number of executions which have been accepted, but not been started yet */
+	private final AtomicInteger queued = new AtomicInteger();
+	
+	private final AtomicInteger active = new AtomicInteger();
+	
+	private final AtomicInteger maxQueued = new AtomicInteger();
+
+	private final AtomicLong submittedCount = new AtomicLong();
+	
+	private final AtomicLong executedCount = new AtomicLong();
+	
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	/**
+	 * Creates a new rule executor
+	 * 
+	 * @param poolSize the number of threads which execute rules
+	 * @param queueSize the maximum number of executions that wait for a free thread
+	 * @param serialized true, if the executions of the same rule should be serialized
+	 */
+	public RuleExecutor(int poolSize, int queueSize, boolean serialized) {
+		this.poolSize = poolSize;
+		this.queueSize = queueSize;
+		this.serialized = serialized;
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, 
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "openHAB rule executor-" + threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+	
+	/**
+	 * Schedules the execution of a rule.
+	 * 
+	 * @param ruleName the name of the rule, which is used to serialize its executions
+	 * @param execution the execution of the rule
+	 * @return true, if the execution has been accepted, false if it has been rejected
+	 * because too many executions are waiting already
+	 */
+	public boolean execute(String ruleName, Runnable execution) {
+		submittedCount.incrementAndGet();
+		int depth = queued.incrementAndGet();
+		if(depth > queueSize) {
+			reject();
+			logger.warn("Execution of rule '{}' has been rejected, as {} rule executions are pending already", ruleName, queueSize);
+			return false;
+		}
+		updateMaxQueued(depth);
+		
+		Execution task = new Execution(ruleName, execution);
+		try {
+			if(serialized) {
+				RuleQueue ruleQueue = ruleQueues.get(ruleName);
+				if(ruleQueue==null) {
+					RuleQueue newQueue = new RuleQueue();
+					ruleQueue = ruleQueues.putIfAbsent(ruleName, newQueue);
+					if(ruleQueue==null) {
+						ruleQueue = newQueue;
+					}
+				}
+				ruleQueue.add(task);
+			} else {
+				executor.execute(task);
+			}
+		} catch(RejectedExecutionException e) {
+			reject();
+			logger.debug("Execution of rule '{}' has been rejected, as the rule executor has been shut down", ruleName);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Stops the executor. Executions which have been accepted already are still 
+	 * carried out, as long as they finish within the given timeout.
+	 * 
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 */
+	public void shutdown(long timeout, TimeUnit unit) {
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(timeout, unit)) {
+				logger.warn("{} rule executions did not finish in time", queued.get() + active.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	public int getPoolSize() {
+		return poolSize;
+	}
+	
+	public int getQueueSize() {
+		return queueSize;
+	}
+	
+	public boolean isSerialized() {
+		return serialized;
+	}
+	
+	/**
+	 * @return the number of accepted executions which have not been started yet
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+	
+	/**
+	 * @return the highest number of executions that have been waiting at the same time
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueued.get();
+	}
+	
+	/**
+	 * @return the number of rules which are being executed at the moment
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+	
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+	
+	public long getExecutedCount() {
+		return executedCount.get();
+	}
+	
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	private void reject() {
+		queued.decrementAndGet();
+		rejectedCount.incrementAndGet();
+	}
+	
+	private void updateMaxQueued(int depth) {
+		int max = maxQueued.get();
+		while(depth > max && !maxQueued.compareAndSet(max, depth)) {
+			max = maxQueued.get();
+		}
+	}
+	
+	
+	/**
+	 * A single execution of a rule, which keeps the counters up to date.
+	 */
+	private class Execution implements Runnable {
+		
+		private final String ruleName;
+		
+		private final Runnable execution;
+		
+		public Execution(String ruleName, Runnable execution) {
+			this.ruleName = ruleName;
+			this.execution = execution;
+		}
+		
+		public void run() {
+			queued.decrementAndGet();
+			active.incrementAndGet();
+			try {
+				execution.run();
+			} catch(RuntimeException e) {
+				logger.error("Error during the execution of rule '" + ruleName + "'", e);
+			} finally {
+				active.decrementAndGet();
+				executedCount.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * The pending executions of a single rule. At most one of them is passed to
+	 * the thread pool at any time, the next one is submitted when it has finished.
+	 */
+	private class RuleQueue implements Runnable {
+		
+		private final Queue<Execution> executions = new LinkedList<Execution>();
+		
+		private boolean running = false;
+		
+		public synchronized void add(Execution execution) {
+			executions.add(execution);
+			if(!running) {
+				try {
+					executor.execute(this);
+					running = true;
+				} catch(RejectedExecutionException e) {
+					executions.remove(execution);
+					throw e;
+				}
+			}
+		}
+		
+		public void run() {
+			while(true) {
+				Execution execution;
+				synchronized(this) {
+					execution = executions.poll();
+					if(execution==null) {
+						running = false;
+						return;
+					}
+				}
+				execution.run();
+				
+				// pass the next execution to the pool again, so that other rules get their turn
+				synchronized(this) {
+					if(executions.isEmpty()) {
+						running = false;
+						return;
+					}
+					try {
+						executor.execute(this);
+						return;
+					} catch(RejectedExecutionException e) {
+						// the executor is shutting down, so we carry out the remaining executions ourselves
+					}
+				}
+			}
+		}
+	}
+	
+}
@@ -43,13 +43,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.openhab.core.items.Item;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.openhab.core.types.Type;
-import org.openhab.core.types.TypeParser;
 import org.openhab.model.rule.rules.ChangedEventTrigger;
 import org.openhab.model.rule.rules.CommandEventTrigger;
 import org.openhab.model.rule.rules.EventTrigger;
@@ -106,10 +107,21 @@ public class RuleTriggerManager {
 	private List<Rule> systemShutdownTriggeredRules = Lists.newArrayList();
 	private List<Rule> timerEventTriggeredRules = Lists.newArrayList();
 
+	// the indexes of the update, change and command triggers by item name
+	private final ConcurrentMap<String, ItemTriggerIndex> triggerIndexes = new ConcurrentHashMap<String, ItemTriggerIndex>();
+	
 	// the scheduler used for timer events
 	private Scheduler scheduler;
 	
+	// the prepared scripts and contexts of the rules
+	private final PreparedRuleCache preparedRuleCache;
+	
 	public RuleTriggerManager() {
+		this(new PreparedRuleCache());
+	}
+	
+	RuleTriggerManager(PreparedRuleCache preparedRuleCache) {
+		this.preparedRuleCache = preparedRuleCache;
 		 try {
 			scheduler = StdSchedulerFactory.getDefaultScheduler();
 		} catch (SchedulerException e) {
@@ -174,95 +186,56 @@ public class RuleTriggerManager {
 		return internalGetRules(triggerType, item, null, command);
 	}
 
-	private Iterable<Rule> getAllRules(TriggerTypes type, String itemName) {
-		switch(type) {
-			case STARTUP:  return systemStartupTriggeredRules;
-			case SHUTDOWN: return systemShutdownTriggeredRules;
-			case UPDATE:   return updateEventTriggeredRules.get(itemName);
-			case CHANGE:   return changedEventTriggeredRules.get(itemName);
-			case COMMAND:  return commandEventTriggeredRules.get(itemName);
-			default:       return Sets.newHashSet();
-		}
-	}
-
 	private Iterable<Rule> internalGetRules(TriggerTypes triggerType, Item item, Type oldType, Type newType) {
-		List<Rule> result = Lists.newArrayList();
-		Iterable<Rule> rules = getAllRules(triggerType, item.getName());
-		if(rules==null) {
-			rules = Lists.newArrayList();
-		}
 		switch(triggerType) {
 		case STARTUP:  return systemStartupTriggeredRules;
 		case SHUTDOWN: return systemShutdownTriggeredRules;
 		case TIMER :   return timerEventTriggeredRules;
 		case UPDATE:   
 			if(newType instanceof State) {
-				State state = (State) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof UpdateEventTrigger) {
-							UpdateEventTrigger ut = (UpdateEventTrigger) t;
-							if(ut.getItem().equals(item.getName())) {
-								if(ut.getState()!=null) {
-									State triggerState = TypeParser.parseState(item.getAcceptedDataTypes(), ut.getState());
-									if(!state.equals(triggerState)) {
-										continue;
-									}
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerIndex(item).getUpdateRules((State) newType);
 			}
 			break;
 		case CHANGE:
 			if(newType instanceof State && oldType instanceof State) {
-				State newState = (State) newType;
-				State oldState = (State) oldType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof ChangedEventTrigger) {
-							ChangedEventTrigger ct = (ChangedEventTrigger) t;						
-							if(ct.getItem().equals(item.getName())) {
-								if(ct.getOldState()!=null) {
-									State triggerOldState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getOldState());
-									if(!oldState.equals(triggerOldState)) {
-										continue;
-									}								
-								}
-								if(ct.getNewState()!=null) {
-									State triggerNewState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getNewState());
-									if(!newState.equals(triggerNewState)) {
-										continue;
-									}								
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerIndex(item).getChangeRules((State) oldType, (State) newType);
 			}
 			break;
 		case COMMAND:  
 			if(newType instanceof Command) {
-				Command command = (Command) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof CommandEventTrigger) {
-							CommandEventTrigger ct = (CommandEventTrigger) t;
-							Command triggerCommand = TypeParser.parseCommand(item.getAcceptedCommandTypes(), ct.getCommand());
-							if(ct.getItem().equals(item.getName()) &&
-									(triggerCommand==null || command.equals(triggerCommand))) {
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerIndex(item).getCommandRules((Command) newType);
 			}
 			break;
 		}
-		return result;
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Returns the trigger index of an item. If there is none yet or if it has been
+	 * built for other accepted data types, it is built from the current mapping tables.
+	 * 
+	 * @param item the item
+	 * @return the trigger index of the item
+	 */
+	private ItemTriggerIndex getTriggerIndex(Item item) {
+		ItemTriggerIndex index = triggerIndexes.get(item.getName());
+		if(index==null || !index.isValidFor(item)) {
+			synchronized(this) {
+				index = new ItemTriggerIndex(item, 
+						updateEventTriggeredRules.get(item.getName()),
+						changedEventTriggeredRules.get(item.getName()),
+						commandEventTriggeredRules.get(item.getName()));
+				triggerIndexes.put(item.getName(), index);
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Discards all trigger indexes; they are rebuilt on the next event of each item.
+	 */
+	private synchronized void invalidateTriggerIndexes() {
+		triggerIndexes.clear();
 	}
 
 	/**
@@ -282,6 +255,7 @@ public class RuleTriggerManager {
 							}
 							timerEventTriggeredRules.clear(); break;
 		}
+		invalidateTriggerIndexes();
 	}
 
 	/**
@@ -294,6 +268,17 @@ public class RuleTriggerManager {
 		clear(CHANGE);
 		clear(COMMAND);
 		clear(TIMER);
+		preparedRuleCache.clear();
+	}
+	
+	/**
+	 * Returns the cache for the prepared scripts and contexts of the rules. 
+	 * Its entries are invalidated whenever a rule model is added or removed.
+	 * 
+	 * @return the cache of prepared rules
+	 */
+	public PreparedRuleCache getPreparedRuleCache() {
+		return preparedRuleCache;
 	}
 	
 	/**
@@ -341,6 +326,7 @@ public class RuleTriggerManager {
 				}
 			}
 		}
+		invalidateTriggerIndexes();
 	}
 		
 	/**
@@ -360,6 +346,7 @@ public class RuleTriggerManager {
 							removeTimerRule(rule);
 							break;
 		}
+		invalidateTriggerIndexes();
 	}
 	
 	/**
@@ -368,6 +355,7 @@ public class RuleTriggerManager {
 	 * @param model the rule model
 	 */
 	public void addRuleModel(RuleModel model) {
+		preparedRuleCache.invalidate(model);
 		for(Rule rule : model.getRules()) {
 			addRule(rule);
 		}
@@ -379,12 +367,14 @@ public class RuleTriggerManager {
 	 * @param ruleModel the rule model
 	 */
 	public void removeRuleModel(RuleModel ruleModel) {
+		preparedRuleCache.invalidate(ruleModel);
 		removeRules(UPDATE, updateEventTriggeredRules.values(), ruleModel);
 		removeRules(CHANGE, changedEventTriggeredRules.values(), ruleModel);
 		removeRules(COMMAND, commandEventTriggeredRules.values(), ruleModel);
 		removeRules(STARTUP, Collections.singletonList(systemStartupTriggeredRules), ruleModel);
 		removeRules(SHUTDOWN, Collections.singletonList(systemShutdownTriggeredRules), ruleModel);		
 		removeRules(TIMER, Collections.singletonList(timerEventTriggeredRules), ruleModel);		
+		invalidateTriggerIndexes();
 	}
 
 	private void removeRules(TriggerTypes type, Collection<? extends Collection<Rule>> ruleSets, RuleModel model) {
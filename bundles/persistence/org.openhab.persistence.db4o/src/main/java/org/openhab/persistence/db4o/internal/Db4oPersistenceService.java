@@ -46,11 +46,14 @@ import java.util.Date;
 import java.util.Set;
 
 import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.HistoricItemAggregator;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.types.State;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.CronTrigger;
 import org.quartz.DisallowConcurrentExecution;
@@ -81,7 +84,7 @@ import com.db4o.query.Query;
  * @author Kai Kreuzer
  * @since 1.0.0
  */
-public class Db4oPersistenceService implements QueryablePersistenceService {
+public class Db4oPersistenceService implements AggregatingPersistenceService {
 
 	private static final Logger logger = LoggerFactory.getLogger(Db4oPersistenceService.class);
 	
@@ -190,6 +193,86 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
 		return Collections.emptyList();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * COUNT, FIRST and LAST are answered by the query itself without activating 
+	 * more than a single stored item. All other aggregations activate the stored
+	 * items one after the other while iterating over the query result.
+	 */
+	public HistoricItem aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate) {
+		Date timestamp = endDate==null ? new Date() : endDate;
+		switch(aggregation) {
+			case COUNT : {
+				ObjectSet<HistoricItem> results = queryRange(itemName, beginDate, endDate, Ordering.ASCENDING);
+				return results!=null ? createItem(itemName, new DecimalType(results.size()), timestamp) : null;
+			}
+			case FIRST :
+			case LAST : {
+				ObjectSet<HistoricItem> results = queryRange(itemName, beginDate, endDate, 
+						aggregation==Aggregation.FIRST ? Ordering.ASCENDING : Ordering.DESCENDING);
+				return results!=null && results.size() > 0 ? results.get(0) : null;
+			}
+			default : {
+				ObjectSet<HistoricItem> results = queryRange(itemName, beginDate, endDate, Ordering.ASCENDING);
+				if (results==null) {
+					return null;
+				}
+				State previousState = null;
+				if (aggregation==Aggregation.CHANGED) {
+					Query query = queryWithReconnect();
+					query.constrain(Db4oItem.class);
+					query.descend("name").constrain(itemName).equal();
+					query.descend("timestamp").constrain(beginDate).smaller();
+					query.descend("timestamp").orderDescending();
+					ObjectSet<HistoricItem> previous = query.execute();
+					if (previous.size() > 0) {
+						previousState = previous.get(0).getState();
+					}
+				}
+				return HistoricItemAggregator.aggregate(itemName, aggregation, results, previousState, timestamp);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Iterable<HistoricItem> aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate, long bucketSize) {
+		ObjectSet<HistoricItem> results = queryRange(itemName, beginDate, endDate, Ordering.ASCENDING);
+		if (results==null) {
+			return Collections.emptyList();
+		}
+		return HistoricItemAggregator.aggregate(itemName, aggregation, results, beginDate, bucketSize);
+	}
+
+	private ObjectSet<HistoricItem> queryRange(String itemName, Date beginDate, Date endDate, Ordering ordering) {
+		Query query = queryWithReconnect();
+		if (query==null) {
+			return null;
+		}
+		query.constrain(Db4oItem.class);
+		query.descend("name").constrain(itemName).equal();
+		query.descend("timestamp").constrain(beginDate).greater().equal();
+		if (endDate!=null) {
+			query.descend("timestamp").constrain(endDate).smaller().equal();
+		}
+		if (ordering==Ordering.ASCENDING) {
+			query.descend("timestamp").orderAscending();
+		} else {
+			query.descend("timestamp").orderDescending();
+		}
+		return query.execute();
+	}
+
+	private static HistoricItem createItem(String itemName, State state, Date timestamp) {
+		Db4oItem historicItem = new Db4oItem();
+		historicItem.setName(itemName);
+		historicItem.setState(state);
+		historicItem.setTimestamp(timestamp);
+		return historicItem;
+	}
+
 	/**
 	 * Creates a new Query and returns it. In case the Database is closed for
 	 * some reason we'll try to reopen it again and try to create a query a
@@ -0,0 +1,233 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.AggregatingPersistenceService.Aggregation;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.HistoricItemAggregator;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.Sample;
+
+/**
+ * Compares the native aggregations of the rrd4j service with the streaming 
+ * aggregation over the queried historic items, which is used for persistence 
+ * services that cannot aggregate natively.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RRD4jAggregationTest {
+
+	private static final String DB_FOLDER = "./target/etc/rrd4j";
+
+	private static final String ITEM = "Temperature";
+
+	/** aligned to a full hour, so that the samples are not interpolated */
+	private static final long START_TIME = 999997200L;
+
+	/** one week of samples with a step of one minute */
+	private static final int SAMPLES = 7 * 24 * 60;
+
+	private static final int ITERATIONS = 200;
+
+	private RRD4jService service;
+
+	private Date beginDate;
+	private Date endDate;
+
+	@Before
+	public void init() throws IOException {
+		File folder = new File(DB_FOLDER);
+		folder.mkdirs();
+		FileUtils.cleanDirectory(folder);
+
+		RrdDef rrdDef = new RrdDef(new File(folder, ITEM + ".rrd").getAbsolutePath());
+		rrdDef.setStep(60);
+		rrdDef.setStartTime(START_TIME);
+		rrdDef.addDatasource("state", DsType.GAUGE, 60, Double.NaN, Double.NaN);
+		rrdDef.addArchive(ConsolFun.MAX, 0.5, 1, SAMPLES + 10);
+		rrdDef.addArchive(ConsolFun.MAX, 0.5, 60, 24 * 7 + 10);
+		RrdDb db = new RrdDb(rrdDef);
+		Sample sample = db.createSample();
+		for(int i = 1; i <= SAMPLES; i++) {
+			sample.setTime(START_TIME + i * 60);
+			sample.setValue("state", i % 100);
+			sample.update();
+		}
+		db.close();
+
+		beginDate = new Date((START_TIME + 60) * 1000);
+		endDate = new Date((START_TIME + SAMPLES * 60) * 1000);
+
+		service = new RRD4jService() {
+			@Override
+			protected RrdDb getDB(String alias, ConsolFun function) {
+				File file = new File(RRD4jAggregationTest.DB_FOLDER, alias + ".rrd");
+				if(!file.exists()) {
+					return null;
+				}
+				try {
+					return new RrdDb(file.getAbsolutePath());
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		service.deactivate();
+	}
+
+	@Test
+	public void testNativeAggregationMatchesStreaming() {
+		for(Aggregation aggregation : Aggregation.values()) {
+			HistoricItem expected = aggregateStreaming(aggregation);
+			HistoricItem actual = service.aggregate(ITEM, aggregation, beginDate, endDate);
+			if(expected.getState() instanceof DecimalType) {
+				assertEquals(aggregation.toString(), ((DecimalType) expected.getState()).doubleValue(), 
+						((DecimalType) actual.getState()).doubleValue(), 0.0001d);
+			} else {
+				assertEquals(aggregation.toString(), expected.getState(), actual.getState());
+			}
+			assertEquals(aggregation.toString(), expected.getTimestamp(), actual.getTimestamp());
+		}
+	}
+
+	@Test
+	public void testBucketsUseConsolidatedArchive() {
+		// hourly maximums are read from the consolidated archive
+		List<HistoricItem> hourly = (List<HistoricItem>) service.aggregate(ITEM, Aggregation.MAX, beginDate, endDate, 3600000L);
+		assertTrue(hourly.size() >= 7 * 24 - 1);
+		// the samples of the first hour are 1..60, those of the second 61..99 and 0..20
+		assertEquals(60.0d, ((DecimalType) hourly.get(0).getState()).doubleValue(), 0.0001d);
+		assertEquals(99.0d, ((DecimalType) hourly.get(1).getState()).doubleValue(), 0.0001d);
+
+		List<HistoricItem> daily = (List<HistoricItem>) service.aggregate(ITEM, Aggregation.COUNT, beginDate, endDate, 24 * 3600000L);
+		assertEquals(7, daily.size());
+		assertEquals(beginDate, daily.get(0).getTimestamp());
+	}
+
+	@Test
+	public void testChangedConsidersPreviousRow() throws IOException {
+		// a switch that is ON for five minutes and OFF afterwards
+		RrdDef rrdDef = new RrdDef(new File(DB_FOLDER, "Switch.rrd").getAbsolutePath());
+		rrdDef.setStep(60);
+		rrdDef.setStartTime(START_TIME);
+		rrdDef.addDatasource("state", DsType.GAUGE, 60, Double.NaN, Double.NaN);
+		rrdDef.addArchive(ConsolFun.MAX, 0.5, 1, 20);
+		RrdDb db = new RrdDb(rrdDef);
+		Sample sample = db.createSample();
+		for(int i = 1; i <= 10; i++) {
+			sample.setTime(START_TIME + i * 60);
+			sample.setValue("state", i <= 5 ? 1 : 0);
+			sample.update();
+		}
+		db.close();
+
+		Date end = new Date((START_TIME + 10 * 60) * 1000);
+		assertEquals(OnOffType.ON, service.aggregate("Switch", Aggregation.CHANGED, 
+				new Date((START_TIME + 6 * 60) * 1000), end).getState());
+		assertEquals(OnOffType.OFF, service.aggregate("Switch", Aggregation.CHANGED, 
+				new Date((START_TIME + 7 * 60) * 1000), end).getState());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testAggregationRequiresBeginDate() {
+		service.aggregate(ITEM, Aggregation.AVG, null, endDate);
+	}
+
+	@Test
+	public void testQueryLatest() {
+		Map<String, HistoricItem> latest = service.queryLatest(Arrays.asList(ITEM, "Unknown"));
+		HistoricItem historicItem = latest.get(ITEM);
+		assertEquals(SAMPLES % 100, ((DecimalType) historicItem.getState()).intValue());
+		assertEquals(endDate, historicItem.getTimestamp());
+		assertFalse(latest.containsKey("Unknown"));
+	}
+
+	/**
+	 * Aggregates one week of minute samples natively and by streaming the queried
+	 * historic items through a {@link HistoricItemAggregator}.
+	 */
+	@Test
+	public void testAggregationThroughput() {
+		// warm up both paths
+		aggregateStreaming(Aggregation.AVG);
+		service.aggregate(ITEM, Aggregation.AVG, beginDate, endDate);
+
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			aggregateStreaming(Aggregation.AVG);
+		}
+		double streaming = ITERATIONS * 1000000000.0d / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			service.aggregate(ITEM, Aggregation.AVG, beginDate, endDate);
+		}
+		double nativeAggregation = ITERATIONS * 1000000000.0d / (System.nanoTime() - start);
+
+		System.out.println("rrd4j aggregations/sec over " + SAMPLES + " samples: " + (long) streaming 
+				+ " (streaming), " + (long) nativeAggregation + " (native)");
+	}
+
+	private HistoricItem aggregateStreaming(Aggregation aggregation) {
+		FilterCriteria filter = new FilterCriteria();
+		filter.setItemName(ITEM);
+		filter.setBeginDate(beginDate);
+		filter.setEndDate(endDate);
+		filter.setOrdering(Ordering.ASCENDING);
+		return HistoricItemAggregator.aggregate(ITEM, aggregation, service.query(filter), null, endDate);
+	}
+
+}
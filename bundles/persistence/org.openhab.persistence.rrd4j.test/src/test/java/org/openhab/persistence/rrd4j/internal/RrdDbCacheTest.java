@@ -0,0 +1,301 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.persistence.rrd4j.internal.RrdDbCache.RrdDbOpener;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.Sample;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RrdDbCacheTest {
+
+	private static final String DB_FOLDER = "./target/etc/rrd4j";
+
+	private static final long START_TIME = 1000000000L;
+
+	private static final int FILES = 1000;
+
+	private static final int ROUNDS = 5;
+
+	private RrdDbCache cache;
+
+	@Before
+	public void init() throws IOException {
+		File folder = new File(DB_FOLDER);
+		folder.mkdirs();
+		FileUtils.cleanDirectory(folder);
+	}
+
+	@After
+	public void tearDown() {
+		if(cache!=null) {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testOpenDatabaseIsReused() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 0);
+		RrdDb db = cache.acquire("item", ConsolFun.AVERAGE);
+		cache.release("item");
+		assertSame(db, cache.acquire("item", ConsolFun.AVERAGE));
+		cache.release("item");
+
+		assertFalse(db.isClosed());
+		assertEquals(1, cache.getOpenedCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDatabaseIsEvicted() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 2, 0);
+		RrdDb first = cache.acquire("first", ConsolFun.AVERAGE);
+		cache.release("first");
+		RrdDb second = cache.acquire("second", ConsolFun.AVERAGE);
+		cache.release("second");
+		// touching the first database makes the second one the eldest
+		cache.acquire("first", ConsolFun.AVERAGE);
+		cache.release("first");
+		RrdDb third = cache.acquire("third", ConsolFun.AVERAGE);
+		cache.release("third");
+
+		assertFalse(first.isClosed());
+		assertTrue(second.isClosed());
+		assertFalse(third.isClosed());
+		assertEquals(2, cache.getOpenCount());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testDatabaseInUseIsNotEvicted() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 0, 0);
+		RrdDb used = cache.acquire("used", ConsolFun.AVERAGE);
+		RrdDb other = cache.acquire("other", ConsolFun.AVERAGE);
+		cache.release("other");
+
+		assertTrue(other.isClosed());
+		assertFalse(used.isClosed());
+
+		cache.release("used");
+		assertTrue(used.isClosed());
+		assertEquals(0, cache.getOpenCount());
+	}
+
+	@Test
+	public void testIdleDatabaseIsEvicted() throws InterruptedException {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 10);
+		RrdDb db = cache.acquire("idle", ConsolFun.AVERAGE);
+		cache.release("idle");
+		Thread.sleep(50);
+		cache.evictIdle();
+
+		assertTrue(db.isClosed());
+		assertEquals(0, cache.getOpenCount());
+	}
+
+	@Test
+	public void testClosedCacheClosesDatabasesOnRelease() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 0);
+		RrdDb db = cache.acquire("item", ConsolFun.AVERAGE);
+		cache.close();
+		assertFalse(db.isClosed());
+
+		cache.release("item");
+		assertTrue(db.isClosed());
+	}
+
+	@Test
+	public void testReconfiguredCacheKeepsDatabasesInUse() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 0);
+		RrdDb used = cache.acquire("used", ConsolFun.AVERAGE);
+		RrdDb other = cache.acquire("other", ConsolFun.AVERAGE);
+		cache.release("other");
+		cache.reconfigure(0, 0);
+
+		assertTrue(other.isClosed());
+		assertFalse(used.isClosed());
+		assertEquals(1, cache.getOpenCount());
+
+		cache.release("used");
+		assertTrue(used.isClosed());
+		assertEquals(0, cache.getOpenCount());
+	}
+
+	@Test
+	public void testInvalidatedDatabaseIsReopened() {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 0);
+		RrdDb used = cache.acquire("used", ConsolFun.AVERAGE);
+		cache.invalidate();
+		assertFalse(used.isClosed());
+
+		cache.release("used");
+		assertTrue(used.isClosed());
+		RrdDb reopened = cache.acquire("used", ConsolFun.AVERAGE);
+		cache.release("used");
+		assertFalse(reopened.isClosed());
+		assertEquals(2, cache.getOpenedCount());
+	}
+
+	@Test
+	public void testFailedOpenIsNotCached() {
+		cache = new RrdDbCache(new RrdDbOpener() {
+			public RrdDb open(String name, ConsolFun function) throws IOException {
+				throw new IOException("cannot open " + name);
+			}
+		}, 10, 0);
+		assertNull(cache.acquire("broken", ConsolFun.AVERAGE));
+		assertEquals(0, cache.getOpenCount());
+	}
+
+	@Test
+	public void testAccessToSameDatabaseIsSerialized() throws InterruptedException {
+		cache = new RrdDbCache(new TestOpener("FILE"), 10, 0);
+		final AtomicInteger holders = new AtomicInteger();
+		final AtomicInteger maxHolders = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+		for(int i = 0; i < 4; i++) {
+			new Thread() {
+				public void run() {
+					for(int j = 0; j < 200; j++) {
+						assertNotNull(cache.acquire("shared", ConsolFun.AVERAGE));
+						int current = holders.incrementAndGet();
+						if(current > maxHolders.get()) {
+							maxHolders.set(current);
+						}
+						holders.decrementAndGet();
+						cache.release("shared");
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertEquals(1, maxHolders.get());
+		assertEquals(1, cache.getOpenedCount());
+	}
+
+	/**
+	 * Stores samples into 1,000 databases, once closing every database after each
+	 * store (as before the cache existed) and once with all databases kept open.
+	 * The throughput depends on the machine, so it is only reported.
+	 */
+	@Test
+	public void testStoreThroughputFor1000Files() throws IOException {
+		double uncached = measureStores(new RrdDbCache(new TestOpener("FILE"), 0, 0), 0);
+		double cachedFile = measureStores(new RrdDbCache(new TestOpener("FILE"), FILES, 0), ROUNDS + 1);
+		double cachedNio = measureStores(new RrdDbCache(new TestOpener("NIO"), FILES, 0), 2 * (ROUNDS + 1));
+
+		System.out.println("rrd4j stores/sec for " + FILES + " files: " + (long) uncached + " (file backend, no cache), " 
+				+ (long) cachedFile + " (file backend, cached), " + (long) cachedNio + " (nio backend, cached)");
+	}
+
+	private double measureStores(RrdDbCache storeCache, int firstRound) throws IOException {
+		cache = storeCache;
+		try {
+			// the first round creates the files, if they do not exist yet
+			store(firstRound);
+			long start = System.nanoTime();
+			for(int round = firstRound + 1; round <= firstRound + ROUNDS; round++) {
+				store(round);
+			}
+			long duration = System.nanoTime() - start;
+			return FILES * ROUNDS * 1000000000.0d / duration;
+		} finally {
+			cache.close();
+			cache = null;
+		}
+	}
+
+	private void store(int round) throws IOException {
+		for(int i = 0; i < FILES; i++) {
+			String name = "item" + i;
+			RrdDb db = cache.acquire(name, ConsolFun.AVERAGE);
+			try {
+				Sample sample = db.createSample();
+				sample.setTime(START_TIME + (round + 1) * 60);
+				sample.setValue("state", round);
+				sample.update();
+			} finally {
+				cache.release(name);
+			}
+		}
+	}
+
+	private static class TestOpener implements RrdDbOpener {
+
+		private final RrdBackendFactory factory;
+
+		public TestOpener(String backend) {
+			this.factory = RrdBackendFactory.getFactory(backend);
+		}
+
+		public RrdDb open(String name, ConsolFun function) throws IOException {
+			File file = new File(DB_FOLDER, name + ".rrd");
+			if(file.exists()) {
+				return new RrdDb(file.getAbsolutePath(), factory);
+			}
+			RrdDef rrdDef = new RrdDef(file.getAbsolutePath());
+			rrdDef.setStep(60);
+			rrdDef.setStartTime(START_TIME);
+			rrdDef.addDatasource("state", DsType.GAUGE, 60, Double.NaN, Double.NaN);
+			rrdDef.addArchive(function, 0.5, 1, 480);
+			rrdDef.addArchive(function, 0.5, 4, 360);
+			rrdDef.addArchive(function, 0.5, 15, 644);
+			rrdDef.addArchive(function, 0.5, 60, 720);
+			rrdDef.addArchive(function, 0.5, 720, 730);
+			rrdDef.addArchive(function, 0.5, 10080, 520);
+			return new RrdDb(rrdDef, factory);
+		}
+	}
+
+}
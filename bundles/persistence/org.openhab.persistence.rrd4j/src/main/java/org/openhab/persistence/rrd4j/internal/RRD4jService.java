@@ -31,15 +31,20 @@ package org.openhab.persistence.rrd4j.internal;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.commons.lang.StringUtils;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
@@ -50,19 +55,25 @@ import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.State;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
+import org.rrd4j.core.RrdBackendFactory;
 import org.rrd4j.core.RrdDb;
 import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdNioBackendFactory;
 import org.rrd4j.core.Sample;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,21 +82,51 @@ import org.slf4j.LoggerFactory;
  * This is the implementation of the RRD4j {@link PersistenceService}. To learn
  * more about RRD4j please visit their <a href="http://code.google.com/p/rrd4j/">website</a>.
  * 
+ * Open databases are kept in a bounded {@link RrdDbCache}, so that storing a value
+ * does not require to open and validate the database file every time. The rrd4j
+ * backend (e.g. memory-mapped files through the NIO backend) and the limits of
+ * the cache can be configured in openhab.cfg.
+ * 
  * @author Kai Kreuzer
  * @since 1.0.0
  */
-public class RRD4jService implements QueryablePersistenceService {
+public class RRD4jService implements AggregatingPersistenceService, BulkQueryablePersistenceService, ManagedService, StatisticsProvider {
 
 	private static final String DATASOURCE_STATE = "state";
 
 	protected final static String DB_FOLDER = "etc/rrd4j";
 	
+	/** the default maximum number of databases that are kept open */
+	protected final static int DEFAULT_MAX_OPEN = 100;
+
+	/** the default time in seconds after which an unused database is closed */
+	protected final static int DEFAULT_IDLE_TIMEOUT = 300;
+
 	private static final Logger logger = LoggerFactory.getLogger(RRD4jService.class);
 
-	private Map<String,Timer> timers = new HashMap<String,Timer>();
+	private Map<String,Timer> timers = new ConcurrentHashMap<String,Timer>();
 	
 	protected ItemRegistry itemRegistry;
 	
+	private RrdBackendFactory backendFactory = RrdBackendFactory.getDefaultFactory();
+
+	private int maxOpen = DEFAULT_MAX_OPEN;
+
+	private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	private RrdDbCache dbCache;
+	
+	public void activate() {
+		createCache();
+	}
+
+	public void deactivate() {
+		if(dbCache!=null) {
+			dbCache.close();
+			dbCache = null;
+		}
+	}
+
 	public void setItemRegistry(ItemRegistry itemRegistry) {
 		this.itemRegistry = itemRegistry;
 	}
@@ -107,7 +148,8 @@ public class RRD4jService implements QueryablePersistenceService {
 	public void store(final Item item, final String alias) {
 		final String name = alias==null ? item.getName() : alias;
 		ConsolFun function = getConsolidationFunction(item);
-		RrdDb db = getDB(name, function);
+		RrdDbCache cache = getCache();
+		RrdDb db = cache.acquire(name, function);
 		if(db!=null) {
 			long now = System.currentTimeMillis()/1000;
 			if(function!=ConsolFun.AVERAGE) {
@@ -162,11 +204,8 @@ public class RRD4jService implements QueryablePersistenceService {
 				}
 			} catch (Exception e) {
 				logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
-			}
-            try {
-				db.close();
-			} catch (IOException e) {
-				logger.debug("Error closing rrd4j database: {}", e.getMessage());
+			} finally {
+				cache.release(name);
 			}
 		}
 	}
@@ -182,7 +221,8 @@ public class RRD4jService implements QueryablePersistenceService {
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
 		String itemName = filter.getItemName();
 		ConsolFun consolidationFunction = getConsolidationFunction(itemName);
-		RrdDb db = getDB(itemName, consolidationFunction);
+		RrdDbCache cache = getCache();
+		RrdDb db = cache.acquire(itemName, consolidationFunction);
 		if(db!=null) {
 			long start = 0L;
 			long end = filter.getEndDate()==null ? System.currentTimeMillis()/1000 - 1 : filter.getEndDate().getTime()/1000;
@@ -228,25 +268,249 @@ public class RRD4jService implements QueryablePersistenceService {
 				return items;
 			} catch (IOException e) {
 				logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
-			}	
+			} finally {
+				cache.release(itemName);
+			}
 		}
 		return Collections.emptyList();
 	}
 
-	protected synchronized RrdDb getDB(String alias, ConsolFun function) {
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The most recent value is read from the header of each database, so no archive
+	 * has to be fetched.
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		Map<String, HistoricItem> results = new HashMap<String, HistoricItem>();
+		RrdDbCache cache = getCache();
+		for(String itemName : itemNames) {
+			RrdDb db = cache.acquire(itemName, getConsolidationFunction(itemName));
+			if(db!=null) {
+				try {
+					double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+					if(!Double.isNaN(lastValue)) {
+						results.put(itemName, new RRD4jItem(itemName, mapToState(lastValue, itemName), 
+								new Date(db.getLastArchiveUpdateTime() * 1000)));
+					}
+				} catch (IOException e) {
+					logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
+				} finally {
+					cache.release(itemName);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The aggregation is computed directly on the fetched rows of the best matching
+	 * archive without creating a historic item per row.
+	 */
+	public HistoricItem aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate) {
+		FetchData data = fetchData(itemName, beginDate, endDate, 1);
+		if(data==null) {
+			return null;
+		}
+		long[] timestamps = data.getTimestamps();
+		double[] values = data.getValues(DATASOURCE_STATE);
+		long begin = beginDate.getTime();
+		double previous = Double.NaN;
+		int first = 0;
+		while(first<timestamps.length && timestamps[first] * 1000 < begin) {
+			// the first row of the archive can start before the requested range
+			if(!Double.isNaN(values[first])) {
+				previous = values[first];
+			}
+			first++;
+		}
+		if(aggregation==Aggregation.CHANGED && Double.isNaN(previous)) {
+			previous = getPreviousValue(itemName, beginDate, data.getStep());
+		}
+		return aggregate(itemName, aggregation, timestamps, values, 
+				first, timestamps.length, previous, endDate==null ? new Date() : endDate);
+	}
+
+	/**
+	 * @return the value of the last row before the given date in the archive with the 
+	 * 	given step or {@link Double#NaN}, if this row has no value
+	 */
+	private double getPreviousValue(String itemName, Date date, long step) {
+		FetchData data = fetchData(itemName, new Date(date.getTime() - step * 1000), date, step);
+		double previous = Double.NaN;
+		if(data!=null) {
+			long[] timestamps = data.getTimestamps();
+			double[] values = data.getValues(DATASOURCE_STATE);
+			for(int i = 0; i < timestamps.length && timestamps[i] * 1000 < date.getTime(); i++) {
+				previous = values[i];
+			}
+		}
+		return previous;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The bucket size is used as the resolution of the fetch request, so that rrd4j 
+	 * selects the archive whose rows are already consolidated to (nearly) the size of 
+	 * a bucket.
+	 */
+	public Iterable<HistoricItem> aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate, long bucketSize) {
+		if(bucketSize<=0) {
+			throw new IllegalArgumentException("The bucket size must be positive");
+		}
+		FetchData data = fetchData(itemName, beginDate, endDate, Math.max(1, bucketSize / 1000));
+		if(data==null) {
+			return Collections.emptyList();
+		}
+		List<HistoricItem> results = new ArrayList<HistoricItem>();
+		long[] timestamps = data.getTimestamps();
+		double[] values = data.getValues(DATASOURCE_STATE);
+		long begin = beginDate.getTime();
+		double previous = Double.NaN;
+		int first = 0;
+		while(first<timestamps.length) {
+			if(timestamps[first] * 1000 < begin) {
+				// the first row of the archive can start before the requested range
+				if(!Double.isNaN(values[first])) {
+					previous = values[first];
+				}
+				first++;
+				continue;
+			}
+			long bucket = (timestamps[first] * 1000 - begin) / bucketSize;
+			int last = first + 1;
+			while(last<timestamps.length && (timestamps[last] * 1000 - begin) / bucketSize == bucket) {
+				last++;
+			}
+			Date bucketStart = new Date(begin + bucket * bucketSize);
+			HistoricItem result = aggregate(itemName, aggregation, timestamps, values, first, last, previous, bucketStart);
+			if(result!=null) {
+				results.add(new RRD4jItem(itemName, result.getState(), bucketStart));
+			}
+			for(int i = first; i < last; i++) {
+				if(!Double.isNaN(values[i])) {
+					previous = values[i];
+				}
+			}
+			first = last;
+		}
+		return results;
+	}
+
+	private FetchData fetchData(String itemName, Date beginDate, Date endDate, long resolution) {
+		if(beginDate==null) {
+			throw new IllegalArgumentException("rrd4j does not allow aggregations without a begin date");
+		}
+		ConsolFun consolidationFunction = getConsolidationFunction(itemName);
+		RrdDbCache cache = getCache();
+		RrdDb db = cache.acquire(itemName, consolidationFunction);
+		if(db!=null) {
+			long start = beginDate.getTime()/1000;
+			long end = endDate==null ? System.currentTimeMillis()/1000 - 1 : endDate.getTime()/1000;
+			try {
+				return db.createFetchRequest(consolidationFunction, start, end, resolution).fetchData();
+			} catch (IOException e) {
+				logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
+			} finally {
+				cache.release(itemName);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Aggregates the rows <code>from</code> (inclusive) to <code>to</code> (exclusive),
+	 * skipping all rows that have no value.
+	 */
+	private HistoricItem aggregate(String itemName, Aggregation aggregation, long[] timestamps, double[] values, 
+			int from, int to, double previous, Date timestamp) {
+		int count = 0;
+		double sum = 0;
+		int minIndex = -1;
+		int maxIndex = -1;
+		int firstIndex = -1;
+		int lastIndex = -1;
+		boolean changed = false;
+		for(int i = from; i < to; i++) {
+			double value = values[i];
+			if(Double.isNaN(value)) {
+				continue;
+			}
+			if(firstIndex<0) {
+				firstIndex = i;
+			}
+			lastIndex = i;
+			count++;
+			sum += value;
+			if(minIndex<0 || value<values[minIndex]) {
+				minIndex = i;
+			}
+			if(maxIndex<0 || value>values[maxIndex]) {
+				maxIndex = i;
+			}
+			if(!Double.isNaN(previous) && value!=previous) {
+				changed = true;
+			}
+			previous = value;
+		}
+		switch(aggregation) {
+			case COUNT :
+			case DECIMAL_COUNT : return new RRD4jItem(itemName, new DecimalType(count), timestamp);
+			case CHANGED : return new RRD4jItem(itemName, changed ? OnOffType.ON : OnOffType.OFF, timestamp);
+			default :
+		}
+		if(count==0) {
+			return null;
+		}
+		int index;
+		switch(aggregation) {
+			case AVG : return new RRD4jItem(itemName, new DecimalType(sum / count), timestamp);
+			case SUM : return new RRD4jItem(itemName, new DecimalType(sum), timestamp);
+			case MIN : index = minIndex; break;
+			case MAX : index = maxIndex; break;
+			case FIRST : index = firstIndex; break;
+			default : index = lastIndex;
+		}
+		return new RRD4jItem(itemName, mapToState(values[index], itemName), new Date(timestamps[index] * 1000));
+	}
+
+	private synchronized RrdDbCache getCache() {
+		if(dbCache==null) {
+			createCache();
+		}
+		return dbCache;
+	}
+
+	private synchronized void createCache() {
+		dbCache = new RrdDbCache(new RrdDbCache.RrdDbOpener() {
+			public RrdDb open(String name, ConsolFun function) throws IOException {
+				return getDB(name, function);
+			}
+		}, maxOpen, idleTimeout * 1000L);
+	}
+
+	/**
+	 * Opens the database with the given name or creates it, if it does not exist yet.
+	 * The caller is responsible for closing the database again, which is why all
+	 * accesses should go through the {@link RrdDbCache}.
+	 */
+	protected RrdDb getDB(String alias, ConsolFun function) {
 		RrdDb db = null;
         File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
     	try {
             if (file.exists()) {
             	// recreate the RrdDb instance from the file
-            	db = new RrdDb(file.getAbsolutePath());
+            	db = new RrdDb(file.getAbsolutePath(), backendFactory);
             } else {
             	File folder = new File(DB_FOLDER);
             	if(!folder.exists()) {
-            		folder.mkdir();
+            		folder.mkdirs();
             	}
             	// create a new database file
-                db = new RrdDb(getRrdDef(function, file));
+                db = new RrdDb(getRrdDef(function, file), backendFactory);
             }
 		} catch (IOException e) {
 			logger.error("Could not create rrd4j database file '{}': {}", new String[] { file.getAbsolutePath(), e.getMessage() });
@@ -323,5 +587,77 @@ public class RRD4jService implements QueryablePersistenceService {
 		// just return a DecimalType as a fallback
 		return new DecimalType(value);
 	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		RrdBackendFactory factory = RrdBackendFactory.getDefaultFactory();
+		int newMaxOpen = DEFAULT_MAX_OPEN;
+		int newIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+		if(config!=null) {
+			String backendString = (String) config.get("backend");
+			if(StringUtils.isNotBlank(backendString)) {
+				try {
+					factory = RrdBackendFactory.getFactory(backendString.trim().toUpperCase());
+				} catch(IllegalArgumentException e) {
+					throw new ConfigurationException("rrd4j:backend", "backend must be one of 'file', 'nio' or 'safe'");
+				}
+			}
+			String maxOpenString = (String) config.get("maxopen");
+			String idleTimeoutString = (String) config.get("idletimeout");
+			String syncPeriodString = (String) config.get("syncperiod");
+			try {
+				if(StringUtils.isNotBlank(maxOpenString)) {
+					newMaxOpen = Integer.parseInt(maxOpenString.trim());
+				}
+				if(StringUtils.isNotBlank(idleTimeoutString)) {
+					newIdleTimeout = Integer.parseInt(idleTimeoutString.trim());
+				}
+				if(StringUtils.isNotBlank(syncPeriodString)) {
+					RrdNioBackendFactory.setSyncPeriod(Integer.parseInt(syncPeriodString.trim()));
+				}
+			} catch(NumberFormatException e) {
+				throw new ConfigurationException("rrd4j", "maxopen, idletimeout and syncperiod must be numbers", e);
+			}
+		}
+		synchronized(this) {
+			boolean backendChanged = backendFactory!=factory;
+			backendFactory = factory;
+			maxOpen = newMaxOpen;
+			idleTimeout = newIdleTimeout;
+			if(dbCache!=null) {
+				// the cache is reconfigured in place, as other threads may still hold databases of it
+				dbCache.reconfigure(maxOpen, idleTimeout * 1000L);
+				if(backendChanged) {
+					dbCache.invalidate();
+				}
+			}
+		}
+		logger.debug("rrd4j uses the {} backend and keeps up to {} databases open", factory.getName(), newMaxOpen);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getStatisticsName() {
+		return getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		RrdDbCache cache = getCache();
+		statistics.put("backend", backendFactory.getName());
+		statistics.put("max open databases", maxOpen);
+		statistics.put("open databases", cache.getOpenCount());
+		statistics.put("opened databases", cache.getOpenedCount());
+		statistics.put("cache hits", cache.getHitCount());
+		statistics.put("evicted databases", cache.getEvictionCount());
+		return statistics;
+	}
 	
 }
@@ -0,0 +1,336 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.rrd4j.ConsolFun;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of open {@link RrdDb} handles. Opening a round robin database
+ * means reading and validating its header, which is by far the most expensive
+ * part of storing a single sample. This cache therefore keeps the most recently
+ * used databases open and closes the least recently used ones, if more than
+ * <code>maxOpen</code> are open or if a database has not been accessed for
+ * <code>idleTimeout</code> milliseconds.
+ * 
+ * Every database is guarded by its own lock, which is held between
+ * {@link #acquire(String, ConsolFun)} and {@link #release(String)}. Accesses to
+ * different files are hence not serialized anymore, while concurrent accesses to
+ * the same file are.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class RrdDbCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(RrdDbCache.class);
+
+	/**
+	 * Opens (or creates) the database with the given name, if it is not in the cache.
+	 */
+	public interface RrdDbOpener {
+		RrdDb open(String name, ConsolFun function) throws IOException;
+	}
+
+	private static class Entry {
+		final ReentrantLock lock = new ReentrantLock();
+		RrdDb db;
+		int refCount;
+		long lastAccess;
+		/** set, if the database must be reopened after it has been released */
+		boolean stale;
+	}
+
+	private final RrdDbOpener opener;
+
+	/** the entries in access order, i.e. the eldest entry is the least recently used one */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private int maxOpen;
+
+	private long idleTimeout;
+
+	private boolean closed = false;
+
+	private ScheduledExecutorService scheduler;
+
+	private ScheduledFuture<?> idleEviction;
+
+	private long openCount = 0;
+
+	private long hitCount = 0;
+
+	private long evictionCount = 0;
+
+	/**
+	 * @param opener opens the databases that are not in the cache
+	 * @param maxOpen the maximum number of unused databases that are kept open,
+	 * 	0 closes every database as soon as it is released
+	 * @param idleTimeout the time in milliseconds after which an unused database
+	 * 	is closed, 0 disables the idle eviction
+	 */
+	public RrdDbCache(RrdDbOpener opener, int maxOpen, long idleTimeout) {
+		this.opener = opener;
+		this.maxOpen = maxOpen;
+		this.idleTimeout = idleTimeout;
+		scheduleIdleEviction();
+	}
+
+	/**
+	 * Changes the limits of the cache without closing the databases that are in use.
+	 * Unused databases above the new <code>maxOpen</code> are closed immediately.
+	 * 
+	 * @param maxOpen the maximum number of unused databases that are kept open
+	 * @param idleTimeout the time in milliseconds after which an unused database
+	 * 	is closed, 0 disables the idle eviction
+	 */
+	public synchronized void reconfigure(int maxOpen, long idleTimeout) {
+		this.maxOpen = maxOpen;
+		if(this.idleTimeout != idleTimeout) {
+			this.idleTimeout = idleTimeout;
+			if(idleEviction!=null) {
+				idleEviction.cancel(false);
+				idleEviction = null;
+			}
+			scheduleIdleEviction();
+		}
+		evictExcess();
+	}
+
+	/**
+	 * Closes all unused databases and all used databases as soon as they are released,
+	 * so that they are reopened by the {@link RrdDbOpener} on their next access.
+	 */
+	public synchronized void invalidate() {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<String, Entry> mapEntry = iterator.next();
+			if(mapEntry.getValue().refCount==0) {
+				iterator.remove();
+				closeDb(mapEntry.getKey(), mapEntry.getValue());
+			} else {
+				mapEntry.getValue().stale = true;
+			}
+		}
+	}
+
+	private void scheduleIdleEviction() {
+		if(idleTimeout <= 0 || closed) {
+			return;
+		}
+		if(scheduler==null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "openHAB rrd4j idle eviction");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		long period = Math.max(idleTimeout / 2, 1000L);
+		idleEviction = scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				evictIdle();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the open database with the given name and locks it for the calling
+	 * thread. Every successful call must be followed by a call to {@link #release(String)}.
+	 * 
+	 * @param name the name of the database
+	 * @param function the consolidation function to use, if the database must be created
+	 * @return the locked database or <code>null</code>, if it could not be opened
+	 */
+	public RrdDb acquire(String name, ConsolFun function) {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(name);
+			if(entry==null) {
+				entry = new Entry();
+				entries.put(name, entry);
+			}
+			entry.refCount++;
+		}
+		entry.lock.lock();
+		if(entry.db==null || entry.db.isClosed()) {
+			try {
+				entry.db = opener.open(name, function);
+			} catch (IOException e) {
+				logger.error("Could not open rrd4j database '{}': {}", name, e.getMessage());
+				entry.db = null;
+			}
+			if(entry.db==null) {
+				entry.lock.unlock();
+				synchronized(this) {
+					// a failed open must not occupy a slot of the cache
+					entry.refCount--;
+					if(entry.refCount==0 && entries.get(name)==entry) {
+						entries.remove(name);
+					}
+				}
+				return null;
+			}
+			synchronized(this) {
+				openCount++;
+			}
+		} else {
+			synchronized(this) {
+				hitCount++;
+			}
+		}
+		return entry.db;
+	}
+
+	/**
+	 * Unlocks a database that has been acquired by the calling thread. The database
+	 * stays open, unless the cache holds more than <code>maxOpen</code> databases.
+	 * 
+	 * @param name the name of the database
+	 */
+	public void release(String name) {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(name);
+		}
+		if(entry==null || !entry.lock.isHeldByCurrentThread()) {
+			throw new IllegalStateException("rrd4j database '" + name + "' has not been acquired by the current thread");
+		}
+		entry.lastAccess = System.currentTimeMillis();
+		entry.lock.unlock();
+		synchronized(this) {
+			entry.refCount--;
+			if(entry.stale && entry.refCount==0) {
+				entries.remove(name);
+				closeDb(name, entry);
+			}
+			evictExcess();
+		}
+	}
+
+	/**
+	 * Closes all unused databases and all used databases as soon as they are released.
+	 * The cache can still be used afterwards, but does not keep any database open.
+	 */
+	public synchronized void close() {
+		closed = true;
+		if(idleEviction!=null) {
+			idleEviction.cancel(false);
+			idleEviction = null;
+		}
+		if(scheduler!=null) {
+			scheduler.shutdown();
+		}
+		evictExcess();
+	}
+
+	/**
+	 * Closes the least recently used databases until at most <code>maxOpen</code>
+	 * are open. Databases that are currently in use are never closed.
+	 */
+	private void evictExcess() {
+		int limit = closed ? 0 : Math.max(maxOpen, 0);
+		if(entries.size() <= limit) {
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while(entries.size() > limit && iterator.hasNext()) {
+			Map.Entry<String, Entry> mapEntry = iterator.next();
+			if(mapEntry.getValue().refCount==0) {
+				iterator.remove();
+				closeDb(mapEntry.getKey(), mapEntry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Closes all unused databases that have not been accessed within <code>idleTimeout</code>.
+	 */
+	protected synchronized void evictIdle() {
+		long threshold = System.currentTimeMillis() - idleTimeout;
+		List<String> idleNames = new ArrayList<String>();
+		for(Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+			if(entry.refCount==0 && entry.lastAccess <= threshold) {
+				idleNames.add(mapEntry.getKey());
+			}
+		}
+		for(String name : idleNames) {
+			closeDb(name, entries.remove(name));
+		}
+		if(!idleNames.isEmpty()) {
+			logger.debug("Closed {} idle rrd4j databases", idleNames.size());
+		}
+	}
+
+	private void closeDb(String name, Entry entry) {
+		evictionCount++;
+		if(entry.db!=null && !entry.db.isClosed()) {
+			try {
+				entry.db.close();
+			} catch (IOException e) {
+				logger.debug("Error closing rrd4j database '{}': {}", name, e.getMessage());
+			}
+		}
+		entry.db = null;
+	}
+
+	public synchronized int getOpenCount() {
+		return entries.size();
+	}
+
+	public synchronized long getOpenedCount() {
+		return openCount;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlHistoricItemIterableTest {
+
+	@Test
+	public void testLatestStateQuery() {
+		FilterCriteria filter = new FilterCriteria().setItemName("Temperature").setPageSize(1);
+
+		assertEquals("SELECT Time, Value FROM Item1 ORDER BY Time DESC LIMIT 1", createIterable(filter).buildQuery(null, 0, 1));
+	}
+
+	@Test
+	public void testAllConstraintsAreTranslated() throws SQLException {
+		Date begin = new Date(1000000L);
+		Date end = new Date(2000000L);
+		FilterCriteria filter = new FilterCriteria().setItemName("Temperature")
+				.setBeginDate(begin).setEndDate(end)
+				.setOperator(Operator.GTE).setState(new DecimalType("21.5"))
+				.setOrdering(Ordering.ASCENDING)
+				.setPageNumber(2).setPageSize(10);
+		SqlHistoricItemIterable iterable = createIterable(filter);
+
+		assertEquals("SELECT Time, Value FROM Item1 WHERE Time > ? AND Time < ? AND Value >= ? ORDER BY Time ASC LIMIT 10 OFFSET 20", 
+				iterable.buildQuery(null, 20, 10));
+
+		List<Object> parameters = new ArrayList<Object>();
+		iterable.setParameters(createStatement(parameters), null);
+		assertEquals(3, parameters.size());
+		assertEquals(new Timestamp(begin.getTime()), parameters.get(0));
+		assertEquals(new Timestamp(end.getTime()), parameters.get(1));
+		assertEquals(new BigDecimal("21.5"), parameters.get(2));
+	}
+
+	@Test
+	public void testFollowingChunksContinueAfterLastTimestamp() throws SQLException {
+		Date last = new Date(3000000L);
+		FilterCriteria filter = new FilterCriteria().setItemName("Temperature").setOperator(Operator.NEQ).setState(new DecimalType(0));
+		SqlHistoricItemIterable iterable = createIterable(filter);
+
+		assertEquals("SELECT Time, Value FROM Item1 WHERE Value <> ? AND Time < ? ORDER BY Time DESC LIMIT 1000", 
+				iterable.buildQuery(last, 0, SqlHistoricItemIterable.CHUNK_SIZE));
+
+		List<Object> parameters = new ArrayList<Object>();
+		iterable.setParameters(createStatement(parameters), last);
+		assertEquals(2, parameters.size());
+		assertEquals(new Timestamp(last.getTime()), parameters.get(1));
+	}
+
+	private SqlHistoricItemIterable createIterable(FilterCriteria filter) {
+		return new SqlHistoricItemIterable(null, "Item1", filter, new AtomicInteger());
+	}
+
+	/**
+	 * Creates a prepared statement that only records the parameters that are set.
+	 */
+	private PreparedStatement createStatement(final List<Object> parameters) {
+		return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), 
+				new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().startsWith("set") && args.length == 2) {
+					assertEquals(parameters.size() + 1, args[0]);
+					parameters.add(args[1]);
+				}
+				return null;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
+import org.openhab.persistence.sql.internal.SqlWriteQueue.BatchWriter;
+import org.openhab.persistence.sql.internal.SqlWriteQueue.PendingWrite;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlWriteQueueTest {
+
+	private static final int ITEMS = 100;
+
+	private static final int UPDATES = 20000;
+
+	/** the simulated round trip time of a JDBC batch in milliseconds */
+	private static final long ROUND_TRIP = 2;
+
+	private SqlWriteQueue queue;
+
+	@After
+	public void tearDown() {
+		if (queue!=null) {
+			queue.close(5000);
+		}
+	}
+
+	@Test
+	public void testStatesAreWrittenInBatches() {
+		RecordingWriter writer = new RecordingWriter(0);
+		queue = new SqlWriteQueue(writer, 1000, 10, 200);
+		NumberItem item = new NumberItem("Number");
+		for (int i = 0; i < 25; i++) {
+			item.setState(new DecimalType(i));
+			assertTrue(queue.enqueue(item));
+		}
+		queue.close(5000);
+
+		assertEquals(25, writer.values.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals(new DecimalType(i).toString(), writer.values.get(i));
+		}
+		for (int batchSize : writer.batchSizes) {
+			assertTrue(batchSize <= 10);
+		}
+		assertEquals(3, queue.getBatchCount());
+		assertEquals(25, queue.getWrittenCount());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testStatesAreTimestampedWhenEnqueued() throws InterruptedException {
+		RecordingWriter writer = new RecordingWriter(0);
+		queue = new SqlWriteQueue(writer, 1000, 100, 500);
+		NumberItem item = new NumberItem("Number");
+		item.setState(new DecimalType(1));
+		Date before = new Date();
+		queue.enqueue(item);
+		Date after = new Date();
+		Thread.sleep(100);
+		queue.close(5000);
+
+		Date timestamp = writer.timestamps.get(0);
+		assertFalse(timestamp.before(before));
+		assertFalse(timestamp.after(after));
+	}
+
+	@Test
+	public void testStatesAreDroppedIfQueueIsFull() throws InterruptedException {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingWriter writer = new RecordingWriter(0) {
+			@Override
+			public int write(List<PendingWrite> batch) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.write(batch);
+			}
+		};
+		queue = new SqlWriteQueue(writer, 5, 1, 0);
+		NumberItem item = new NumberItem("Number");
+		item.setState(new DecimalType(1));
+		assertTrue(queue.enqueue(item));
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+		// the writer is blocked, so exactly the capacity of the queue is accepted
+		int accepted = 0;
+		for (int i = 0; i < 20; i++) {
+			if (queue.enqueue(item)) {
+				accepted++;
+			}
+		}
+		assertEquals(5, accepted);
+		assertEquals(15, queue.getDroppedCount());
+
+		release.countDown();
+		queue.close(5000);
+		assertEquals(6, writer.values.size());
+		assertEquals(6, queue.getWrittenCount());
+	}
+
+	@Test
+	public void testFailedBatchesAreCounted() {
+		RecordingWriter writer = new RecordingWriter(0) {
+			@Override
+			public int write(List<PendingWrite> batch) {
+				if (batch.get(0).getValue().equals("0")) {
+					// e.g. there is no connection to the database
+					return 0;
+				}
+				throw new IllegalStateException("table is missing");
+			}
+		};
+		queue = new SqlWriteQueue(writer, 1000, 1, 0);
+		NumberItem item = new NumberItem("Number");
+		for (int i = 0; i < 2; i++) {
+			item.setState(new DecimalType(i));
+			queue.enqueue(item);
+		}
+		queue.close(5000);
+
+		assertEquals(2, queue.getBatchCount());
+		assertEquals(2, queue.getFailedCount());
+		assertEquals(0, queue.getWrittenCount());
+	}
+
+	/**
+	 * Changes the states of {@value #ITEMS} items {@value #UPDATES} times, with every 
+	 * state written through the write queue, and checks that all states are written 
+	 * in order and grouped into batches.
+	 */
+	@Test
+	public void testLoad() {
+		RecordingWriter writer = new RecordingWriter(ROUND_TRIP);
+		queue = new SqlWriteQueue(writer, UPDATES, 100, 1000);
+		List<NumberItem> items = new ArrayList<NumberItem>();
+		for (int i = 0; i < ITEMS; i++) {
+			NumberItem item = new NumberItem("Number" + i);
+			item.addStateChangeListener(new StateChangeListener() {
+				public void stateChanged(Item item, State oldState, State newState) {
+				}
+				public void stateUpdated(Item item, State state) {
+					queue.enqueue(item);
+				}
+			});
+			items.add(item);
+		}
+		for (int i = 0; i < UPDATES; i++) {
+			items.get(i % ITEMS).setState(new DecimalType(i));
+		}
+		queue.close(60000);
+
+		assertEquals(0, queue.getDroppedCount());
+		assertEquals(UPDATES, writer.values.size());
+		for (int i = 0; i < UPDATES; i++) {
+			assertEquals(new DecimalType(i).toString(), writer.values.get(i));
+		}
+		for (int batchSize : writer.batchSizes) {
+			assertTrue(batchSize <= 100);
+		}
+		assertTrue(queue.getBatchCount() >= UPDATES / 100);
+		assertTrue(queue.getBatchCount() < UPDATES);
+	}
+
+	/**
+	 * Records the written states and simulates the round trip to the database. 
+	 */
+	private static class RecordingWriter implements BatchWriter {
+
+		private final long roundTrip;
+
+		final List<String> values = Collections.synchronizedList(new ArrayList<String>());
+		final List<Date> timestamps = Collections.synchronizedList(new ArrayList<Date>());
+		final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		public RecordingWriter(long roundTrip) {
+			this.roundTrip = roundTrip;
+		}
+
+		public int write(List<PendingWrite> batch) {
+			try {
+				Thread.sleep(roundTrip);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (PendingWrite write : batch) {
+				values.add(write.getValue());
+				timestamps.add(write.getTimestamp());
+			}
+			batchSizes.add(batch.size());
+			return batch.size();
+		}
+	}
+
+}
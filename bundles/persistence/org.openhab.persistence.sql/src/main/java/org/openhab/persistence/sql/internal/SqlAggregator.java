@@ -0,0 +1,323 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.AggregatingPersistenceService.Aggregation;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the states of an item with the aggregate functions of the database,
+ * so that only the aggregated results are transferred over JDBC.
+ * 
+ * <p>Aggregations that interpret the values as numbers are only supported for tables
+ * with a numeric value column, see {@link #supports(Aggregation)}. The bucket query
+ * relies on <code>UNIX_TIMESTAMP()</code>, which is MySQL specific like the rest of 
+ * the SQL persistence service; if the database rejects it, the buckets have to be
+ * aggregated in memory.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlAggregator {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlAggregator.class);
+
+	private final SqlConnectionPool pool;
+	private final String tableName;
+	private final String itemName;
+	private final boolean numeric;
+	private final AtomicInteger errorCounter;
+
+	/**
+	 * @param pool the pool to borrow connections from
+	 * @param tableName the table that contains the states of the item
+	 * @param itemName the name of the item
+	 * @param numeric <code>true</code>, if the value column of the table is numeric
+	 * @param errorCounter the error counter of the service, which is increased on
+	 * 	every failed and reset on every successful query
+	 */
+	public SqlAggregator(SqlConnectionPool pool, String tableName, String itemName, boolean numeric, AtomicInteger errorCounter) {
+		this.pool = pool;
+		this.tableName = tableName;
+		this.itemName = itemName;
+		this.numeric = numeric;
+		this.errorCounter = errorCounter;
+	}
+
+	/**
+	 * MIN, MAX, SUM, AVG, FIRST and LAST read the values as numbers, so they can only 
+	 * be computed by the database if the value column is numeric. COUNT and CHANGED 
+	 * are supported for all tables.
+	 * 
+	 * @return <code>true</code>, if the aggregation can be computed by the database
+	 */
+	public boolean supports(Aggregation aggregation) {
+		return numeric || aggregation == Aggregation.COUNT || aggregation == Aggregation.CHANGED;
+	}
+
+	/**
+	 * Aggregates all states within the given range.
+	 * 
+	 * @throws IllegalArgumentException if the aggregation is not {@link #supports(Aggregation) supported}
+	 * @see org.openhab.core.persistence.AggregatingPersistenceService#aggregate(String, Aggregation, Date, Date)
+	 */
+	public HistoricItem aggregate(Aggregation aggregation, Date beginDate, Date endDate) {
+		if (!supports(aggregation)) {
+			throw new IllegalArgumentException("Aggregation " + aggregation + " is not supported for the non-numeric table " + tableName);
+		}
+		Date timestamp = endDate==null ? new Date() : endDate;
+		Connection connection = null;
+		boolean broken = false;
+		try {
+			connection = pool.getConnection();
+			HistoricItem result;
+			switch (aggregation) {
+				case AVG :
+				case SUM :
+				case COUNT :
+				case DECIMAL_COUNT :
+					result = queryValue(connection, aggregation, beginDate, endDate, timestamp);
+					break;
+				case CHANGED :
+					result = queryChanged(connection, beginDate, endDate, timestamp);
+					break;
+				default :
+					result = querySingleRow(connection, aggregation, beginDate, endDate);
+			}
+			// Success
+			errorCounter.set(0);
+			return result;
+		} catch (SQLException e) {
+			errorCounter.incrementAndGet();
+			broken = true;
+			logger.error("SQL: Error running aggregation {} for item '{}': {}", new Object[] { aggregation, itemName, e.getMessage() });
+			return null;
+		} finally {
+			if (connection != null) {
+				pool.release(connection, broken);
+			}
+		}
+	}
+
+	/**
+	 * Aggregates the states within consecutive buckets of the given range.
+	 * 
+	 * @return the results in ascending order or <code>null</code>, if the aggregation
+	 * 	cannot be computed by the database (FIRST, LAST, CHANGED, all numeric aggregations
+	 * 	of non-numeric tables and all aggregations of databases without <code>UNIX_TIMESTAMP()</code>)
+	 * @see org.openhab.core.persistence.AggregatingPersistenceService#aggregate(String, Aggregation, Date, Date, long)
+	 */
+	public List<HistoricItem> aggregate(Aggregation aggregation, Date beginDate, Date endDate, long bucketSize) {
+		if (bucketSize <= 0) {
+			throw new IllegalArgumentException("The bucket size must be positive");
+		}
+		String function = getFunction(aggregation);
+		if (function == null || !supports(aggregation)) {
+			return null;
+		}
+		List<HistoricItem> results = new ArrayList<HistoricItem>();
+		Connection connection = null;
+		boolean broken = false;
+		try {
+			connection = pool.getConnection();
+			PreparedStatement statement = connection.prepareStatement(buildBucketQuery(function, endDate!=null));
+			try {
+				statement.setDouble(1, beginDate.getTime() / 1000.0d);
+				statement.setDouble(2, bucketSize / 1000.0d);
+				setRange(statement, 3, beginDate, endDate);
+				ResultSet rs = statement.executeQuery();
+				while (rs.next()) {
+					Date bucketStart = new Date(beginDate.getTime() + rs.getLong(1) * bucketSize);
+					results.add(new SqlItem(itemName, getValue(rs, 2, aggregation), bucketStart));
+				}
+				rs.close();
+			} finally {
+				statement.close();
+			}
+			// Success
+			errorCounter.set(0);
+		} catch (SQLException e) {
+			// most likely, the database does not know UNIX_TIMESTAMP(), so the caller aggregates in memory
+			broken = true;
+			logger.warn("SQL: Could not aggregate the buckets of item '{}' in the database, falling back to aggregating them in memory: {}", 
+					itemName, e.getMessage());
+			return null;
+		} finally {
+			if (connection != null) {
+				pool.release(connection, broken);
+			}
+		}
+		return results;
+	}
+
+	private HistoricItem queryValue(Connection connection, Aggregation aggregation, Date beginDate, Date endDate, Date timestamp) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT " + getFunction(aggregation) + " FROM " + tableName + buildRange(endDate!=null));
+		try {
+			setRange(statement, 1, beginDate, endDate);
+			ResultSet rs = statement.executeQuery();
+			HistoricItem result = null;
+			if (rs.next()) {
+				State value = getValue(rs, 1, aggregation);
+				if (value != null) {
+					result = new SqlItem(itemName, value, timestamp);
+				}
+			}
+			rs.close();
+			return result;
+		} finally {
+			statement.close();
+		}
+	}
+
+	private HistoricItem querySingleRow(Connection connection, Aggregation aggregation, Date beginDate, Date endDate) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(buildSingleRowQuery(aggregation, endDate!=null));
+		try {
+			setRange(statement, 1, beginDate, endDate);
+			ResultSet rs = statement.executeQuery();
+			HistoricItem result = null;
+			if (rs.next()) {
+				result = new SqlItem(itemName, new DecimalType(rs.getDouble(2)), rs.getTimestamp(1));
+			}
+			rs.close();
+			return result;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * The state has changed, if there are different values within the range or if
+	 * the values within the range differ from the last value before the range.
+	 */
+	private HistoricItem queryChanged(Connection connection, Date beginDate, Date endDate, Date timestamp) throws SQLException {
+		String minimum = null;
+		String maximum = null;
+		PreparedStatement statement = connection.prepareStatement(
+				"SELECT MIN(Value), MAX(Value) FROM " + tableName + buildRange(endDate!=null));
+		try {
+			setRange(statement, 1, beginDate, endDate);
+			ResultSet rs = statement.executeQuery();
+			if (rs.next()) {
+				minimum = rs.getString(1);
+				maximum = rs.getString(2);
+			}
+			rs.close();
+		} finally {
+			statement.close();
+		}
+
+		boolean changed = false;
+		if (minimum != null) {
+			changed = !minimum.equals(maximum);
+			if (!changed) {
+				statement = connection.prepareStatement(
+						"SELECT Value FROM " + tableName + " WHERE Time <= ? ORDER BY Time DESC LIMIT 1");
+				try {
+					statement.setTimestamp(1, new Timestamp(beginDate.getTime()));
+					ResultSet rs = statement.executeQuery();
+					if (rs.next()) {
+						changed = !minimum.equals(rs.getString(1));
+					}
+					rs.close();
+				} finally {
+					statement.close();
+				}
+			}
+		}
+		return new SqlItem(itemName, changed ? OnOffType.ON : OnOffType.OFF, timestamp);
+	}
+
+	protected String buildSingleRowQuery(Aggregation aggregation, boolean hasEndDate) {
+		String ordering;
+		switch (aggregation) {
+			case MIN : ordering = "Value ASC, Time ASC"; break;
+			case MAX : ordering = "Value DESC, Time ASC"; break;
+			case FIRST : ordering = "Time ASC"; break;
+			case LAST : ordering = "Time DESC"; break;
+			default : throw new IllegalArgumentException("Aggregation " + aggregation + " does not select a single row");
+		}
+		return "SELECT Time, Value FROM " + tableName + buildRange(hasEndDate) + " ORDER BY " + ordering + " LIMIT 1";
+	}
+
+	protected String buildBucketQuery(String function, boolean hasEndDate) {
+		return "SELECT FLOOR((UNIX_TIMESTAMP(Time) - ?) / ?) AS Bucket, " + function + " FROM " + tableName 
+				+ buildRange(hasEndDate) + " GROUP BY Bucket ORDER BY Bucket";
+	}
+
+	private String buildRange(boolean hasEndDate) {
+		return hasEndDate ? " WHERE Time > ? AND Time < ?" : " WHERE Time > ?";
+	}
+
+	private void setRange(PreparedStatement statement, int index, Date beginDate, Date endDate) throws SQLException {
+		statement.setTimestamp(index, new Timestamp(beginDate.getTime()));
+		if (endDate != null) {
+			statement.setTimestamp(index + 1, new Timestamp(endDate.getTime()));
+		}
+	}
+
+	/**
+	 * @return the SQL aggregate function or <code>null</code>, if there is none
+	 */
+	protected static String getFunction(Aggregation aggregation) {
+		switch (aggregation) {
+			case AVG : return "AVG(Value)";
+			case SUM : return "SUM(Value)";
+			case COUNT : return "COUNT(*)";
+			case DECIMAL_COUNT : return "COUNT(Value)";
+			case MIN : return "MIN(Value)";
+			case MAX : return "MAX(Value)";
+			default : return null;
+		}
+	}
+
+	private State getValue(ResultSet rs, int column, Aggregation aggregation) throws SQLException {
+		if (aggregation == Aggregation.COUNT || aggregation == Aggregation.DECIMAL_COUNT) {
+			return new DecimalType(rs.getLong(column));
+		}
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : new DecimalType(value);
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.LinkedList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal pool of JDBC connections. JDBC connections must not be used by
+ * several threads at the same time, so the write-behind queue and concurrent
+ * queries each borrow their own connection from this pool instead of sharing
+ * a single one.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlConnectionPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlConnectionPool.class);
+
+	/** the maximum time in milliseconds to wait for a free connection */
+	private static final long BORROW_TIMEOUT = 30000L;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int maxSize;
+
+	private final LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+
+	private int size = 0;
+
+	private boolean closed = false;
+
+	public SqlConnectionPool(String url, String user, String password, int maxSize) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = Math.max(maxSize, 1);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if all existing
+	 * connections are in use and the pool is not exhausted yet. Every borrowed
+	 * connection must be returned by {@link #release(Connection, boolean)}.
+	 * 
+	 * @return an open connection
+	 * @throws SQLException if no connection could be opened or the pool has been closed
+	 */
+	public Connection getConnection() throws SQLException {
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + BORROW_TIMEOUT;
+			while (!closed && idleConnections.isEmpty() && size >= maxSize) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new SQLException("No free connection to " + url + " within " + BORROW_TIMEOUT + "ms");
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a connection to " + url);
+				}
+			}
+			if (closed) {
+				throw new SQLException("The connection pool for " + url + " has been closed");
+			}
+			if (!idleConnections.isEmpty()) {
+				return idleConnections.removeFirst();
+			}
+			// reserve the slot before opening the connection outside of the monitor
+			size++;
+		}
+		try {
+			Connection connection = DriverManager.getConnection(url, user, password);
+			logger.debug("SQL: Opened connection to database " + url);
+			return connection;
+		} catch (SQLException e) {
+			synchronized (this) {
+				size--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool.
+	 * 
+	 * @param connection the connection to return
+	 * @param broken <code>true</code>, if an error occurred on the connection,
+	 * 	which is then closed instead of being reused
+	 */
+	public void release(Connection connection, boolean broken) {
+		boolean close = broken;
+		synchronized (this) {
+			if (!broken && !closed) {
+				idleConnections.addFirst(connection);
+			} else {
+				size--;
+				close = true;
+			}
+			notifyAll();
+		}
+		if (close) {
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are still in use are closed
+	 * as soon as they are returned.
+	 */
+	public void close() {
+		LinkedList<Connection> connections;
+		synchronized (this) {
+			closed = true;
+			connections = new LinkedList<Connection>(idleConnections);
+			size -= idleConnections.size();
+			idleConnections.clear();
+			notifyAll();
+		}
+		for (Connection connection : connections) {
+			closeQuietly(connection);
+		}
+		logger.debug("SQL: Disconnected from database " + url);
+	}
+
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public synchronized int getIdleCount() {
+		return idleConnections.size();
+	}
+
+	private void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			logger.debug("SQL: Failed closing a connection to the SQL database: {}", e.getMessage());
+		}
+	}
+
+}
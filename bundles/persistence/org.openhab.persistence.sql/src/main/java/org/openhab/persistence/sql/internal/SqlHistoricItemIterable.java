@@ -0,0 +1,258 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The result of a query to the SQL persistence service. All constraints of the
+ * {@link FilterCriteria} are translated into the <code>WHERE</code>, 
+ * <code>ORDER BY</code> and <code>LIMIT</code> clauses of the SQL query, so only
+ * the requested rows are transferred from the database.
+ * 
+ * <p>The rows are fetched lazily in chunks of at most {@value #CHUNK_SIZE} rows
+ * while iterating. Every chunk continues after the timestamp of the last row of 
+ * the previous chunk (which is the primary key of the table) and borrows a 
+ * connection from the pool only while it is fetched, so an iteration that is 
+ * not completed does not hold any database resources.</p>
+ * 
+ * <p>Note that every call of {@link #iterator()} queries the database again.</p>
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlHistoricItemIterable implements Iterable<HistoricItem> {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlHistoricItemIterable.class);
+
+	/** the maximum number of rows fetched with a single query */
+	protected static final int CHUNK_SIZE = 1000;
+
+	private final SqlConnectionPool pool;
+	private final String tableName;
+	private final FilterCriteria filter;
+	private final AtomicInteger errorCounter;
+
+	/**
+	 * @param pool the pool to borrow connections from
+	 * @param tableName the table that contains the states of the item
+	 * @param filter the filter to translate into SQL
+	 * @param errorCounter the error counter of the service, which is increased on
+	 * 	every failed and reset on every successful query
+	 */
+	public SqlHistoricItemIterable(SqlConnectionPool pool, String tableName, FilterCriteria filter, AtomicInteger errorCounter) {
+		this.pool = pool;
+		this.tableName = tableName;
+		this.filter = filter;
+		this.errorCounter = errorCounter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Iterator<HistoricItem> iterator() {
+		return new ChunkIterator();
+	}
+
+	/**
+	 * Builds the SQL query for the next chunk of rows.
+	 * 
+	 * @param after the timestamp of the last row of the previous chunk or
+	 * 	<code>null</code> for the first chunk
+	 * @param offset the number of rows to skip
+	 * @param limit the maximum number of rows to return
+	 * @return the query with placeholders for the parameters added by 
+	 * 	{@link #setParameters(PreparedStatement, Date)}
+	 */
+	protected String buildQuery(Date after, long offset, int limit) {
+		boolean ascending = filter.getOrdering()==Ordering.ASCENDING;
+		List<String> conditions = new ArrayList<String>();
+		if (filter.getBeginDate()!=null) {
+			conditions.add("Time > ?");
+		}
+		if (filter.getEndDate()!=null) {
+			conditions.add("Time < ?");
+		}
+		if (filter.getState()!=null && filter.getOperator()!=null) {
+			conditions.add("Value " + getSymbol(filter.getOperator()) + " ?");
+		}
+		if (after!=null) {
+			conditions.add(ascending ? "Time > ?" : "Time < ?");
+		}
+
+		StringBuilder query = new StringBuilder("SELECT Time, Value FROM ").append(tableName);
+		for (int i = 0; i < conditions.size(); i++) {
+			query.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+		}
+		query.append(" ORDER BY Time ").append(ascending ? "ASC" : "DESC");
+		query.append(" LIMIT ").append(limit);
+		if (offset > 0) {
+			query.append(" OFFSET ").append(offset);
+		}
+		return query.toString();
+	}
+
+	/**
+	 * Sets the parameters of a query built by {@link #buildQuery(Date, long, int)}.
+	 */
+	protected void setParameters(PreparedStatement statement, Date after) throws SQLException {
+		int index = 1;
+		if (filter.getBeginDate()!=null) {
+			statement.setTimestamp(index++, new Timestamp(filter.getBeginDate().getTime()));
+		}
+		if (filter.getEndDate()!=null) {
+			statement.setTimestamp(index++, new Timestamp(filter.getEndDate().getTime()));
+		}
+		if (filter.getState()!=null && filter.getOperator()!=null) {
+			State state = filter.getState();
+			if (state instanceof DecimalType) {
+				statement.setBigDecimal(index++, ((DecimalType) state).toBigDecimal());
+			} else {
+				statement.setString(index++, state.toString());
+			}
+		}
+		if (after!=null) {
+			statement.setTimestamp(index++, new Timestamp(after.getTime()));
+		}
+	}
+
+	private static String getSymbol(Operator operator) {
+		switch (operator) {
+			case NEQ : return "<>";
+			case GT : return ">";
+			case LT : return "<";
+			case GTE : return ">=";
+			case LTE : return "<=";
+			default : return "=";
+		}
+	}
+
+	/**
+	 * Iterates over the rows of the query result, fetching the next chunk when
+	 * the current one is exhausted.
+	 */
+	private class ChunkIterator implements Iterator<HistoricItem> {
+
+		private final LinkedList<HistoricItem> chunk = new LinkedList<HistoricItem>();
+
+		/** the number of rows that may still be fetched according to the page size */
+		private long remaining = filter.getPageSize();
+
+		private Date lastTimestamp = null;
+
+		private boolean exhausted = false;
+
+		public boolean hasNext() {
+			if (chunk.isEmpty() && !exhausted) {
+				fetchChunk();
+			}
+			return !chunk.isEmpty();
+		}
+
+		public HistoricItem next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return chunk.removeFirst();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void fetchChunk() {
+			int limit = (int) Math.min(remaining, CHUNK_SIZE);
+			if (limit <= 0) {
+				exhausted = true;
+				return;
+			}
+			long offset = lastTimestamp==null ? (long) filter.getPageNumber() * filter.getPageSize() : 0;
+			String query = buildQuery(lastTimestamp, offset, limit);
+
+			Connection connection = null;
+			boolean broken = false;
+			try {
+				long timerStart = System.currentTimeMillis();
+				connection = pool.getConnection();
+				PreparedStatement statement = connection.prepareStatement(query);
+				try {
+					setParameters(statement, lastTimestamp);
+					ResultSet rs = statement.executeQuery();
+					while (rs.next()) {
+						//TODO: Make this type specific ???
+						State state = new DecimalType(rs.getDouble(2));
+						lastTimestamp = rs.getTimestamp(1);
+						chunk.add(new SqlItem(filter.getItemName(), state, lastTimestamp));
+					}
+					rs.close();
+				} finally {
+					statement.close();
+				}
+				logger.debug("SQL: query '{}' returned {} rows in {}ms", 
+						new Object[] { query, chunk.size(), System.currentTimeMillis() - timerStart });
+
+				// Success
+				errorCounter.set(0);
+			} catch (SQLException e) {
+				errorCounter.incrementAndGet();
+				broken = true;
+				logger.error("SQL: Error running querying : " + e.getMessage());
+			} finally {
+				if (connection != null) {
+					pool.release(connection, broken);
+				}
+			}
+			remaining -= chunk.size();
+			if (chunk.size() < limit) {
+				exhausted = true;
+			}
+		}
+	}
+
+}
@@ -28,33 +28,47 @@
  */
 package org.openhab.persistence.sql.internal;
 
-import java.text.SimpleDateFormat;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.HistoricItemAggregator;
+import org.openhab.core.persistence.PersistenceEntry;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
-import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.service.StatisticsProvider;
 import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+import org.openhab.persistence.sql.internal.SqlWriteQueue.PendingWrite;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
@@ -63,17 +77,36 @@ import org.slf4j.LoggerFactory;
 /**
  * This is the implementation of the SQL {@link PersistenceService}.
  * 
+ * States are not written on the thread that stores them, but queued in a
+ * {@link SqlWriteQueue} and written in batches of prepared statements over
+ * connections of a {@link SqlConnectionPool}.
+ * 
  * @author Henrik Sjöstrand
  * @author Thomas.Eichstaedt-Engelen
  * @author Chris Jackson
  * @since 1.1.0
  */
-public class SqlPersistenceService implements QueryablePersistenceService, ManagedService {
+public class SqlPersistenceService implements AggregatingPersistenceService, BatchPersistenceService, BulkQueryablePersistenceService, ManagedService, StatisticsProvider {
 
 	private static final Pattern EXTRACT_CONFIG_PATTERN = Pattern.compile("^(.*?)\\.([0-9.a-zA-Z]+)$");
 
+	/** the column types whose values can be aggregated as numbers by the database */
+	private static final Pattern NUMERIC_TYPE_PATTERN = Pattern.compile(
+			"^(DOUBLE|FLOAT|REAL|DECIMAL|NUMERIC|INT|INTEGER|TINYINT|SMALLINT|MEDIUMINT|BIGINT)\\b.*", Pattern.CASE_INSENSITIVE);
+
 	private static final Logger logger = LoggerFactory.getLogger(SqlPersistenceService.class);
 
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private static final int DEFAULT_FLUSH_INTERVAL = 1000;
+	private static final int DEFAULT_QUEUE_SIZE = 10000;
+	private static final int DEFAULT_CONNECTIONS = 2;
+
+	/** the maximum number of item tables whose latest rows are selected with a single statement */
+	private static final int LATEST_CHUNK_SIZE = 100;
+
+	/** the maximum time in milliseconds to wait for queued states to be written on shutdown */
+	private static final long SHUTDOWN_TIMEOUT = 10000L;
+
 	private String driverClass;
 	private String url;
 	private String user;
@@ -82,13 +115,20 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 	private boolean initialized = false;
 	protected ItemRegistry itemRegistry;
 	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int connections = DEFAULT_CONNECTIONS;
+	
 	// Error counter - used to reconnect to database on error
-	private int errCnt;
+	private AtomicInteger errCnt = new AtomicInteger();
 	private int errReconnectThreshold = 0;
 
-	private Connection connection = null;
+	private SqlConnectionPool connectionPool = null;
+
+	private SqlWriteQueue writeQueue = null;
 
-	private Map<String, String> sqlTables = new HashMap<String, String>();
+	private Map<String, String> sqlTables = new ConcurrentHashMap<String, String>();
 	private Map<String, String> sqlTypes = new HashMap<String, String>();
 
 	public void activate() {
@@ -106,6 +146,7 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 
 	public void deactivate() {
 		logger.debug("SQL persistence bundle stopping. Disconnecting from database.");
+		stopWriteQueue();
 		disconnectFromDatabase();
 	}
 
@@ -124,7 +165,7 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 		return "sql";
 	}
 
-	private String getTable(Item item) {
+	private String getTable(Connection connection, Item item) {
 		Statement statement = null;
 		String sqlCmd = null;
 		int rowId = 0;
@@ -140,10 +181,12 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 		// Create a new entry in the Items table. This is the translation of
 		// item name to table
 		try {
-			sqlCmd = new String("INSERT INTO Items (ItemName) VALUES ('" + itemName + "')");
+			sqlCmd = new String("INSERT INTO Items (ItemName) VALUES (?)");
 
-			statement = connection.createStatement();
-			statement.executeUpdate(sqlCmd, Statement.RETURN_GENERATED_KEYS);
+			PreparedStatement insertStatement = connection.prepareStatement(sqlCmd, Statement.RETURN_GENERATED_KEYS);
+			statement = insertStatement;
+			insertStatement.setString(1, itemName);
+			insertStatement.executeUpdate();
 
 			ResultSet resultSet = statement.getGeneratedKeys();
 			if (resultSet != null && resultSet.next()) {
@@ -172,13 +215,7 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 		if (tableName == null)
 			return null;
 
-		// Default the type to double
-		String mysqlType = new String("DOUBLE");
-		String itemType = item.getClass().toString().toUpperCase();
-		itemType = itemType.substring(itemType.lastIndexOf('.')+1);
-		if(sqlTypes.get(itemType) != null) {
-			mysqlType = sqlTypes.get(itemType);
-		}
+		String mysqlType = getSqlType(item);
 
 		// We have a rowId, create the table for the data
 		sqlCmd = new String("CREATE TABLE " + tableName + " (Time DATETIME, Value " + mysqlType + ", PRIMARY KEY(Time));");
@@ -205,62 +242,190 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 		return tableName;
 	}
 
+	/**
+	 * @return the type of the value column of the table of the given item
+	 */
+	private String getSqlType(Item item) {
+		// Default the type to double
+		String mysqlType = new String("DOUBLE");
+		String itemType = item.getClass().toString().toUpperCase();
+		itemType = itemType.substring(itemType.lastIndexOf('.')+1);
+		if(sqlTypes.get(itemType) != null) {
+			mysqlType = sqlTypes.get(itemType);
+		}
+		return mysqlType;
+	}
+
 	/**
 	 * @{inheritDoc
 	 */
 	public void store(Item item, String alias) {
-		if (initialized) {
+		SqlWriteQueue queue = writeQueue;
+		if (initialized && queue != null) {
+			queue.enqueue(item);
+		}
+	}
 
-			if (!isConnected())
-				connectToDatabase();
+	/**
+	 * @{inheritDoc
+	 */
+	public void store(Item item) {
+		store(item, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The entries are written directly with their own state and timestamp, as they
+	 * are already handed over by a dispatcher thread. If the database cannot be 
+	 * reached, an {@link IllegalStateException} is thrown, so that the dispatcher
+	 * retries the batch later.
+	 */
+	public void storeAll(Collection<PersistenceEntry> entries) {
+		if (!initialized) {
+			return;
+		}
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(entries.size());
+		for (PersistenceEntry entry : entries) {
+			batch.add(new PendingWrite(entry.getItem(), entry.getState().toString(), entry.getTimestamp()));
+		}
+		try {
+			writeBatch(batch);
+		} catch (SQLException e) {
+			throw new IllegalStateException("SQL: Could not store " + batch.size() + " states in database: " + e.getMessage(), e);
+		}
+	}
 
-			if (isConnected()) {
+	/**
+	 * Writes a batch of states. Rows that are rejected by the database do not
+	 * affect the other rows of the batch.
+	 * 
+	 * @param batch the states to write
+	 * @return the number of states that have been written
+	 * @throws SQLException if there is no connection to the database or the batch
+	 * 	could not be written at all
+	 */
+	private int writeBatch(List<PendingWrite> batch) throws SQLException {
+		if (!isConnected())
+			connectToDatabase();
+
+		SqlConnectionPool pool = connectionPool;
+		if (pool == null) {
+			throw new SQLException("No connection to database, will retry connecting to database next time");
+		}
 
-				String tableName = getTable(item);
+		Connection connection = null;
+		boolean broken = false;
+		int written = 0;
+		try {
+			connection = pool.getConnection();
+
+			// group the states by table, so that each table gets a single batch
+			Map<String, List<PendingWrite>> writesByTable = new LinkedHashMap<String, List<PendingWrite>>();
+			for (PendingWrite write : batch) {
+				String tableName = getTable(connection, write.getItem());
 				if (tableName == null) {
-					logger.error("Unable to store item '{}'.", item.getName());
-					return;
+					logger.error("Unable to store item '{}'.", write.getItem().getName());
+					continue;
 				}
+				List<PendingWrite> writes = writesByTable.get(tableName);
+				if (writes == null) {
+					writes = new ArrayList<PendingWrite>();
+					writesByTable.put(tableName, writes);
+				}
+				writes.add(write);
+			}
 
-				String sqlCmd = null;
-				Statement statement = null;
-				try {
-					statement = connection.createStatement();
-					sqlCmd = new String("INSERT INTO " + tableName + " (TIME, VALUE) VALUES(NOW(),'" + item.getState().toString() + "');");
-					statement.executeUpdate(sqlCmd);
+			connection.setAutoCommit(false);
+			try {
+				for (Map.Entry<String, List<PendingWrite>> entry : writesByTable.entrySet()) {
+					written += insertBatch(connection, entry.getKey(), entry.getValue());
+				}
+			} finally {
+				connection.setAutoCommit(true);
+			}
+			logger.debug("SQL: Stored {} of {} states in {} tables", new Object[] { written, batch.size(), writesByTable.size() });
 
-					logger.debug("SQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", item.getName(),
-							item.getState().toString(), item.getState().toString(), (new java.util.Date()).toString());
-					logger.debug("SQL: {}", sqlCmd);
+			// Success
+			errCnt.set(0);
+		} catch (SQLException e) {
+			errCnt.incrementAndGet();
+			broken = true;
+			throw e;
+		} finally {
+			if (connection != null) {
+				pool.release(connection, broken);
+			}
+		}
+		return written;
+	}
 
-					// Success
-					errCnt = 0;
-				} catch (Exception e) {
-					errCnt++;
+	/**
+	 * Inserts the given states into a single table within one transaction.
+	 * Rows that are rejected by the database (e.g. because a state with the same
+	 * timestamp already exists) do not affect the other rows of the batch.
+	 * 
+	 * @return the number of inserted rows
+	 */
+	private int insertBatch(Connection connection, String tableName, List<PendingWrite> writes) throws SQLException {
+		String sqlCmd = "INSERT INTO " + tableName + " (TIME, VALUE) VALUES(?,?)";
+		PreparedStatement statement = connection.prepareStatement(sqlCmd);
+		try {
+			for (PendingWrite write : writes) {
+				statement.setTimestamp(1, new Timestamp(write.getTimestamp().getTime()));
+				statement.setString(2, write.getValue());
+				statement.addBatch();
+			}
+			int inserted = countUpdates(statement.executeBatch());
+			connection.commit();
+			return inserted;
+		} catch (BatchUpdateException e) {
+			int inserted = countUpdates(e.getUpdateCounts());
+			logger.warn("SQL: {} of {} states could not be stored in table '{}': {}", 
+					new Object[] { writes.size() - inserted, writes.size(), tableName, e.getMessage() });
+			connection.commit();
+			return inserted;
+		} finally {
+			statement.close();
+		}
+	}
 
-					logger.error("SQL: Could not store item '{}' in database with statement '{}': {}",
-							item.getName(), sqlCmd, e.getMessage());
-				} finally {
-					if (statement != null) {
-						try {
-							statement.close();
-						} catch (Exception hidden) {
-						}
-					}
+	private int countUpdates(int[] updateCounts) {
+		int count = 0;
+		if (updateCounts != null) {
+			for (int updateCount : updateCounts) {
+				if (updateCount >= 0 || updateCount == Statement.SUCCESS_NO_INFO) {
+					count++;
 				}
-			} else {
-				logger.warn(
-						"SQL: No connection to database. Can not persist item '{}'! Will retry connecting to database next time.",
-						item);
 			}
 		}
+		return count;
 	}
 
 	/**
-	 * @{inheritDoc
+	 * Starts a new write queue with the current configuration. States that are
+	 * still queued in a previous write queue are written first.
 	 */
-	public void store(Item item) {
-		store(item, null);
+	private void startWriteQueue() {
+		stopWriteQueue();
+		writeQueue = new SqlWriteQueue(new SqlWriteQueue.BatchWriter() {
+			public int write(List<PendingWrite> batch) {
+				try {
+					return writeBatch(batch);
+				} catch (SQLException e) {
+					logger.error("SQL: Could not store {} states in database: {}", batch.size(), e.getMessage());
+					return 0;
+				}
+			}
+		}, queueSize, batchSize, flushInterval);
+	}
+
+	private void stopWriteQueue() {
+		SqlWriteQueue queue = writeQueue;
+		if (queue != null) {
+			writeQueue = null;
+			queue.close(SHUTDOWN_TIMEOUT);
+		}
 	}
 
 	/**
@@ -268,26 +433,29 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 	 * 
 	 * @return true if connection has been established, false otherwise
 	 */
-	private boolean isConnected() {
+	private synchronized boolean isConnected() {
 		// Error check. If we have 'errReconnectThreshold' errors in a row, then reconnect to the database
-		if(errReconnectThreshold != 0 && errCnt > errReconnectThreshold) {
+		if(errReconnectThreshold != 0 && errCnt.get() > errReconnectThreshold) {
 			logger.debug("SQL: Error count exceeded " + errReconnectThreshold + ". Disconnecting database.");
 			disconnectFromDatabase();
 		}
-		return connection != null;
+		return connectionPool != null;
 	}
 
 	/**
 	 * Connects to the database
 	 */
-	private void connectToDatabase() {
+	private synchronized void connectToDatabase() {
+		SqlConnectionPool pool = null;
+		Connection connection = null;
 		try {
 			// Reset the error counter
-			errCnt = 0;
+			errCnt.set(0);
 			
 			logger.debug("SQL: Attempting to connect to database " + url);
 			Class.forName(driverClass).newInstance();
-			connection = DriverManager.getConnection(url, user, password);
+			pool = new SqlConnectionPool(url, user, password, connections);
+			connection = pool.getConnection();
 			logger.debug("SQL: Connected to database " + url);
 
 			Statement st = connection.createStatement();
@@ -312,24 +480,28 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 			}
 			rs.close();
 			st.close();
+
+			pool.release(connection, false);
+			connectionPool = pool;
 		} catch (Exception e) {
 			logger.error("SQL: Failed connecting to the SQL database using: driverClass=" + driverClass + ", url=" + url
 					+ ", user=" + user + ", password=" + password, e);
+			if (pool != null) {
+				if (connection != null) {
+					pool.release(connection, true);
+				}
+				pool.close();
+			}
 		}
 	}
 
 	/**
 	 * Disconnects from the database
 	 */
-	private void disconnectFromDatabase() {
-		if (isConnected()) {
-			try {
-				connection.close();
-				logger.debug("SQL: Disconnected from database " + url);
-			} catch (Exception e) {
-				logger.warn("SQL: Failed disconnecting from the SQL database", e);
-			}
-			connection = null;
+	private synchronized void disconnectFromDatabase() {
+		if (connectionPool != null) {
+			connectionPool.close();
+			connectionPool = null;
 		}
 	}
 
@@ -407,8 +579,16 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 				errReconnectThreshold = Integer.parseInt(errorThresholdString);
 			}
 
+			batchSize = parseInt(config, "batchsize", DEFAULT_BATCH_SIZE);
+			flushInterval = parseInt(config, "flushinterval", DEFAULT_FLUSH_INTERVAL);
+			queueSize = parseInt(config, "queuesize", DEFAULT_QUEUE_SIZE);
+			connections = parseInt(config, "connections", DEFAULT_CONNECTIONS);
+
+			// write all states that are still queued with the old configuration
+			stopWriteQueue();
 			disconnectFromDatabase();
 			connectToDatabase();
+			startWriteQueue();
 
 			// connection has been established ... initialization completed!
 			initialized = true;
@@ -416,6 +596,24 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 		
 	}
 
+	private int parseInt(Dictionary<String, ?> config, String key, int defaultValue) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("sql:" + key, "The value of sql:" + key + " must be a number");
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 * 
+	 * The filter is translated into a SQL query, whose result is fetched lazily
+	 * while iterating over the returned {@link SqlHistoricItemIterable}.
+	 */
 	@Override
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
 		if (initialized) {
@@ -423,8 +621,8 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 				connectToDatabase();
 			}
 
-			SimpleDateFormat mysqlDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-			if (isConnected()) {
+			SqlConnectionPool pool = connectionPool;
+			if (pool != null) {
 				String itemName = filter.getItemName();
 
 				String table= sqlTables.get(itemName);
@@ -433,80 +631,226 @@ public class SqlPersistenceService implements QueryablePersistenceService, Manag
 					return Collections.emptyList();
 				}
 
-				String filterString = new String();
+				return new SqlHistoricItemIterable(pool, table, filter, errCnt);
+			}
+		}
+		return Collections.emptyList();
+	}
 
-				if (filter.getBeginDate()!=null) {
-					if(filterString.isEmpty())
-						filterString += " WHERE";
-					else
-						filterString += " AND";
-					filterString += " TIME>'" + mysqlDateFormat.format(filter.getBeginDate()) + "'";
-				}
-				if (filter.getEndDate()!=null) {
-					if(filterString.isEmpty())
-						filterString += " WHERE";
-					else
-						filterString += " AND";
-					filterString += " TIME<'" + mysqlDateFormat.format(filter.getEndDate().getTime()) + "'";
-				}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The most recent rows of up to 100 item tables are selected with a single
+	 * UNION statement.
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		Map<String, HistoricItem> results = new HashMap<String, HistoricItem>();
+		if (!initialized) {
+			return results;
+		}
+		if (!isConnected()) {
+			connectToDatabase();
+		}
+		SqlConnectionPool pool = connectionPool;
+		if (pool == null) {
+			return results;
+		}
 
-				if(filter.getOrdering()==Ordering.ASCENDING) {
-					filterString += " ORDER BY 'Time' ASC";
-				} else {
-					filterString += " ORDER BY Time DESC";
-				}
+		List<String> names = new ArrayList<String>();
+		List<String> tables = new ArrayList<String>();
+		for (String itemName : itemNames) {
+			String table = sqlTables.get(itemName);
+			if (table != null) {
+				names.add(itemName);
+				tables.add(table);
+			}
+		}
 
-				if(filter.getPageSize() != 0x7fffffff)
-					filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
-				
+		Connection connection = null;
+		boolean broken = false;
+		try {
+			connection = pool.getConnection();
+			for (int start = 0; start < names.size(); start += LATEST_CHUNK_SIZE) {
+				int end = Math.min(start + LATEST_CHUNK_SIZE, names.size());
+				StringBuilder query = new StringBuilder();
+				for (int i = start; i < end; i++) {
+					if (i > start) {
+						query.append(" UNION ALL ");
+					}
+					query.append("(SELECT ? AS Name, Time, Value FROM ").append(tables.get(i))
+						.append(" ORDER BY Time DESC LIMIT 1)");
+				}
+				PreparedStatement statement = connection.prepareStatement(query.toString());
 				try {
-					long timerStart = System.currentTimeMillis();
-
-					// Retrieve the table array
-					Statement st = connection.createStatement();
+					for (int i = start; i < end; i++) {
+						statement.setString(i - start + 1, names.get(i));
+					}
+					ResultSet rs = statement.executeQuery();
+					while (rs.next()) {
+						String itemName = rs.getString(1);
+						State state = mapToState(itemName, rs.getString(3));
+						if (state != null) {
+							results.put(itemName, new SqlItem(itemName, state, rs.getTimestamp(2)));
+						}
+					}
+					rs.close();
+				} finally {
+					statement.close();
+				}
+			}
+			// Success
+			errCnt.set(0);
+		} catch (SQLException e) {
+			errCnt.incrementAndGet();
+			broken = true;
+			logger.error("SQL: Error querying the latest states of {} items: {}", names.size(), e.getMessage());
+		} finally {
+			if (connection != null) {
+				pool.release(connection, broken);
+			}
+		}
+		return results;
+	}
 
-					String queryString = new String();
-					queryString = "SELECT Time, Value FROM " + table;
-					if(!filterString.isEmpty())
-						queryString += filterString;
-					
-					logger.debug("SQL: "+queryString);
+	/**
+	 * Converts a stored value into a state accepted by the item, falling back to a
+	 * {@link DecimalType} if the item is unknown.
+	 */
+	private State mapToState(String itemName, String value) {
+		if (value == null) {
+			return null;
+		}
+		ItemRegistry registry = itemRegistry;
+		if (registry != null) {
+			try {
+				State state = TypeParser.parseState(registry.getItem(itemName).getAcceptedDataTypes(), value);
+				if (state != null) {
+					return state;
+				}
+			} catch (ItemNotFoundException e) {
+				logger.debug("SQL: Could not find item '{}' in registry", itemName);
+			}
+		}
+		try {
+			return new DecimalType(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 
-					// Turn use of the cursor on.
-					st.setFetchSize(50);
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Aggregations that need numeric values are computed while streaming the states
+	 * of the range, if the table of the item is not numeric.
+	 */
+	public HistoricItem aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate) {
+		SqlAggregator aggregator = getAggregator(itemName);
+		if (aggregator == null) {
+			return null;
+		}
+		if (!aggregator.supports(aggregation)) {
+			return HistoricItemAggregator.aggregate(itemName, aggregation, queryRange(itemName, beginDate, endDate), 
+					null, endDate == null ? new Date() : endDate);
+		}
+		return aggregator.aggregate(aggregation, beginDate, endDate);
+	}
 
-					ResultSet rs = st.executeQuery(queryString);
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * FIRST, LAST and CHANGED cannot be expressed as a SQL aggregate function per
+	 * bucket, so they are computed while streaming the states of the range. This
+	 * also applies to aggregations that need numeric values, if the table of the 
+	 * item is not numeric.
+	 */
+	public Iterable<HistoricItem> aggregate(String itemName, Aggregation aggregation, Date beginDate, Date endDate, long bucketSize) {
+		SqlAggregator aggregator = getAggregator(itemName);
+		if (aggregator == null) {
+			return Collections.emptyList();
+		}
+		List<HistoricItem> results = aggregator.aggregate(aggregation, beginDate, endDate, bucketSize);
+		if (results == null) {
+			results = HistoricItemAggregator.aggregate(itemName, aggregation, queryRange(itemName, beginDate, endDate), 
+					beginDate, bucketSize);
+		}
+		return results;
+	}
 
-					long count = 0;
-					double value;
-					List<HistoricItem> items = new ArrayList<HistoricItem>();
-					while (rs.next()) {
-						count++;
+	private Iterable<HistoricItem> queryRange(String itemName, Date beginDate, Date endDate) {
+		FilterCriteria filter = new FilterCriteria();
+		filter.setItemName(itemName);
+		filter.setBeginDate(beginDate);
+		filter.setEndDate(endDate);
+		filter.setOrdering(Ordering.ASCENDING);
+		return query(filter);
+	}
 
-						//TODO: Make this type specific ???
-						value = rs.getDouble(2);
-						State v = new DecimalType(value);
+	private SqlAggregator getAggregator(String itemName) {
+		if (initialized) {
+			if (!isConnected()) {
+				connectToDatabase();
+			}
 
-						SqlItem sqlItem = new SqlItem(itemName, v, rs.getTimestamp(1));
-						items.add(sqlItem);
-					}
+			SqlConnectionPool pool = connectionPool;
+			if (pool != null) {
+				String table = sqlTables.get(itemName);
+				if (table == null) {
+					logger.error("SQL: Unable to find table for aggregation '" + itemName + "'.");
+					return null;
+				}
+				return new SqlAggregator(pool, table, itemName, isNumeric(itemName), errCnt);
+			}
+		}
+		return null;
+	}
 
-					rs.close();
-					st.close();
+	/**
+	 * @return <code>true</code>, if the table of the item has a numeric value column,
+	 * 	<code>false</code> if it does not or if the item is unknown
+	 */
+	private boolean isNumeric(String itemName) {
+		ItemRegistry registry = itemRegistry;
+		if (registry != null) {
+			try {
+				return NUMERIC_TYPE_PATTERN.matcher(getSqlType(registry.getItem(itemName)).trim()).matches();
+			} catch (ItemNotFoundException e) {
+				logger.debug("SQL: Could not find item '{}' in registry", itemName);
+			}
+		}
+		return false;
+	}
 
-					long timerStop = System.currentTimeMillis();
-					logger.debug("SQL: query returned {} rows in {}ms", count, timerStop - timerStart);
-					
-					// Success
-					errCnt = 0;
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getStatisticsName() {
+		return getName();
+	}
 
-					return items;
-				} catch (SQLException e) {
-					errCnt++;
-					logger.error("SQL: Error running querying : " + e.getMessage());
-				}
-			}
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		SqlConnectionPool pool = connectionPool;
+		statistics.put("connected", pool != null);
+		if (pool != null) {
+			statistics.put("open connections", pool.getSize());
+			statistics.put("idle connections", pool.getIdleCount());
 		}
-		return Collections.emptyList();
+		SqlWriteQueue queue = writeQueue;
+		if (queue != null) {
+			statistics.put("queue depth", queue.size());
+			statistics.put("enqueued states", queue.getEnqueuedCount());
+			statistics.put("dropped states", queue.getDroppedCount());
+			statistics.put("written states", queue.getWrittenCount());
+			statistics.put("failed states", queue.getFailedCount());
+			statistics.put("written batches", queue.getBatchCount());
+			statistics.put("avg write latency (ms)", queue.getAverageLatency());
+			statistics.put("max write latency (ms)", queue.getMaxLatency());
+		}
+		return statistics;
 	}
+
 }
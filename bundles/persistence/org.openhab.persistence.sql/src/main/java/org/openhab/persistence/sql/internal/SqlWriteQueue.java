@@ -0,0 +1,289 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.persistence.sql.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A write-behind queue for the SQL persistence service. Item states are
+ * captured and timestamped when they are enqueued, so that storing a state
+ * never blocks the thread that changed it. A single writer thread collects
+ * the queued states into batches of up to <code>batchSize</code> entries or
+ * whatever has been queued within <code>flushInterval</code> milliseconds and
+ * hands them to a {@link BatchWriter}.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class SqlWriteQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlWriteQueue.class);
+
+	/**
+	 * Writes a batch of queued states to the database.
+	 */
+	public interface BatchWriter {
+		
+		/**
+		 * @param batch the states to write, in the order in which they have been queued
+		 * @return the number of states that have been written successfully
+		 */
+		int write(List<PendingWrite> batch);
+	}
+
+	/**
+	 * An item state that has been queued for writing.
+	 */
+	public static class PendingWrite {
+		private final Item item;
+		private final String value;
+		private final Date timestamp;
+		private final long enqueueTime;
+
+		public PendingWrite(Item item, String value, Date timestamp) {
+			this.item = item;
+			this.value = value;
+			this.timestamp = timestamp;
+			this.enqueueTime = System.nanoTime();
+		}
+
+		public Item getItem() {
+			return item;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public Date getTimestamp() {
+			return timestamp;
+		}
+	}
+
+	private final BlockingQueue<PendingWrite> queue;
+
+	private final BatchWriter writer;
+
+	private final int batchSize;
+
+	private final long flushInterval;
+
+	private final Thread writerThread;
+
+	private volatile boolean running = true;
+
+	private final AtomicLong enqueuedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong writtenCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * @param writer the writer to hand the batches to
+	 * @param capacity the maximum number of queued states, further states are dropped
+	 * @param batchSize the maximum number of states per batch
+	 * @param flushInterval the time in milliseconds the writer waits for a batch
+	 * 	to fill up, 0 writes all queued states immediately
+	 */
+	public SqlWriteQueue(BatchWriter writer, int capacity, int batchSize, long flushInterval) {
+		this.writer = writer;
+		this.queue = new LinkedBlockingQueue<PendingWrite>(capacity);
+		this.batchSize = Math.max(batchSize, 1);
+		this.flushInterval = Math.max(flushInterval, 0);
+		this.writerThread = new Thread("openHAB SQL writer") {
+			public void run() {
+				processQueue();
+			}
+		};
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Captures the current state of the given item and queues it for writing.
+	 * 
+	 * @param item the item to store
+	 * @return <code>false</code>, if the queue is full and the state has been dropped
+	 */
+	public boolean enqueue(Item item) {
+		return enqueue(item, item.getState(), new Date());
+	}
+
+	/**
+	 * Queues a state of the given item for writing.
+	 * 
+	 * @param item the item to store
+	 * @param state the state to store
+	 * @param timestamp the time of the state
+	 * @return <code>false</code>, if the queue is full and the state has been dropped
+	 */
+	public boolean enqueue(Item item, State state, Date timestamp) {
+		PendingWrite write = new PendingWrite(item, state.toString(), timestamp);
+		if (running && queue.offer(write)) {
+			enqueuedCount.incrementAndGet();
+			return true;
+		} else {
+			if (droppedCount.incrementAndGet() % 1000 == 1) {
+				logger.warn("SQL: Write queue is full, dropping state of item '{}'", item.getName());
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Stops accepting new states and waits until the queued ones have been written.
+	 * 
+	 * @param timeout the maximum time to wait in milliseconds
+	 */
+	public void close(long timeout) {
+		running = false;
+		try {
+			writerThread.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writerThread.isAlive()) {
+			logger.warn("SQL: {} queued states have not been written before shutdown", queue.size());
+		}
+	}
+
+	private void processQueue() {
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				collectBatch(batch);
+			} catch (InterruptedException e) {
+				running = false;
+			}
+			if (!batch.isEmpty()) {
+				writeBatch(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the first queued state and then collects further states until the
+	 * batch is full or the flush interval has passed. Once the queue has been closed,
+	 * only the states that are already queued are collected.
+	 */
+	private void collectBatch(List<PendingWrite> batch) throws InterruptedException {
+		PendingWrite first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+		if (first==null) {
+			return;
+		}
+		batch.add(first);
+		long deadline = System.currentTimeMillis() + flushInterval;
+		while (batch.size() < batchSize) {
+			queue.drainTo(batch, batchSize - batch.size());
+			long remaining = deadline - System.currentTimeMillis();
+			if (batch.size() >= batchSize || remaining <= 0 || !running) {
+				break;
+			}
+			PendingWrite next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+			if (next==null) {
+				break;
+			}
+			batch.add(next);
+		}
+	}
+
+	private void writeBatch(List<PendingWrite> batch) {
+		int written = 0;
+		try {
+			written = writer.write(batch);
+		} catch (RuntimeException e) {
+			logger.error("SQL: Writing a batch of " + batch.size() + " states failed", e);
+		}
+		long now = System.nanoTime();
+		for (PendingWrite write : batch) {
+			long latency = now - write.enqueueTime;
+			totalLatency.addAndGet(latency);
+			if (latency > maxLatency.get()) {
+				maxLatency.set(latency);
+			}
+		}
+		writtenCount.addAndGet(written);
+		failedCount.addAndGet(batch.size() - written);
+		batchCount.incrementAndGet();
+	}
+
+	public int size() {
+		return queue.size();
+	}
+
+	public long getEnqueuedCount() {
+		return enqueuedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/**
+	 * @return the average time in milliseconds between enqueuing and writing a state
+	 */
+	public long getAverageLatency() {
+		long processed = writtenCount.get() + failedCount.get();
+		return processed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalLatency.get() / processed) : 0;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds between enqueuing and writing a state
+	 */
+	public long getMaxLatency() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLatency.get());
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.ui.webapp.internal.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class StateChangeNotifierTest {
+
+	private static final int POLLERS = 200;
+	
+	private static final int ITEMS_PER_PAGE = 20;
+
+	private static final int ROUNDS = 10;
+
+	@Test
+	public void testNotifyOnce() {
+		StateChangeNotifier notifier = new StateChangeNotifier();
+		NumberItem itemA = new NumberItem("A");
+		NumberItem itemB = new NumberItem("B");
+		final AtomicInteger notifications = new AtomicInteger();
+		notifier.addWaiter(Arrays.<GenericItem>asList(itemA, itemB), new StateChangeNotifier.Waiter() {
+			public void changed() {
+				notifications.incrementAndGet();
+			}
+		});
+		assertEquals(2, notifier.getItemCount());
+		
+		// updates without a change do not notify
+		itemA.setState(itemA.getState());
+		assertEquals(0, notifications.get());
+
+		itemA.setState(new DecimalType(1));
+		itemB.setState(new DecimalType(1));
+		assertEquals(1, notifications.get());
+		assertEquals(0, notifier.getItemCount());
+		assertEquals(0, notifier.getWaiterCount());
+	}
+
+	@Test
+	public void testConcurrentPollers() throws InterruptedException {
+		final StateChangeNotifier notifier = new StateChangeNotifier();
+		final List<GenericItem> page = new ArrayList<GenericItem>();
+		for(int i = 0; i < ITEMS_PER_PAGE; i++) {
+			page.add(new NumberItem("Item" + i));
+		}
+		int threadsBefore = Thread.activeCount();
+
+		long maxWakeUpNanos = 0;
+		for(int round = 1; round <= ROUNDS; round++) {
+			// every poller is a suspended request, which is re-issued after it has been answered 
+			final CountDownLatch woken = new CountDownLatch(POLLERS);
+			for(int i = 0; i < POLLERS; i++) {
+				notifier.addWaiter(page, new StateChangeNotifier.Waiter() {
+					public void changed() {
+						woken.countDown();
+					}
+				});
+			}
+			assertEquals(POLLERS, notifier.getWaiterCount());
+			assertEquals(ITEMS_PER_PAGE, notifier.getItemCount());
+			assertEquals(threadsBefore, Thread.activeCount());
+			
+			final NumberItem item = (NumberItem) page.get(round % ITEMS_PER_PAGE);
+			final DecimalType state = new DecimalType(round);
+			long start = System.nanoTime();
+			Thread changer = new Thread() {
+				public void run() {
+					item.setState(state);
+				}
+			};
+			changer.start();
+			assertTrue(woken.await(1, TimeUnit.SECONDS));
+			maxWakeUpNanos = Math.max(maxWakeUpNanos, System.nanoTime() - start);
+			changer.join();
+			assertEquals(0, notifier.getWaiterCount());
+			assertEquals(0, notifier.getItemCount());
+		}
+		
+		System.out.println(String.format("%d suspended pollers: %d threads in use (%d before), all woken within %dms", 
+				POLLERS, Thread.activeCount(), threadsBefore, TimeUnit.NANOSECONDS.toMillis(maxWakeUpNanos)));
+	}
+	
+}
@@ -0,0 +1,169 @@
+/**
+ * openHAB, the open Home Automation Bus.
+ * Copyright (C) 2010-2013, openHAB.org <admin@openhab.org>
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Additional permission under GNU GPL version 3 section 7
+ *
+ * If you modify this Program, or any covered work, by linking or
+ * combining it with Eclipse (or a modified version of that library),
+ * containing parts covered by the terms of the Eclipse Public License
+ * (EPL), the licensors of this Program grant you additional permission
+ * to convey the resulting work.
+ */
+package org.openhab.ui.webapp.internal.servlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.StateChangeListener;
+import org.openhab.core.types.State;
+
+/**
+ * This class notifies waiting polling requests about state changes of the items
+ * they observe. 
+ * <p>
+ * A single listener is registered on every item that at least one request is waiting 
+ * for; it is removed again as soon as no request waits for the item anymore. When an 
+ * item changes, all its waiters are removed from all their items and notified once,
+ * so that no thread is needed to wait for a change.
+ * 
+ * @author Kai Kreuzer
+ * @since 1.4.0
+ */
+public class StateChangeNotifier {
+
+	/**
+	 * A request that waits for a state change.
+	 */
+	public interface Waiter {
+		
+		/**
+		 * Is called once, when one of the items the waiter observes has changed.
+		 */
+		void changed();
+	}
+	
+	/** the waiters by observed item; items are compared by identity as their hash code changes with their state */
+	private final Map<GenericItem, Set<Waiter>> waitersByItem = new IdentityHashMap<GenericItem, Set<Waiter>>();
+
+	/** the observed items by waiter */
+	private final Map<Waiter, Collection<GenericItem>> itemsByWaiter = new HashMap<Waiter, Collection<GenericItem>>();
+	
+	private final StateChangeListener listener = new StateChangeListener() {
+		public void stateChanged(Item item, State oldState, State newState) {
+			notifyWaiters(item);
+		}
+
+		public void stateUpdated(Item item, State state) {
+			// ignore if the state did not change
+		}
+	};
+
+	/**
+	 * Lets a waiter observe a set of items.
+	 * 
+	 * @param items the items to observe
+	 * @param waiter the waiter to notify about a change
+	 */
+	public synchronized void addWaiter(Collection<GenericItem> items, Waiter waiter) {
+		itemsByWaiter.put(waiter, items);
+		for(GenericItem item : items) {
+			Set<Waiter> waiters = waitersByItem.get(item);
+			if(waiters==null) {
+				waiters = new HashSet<Waiter>();
+				waitersByItem.put(item, waiters);
+				item.addStateChangeListener(listener);
+			}
+			waiters.add(waiter);
+		}
+	}
+
+	/**
+	 * Removes a waiter from all the items it observes. Nothing happens, if it
+	 * has already been notified.
+	 * 
+	 * @param waiter the waiter to remove
+	 */
+	public synchronized void removeWaiter(Waiter waiter) {
+		Collection<GenericItem> items = itemsByWaiter.remove(waiter);
+		if(items!=null) {
+			for(GenericItem item : items) {
+				Set<Waiter> waiters = waitersByItem.get(item);
+				if(waiters!=null) {
+					waiters.remove(waiter);
+					if(waiters.isEmpty()) {
+						waitersByItem.remove(item);
+						item.removeStateChangeListener(listener);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops observing all items; waiting requests are not notified.
+	 */
+	public synchronized void dispose() {
+		for(GenericItem item : waitersByItem.keySet()) {
+			item.removeStateChangeListener(listener);
+		}
+		waitersByItem.clear();
+		itemsByWaiter.clear();
+	}
+
+	/**
+	 * @return the number of items that are observed
+	 */
+	public synchronized int getItemCount() {
+		return waitersByItem.size();
+	}
+
+	/**
+	 * @return the number of waiting requests
+	 */
+	public synchronized int getWaiterCount() {
+		return itemsByWaiter.size();
+	}
+
+	private void notifyWaiters(Item item) {
+		List<Waiter> waiters;
+		synchronized(this) {
+			Set<Waiter> itemWaiters = waitersByItem.get(item);
+			if(itemWaiters==null) {
+				return;
+			}
+			waiters = new ArrayList<Waiter>(itemWaiters);
+			for(Waiter waiter : waiters) {
+				removeWaiter(waiter);
+			}
+		}
+		for(Waiter waiter : waiters) {
+			waiter.changed();
+		}
+	}
+
+}
@@ -29,7 +29,6 @@
 package org.openhab.ui.webapp.internal.servlet;
 
 import java.io.IOException;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Set;
@@ -39,11 +38,12 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
-import org.openhab.core.items.StateChangeListener;
-import org.openhab.core.types.State;
 import org.openhab.model.sitemap.Frame;
 import org.openhab.model.sitemap.LinkableWidget;
 import org.openhab.model.sitemap.Sitemap;
@@ -58,6 +58,8 @@ import org.slf4j.LoggerFactory;
 /**
  * This is the main servlet for the WebApp UI. 
  * It serves the Html code based on the sitemap model.
+ * Polling requests are suspended as Jetty continuations until an item on the page 
+ * changes, so that they do not occupy a thread while waiting.
  * 
  * @author Kai Kreuzer
  *
@@ -77,6 +79,8 @@ public class WebAppServlet extends BaseServlet {
 	private PageRenderer renderer;
 	protected SitemapProvider sitemapProvider;
 	
+	private final StateChangeNotifier notifier = new StateChangeNotifier();
+	
 	
 	public void setSitemapProvider(SitemapProvider sitemapProvider) {
 		this.sitemapProvider = sitemapProvider;
@@ -107,6 +111,7 @@ public class WebAppServlet extends BaseServlet {
 	protected void deactivate() {
 		httpService.unregister(WEBAPP_ALIAS + SERVLET_NAME);
 		httpService.unregister(WEBAPP_ALIAS);
+		notifier.dispose();
 		logger.info("Stopped Classic UI");
 	}
 	
@@ -138,9 +143,8 @@ public class WebAppServlet extends BaseServlet {
 				// we are at the homepage, so we render the children of the sitemap root node
 				String label = sitemap.getLabel()!=null ? sitemap.getLabel() : sitemapName;
 				EList<Widget> children = sitemap.getChildren();
-				if(poll && waitForChanges(children)==false) {
-					// we have reached the timeout, so we do not return any content as nothing has changed
-					res.getWriter().append(getTimeoutResponse()).close();
+				if(poll && waitForChanges(children, req, res)) {
+					// the request has been suspended or has reached the timeout
 					return;
 				}
 				result.append(renderer.processPage("Home", sitemapName, label, sitemap.getChildren(), async));
@@ -154,9 +158,8 @@ public class WebAppServlet extends BaseServlet {
 						throw new RenderException("Widget '" + w + "' can not have any content");
 					}
 					EList<Widget> children = renderer.getItemUIRegistry().getChildren((LinkableWidget) w);
-					if(poll && waitForChanges(children)==false) {
-						// we have reached the timeout, so we do not return any content as nothing has changed
-						res.getWriter().append(getTimeoutResponse()).close();
+					if(poll && waitForChanges(children, req, res)) {
+						// the request has been suspended or has reached the timeout
 						return;
 					}
 					result.append(renderer.processPage(renderer.getItemUIRegistry().getWidgetId(w), sitemapName, label, children, async));
@@ -184,32 +187,48 @@ public class WebAppServlet extends BaseServlet {
 	}
 
 	/**
-	 * This method only returns when a change has occurred to any item on the page to display
+	 * Suspends a polling request until a change has occurred to any item on the page to display.
+	 * When the request is resumed because of a change or the timeout, it is dispatched again
+	 * and this method tells whether the page has to be rendered.
 	 * 
 	 * @param widgets the widgets of the page to observe
+	 * @param req the polling request
+	 * @param res the response to the polling request
+	 * @return <code>true</code>, if the request has been suspended or answered with the timeout 
+	 * response, <code>false</code>, if a change has occurred and the page has to be rendered
 	 */
-	private boolean waitForChanges(EList<Widget> widgets) {
-		long startTime = (new Date()).getTime();
-		boolean timeout = false;
-		BlockingStateChangeListener listener = new BlockingStateChangeListener();
-		// let's get all items for these widgets
-		Set<GenericItem> items = getAllItems(widgets);
-		for(GenericItem item : items) {			
-			item.addStateChangeListener(listener);
-		}
-		while(!listener.hasChangeOccurred() && !timeout) {
-			timeout = (new Date()).getTime() - startTime > TIMEOUT_IN_MS;
-			try {
-				Thread.sleep(300);
-			} catch (InterruptedException e) {
-				timeout = true;
-				break;
-			}
+	private boolean waitForChanges(EList<Widget> widgets, ServletRequest req, ServletResponse res) throws IOException {
+		final Continuation continuation = ContinuationSupport.getContinuation(req);
+		if(continuation.isExpired()) {
+			// we have reached the timeout, so we do not return any content as nothing has changed
+			res.getWriter().append(getTimeoutResponse()).close();
+			return true;
 		}
-		for(GenericItem item : items) {
-			item.removeStateChangeListener(listener);
+		if(continuation.isResumed()) {
+			return false;
 		}
-		return !timeout;
+		final StateChangeNotifier.Waiter waiter = new StateChangeNotifier.Waiter() {
+			public void changed() {
+				try {
+					continuation.resume();
+				} catch(IllegalStateException e) {
+					// the request has already expired
+				}
+			}
+		};
+		continuation.setTimeout(TIMEOUT_IN_MS);
+		continuation.addContinuationListener(new ContinuationListener() {
+			public void onTimeout(Continuation continuation) {
+				notifier.removeWaiter(waiter);
+			}
+			public void onComplete(Continuation continuation) {
+				notifier.removeWaiter(waiter);
+			}
+		});
+		continuation.suspend();
+		// let's get all items for these widgets
+		notifier.addWaiter(getAllItems(widgets), waiter);
+		return true;
 	}
 
 	/**
@@ -243,40 +262,4 @@ public class WebAppServlet extends BaseServlet {
 		return items;
 	}
 
-	/**
-	 * This is a state change listener, which is merely used to determine, if a state
-	 * change has occurred on one of a list of items.
-	 * 
-	 * @author Kai Kreuzer
-	 *
-	 */
-	private static class BlockingStateChangeListener implements StateChangeListener {
-		
-		private boolean changed = false;
-		
-		/**
-		 * {@inheritDoc}
-		 */
-		public void stateChanged(Item item, State oldState, State newState) {
-			changed = true;
-		}
-
-		/**
-		 * determines, whether a state change has occurred since its creation
-		 * 
-		 * @return true, if a state has changed
-		 */
-		public boolean hasChangeOccurred() {
-			return changed;
-		}
-
-		/**
-		 * {@inheritDoc}
-		 */
-		public void stateUpdated(Item item, State state) {
-			// ignore if the state did not change
-		}
-	}
-	
-	
 }